@@ -0,0 +1,65 @@
+package de.invesdwin.context.persistence.timeseriesdb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.invesdwin.context.persistence.timeseriesdb.ATimeSeriesDB;
+import de.invesdwin.context.persistence.timeseriesdb.PersistentMapType;
+import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesLookupMode;
+import de.invesdwin.util.time.date.FDate;
+
+/**
+ * Parameters can be widened on the command line, e.g. "-p mapType=DISK_FAST,ON_HEAP -p cache=DEFAULT,NO_SEGMENTS".
+ * The defaults are kept small so that a full run finishes in reasonable time.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@NotThreadSafe
+public abstract class ATimeSeriesDBBenchmark {
+
+    @Param({ "DISK_FAST" })
+    public PersistentMapType mapType;
+    @Param({ "Value", "Index" })
+    public TimeSeriesLookupMode lookupMode;
+    @Param({ "LZ4", "NONE" })
+    public BenchmarkCompression compression;
+    @Param({ "DEFAULT" })
+    public BenchmarkCacheSettings cache;
+    @Param({ "1000000" })
+    public int valueCount;
+
+    protected ATimeSeriesDB<String, FDate> table;
+
+    protected void setupTable() {
+        cache.apply();
+        table = TimeSeriesDBBenchmarks.newTable(getClass().getSimpleName() + "_" + mapType + "_" + lookupMode + "_"
+                + compression + "_" + cache + "_" + valueCount, mapType, lookupMode, compression);
+        table.deleteRange(TimeSeriesDBBenchmarks.HASH_KEY);
+    }
+
+    @TearDown
+    public void tearDownTable() {
+        if (table != null) {
+            table.deleteRange(TimeSeriesDBBenchmarks.HASH_KEY);
+            table.close();
+            table = null;
+        }
+    }
+
+}
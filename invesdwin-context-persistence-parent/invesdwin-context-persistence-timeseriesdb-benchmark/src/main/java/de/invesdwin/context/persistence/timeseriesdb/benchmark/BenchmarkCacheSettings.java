@@ -0,0 +1,61 @@
+package de.invesdwin.context.persistence.timeseriesdb.benchmark;
+
+import javax.annotation.concurrent.Immutable;
+
+import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesProperties;
+
+/**
+ * TimeSeriesProperties are static, thus the settings are applied as system properties before the first table is
+ * created. This works because JMH forks a new JVM for each parameter combination.
+ */
+@Immutable
+public enum BenchmarkCacheSettings {
+    DEFAULT {
+        @Override
+        public void apply() {}
+    },
+    NO_SEGMENTS {
+        @Override
+        public void apply() {
+            setProperty("FILE_BUFFER_CACHE_SEGMENTS_ENABLED", "false");
+        }
+    },
+    NO_MMAP {
+        @Override
+        public void apply() {
+            setProperty("FILE_BUFFER_CACHE_MMAP_ENABLED", "false");
+        }
+    },
+    NO_PRELOAD {
+        @Override
+        public void apply() {
+            setProperty("FILE_BUFFER_CACHE_PRELOAD_ENABLED", "false");
+        }
+    },
+    BYTE_BUDGET {
+        @Override
+        public void apply() {
+            setProperty("FILE_BUFFER_CACHE_MAX_SEGMENTS_MEGABYTES", "256");
+        }
+    },
+    NO_SCAN_RESISTANCE {
+        @Override
+        public void apply() {
+            setProperty("FILE_BUFFER_CACHE_SCAN_ADMIT_COUNT", "-1");
+        }
+    },
+    NO_BLOCK_INDEX {
+        @Override
+        public void apply() {
+            setProperty("MEMORY_FILE_BLOCK_SIZE", "0");
+        }
+    };
+
+    public abstract void apply();
+
+    private static void setProperty(final String key, final String value) {
+        //class literal does not initialize TimeSeriesProperties yet
+        System.setProperty(TimeSeriesProperties.class.getName() + "." + key, value);
+    }
+
+}
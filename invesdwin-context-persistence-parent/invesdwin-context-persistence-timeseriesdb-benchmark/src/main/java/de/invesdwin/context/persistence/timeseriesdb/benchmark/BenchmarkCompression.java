@@ -0,0 +1,36 @@
+package de.invesdwin.context.persistence.timeseriesdb.benchmark;
+
+import javax.annotation.concurrent.Immutable;
+
+import de.invesdwin.context.integration.compression.DisabledCompressionFactory;
+import de.invesdwin.context.integration.compression.ICompressionFactory;
+import de.invesdwin.context.integration.compression.lz4.FastLZ4CompressionFactory;
+import de.invesdwin.context.integration.compression.lz4.LZ4Streams;
+
+@Immutable
+public enum BenchmarkCompression {
+    /**
+     * Enables flyweight mmap access for fixed length values.
+     */
+    NONE {
+        @Override
+        public ICompressionFactory newCompressionFactory() {
+            return DisabledCompressionFactory.INSTANCE;
+        }
+    },
+    LZ4 {
+        @Override
+        public ICompressionFactory newCompressionFactory() {
+            return LZ4Streams.getDefaultCompressionFactory();
+        }
+    },
+    FAST_LZ4 {
+        @Override
+        public ICompressionFactory newCompressionFactory() {
+            return FastLZ4CompressionFactory.INSTANCE;
+        }
+    };
+
+    public abstract ICompressionFactory newCompressionFactory();
+
+}
@@ -0,0 +1,148 @@
+package de.invesdwin.context.persistence.timeseriesdb.benchmark;
+
+import java.io.File;
+
+import javax.annotation.concurrent.Immutable;
+
+import de.invesdwin.context.ContextProperties;
+import de.invesdwin.context.integration.compression.ICompressionFactory;
+import de.invesdwin.context.persistence.timeseriesdb.ATimeSeriesDB;
+import de.invesdwin.context.persistence.timeseriesdb.IPersistentMapType;
+import de.invesdwin.context.persistence.timeseriesdb.IncompleteUpdateRetryableException;
+import de.invesdwin.context.persistence.timeseriesdb.PersistentMapType;
+import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesLookupMode;
+import de.invesdwin.context.persistence.timeseriesdb.storage.TimeSeriesStorage;
+import de.invesdwin.context.persistence.timeseriesdb.updater.ATimeSeriesUpdater;
+import de.invesdwin.context.persistence.timeseriesdb.updater.progress.IUpdateProgress;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.collections.iterable.ICloseableIterable;
+import de.invesdwin.util.marshallers.serde.ISerde;
+import de.invesdwin.util.marshallers.serde.basic.FDateSerde;
+import de.invesdwin.util.math.decimal.scaled.Percent;
+import de.invesdwin.util.time.Instant;
+import de.invesdwin.util.time.date.FDate;
+import de.invesdwin.util.time.date.FDates;
+import de.invesdwin.util.time.date.FTimeUnit;
+
+@Immutable
+public final class TimeSeriesDBBenchmarks {
+
+    public static final String HASH_KEY = "HASH_KEY";
+    public static final FDate FIRST_VALUE = FDates.MIN_DATE;
+
+    private TimeSeriesDBBenchmarks() {}
+
+    public static ATimeSeriesDB<String, FDate> newTable(final String name, final PersistentMapType mapType,
+            final TimeSeriesLookupMode lookupMode, final BenchmarkCompression compression) {
+        final ICompressionFactory compressionFactory = compression.newCompressionFactory();
+        return new ATimeSeriesDB<String, FDate>(name) {
+
+            @Override
+            protected TimeSeriesStorage newStorage(final File directory, final Integer valueFixedLength,
+                    final ICompressionFactory compressionFactory) {
+                return new TimeSeriesStorage(directory, valueFixedLength, compressionFactory) {
+                    @Override
+                    protected IPersistentMapType getMapType() {
+                        return mapType;
+                    }
+                };
+            }
+
+            @Override
+            public File getBaseDirectory() {
+                return ContextProperties.TEMP_DIRECTORY;
+            }
+
+            @Override
+            protected ISerde<FDate> newValueSerde() {
+                return FDateSerde.GET;
+            }
+
+            @Override
+            protected Integer newValueFixedLength() {
+                return FDateSerde.FIXED_LENGTH;
+            }
+
+            @Override
+            protected ICompressionFactory newCompressionFactory() {
+                return compressionFactory;
+            }
+
+            @Override
+            protected TimeSeriesLookupMode newLookupMode() {
+                return lookupMode;
+            }
+
+            @Override
+            protected String innerHashKeyToString(final String key) {
+                return name + "_" + key;
+            }
+
+            @Override
+            public FDate extractStartTime(final FDate value) {
+                return value;
+            }
+
+            @Override
+            public FDate extractEndTime(final FDate value) {
+                return value;
+            }
+
+        };
+    }
+
+    /**
+     * One value per millisecond starting at FIRST_VALUE.
+     */
+    public static ICloseableIterable<FDate> newValues(final int valueCount) {
+        return FDates.iterable(FIRST_VALUE, getLastValue(valueCount), FTimeUnit.MILLISECONDS, 1);
+    }
+
+    public static FDate getLastValue(final int valueCount) {
+        return FIRST_VALUE.addMilliseconds(valueCount - 1);
+    }
+
+    public static void update(final ATimeSeriesDB<String, FDate> table, final int valueCount) {
+        final ATimeSeriesUpdater<String, FDate> updater = new ATimeSeriesUpdater<String, FDate>(HASH_KEY, table) {
+
+            @Override
+            protected ICloseableIterable<FDate> getSource(final FDate updateFrom) {
+                return newValues(valueCount);
+            }
+
+            @Override
+            protected void onUpdateFinished(final Instant updateStart) {}
+
+            @Override
+            protected void onUpdateStart() {}
+
+            @Override
+            protected FDate extractStartTime(final FDate element) {
+                return element;
+            }
+
+            @Override
+            protected FDate extractEndTime(final FDate element) {
+                return element;
+            }
+
+            @Override
+            protected void onElement(final IUpdateProgress<String, FDate> updateProgress) {}
+
+            @Override
+            protected void onFlush(final int flushIndex, final IUpdateProgress<String, FDate> updateProgress) {}
+
+            @Override
+            public Percent getProgress(final FDate minTime, final FDate maxTime) {
+                return null;
+            }
+        };
+        try {
+            Assertions.checkTrue(updater.update());
+        } catch (final IncompleteUpdateRetryableException e) {
+            throw new RuntimeException(e);
+        }
+        Assertions.checkEquals(valueCount, updater.getCount());
+    }
+
+}
@@ -0,0 +1,115 @@
+package de.invesdwin.context.persistence.timeseriesdb.benchmark;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.invesdwin.util.collections.iterable.ICloseableIterator;
+import de.invesdwin.util.time.date.FDate;
+
+/**
+ * Point lookups use pseudo random keys that are precomputed so that the benchmark measures the lookup and not the
+ * key generation.
+ */
+@NotThreadSafe
+public class TimeSeriesDBReadBenchmark extends ATimeSeriesDBBenchmark {
+
+    private static final int QUERIES = 1 << 12;
+    private static final int QUERIES_MASK = QUERIES - 1;
+
+    @Param({ "1", "100" })
+    public int shiftUnits;
+    /**
+     * Number of values that are covered by range and size queries.
+     */
+    @Param({ "10000" })
+    public int rangeLength;
+
+    private final FDate[] dates = new FDate[QUERIES];
+    private final long[] indexes = new long[QUERIES];
+    private int query;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        setupTable();
+        TimeSeriesDBBenchmarks.update(table, valueCount);
+        final Random random = new Random(valueCount);
+        for (int i = 0; i < QUERIES; i++) {
+            final int index = random.nextInt(valueCount);
+            indexes[i] = index;
+            dates[i] = TimeSeriesDBBenchmarks.FIRST_VALUE.addMilliseconds(index);
+        }
+    }
+
+    private int nextQuery() {
+        final int next = query;
+        query = (next + 1) & QUERIES_MASK;
+        return next;
+    }
+
+    private FDate nextRangeTo(final FDate from) {
+        return from.addMilliseconds(rangeLength - 1);
+    }
+
+    @Benchmark
+    public void rangeValues(final Blackhole blackhole) {
+        final FDate from = dates[nextQuery()];
+        consume(blackhole, table.rangeValues(TimeSeriesDBBenchmarks.HASH_KEY, from, nextRangeTo(from)).iterator());
+    }
+
+    @Benchmark
+    public void rangeReverseValues(final Blackhole blackhole) {
+        final FDate from = dates[nextQuery()];
+        consume(blackhole,
+                table.rangeReverseValues(TimeSeriesDBBenchmarks.HASH_KEY, nextRangeTo(from), from).iterator());
+    }
+
+    @Benchmark
+    public void rangeValuesFull(final Blackhole blackhole) {
+        consume(blackhole, table.rangeValues(TimeSeriesDBBenchmarks.HASH_KEY, null, null).iterator());
+    }
+
+    private void consume(final Blackhole blackhole, final ICloseableIterator<FDate> iterator) {
+        try (ICloseableIterator<FDate> it = iterator) {
+            while (true) {
+                blackhole.consume(it.next());
+            }
+        } catch (final NoSuchElementException e) {
+            //end reached
+        }
+    }
+
+    @Benchmark
+    public FDate getLatestValueByDate() {
+        return table.getLatestValue(TimeSeriesDBBenchmarks.HASH_KEY, dates[nextQuery()]);
+    }
+
+    @Benchmark
+    public FDate getLatestValueByIndex() {
+        return table.getLatestValue(TimeSeriesDBBenchmarks.HASH_KEY, indexes[nextQuery()]);
+    }
+
+    @Benchmark
+    public FDate getPreviousValue() {
+        return table.getPreviousValue(TimeSeriesDBBenchmarks.HASH_KEY, dates[nextQuery()], shiftUnits);
+    }
+
+    @Benchmark
+    public FDate getNextValue() {
+        return table.getNextValue(TimeSeriesDBBenchmarks.HASH_KEY, dates[nextQuery()], shiftUnits);
+    }
+
+    @Benchmark
+    public long size() {
+        final FDate from = dates[nextQuery()];
+        return table.size(TimeSeriesDBBenchmarks.HASH_KEY, from, nextRangeTo(from));
+    }
+
+}
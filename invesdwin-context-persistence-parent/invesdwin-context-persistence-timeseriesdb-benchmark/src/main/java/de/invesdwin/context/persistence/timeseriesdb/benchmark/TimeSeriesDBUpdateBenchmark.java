@@ -0,0 +1,41 @@
+package de.invesdwin.context.persistence.timeseriesdb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Each iteration writes all values into an empty table, thus a single shot per iteration is measured.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@NotThreadSafe
+public class TimeSeriesDBUpdateBenchmark extends ATimeSeriesDBBenchmark {
+
+    @Setup(Level.Trial)
+    public void setup() {
+        setupTable();
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        table.deleteRange(TimeSeriesDBBenchmarks.HASH_KEY);
+    }
+
+    @Benchmark
+    public void update() {
+        TimeSeriesDBBenchmarks.update(table, valueCount);
+    }
+
+}
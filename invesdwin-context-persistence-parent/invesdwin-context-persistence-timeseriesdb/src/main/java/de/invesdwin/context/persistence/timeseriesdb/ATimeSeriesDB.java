@@ -1,8 +1,13 @@
 package de.invesdwin.context.persistence.timeseriesdb;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
@@ -13,6 +18,12 @@ import de.invesdwin.context.integration.compression.lz4.LZ4Streams;
 import de.invesdwin.context.integration.persistentmap.CorruptedStorageException;
 import de.invesdwin.context.integration.retry.RetryLaterRuntimeException;
 import de.invesdwin.context.log.error.Err;
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.Aggregate;
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.AggregateField;
+import de.invesdwin.context.persistence.timeseriesdb.codec.ITimeSeriesCodec;
+import de.invesdwin.context.persistence.timeseriesdb.codec.TimeSeriesCodecs;
+import de.invesdwin.context.persistence.timeseriesdb.column.ColumnProjection;
+import de.invesdwin.context.persistence.timeseriesdb.storage.ColdStorage;
 import de.invesdwin.context.persistence.timeseriesdb.storage.TimeSeriesStorage;
 import de.invesdwin.context.persistence.timeseriesdb.updater.ATimeSeriesUpdater;
 import de.invesdwin.util.collections.iterable.ACloseableIterator;
@@ -44,6 +55,9 @@ public abstract class ATimeSeriesDB<K, V> implements ITimeSeriesDBInternals<K, V
     private final ICompressionFactory compressionFactory;
     private final TimeSeriesLookupMode lookupMode;
     private final int batchFlushInterval;
+    private final List<AggregateField<V>> aggregateFields;
+    private final TimeSeriesCodecs codecs;
+    private final ColdStorage coldStorage;
     private final File directory;
     private final ALoadingCache<K, TimeSeriesStorageCache<K, V>> key_lookupTableCache;
     private final ALoadingCache<K, IReentrantReadWriteLock> key_tableLock = new ALoadingCache<K, IReentrantReadWriteLock>() {
@@ -58,6 +72,17 @@ public abstract class ATimeSeriesDB<K, V> implements ITimeSeriesDBInternals<K, V
             return true;
         }
     };
+    private final ALoadingCache<K, OptimisticReadGate> key_readGate = new ALoadingCache<K, OptimisticReadGate>() {
+        @Override
+        protected OptimisticReadGate loadValue(final K key) {
+            return new OptimisticReadGate(getName() + "_" + hashKeyToString(key));
+        }
+
+        @Override
+        protected boolean isHighConcurrency() {
+            return true;
+        }
+    };
     private final Object storageLock = new Object();
     @GuardedBy("storageLock")
     private TimeSeriesStorage storage;
@@ -80,6 +105,14 @@ public abstract class ATimeSeriesDB<K, V> implements ITimeSeriesDBInternals<K, V
         this.compressionFactory = newCompressionFactory();
         this.lookupMode = newLookupMode();
         this.batchFlushInterval = newBatchFlushInterval();
+        this.aggregateFields = newAggregateFields();
+        final List<ITimeSeriesCodec> codecsList = newCodecs();
+        if (codecsList == null || codecsList.isEmpty()) {
+            this.codecs = null;
+        } else {
+            this.codecs = new TimeSeriesCodecs(codecsList);
+        }
+        this.coldStorage = newColdStorage();
         final File baseDirectory = getBaseDirectory();
         if (baseDirectory == null) {
             throw new RetryLaterRuntimeException(
@@ -95,7 +128,8 @@ public abstract class ATimeSeriesDB<K, V> implements ITimeSeriesDBInternals<K, V
             protected TimeSeriesStorageCache<K, V> loadValue(final K key) {
                 final String hashKey = hashKeyToString(key);
                 return new TimeSeriesStorageCache<K, V>(getStorage(), hashKey, getValueSerde(), getValueFixedLength(),
-                        input -> extractEndTime(input), getLookupMode(), getBatchFlushInterval());
+                        input -> extractEndTime(input), getLookupMode(), getBatchFlushInterval(), aggregateFields,
+                        codecs, coldStorage);
             }
 
             @Override
@@ -193,6 +227,11 @@ public abstract class ATimeSeriesDB<K, V> implements ITimeSeriesDBInternals<K, V
         return key_tableLock.get(key);
     }
 
+    @Override
+    public OptimisticReadGate getReadGate(final K key) {
+        return key_readGate.get(key);
+    }
+
     protected abstract ISerde<V> newValueSerde();
 
     protected ICompressionFactory newCompressionFactory() {
@@ -208,12 +247,56 @@ public abstract class ATimeSeriesDB<K, V> implements ITimeSeriesDBInternals<K, V
         return ATimeSeriesUpdater.DEFAULT_BATCH_FLUSH_INTERVAL;
     }
 
+    /**
+     * Override this to store min/max/sum/count of numeric fields per chunk which allows aggregate(...) to skip decoding
+     * fully covered chunks. Only chunks written after a field was declared contain its aggregates.
+     */
+    protected List<AggregateField<V>> newAggregateFields() {
+        return null;
+    }
+
+    /**
+     * Override this to encode chunks with dedicated codecs (e.g. delta of delta timestamps and xor doubles) instead of
+     * the compression factory. The first codec is used for new chunks, the others are still needed to read chunks that
+     * were written with them. Ids are stored per chunk and must never be reused for a different encoding.
+     */
+    protected List<ITimeSeriesCodec> newCodecs() {
+        return null;
+    }
+
+    /**
+     * Override this to recompress old chunks in the background with a high compression codec, optionally into a
+     * directory on a cheaper disk. Recent chunks keep using the compression factory or the first codec (or stay
+     * uncompressed for flyweight access). The id of the cold codec must not be reused for a different encoding.
+     */
+    protected ColdStorage newColdStorage() {
+        return null;
+    }
+
     @Override
     public abstract FDate extractEndTime(V value);
 
     @Override
     public ICloseableIterable<V> rangeValues(final K key, final FDate from, final FDate to) {
-        return new RangeValues(key, from, to);
+        return new RangeValues(key, from, to, null);
+    }
+
+    /**
+     * Only decodes the projected columns when the value serde declares a column layout (see IColumnarSerde), the other
+     * fields of the returned values are deserialized from zero bytes. Behaves like rangeValues(...) otherwise. Projected
+     * scans bypass the result caches and the chunk readahead, see TimeSeriesStorageCache.readRangeValues(...).
+     */
+    @Override
+    public ICloseableIterable<V> rangeValues(final K key, final FDate from, final FDate to,
+            final ColumnProjection projection) {
+        return new RangeValues(key, from, to, projection);
+    }
+
+    @Override
+    public Stream<V> rangeValuesParallel(final K key, final FDate from, final FDate to) {
+        final RangeValuesSpliterator<V> spliterator = getLookupTableCache(key).rangeValuesSpliterator(from, to,
+                getTableLock(key).readLock());
+        return StreamSupport.stream(spliterator, true).onClose(spliterator::close);
     }
 
     @Override
@@ -222,22 +305,72 @@ public abstract class ATimeSeriesDB<K, V> implements ITimeSeriesDBInternals<K, V
     }
 
     @Override
-    public V getLatestValue(final K key, final FDate date) {
+    public Aggregate aggregate(final K key, final String field, final FDate from, final FDate to) {
         final ILock readLock = getTableLock(key).readLock();
         readLock.lock();
         try {
-            if (date == null || date.isAfterOrEqualToNotNullSafe(FDates.MAX_DATE)) {
-                return getLookupTableCache(key).getLastValue();
-            } else if (date.isBeforeOrEqualToNotNullSafe(FDates.MIN_DATE)) {
-                return getLookupTableCache(key).getFirstValue();
-            } else {
-                return getLookupTableCache(key).getLatestValue(date);
+            return getLookupTableCache(key).aggregate(field, from, to);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Point lookups enter the read gate of the key and only fall back to the read lock when a writer is active.
+     */
+    private <T> T readOptimistic(final K key, final Supplier<T> lookup) {
+        final OptimisticReadGate readGate = getReadGate(key);
+        final int readIndex = readGate.tryEnterRead();
+        if (readIndex != OptimisticReadGate.FALLBACK) {
+            try {
+                return lookup.get();
+            } finally {
+                readGate.exitRead(readIndex);
             }
+        }
+        final ILock readLock = getTableLock(key).readLock();
+        readLock.lock();
+        try {
+            return lookup.get();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private long readOptimisticLong(final K key, final LongSupplier lookup) {
+        final OptimisticReadGate readGate = getReadGate(key);
+        final int readIndex = readGate.tryEnterRead();
+        if (readIndex != OptimisticReadGate.FALLBACK) {
+            try {
+                return lookup.getAsLong();
+            } finally {
+                readGate.exitRead(readIndex);
+            }
+        }
+        final ILock readLock = getTableLock(key).readLock();
+        readLock.lock();
+        try {
+            return lookup.getAsLong();
         } finally {
             readLock.unlock();
         }
     }
 
+    @Override
+    public V getLatestValue(final K key, final FDate date) {
+        return readOptimistic(key, () -> innerGetLatestValue(key, date));
+    }
+
+    private V innerGetLatestValue(final K key, final FDate date) {
+        if (date == null || date.isAfterOrEqualToNotNullSafe(FDates.MAX_DATE)) {
+            return getLookupTableCache(key).getLastValue();
+        } else if (date.isBeforeOrEqualToNotNullSafe(FDates.MIN_DATE)) {
+            return getLookupTableCache(key).getFirstValue();
+        } else {
+            return getLookupTableCache(key).getLatestValue(date);
+        }
+    }
+
     @Override
     public FDate getLatestValueKey(final K key, final FDate date) {
         final V value = getLatestValue(key, date);
@@ -250,40 +383,36 @@ public abstract class ATimeSeriesDB<K, V> implements ITimeSeriesDBInternals<K, V
 
     @Override
     public long getLatestValueIndex(final K key, final FDate date) {
-        final ILock readLock = getTableLock(key).readLock();
-        readLock.lock();
-        try {
-            if (date == null || date.isAfterOrEqualToNotNullSafe(FDates.MAX_DATE)) {
-                return getLookupTableCache(key).size() - 1;
-            } else if (date.isBeforeOrEqualToNotNullSafe(FDates.MIN_DATE)) {
-                if (getLookupTableCache(key).size() == 0) {
-                    return -1L;
-                } else {
-                    return 0L;
-                }
+        return readOptimisticLong(key, () -> innerGetLatestValueIndex(key, date));
+    }
+
+    private long innerGetLatestValueIndex(final K key, final FDate date) {
+        if (date == null || date.isAfterOrEqualToNotNullSafe(FDates.MAX_DATE)) {
+            return getLookupTableCache(key).size() - 1;
+        } else if (date.isBeforeOrEqualToNotNullSafe(FDates.MIN_DATE)) {
+            if (getLookupTableCache(key).size() == 0) {
+                return -1L;
             } else {
-                return getLookupTableCache(key).getLatestValueIndex(date);
+                return 0L;
             }
-        } finally {
-            readLock.unlock();
+        } else {
+            return getLookupTableCache(key).getLatestValueIndex(date);
         }
     }
 
     @Override
     public V getLatestValue(final K key, final long index) {
-        final ILock readLock = getTableLock(key).readLock();
-        readLock.lock();
-        try {
-            final TimeSeriesStorageCache<K, V> lookupTableCache = getLookupTableCache(key);
-            if (index <= 0) {
-                return lookupTableCache.getFirstValue();
-            } else if (index >= lookupTableCache.size()) {
-                return lookupTableCache.getLastValue();
-            } else {
-                return lookupTableCache.getLatestValue(index);
-            }
-        } finally {
-            readLock.unlock();
+        return readOptimistic(key, () -> innerGetLatestValue(key, index));
+    }
+
+    private V innerGetLatestValue(final K key, final long index) {
+        final TimeSeriesStorageCache<K, V> lookupTableCache = getLookupTableCache(key);
+        if (index <= 0) {
+            return lookupTableCache.getFirstValue();
+        } else if (index >= lookupTableCache.size()) {
+            return lookupTableCache.getLastValue();
+        } else {
+            return lookupTableCache.getLatestValue(index);
         }
     }
 
@@ -321,18 +450,16 @@ public abstract class ATimeSeriesDB<K, V> implements ITimeSeriesDBInternals<K, V
 
     @Override
     public V getPreviousValue(final K key, final FDate date, final int shiftBackUnits) {
-        final ILock readLock = getTableLock(key).readLock();
-        readLock.lock();
-        try {
-            if (date == null) {
-                return null;
-            } else if (date.isBeforeOrEqualToNotNullSafe(FDates.MIN_DATE)) {
-                return getLookupTableCache(key).getFirstValue();
-            } else {
-                return getLookupTableCache(key).getPreviousValue(date, shiftBackUnits);
-            }
-        } finally {
-            readLock.unlock();
+        return readOptimistic(key, () -> innerGetPreviousValue(key, date, shiftBackUnits));
+    }
+
+    private V innerGetPreviousValue(final K key, final FDate date, final int shiftBackUnits) {
+        if (date == null) {
+            return null;
+        } else if (date.isBeforeOrEqualToNotNullSafe(FDates.MIN_DATE)) {
+            return getLookupTableCache(key).getFirstValue();
+        } else {
+            return getLookupTableCache(key).getPreviousValue(date, shiftBackUnits);
         }
     }
 
@@ -359,16 +486,48 @@ public abstract class ATimeSeriesDB<K, V> implements ITimeSeriesDBInternals<K, V
 
     @Override
     public V getNextValue(final K key, final FDate date, final int shiftForwardUnits) {
-        final ILock readLock = getTableLock(key).readLock();
-        readLock.lock();
-        try {
-            if (date == null || date.isAfterOrEqualToNotNullSafe(FDates.MAX_DATE)) {
-                return getLookupTableCache(key).getLastValue();
-            } else {
-                return getLookupTableCache(key).getNextValue(date, shiftForwardUnits);
+        return readOptimistic(key, () -> innerGetNextValue(key, date, shiftForwardUnits));
+    }
+
+    private V innerGetNextValue(final K key, final FDate date, final int shiftForwardUnits) {
+        if (date == null || date.isAfterOrEqualToNotNullSafe(FDates.MAX_DATE)) {
+            return getLookupTableCache(key).getLastValue();
+        } else {
+            return getLookupTableCache(key).getNextValue(date, shiftForwardUnits);
+        }
+    }
+
+    @Override
+    public List<V> getPreviousValues(final K key, final FDate date, final int count) {
+        return readOptimistic(key, () -> innerGetPreviousValues(key, date, count));
+    }
+
+    private List<V> innerGetPreviousValues(final K key, final FDate date, final int count) {
+        if (date == null || count <= 0) {
+            return new ArrayList<>(0);
+        } else {
+            return getLookupTableCache(key).getPreviousValues(date, count);
+        }
+    }
+
+    @Override
+    public List<V> getNextValues(final K key, final FDate date, final int count) {
+        return readOptimistic(key, () -> innerGetNextValues(key, date, count));
+    }
+
+    private List<V> innerGetNextValues(final K key, final FDate date, final int count) {
+        if (count <= 0) {
+            return new ArrayList<>(0);
+        } else if (date == null || date.isAfterOrEqualToNotNullSafe(FDates.MAX_DATE)) {
+            final V lastValue = getLookupTableCache(key).getLastValue();
+            if (lastValue == null) {
+                return new ArrayList<>(0);
             }
-        } finally {
-            readLock.unlock();
+            final List<V> values = new ArrayList<>(1);
+            values.add(lastValue);
+            return values;
+        } else {
+            return getLookupTableCache(key).getNextValues(date, count);
         }
     }
 
@@ -387,8 +546,35 @@ public abstract class ATimeSeriesDB<K, V> implements ITimeSeriesDBInternals<K, V
         final ILock writeLock = getTableLock(key).writeLock();
         deleteRangeOnCloseLock(getName(), key, writeLock);
         try {
-            getLookupTableCache(key).deleteAll();
-            lastResetIndex.incrementAndGet();
+            final OptimisticReadGate readGate = getReadGate(key);
+            readGate.enterWrite();
+            try {
+                getLookupTableCache(key).deleteAll();
+                lastResetIndex.incrementAndGet();
+            } finally {
+                readGate.exitWrite();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public long deleteRangeBefore(final K key, final FDate cutoff) {
+        final ILock writeLock = getTableLock(key).writeLock();
+        deleteRangeOnCloseLock(getName(), key, writeLock);
+        try {
+            final OptimisticReadGate readGate = getReadGate(key);
+            readGate.enterWrite();
+            try {
+                final long droppedValues = getLookupTableCache(key).deleteBefore(cutoff);
+                if (droppedValues > 0) {
+                    lastResetIndex.incrementAndGet();
+                }
+                return droppedValues;
+            } finally {
+                readGate.exitWrite();
+            }
         } finally {
             writeLock.unlock();
         }
@@ -399,8 +585,14 @@ public abstract class ATimeSeriesDB<K, V> implements ITimeSeriesDBInternals<K, V
         final ILock writeLock = getTableLock(key).writeLock();
         final boolean locked = deleteRangeOnCloseTryLock(getName(), key, writeLock);
         try {
-            getLookupTableCache(key).deleteAll();
-            lastResetIndex.incrementAndGet();
+            final OptimisticReadGate readGate = getReadGate(key);
+            readGate.enterWrite();
+            try {
+                getLookupTableCache(key).deleteAll();
+                lastResetIndex.incrementAndGet();
+            } finally {
+                readGate.exitWrite();
+            }
         } finally {
             if (locked) {
                 writeLock.unlock();
@@ -482,6 +674,7 @@ public abstract class ATimeSeriesDB<K, V> implements ITimeSeriesDBInternals<K, V
         }
         key_lookupTableCache.clear();
         key_tableLock.clear();
+        key_readGate.clear();
     }
 
     private final class RangeReverseValues implements ICloseableIterable<V> {
@@ -537,11 +730,13 @@ public abstract class ATimeSeriesDB<K, V> implements ITimeSeriesDBInternals<K, V
         private final K key;
         private final FDate from;
         private final FDate to;
+        private final ColumnProjection projection;
 
-        private RangeValues(final K key, final FDate from, final FDate to) {
+        private RangeValues(final K key, final FDate from, final FDate to, final ColumnProjection projection) {
             this.key = key;
             this.from = from;
             this.to = to;
+            this.projection = projection;
         }
 
         @Override
@@ -558,7 +753,7 @@ public abstract class ATimeSeriesDB<K, V> implements ITimeSeriesDBInternals<K, V
                 private ICloseableIterator<V> getReadRangeValues() {
                     if (finalizer.readRangeValues == null) {
                         finalizer.readRangeValues = getLookupTableCache(key).readRangeValues(from, to,
-                                getTableLock(key).readLock(), null);
+                                getTableLock(key).readLock(), null, projection);
                     }
                     return finalizer.readRangeValues;
                 }
@@ -2,9 +2,17 @@ package de.invesdwin.context.persistence.timeseriesdb;
 
 import java.io.Closeable;
 import java.io.File;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import de.invesdwin.context.integration.compression.ICompressionFactory;
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.Aggregate;
+import de.invesdwin.context.persistence.timeseriesdb.column.ColumnProjection;
 import de.invesdwin.util.collections.iterable.ICloseableIterable;
+import de.invesdwin.util.collections.iterable.ICloseableIterator;
 import de.invesdwin.util.concurrent.lock.readwrite.IReentrantReadWriteLock;
 import de.invesdwin.util.marshallers.serde.ISerde;
 import de.invesdwin.util.time.date.FDate;
@@ -19,11 +27,38 @@ public interface ITimeSeriesDB<K, V> extends Closeable {
 
     ICloseableIterable<V> rangeValues(K key, FDate from, FDate to);
 
+    /**
+     * Returns the same values as rangeValues(...), implementations that store columnar chunks may only decode the
+     * projected columns. The default ignores the projection and returns fully decoded values.
+     */
+    default ICloseableIterable<V> rangeValues(final K key, final FDate from, final FDate to,
+            final ColumnProjection projection) {
+        return rangeValues(key, from, to);
+    }
+
+    /**
+     * Returns a parallel stream over the same values as rangeValues(...). Implementations split on chunk boundaries so
+     * that chunks are decompressed on multiple cores. Close the stream to release chunks of short circuited splits.
+     */
+    default Stream<V> rangeValuesParallel(final K key, final FDate from, final FDate to) {
+        final ICloseableIterator<V> iterator = rangeValues(key, from, to).iterator();
+        return StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+                        true)
+                .onClose(iterator::close);
+    }
+
     /**
      * FROM should be greater than or equal to TO, so it is inverted from rangeValues(...)
      */
     ICloseableIterable<V> rangeReverseValues(K key, FDate from, FDate to);
 
+    /**
+     * Returns min/max/sum/count of a numeric field in the given range. Tables that declare the field store the
+     * aggregates per chunk so that only the boundary chunks need to be decoded.
+     */
+    Aggregate aggregate(K key, String field, FDate from, FDate to);
+
     V getLatestValue(K key, FDate date);
 
     FDate getLatestValueKey(K key, FDate date);
@@ -76,10 +111,35 @@ public interface ITimeSeriesDB<K, V> extends Closeable {
      */
     FDate getNextValueKey(K key, FDate date, int shiftForwardUnits);
 
+    /**
+     * Returns up to count values that end at the current value (below or equal to key) in ascending order, thus the
+     * last element is getPreviousValue(key, date, 0) and the first one getPreviousValue(key, date, count - 1). Fewer
+     * values are returned when the beginning of the data is reached. The start index is resolved only once and the
+     * values are decoded block by block across chunk boundaries.
+     * 
+     * The result is always a new modifiable ArrayList, also when it is empty or contains only one value.
+     */
+    List<V> getPreviousValues(K key, FDate date, int count);
+
+    /**
+     * Returns up to count values that start at the current value (above or equal to key) in ascending order, thus the
+     * first element is getNextValue(key, date, 0) and the last one getNextValue(key, date, count - 1). Fewer values are
+     * returned when the end of the data is reached.
+     * 
+     * The result is always a new modifiable ArrayList, also when it is empty or contains only one value.
+     */
+    List<V> getNextValues(K key, FDate date, int count);
+
     void deleteRange(K key);
 
     void deleteRangeForced(K key);
 
+    /**
+     * Drops whole chunks whose values all end before the cutoff, so a few values before the cutoff might remain.
+     * Afterwards value indexes start at the first remaining value. Returns the number of dropped values.
+     */
+    long deleteRangeBefore(K key, FDate cutoff);
+
     String getName();
 
     String hashKeyToString(K key);
@@ -4,4 +4,9 @@ public interface ITimeSeriesDBInternals<K, V> extends ITimeSeriesDB<K, V> {
 
     TimeSeriesStorageCache<K, V> getLookupTableCache(K key);
 
+    /**
+     * Writers need to enter this gate while holding the write lock so that optimistic point lookups are excluded.
+     */
+    OptimisticReadGate getReadGate(K key);
+
 }
@@ -0,0 +1,169 @@
+package de.invesdwin.context.persistence.timeseriesdb;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.integration.retry.RetryLaterRuntimeException;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.time.date.FTimeUnit;
+import de.invesdwin.util.time.duration.Duration;
+
+/**
+ * Allows point lookups to skip the shared reader counter of the table lock. Readers announce themselves in a counter
+ * that is striped by thread and padded to its own cache line, so that many threads querying the same key do not
+ * contend on a single cache line. Writers (which still hold the write lock) announce themselves first and then wait
+ * for the announced readers to finish. A reader that sees an active writer falls back to the read lock.
+ *
+ * The striped counters are allocated on the first optimistic read, thus keys that are never read that way only cost a
+ * few bytes. Since every gate has its own counters, a writer never waits for readers of other keys.
+ */
+@ThreadSafe
+public final class OptimisticReadGate {
+
+    public static final int FALLBACK = -1;
+    public static final int NESTED = -2;
+    private static final int STRIPES = newStripes();
+    //one counter per cache line to prevent false sharing between reader threads
+    private static final int PADDING = 16;
+    private static final int MAX_SPINS = 100;
+    private static final ThreadLocal<ArrayList<OptimisticReadGate>> ENTERED = ThreadLocal.withInitial(ArrayList::new);
+
+    private final String name;
+    private final AtomicInteger writers = new AtomicInteger();
+    private volatile AtomicIntegerArray readers;
+
+    public OptimisticReadGate(final String name) {
+        this.name = name;
+    }
+
+    private static int newStripes() {
+        final int threads = Math.max(2, Executors.getCpuThreadPoolCount());
+        return Integer.highestOneBit(threads - 1) << 1;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the index that needs to be given to exitRead(...), NESTED when this thread already entered the gate or
+     * FALLBACK if the read lock should be used instead.
+     */
+    public int tryEnterRead() {
+        final ArrayList<OptimisticReadGate> entered = ENTERED.get();
+        if (isEntered(entered)) {
+            //a waiting writer also waits for the outer read, thus the nested read can not fall back to the lock
+            entered.add(this);
+            return NESTED;
+        }
+        if (writers.get() > 0) {
+            return FALLBACK;
+        }
+        final AtomicIntegerArray readersCopy = getOrCreateReaders();
+        final int index = getIndex(getStripe());
+        readersCopy.incrementAndGet(index);
+        if (writers.get() > 0) {
+            //an update raced, let it proceed
+            readersCopy.decrementAndGet(index);
+            return FALLBACK;
+        }
+        entered.add(this);
+        return index;
+    }
+
+    public void exitRead(final int index) {
+        final ArrayList<OptimisticReadGate> entered = ENTERED.get();
+        entered.remove(entered.size() - 1);
+        if (index != NESTED) {
+            readers.decrementAndGet(index);
+        }
+    }
+
+    /**
+     * Should be called while holding the write lock. Nested calls are allowed. Reads of the current thread are not
+     * waited for, like the updater releases the read locks of the current thread before acquiring the write lock.
+     */
+    public void enterWrite() {
+        enterWrite(TimeSeriesProperties.ACQUIRE_WRITE_LOCK_TIMEOUT);
+    }
+
+    /**
+     * Throws a RetryLaterRuntimeException when the readers did not finish within the timeout, in that case the writer
+     * is not announced anymore and exitWrite() must not be called.
+     */
+    public void enterWrite(final Duration timeout) {
+        writers.incrementAndGet();
+        //a reader that allocates the counters after this check sees the writer and falls back
+        final AtomicIntegerArray readersCopy = readers;
+        if (readersCopy == null) {
+            return;
+        }
+        //only the first entry of this gate counts as a read, further entries are NESTED
+        final int ownStripe;
+        if (isEntered(ENTERED.get())) {
+            ownStripe = getStripe();
+        } else {
+            ownStripe = -1;
+        }
+        final long timeoutNanos = timeout.longValue(FTimeUnit.NANOSECONDS);
+        final long start = System.nanoTime();
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            final int index = getIndex(stripe);
+            final int ownReaders = stripe == ownStripe ? 1 : 0;
+            int spins = 0;
+            while (readersCopy.get(index) > ownReaders) {
+                if (spins < MAX_SPINS) {
+                    spins++;
+                    Thread.onSpinWait();
+                } else if (System.nanoTime() - start > timeoutNanos) {
+                    writers.decrementAndGet();
+                    throw new RetryLaterRuntimeException("Optimistic readers did not exit within [" + timeout
+                            + "] for [" + name + "]. Please ensure every tryEnterRead() is followed by exitRead()!");
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    public void exitWrite() {
+        writers.decrementAndGet();
+    }
+
+    private boolean isEntered(final ArrayList<OptimisticReadGate> entered) {
+        for (int i = 0; i < entered.size(); i++) {
+            if (entered.get(i) == this) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private AtomicIntegerArray getOrCreateReaders() {
+        AtomicIntegerArray readersCopy = readers;
+        if (readersCopy == null) {
+            synchronized (this) {
+                readersCopy = readers;
+                if (readersCopy == null) {
+                    readersCopy = new AtomicIntegerArray(STRIPES * PADDING);
+                    readers = readersCopy;
+                }
+            }
+        }
+        return readersCopy;
+    }
+
+    private static int getStripe() {
+        final long id = Thread.currentThread().getId();
+        final int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (hash >>> 16) & (STRIPES - 1);
+    }
+
+    private static int getIndex(final int stripe) {
+        return stripe * PADDING;
+    }
+
+}
@@ -0,0 +1,33 @@
+package de.invesdwin.context.persistence.timeseriesdb;
+
+import java.util.List;
+
+import javax.annotation.concurrent.Immutable;
+
+import de.invesdwin.context.persistence.timeseriesdb.storage.MemoryFileSummary;
+
+/**
+ * The hot chunks that were recompressed into cold files while holding the read lock, together with the summaries of
+ * the cold files that replace them once the swap succeeds.
+ */
+@Immutable
+public class PrepareForRecompressionResult {
+
+    private final List<MemoryFileSummary> hotSummaries;
+    private final List<MemoryFileSummary> coldSummaries;
+
+    public PrepareForRecompressionResult(final List<MemoryFileSummary> hotSummaries,
+            final List<MemoryFileSummary> coldSummaries) {
+        this.hotSummaries = hotSummaries;
+        this.coldSummaries = coldSummaries;
+    }
+
+    public List<MemoryFileSummary> getHotSummaries() {
+        return hotSummaries;
+    }
+
+    public List<MemoryFileSummary> getColdSummaries() {
+        return coldSummaries;
+    }
+
+}
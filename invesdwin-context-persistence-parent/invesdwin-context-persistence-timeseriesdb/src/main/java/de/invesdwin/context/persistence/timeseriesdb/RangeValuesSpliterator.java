@@ -0,0 +1,158 @@
+package de.invesdwin.context.persistence.timeseriesdb;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.persistence.timeseriesdb.storage.MemoryFileSnapshot;
+import de.invesdwin.context.persistence.timeseriesdb.storage.MemoryFileSummary;
+import de.invesdwin.util.collections.iterable.ICloseableIterator;
+
+/**
+ * Splits a range scan on chunk boundaries so that each split decompresses its own chunks, e.g. when used in a
+ * parallel stream. Chunk iterators are opened lazily per split and closed as soon as they are exhausted. Since a
+ * spliterator can not be closed, iterators of short circuited splits are closed via close() on the root (which
+ * streams do in onClose). The chunks are read from a pinned snapshot, thus the read lock is not held while the stream
+ * is open.
+ */
+@NotThreadSafe
+public class RangeValuesSpliterator<V> implements Spliterator<V>, Closeable {
+
+    private static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+
+    private final MemoryFileSnapshot snapshot;
+    private final MemoryFileSummary[] summaries;
+    private final Function<MemoryFileSummary, ICloseableIterator<V>> chunkIteratorFactory;
+    private final OpenSplits openSplits;
+    private int index;
+    private final int fence;
+    private ICloseableIterator<V> chunkIterator;
+
+    public RangeValuesSpliterator(final MemoryFileSnapshot snapshot,
+            final Function<MemoryFileSummary, ICloseableIterator<V>> chunkIteratorFactory) {
+        this(snapshot, toArray(snapshot.getSummaries()), chunkIteratorFactory, new OpenSplits(), 0,
+                snapshot.getSummaries().size());
+    }
+
+    private RangeValuesSpliterator(final MemoryFileSnapshot snapshot, final MemoryFileSummary[] summaries,
+            final Function<MemoryFileSummary, ICloseableIterator<V>> chunkIteratorFactory,
+            final OpenSplits openSplits, final int index, final int fence) {
+        this.snapshot = snapshot;
+        this.summaries = summaries;
+        this.chunkIteratorFactory = chunkIteratorFactory;
+        this.openSplits = openSplits;
+        this.index = index;
+        this.fence = fence;
+        openSplits.add(this);
+    }
+
+    private static MemoryFileSummary[] toArray(final List<MemoryFileSummary> summaries) {
+        return summaries.toArray(new MemoryFileSummary[summaries.size()]);
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super V> action) {
+        while (true) {
+            if (chunkIterator == null) {
+                if (index >= fence) {
+                    return false;
+                }
+                chunkIterator = chunkIteratorFactory.apply(summaries[index++]);
+            }
+            if (chunkIterator.hasNext()) {
+                final V next = chunkIterator.next();
+                snapshot.assertValid();
+                action.accept(next);
+                return true;
+            } else {
+                closeChunkIterator();
+            }
+        }
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super V> action) {
+        while (tryAdvance(action)) {
+            continue;
+        }
+    }
+
+    /**
+     * Splits off the first half of the remaining chunks, a chunk itself is never split.
+     */
+    @Override
+    public Spliterator<V> trySplit() {
+        if (chunkIterator != null) {
+            //only split on chunk boundaries
+            return null;
+        }
+        final int mid = (index + fence) >>> 1;
+        if (mid <= index) {
+            return null;
+        }
+        final RangeValuesSpliterator<V> prefix = new RangeValuesSpliterator<V>(snapshot, summaries,
+                chunkIteratorFactory, openSplits, index, mid);
+        index = mid;
+        return prefix;
+    }
+
+    /**
+     * Upper bound, since the first and last chunk might contain values outside of the range.
+     */
+    @Override
+    public long estimateSize() {
+        long size = 0;
+        for (int i = index; i < fence; i++) {
+            size += summaries[i].getValueCount();
+        }
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+
+    private void closeChunkIterator() {
+        if (chunkIterator != null) {
+            chunkIterator.close();
+            chunkIterator = null;
+        }
+    }
+
+    /**
+     * Closes any chunk iterators that are still open in this spliterator or any of its splits and unpins the snapshot.
+     */
+    @Override
+    public void close() {
+        openSplits.close();
+        snapshot.close();
+    }
+
+    @ThreadSafe
+    private static final class OpenSplits {
+
+        @GuardedBy("this")
+        private final List<RangeValuesSpliterator<?>> splits = new ArrayList<>();
+
+        public synchronized void add(final RangeValuesSpliterator<?> split) {
+            splits.add(split);
+        }
+
+        public synchronized void close() {
+            for (int i = 0; i < splits.size(); i++) {
+                splits.get(i).closeChunkIterator();
+            }
+            splits.clear();
+        }
+
+    }
+
+}
@@ -21,6 +21,11 @@ import org.apache.commons.lang3.SerializationException;
 import de.invesdwin.context.ContextProperties;
 import de.invesdwin.context.integration.compression.ICompressionFactory;
 import de.invesdwin.context.integration.compression.lz4.LZ4Streams;
+import de.invesdwin.context.persistence.timeseriesdb.block.BlockFramedOutputStream;
+import de.invesdwin.context.persistence.timeseriesdb.column.ColumnLayout;
+import de.invesdwin.context.persistence.timeseriesdb.column.ColumnProjection;
+import de.invesdwin.context.persistence.timeseriesdb.column.ColumnarInputStream;
+import de.invesdwin.context.persistence.timeseriesdb.column.ColumnarOutputStream;
 import de.invesdwin.util.collections.iterable.ACloseableIterator;
 import de.invesdwin.util.collections.iterable.EmptyCloseableIterator;
 import de.invesdwin.util.collections.iterable.ICloseableIterator;
@@ -41,6 +46,8 @@ import de.invesdwin.util.streams.buffer.bytes.ByteBuffers;
 import de.invesdwin.util.streams.buffer.bytes.IByteBuffer;
 import de.invesdwin.util.streams.buffer.bytes.ICloseableByteBuffer;
 import de.invesdwin.util.streams.closeable.Closeables;
+import de.invesdwin.util.time.date.FDate;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 
 @NotThreadSafe
 public class SerializingCollection<E> implements Collection<E>, IDeserializingCloseableIterable<E>, Closeable {
@@ -60,11 +67,15 @@ public class SerializingCollection<E> implements Collection<E>, IDeserializingCl
     private final File file;
     private final SerializingCollectionFinalizer finalizer;
     private final Integer fixedLength = newFixedLength();
+    private final ColumnLayout columnLayout = newColumnLayout();
+    private final Integer blockSize = newBlockSize();
+    private final LongArrayList blockOffsets;
     @SuppressWarnings("unchecked")
     private final ISerde<E> serde = (ISerde<E>) newSerde();
 
     public SerializingCollection(final TextDescription name, final String tempFileId) {
         this.name = name;
+        this.blockOffsets = newBlockOffsets();
         this.finalizer = newFinalizer();
         this.file = new File(getTempFolder(),
                 Files.normalizePath(UNIQUE_NAME_GENERATOR.get(Files.normalizePath(tempFileId) + ".data")));
@@ -85,6 +96,7 @@ public class SerializingCollection<E> implements Collection<E>, IDeserializingCl
 
     public SerializingCollection(final TextDescription name, final File file, final boolean readOnly) {
         this.name = name;
+        this.blockOffsets = newBlockOffsets();
         this.finalizer = newFinalizer();
         this.file = file;
         if (readOnly) {
@@ -120,9 +132,41 @@ public class SerializingCollection<E> implements Collection<E>, IDeserializingCl
         return fixedLength;
     }
 
+    public ColumnLayout getColumnLayout() {
+        return columnLayout;
+    }
+
+    private LongArrayList newBlockOffsets() {
+        if (blockSize != null && columnLayout == null) {
+            return new LongArrayList();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the offsets of the independently compressed blocks that were written or null if blocks are disabled.
+     */
+    public long[] getBlockOffsets() {
+        if (blockOffsets == null) {
+            return null;
+        }
+        return blockOffsets.toLongArray();
+    }
+
     @Override
     public final InputStream newInputStream() throws IOException {
-        return newDecompressor(newFileInputStream(file));
+        if (columnLayout != null) {
+            final InputStream in = newFileInputStream(file);
+            try {
+                return new ColumnarInputStream(in, columnLayout, this::newDecompressor);
+            } catch (final Throwable t) {
+                Closeables.closeQuietly(in);
+                throw t;
+            }
+        } else {
+            return newDecompressor(newFileInputStream(file));
+        }
     }
 
     protected SerializingCollectionFinalizer newFinalizer() {
@@ -148,7 +192,15 @@ public class SerializingCollection<E> implements Collection<E>, IDeserializingCl
                 throw new IllegalStateException("false expected");
             }
             try {
-                finalizer.fos = newCompressor(newFileOutputStream(file));
+                if (columnLayout != null) {
+                    finalizer.fos = new ColumnarOutputStream(newFileOutputStream(file), columnLayout,
+                            this::newCompressor);
+                } else if (blockOffsets != null) {
+                    finalizer.fos = new BlockFramedOutputStream(newFileOutputStream(file), blockSize,
+                            this::newCompressor, blockOffsets);
+                } else {
+                    finalizer.fos = newCompressor(newFileOutputStream(file));
+                }
             } catch (final IOException e) {
                 throw new RuntimeException(e);
             }
@@ -179,6 +231,9 @@ public class SerializingCollection<E> implements Collection<E>, IDeserializingCl
                 throw new IllegalStateException("bytes should contain actual data: " + element);
             }
             final OutputStream fos = getFos();
+            if (blockOffsets != null) {
+                ((BlockFramedOutputStream) fos).startRecord();
+            }
             if (fixedLength == null) {
                 OutputStreams.writeInt(fos, length);
             } else {
@@ -222,6 +277,23 @@ public class SerializingCollection<E> implements Collection<E>, IDeserializingCl
         return null;
     }
 
+    /**
+     * Override this to store fixed length records as separately compressed columns. The columns are only written when
+     * this collection is closed, thus it is not possible to iterate over values that were added before the close.
+     */
+    protected ColumnLayout newColumnLayout() {
+        return null;
+    }
+
+    /**
+     * Override this to write records in independently compressed blocks of the given number of records. The offsets of
+     * the blocks can be retrieved via getBlockOffsets() after this collection was closed. This is ignored when a column
+     * layout is used.
+     */
+    protected Integer newBlockSize() {
+        return null;
+    }
+
     /**
      * Closes this Iterable for more add() operations.
      */
@@ -296,6 +368,72 @@ public class SerializingCollection<E> implements Collection<E>, IDeserializingCl
         return reverseIterator;
     }
 
+    /**
+     * Only deserializes the element at the given position. With a fixed length the preceding elements are skipped in
+     * the decompressed stream without being deserialized. Returns null when the index is out of bounds.
+     */
+    public E getByIndex(final int index) {
+        if (index < 0 || isEmpty()) {
+            return null;
+        }
+        if (fixedLength == null || !finalizer.closed) {
+            try (ICloseableIterator<E> iterator = iterator()) {
+                for (int i = 0; i < index; i++) {
+                    iterator.next();
+                }
+                return iterator.next();
+            } catch (final NoSuchElementException e) {
+                return null;
+            }
+        }
+        final int length = fixedLength.intValue();
+        final IByteBuffer readBuffer = ByteBuffers.EXPANDABLE_POOL.borrowObject();
+        try (InputStream in = newInputStream()) {
+            if (!skipFully(in, (long) index * length)) {
+                return null;
+            }
+            readBuffer.putBytesTo(0, in, length);
+            return serde.fromBuffer(readBuffer.sliceTo(length));
+        } catch (final EOFException e) {
+            return null;
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            ByteBuffers.EXPANDABLE_POOL.returnObject(readBuffer);
+        }
+    }
+
+    /**
+     * Iterates over the values whose end time lies between from and to (inclusive, null meaning unbounded) by binary
+     * searching the time column. Only the projected columns are decompressed, the others are deserialized from zero
+     * bytes. Requires a closed collection with a column layout whose time column is bisectable.
+     */
+    public ICloseableIterator<E> columnarIterator(final ColumnProjection projection, final FDate from,
+            final FDate to) {
+        if (columnLayout == null) {
+            throw new IllegalStateException("columnLayout should not be null");
+        }
+        if (isEmpty()) {
+            return EmptyCloseableIterator.getInstance();
+        }
+        return new ColumnarDeserializingIterator(projection, from, to);
+    }
+
+    private static boolean skipFully(final InputStream in, final long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            final long skipped = in.skip(remaining);
+            if (skipped > 0) {
+                remaining -= skipped;
+            } else if (in.read() == -1) {
+                return false;
+            } else {
+                remaining--;
+            }
+        }
+        return true;
+    }
+
     private ICloseableIterator<E> newIterator() {
         final ICloseableIterator<E> iterator;
         if (fixedLength != null) {
@@ -610,6 +748,103 @@ public class SerializingCollection<E> implements Collection<E>, IDeserializingCl
         }
     }
 
+    @NotThreadSafe
+    private final class ColumnarDeserializingIterator extends ACloseableIterator<E> {
+
+        private final ColumnarDeserializingIteratorFinalizer finalizer;
+        private final byte[] row;
+        private final IByteBuffer rowBuffer;
+        private int remainingRows;
+
+        private ColumnarDeserializingIterator(final ColumnProjection projection, final FDate from, final FDate to) {
+            super(new TextDescription("%s: %s.%s: %s", name, SerializingCollection.class.getSimpleName(),
+                    ColumnarDeserializingIterator.class.getSimpleName(), file));
+            this.finalizer = new ColumnarDeserializingIteratorFinalizer();
+            this.row = new byte[columnLayout.getRowLength()];
+            this.rowBuffer = ByteBuffers.wrap(row);
+            try {
+                final ColumnarInputStream in = (ColumnarInputStream) newInputStream();
+                this.finalizer.inputStream = in;
+                in.setProjection(projection);
+                final int fromRow;
+                if (from == null) {
+                    fromRow = 0;
+                } else {
+                    fromRow = in.bisectFrom(from.millisValue());
+                }
+                final int toRow;
+                if (to == null) {
+                    toRow = in.getRowCount() - 1;
+                } else {
+                    toRow = in.bisectTo(to.millisValue());
+                }
+                this.remainingRows = Integers.max(0, toRow - fromRow + 1);
+                in.seekRow(fromRow);
+            } catch (final IOException e) {
+                finalizer.close();
+                throw new RuntimeException(e);
+            }
+            this.finalizer.register(this);
+        }
+
+        @Override
+        protected boolean innerHasNext() {
+            return remainingRows > 0 && !finalizer.cleaned;
+        }
+
+        @Override
+        protected E innerNext() {
+            if (!innerHasNext()) {
+                throw FastNoSuchElementException
+                        .getInstance("SerializingCollection.ColumnarDeserializingIterator: innerNext() end reached");
+            }
+            try {
+                if (!finalizer.inputStream.readRow(row)) {
+                    throw new IllegalStateException("row expected");
+                }
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+            remainingRows--;
+            return serde.fromBuffer(rowBuffer);
+        }
+
+        @Override
+        protected void innerClose() {
+            finalizer.close();
+        }
+
+    }
+
+    private static final class ColumnarDeserializingIteratorFinalizer extends AFinalizer {
+        private ColumnarInputStream inputStream;
+        private boolean cleaned;
+
+        @Override
+        protected void clean() {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (final IOException e) {
+                    throw new RuntimeException(e);
+                }
+                //free memory
+                inputStream = null;
+            }
+            cleaned = true;
+        }
+
+        @Override
+        protected boolean isCleaned() {
+            return cleaned;
+        }
+
+        @Override
+        public boolean isThreadLocal() {
+            return true;
+        }
+    }
+
     @Override
     public boolean remove(final Object o) {
         throw new UnsupportedOperationException();
@@ -8,8 +8,10 @@ import javax.annotation.concurrent.Immutable;
 
 import de.invesdwin.context.ContextProperties;
 import de.invesdwin.context.log.Log;
+import de.invesdwin.context.persistence.timeseriesdb.segmented.live.WriteAheadLogSyncPolicy;
 import de.invesdwin.context.system.array.primitive.IPrimitiveArrayAllocator;
 import de.invesdwin.context.system.properties.SystemProperties;
+import de.invesdwin.util.concurrent.Executors;
 import de.invesdwin.util.lang.Files;
 import de.invesdwin.util.time.duration.Duration;
 
@@ -21,16 +23,34 @@ public final class TimeSeriesProperties {
     public static final Duration ACQUIRE_UPDATE_LOCK_TIMEOUT;
     public static final boolean FILE_BUFFER_CACHE_SEGMENTS_ENABLED;
     public static final boolean FILE_BUFFER_CACHE_PRELOAD_ENABLED;
+    public static final int FILE_BUFFER_CACHE_PRELOAD_THREADS;
+    public static final int FILE_BUFFER_CACHE_PRELOAD_COUNT;
     public static final boolean FILE_BUFFER_CACHE_MMAP_ENABLED;
     public static final int FILE_BUFFER_CACHE_MIN_SEGMENTS_COUNT;
     public static final int FILE_BUFFER_CACHE_MAX_SEGMENTS_COUNT;
+    public static final int FILE_BUFFER_CACHE_MAX_SEGMENTS_MEGABYTES;
+    public static final int FILE_BUFFER_CACHE_SCAN_ADMIT_COUNT;
+    public static final int FILE_BUFFER_CACHE_SCAN_BUFFER_COUNT;
     public static final int FILE_BUFFER_CACHE_MAX_MMAP_COUNT;
     public static final Duration FILE_BUFFER_CACHE_EVICTION_TIMEOUT;
     public static final Duration FILE_BUFFER_CACHE_ASYNC_TIMEOUT;
     public static final IPrimitiveArrayAllocator FILE_BUFFER_CACHE_FLYWEIGHT_ARRAY_ALLOCATOR;
     public static final Duration STORAGE_CACHE_EVICTION_TIMEOUT;
     public static final int STORAGE_CACHE_MAXIMUM_SIZE;
+    public static final int MEMORY_FILE_BLOCK_SIZE;
+    public static final int LATEST_VALUE_BY_INDEX_WINDOW_SIZE;
+    public static final int UPDATER_APPEND_TAIL_MAX_CHUNKS;
+    public static final int STORAGE_COMPACTION_MIN_CHUNKS;
+    public static final boolean UPDATER_SCHEDULER_ENABLED;
+    public static final int UPDATER_SCHEDULER_THREADS;
+    public static final int UPDATER_SCHEDULER_TABLE_THREADS;
+    public static final Duration UPDATER_SCHEDULER_INLINE_TIMEOUT;
+    public static final Duration APPENDER_FLUSH_DELAY;
+    public static final boolean LIVE_SEGMENT_WAL_ENABLED;
+    public static final WriteAheadLogSyncPolicy LIVE_SEGMENT_WAL_SYNC_POLICY;
+    public static final Duration LIVE_SEGMENT_WAL_SYNC_INTERVAL;
     public static final boolean PERSISTENT_CHRONICLE_MAP_ENABLED;
+    public static final boolean METRICS_JMX_ENABLED;
     private static final SystemProperties SYSTEM_PROPERTIES;
 
     static {
@@ -41,20 +61,67 @@ public final class TimeSeriesProperties {
         ACQUIRE_UPDATE_LOCK_TIMEOUT = SYSTEM_PROPERTIES.getDuration("ACQUIRE_UPDATE_LOCK_TIMEOUT");
         FILE_BUFFER_CACHE_SEGMENTS_ENABLED = SYSTEM_PROPERTIES.getBoolean("FILE_BUFFER_CACHE_SEGMENTS_ENABLED");
         FILE_BUFFER_CACHE_PRELOAD_ENABLED = SYSTEM_PROPERTIES.getBoolean("FILE_BUFFER_CACHE_PRELOAD_ENABLED");
+        FILE_BUFFER_CACHE_PRELOAD_THREADS = determineFileBufferCachePreloadThreads();
+        FILE_BUFFER_CACHE_PRELOAD_COUNT = SYSTEM_PROPERTIES.getInteger("FILE_BUFFER_CACHE_PRELOAD_COUNT");
         FILE_BUFFER_CACHE_MMAP_ENABLED = SYSTEM_PROPERTIES.getBoolean("FILE_BUFFER_CACHE_MMAP_ENABLED");
         FILE_BUFFER_CACHE_MIN_SEGMENTS_COUNT = SYSTEM_PROPERTIES.getInteger("FILE_BUFFER_CACHE_MIN_SEGMENTS_COUNT");
         FILE_BUFFER_CACHE_MAX_SEGMENTS_COUNT = SYSTEM_PROPERTIES.getInteger("FILE_BUFFER_CACHE_MAX_SEGMENTS_COUNT");
+        FILE_BUFFER_CACHE_MAX_SEGMENTS_MEGABYTES = SYSTEM_PROPERTIES
+                .getInteger("FILE_BUFFER_CACHE_MAX_SEGMENTS_MEGABYTES");
+        FILE_BUFFER_CACHE_SCAN_ADMIT_COUNT = SYSTEM_PROPERTIES.getInteger("FILE_BUFFER_CACHE_SCAN_ADMIT_COUNT");
+        FILE_BUFFER_CACHE_SCAN_BUFFER_COUNT = SYSTEM_PROPERTIES.getInteger("FILE_BUFFER_CACHE_SCAN_BUFFER_COUNT");
         FILE_BUFFER_CACHE_MAX_MMAP_COUNT = SYSTEM_PROPERTIES.getInteger("FILE_BUFFER_CACHE_MAX_MMAP_COUNT");
         FILE_BUFFER_CACHE_EVICTION_TIMEOUT = SYSTEM_PROPERTIES.getDuration("FILE_BUFFER_CACHE_EVICTION_TIMEOUT");
         FILE_BUFFER_CACHE_ASYNC_TIMEOUT = SYSTEM_PROPERTIES.getDuration("FILE_BUFFER_CACHE_ASYNC_TIMEOUT");
         STORAGE_CACHE_EVICTION_TIMEOUT = SYSTEM_PROPERTIES.getDuration("STORAGE_CACHE_EVICTION_TIMEOUT");
         STORAGE_CACHE_MAXIMUM_SIZE = SYSTEM_PROPERTIES.getInteger("STORAGE_CACHE_MAXIMUM_SIZE");
+        MEMORY_FILE_BLOCK_SIZE = SYSTEM_PROPERTIES.getInteger("MEMORY_FILE_BLOCK_SIZE");
+        LATEST_VALUE_BY_INDEX_WINDOW_SIZE = SYSTEM_PROPERTIES.getInteger("LATEST_VALUE_BY_INDEX_WINDOW_SIZE");
+        UPDATER_APPEND_TAIL_MAX_CHUNKS = SYSTEM_PROPERTIES.getInteger("UPDATER_APPEND_TAIL_MAX_CHUNKS");
+        STORAGE_COMPACTION_MIN_CHUNKS = SYSTEM_PROPERTIES.getInteger("STORAGE_COMPACTION_MIN_CHUNKS");
+        UPDATER_SCHEDULER_ENABLED = SYSTEM_PROPERTIES.getBoolean("UPDATER_SCHEDULER_ENABLED");
+        UPDATER_SCHEDULER_THREADS = determineUpdaterSchedulerThreads();
+        UPDATER_SCHEDULER_TABLE_THREADS = determineUpdaterSchedulerTableThreads();
+        UPDATER_SCHEDULER_INLINE_TIMEOUT = SYSTEM_PROPERTIES.getDuration("UPDATER_SCHEDULER_INLINE_TIMEOUT");
+        APPENDER_FLUSH_DELAY = SYSTEM_PROPERTIES.getDuration("APPENDER_FLUSH_DELAY");
+        LIVE_SEGMENT_WAL_ENABLED = SYSTEM_PROPERTIES.getBoolean("LIVE_SEGMENT_WAL_ENABLED");
+        LIVE_SEGMENT_WAL_SYNC_POLICY = SYSTEM_PROPERTIES.getEnum(WriteAheadLogSyncPolicy.class,
+                "LIVE_SEGMENT_WAL_SYNC_POLICY");
+        LIVE_SEGMENT_WAL_SYNC_INTERVAL = SYSTEM_PROPERTIES.getDuration("LIVE_SEGMENT_WAL_SYNC_INTERVAL");
         PERSISTENT_CHRONICLE_MAP_ENABLED = determinePersistentChronicleMapEnabled();
+        METRICS_JMX_ENABLED = SYSTEM_PROPERTIES.getBoolean("METRICS_JMX_ENABLED");
         FILE_BUFFER_CACHE_FLYWEIGHT_ARRAY_ALLOCATOR = null;
     }
 
     private TimeSeriesProperties() {}
 
+    private static int determineFileBufferCachePreloadThreads() {
+        final int threads = SYSTEM_PROPERTIES.getInteger("FILE_BUFFER_CACHE_PRELOAD_THREADS");
+        if (threads > 0) {
+            return threads;
+        } else {
+            return Executors.getCpuThreadPoolCount();
+        }
+    }
+
+    private static int determineUpdaterSchedulerThreads() {
+        final int threads = SYSTEM_PROPERTIES.getInteger("UPDATER_SCHEDULER_THREADS");
+        if (threads > 0) {
+            return threads;
+        } else {
+            return Executors.getCpuThreadPoolCount();
+        }
+    }
+
+    private static int determineUpdaterSchedulerTableThreads() {
+        final int threads = SYSTEM_PROPERTIES.getInteger("UPDATER_SCHEDULER_TABLE_THREADS");
+        if (threads > 0) {
+            return Math.min(threads, UPDATER_SCHEDULER_THREADS);
+        } else {
+            return Math.max(1, UPDATER_SCHEDULER_THREADS / 2);
+        }
+    }
+
     private static boolean determinePersistentChronicleMapEnabled() {
         final String key = "PERSISTENT_CHRONICLE_MAP_ENABLED";
         if (SYSTEM_PROPERTIES.containsValue(key)) {
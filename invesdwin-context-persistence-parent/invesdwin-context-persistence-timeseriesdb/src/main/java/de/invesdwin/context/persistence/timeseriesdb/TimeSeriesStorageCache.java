@@ -1,15 +1,23 @@
 package de.invesdwin.context.persistence.timeseriesdb;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.function.Function;
 
@@ -27,16 +35,39 @@ import de.invesdwin.context.integration.compression.DisabledCompressionFactory;
 import de.invesdwin.context.integration.compression.ICompressionFactory;
 import de.invesdwin.context.integration.retry.RetryLaterRuntimeException;
 import de.invesdwin.context.log.Log;
+import de.invesdwin.context.persistence.ezdb.table.range.ADelegateRangeTable;
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.Aggregate;
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.AggregateBuilder;
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.AggregateField;
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.ChunkAggregates;
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.ChunkAggregatesBuilder;
+import de.invesdwin.context.persistence.timeseriesdb.block.BlockFramedInputStream;
 import de.invesdwin.context.persistence.timeseriesdb.buffer.ArrayFileBufferCacheResult;
 import de.invesdwin.context.persistence.timeseriesdb.buffer.FileBufferCache;
 import de.invesdwin.context.persistence.timeseriesdb.buffer.IFileBufferCacheResult;
+import de.invesdwin.context.persistence.timeseriesdb.buffer.IterableFileBufferCacheResult;
+import de.invesdwin.context.persistence.timeseriesdb.buffer.ReadaheadFileBufferCacheResultIterator;
 import de.invesdwin.context.persistence.timeseriesdb.buffer.source.ByteBufferFileBufferSource;
 import de.invesdwin.context.persistence.timeseriesdb.buffer.source.IFileBufferSource;
 import de.invesdwin.context.persistence.timeseriesdb.buffer.source.IterableFileBufferSource;
+import de.invesdwin.context.persistence.timeseriesdb.codec.ITimeSeriesCodec;
+import de.invesdwin.context.persistence.timeseriesdb.codec.TimeSeriesCodecs;
+import de.invesdwin.context.persistence.timeseriesdb.column.ColumnLayout;
+import de.invesdwin.context.persistence.timeseriesdb.column.ColumnProjection;
+import de.invesdwin.context.persistence.timeseriesdb.column.ColumnarInputStream;
+import de.invesdwin.context.persistence.timeseriesdb.column.ColumnarOutputStream;
 import de.invesdwin.context.persistence.timeseriesdb.loop.AShiftBackUnitsLoopLongIndex;
 import de.invesdwin.context.persistence.timeseriesdb.loop.AShiftForwardUnitsLoopLongIndex;
+import de.invesdwin.context.persistence.timeseriesdb.metrics.TimeSeriesMetric;
+import de.invesdwin.context.persistence.timeseriesdb.metrics.TimeSeriesMetrics;
+import de.invesdwin.context.persistence.timeseriesdb.storage.ChunkDirectory;
+import de.invesdwin.context.persistence.timeseriesdb.storage.ChunkManifest;
+import de.invesdwin.context.persistence.timeseriesdb.storage.ColdStorage;
 import de.invesdwin.context.persistence.timeseriesdb.storage.ISkipFileFunction;
+import de.invesdwin.context.persistence.timeseriesdb.storage.MemoryFileBlockIndex;
 import de.invesdwin.context.persistence.timeseriesdb.storage.MemoryFileMetadata;
+import de.invesdwin.context.persistence.timeseriesdb.storage.MemoryFileSnapshot;
+import de.invesdwin.context.persistence.timeseriesdb.storage.MemoryFileSnapshots;
 import de.invesdwin.context.persistence.timeseriesdb.storage.MemoryFileSummary;
 import de.invesdwin.context.persistence.timeseriesdb.storage.MemoryFileSummaryByteBuffer;
 import de.invesdwin.context.persistence.timeseriesdb.storage.SingleValue;
@@ -50,11 +81,10 @@ import de.invesdwin.util.collections.eviction.EvictionMode;
 import de.invesdwin.util.collections.iterable.ACloseableIterator;
 import de.invesdwin.util.collections.iterable.ATransformingIterator;
 import de.invesdwin.util.collections.iterable.EmptyCloseableIterator;
+import de.invesdwin.util.collections.iterable.FlatteningIterable;
 import de.invesdwin.util.collections.iterable.FlatteningIterator;
 import de.invesdwin.util.collections.iterable.ICloseableIterable;
 import de.invesdwin.util.collections.iterable.ICloseableIterator;
-import de.invesdwin.util.collections.iterable.PeekingCloseableIterator;
-import de.invesdwin.util.collections.iterable.skip.ASkippingIterator;
 import de.invesdwin.util.collections.list.Lists;
 import de.invesdwin.util.collections.loadingcache.ALoadingCache;
 import de.invesdwin.util.collections.loadingcache.ILoadingCache;
@@ -62,8 +92,9 @@ import de.invesdwin.util.collections.loadingcache.historical.query.impl.ShiftBac
 import de.invesdwin.util.collections.loadingcache.historical.query.impl.ShiftForwardUnitsLoop;
 import de.invesdwin.util.concurrent.lock.ILock;
 import de.invesdwin.util.concurrent.lock.disabled.DisabledLock;
+import de.invesdwin.util.concurrent.lock.readwrite.IReentrantReadWriteLock;
 import de.invesdwin.util.concurrent.reference.MutableSoftReference;
-import de.invesdwin.util.concurrent.reference.WeakThreadLocalReference;
+import de.invesdwin.util.error.FastNoSuchElementException;
 import de.invesdwin.util.error.Throwables;
 import de.invesdwin.util.error.UnknownArgumentException;
 import de.invesdwin.util.lang.Files;
@@ -74,8 +105,8 @@ import de.invesdwin.util.marshallers.serde.FromBufferDelegateSerde;
 import de.invesdwin.util.marshallers.serde.ISerde;
 import de.invesdwin.util.math.Integers;
 import de.invesdwin.util.math.Longs;
+import de.invesdwin.util.streams.buffer.bytes.IByteBuffer;
 import de.invesdwin.util.streams.buffer.file.IMemoryMappedFile;
-import de.invesdwin.util.streams.buffer.memory.delegate.SegmentedMemoryBuffer;
 import de.invesdwin.util.streams.delegate.SimpleDelegateInputStream;
 import de.invesdwin.util.streams.pool.PooledFastByteArrayOutputStream;
 import de.invesdwin.util.streams.pool.buffered.BufferedFileDataInputStream;
@@ -92,54 +123,9 @@ public class TimeSeriesStorageCache<K, V> {
     public static final boolean HIGH_CONCURRENCY = false;
 
     private static final String READ_RANGE_VALUES = "readRangeValues";
+    private static final String READ_RANGE_VALUES_PROJECTED = "readRangeValuesProjected";
     private static final String READ_RANGE_VALUES_REVERSE = "readRangeValuesReverse";
-    private static final Function<RangeTableRow<String, FDate, MemoryFileSummary>, FDate> EXTRACT_END_TIME_FROM_RANGE_KEYS = (
-            r) -> r.getRangeKey();
     private final TimeSeriesStorage storage;
-    private final ILoadingCache<FDate, RangeTableRow<String, FDate, MemoryFileSummary>> fileLookupTable_latestRangeKeyCache = new ALoadingCache<FDate, RangeTableRow<String, FDate, MemoryFileSummary>>() {
-
-        @Override
-        protected Integer getInitialMaximumSize() {
-            return MAXIMUM_SIZE;
-        }
-
-        @Override
-        protected EvictionMode getEvictionMode() {
-            return EVICTION_MODE;
-        }
-
-        @Override
-        protected boolean isHighConcurrency() {
-            return HIGH_CONCURRENCY;
-        }
-
-        @Override
-        protected RangeTableRow<String, FDate, MemoryFileSummary> loadValue(final FDate key) {
-            return newLatestRangeKey(key);
-        }
-    };
-    private final ILoadingCache<Long, RangeTableRow<String, FDate, MemoryFileSummary>> fileLookupTable_latestRangeKeyIndexCache = new ALoadingCache<Long, RangeTableRow<String, FDate, MemoryFileSummary>>() {
-
-        @Override
-        protected Integer getInitialMaximumSize() {
-            return MAXIMUM_SIZE;
-        }
-
-        @Override
-        protected EvictionMode getEvictionMode() {
-            return EVICTION_MODE;
-        }
-
-        @Override
-        protected boolean isHighConcurrency() {
-            return HIGH_CONCURRENCY;
-        }
-
-        @Override
-        protected RangeTableRow<String, FDate, MemoryFileSummary> loadValue(final Long key) {
-            return newLatestRangeKeyIndex(key);
-        }
-    };
     private final ILoadingCache<FDate, Long> latestValueIndexLookupCache = new ALoadingCache<FDate, Long>() {
 
         @Override
@@ -206,17 +192,18 @@ public class TimeSeriesStorageCache<K, V> {
             return nextValueIndexLookup(key.getRangeKey(), key.getShiftUnits());
         }
     };
-    private final WeakThreadLocalReference<ALatestValueByIndexCache<V>> latestValueByIndexCacheHolder = new WeakThreadLocalReference<ALatestValueByIndexCache<V>>() {
-        @Override
-        protected ALatestValueByIndexCache<V> initialValue() {
-            return new LatestValueByIndexCache();
-        };
-    };
+    private final ALatestValueByIndexCache<V> latestValueByIndexCache = new LatestValueByIndexCache();
     private volatile int lastResetIndex = 0;
 
     private final String hashKey;
     private final ISerde<V> valueSerde;
     private final Integer fixedLength;
+    private final ColumnLayout columnLayout;
+    private final Integer blockSize;
+    private final List<AggregateField<V>> aggregateFields;
+    private final TimeSeriesCodecs codecs;
+    private final ITimeSeriesCodec writeCodec;
+    private final ColdStorage coldStorage;
     private final Function<V, FDate> extractEndTime;
     private final boolean flyweight;
     private final TimeSeriesLookupMode lookupMode;
@@ -227,13 +214,15 @@ public class TimeSeriesStorageCache<K, V> {
     private volatile Optional<V> cachedFirstValue;
     private volatile Optional<V> cachedLastValue;
     private volatile long cachedSize = -1L;
+    private final MemoryFileSnapshots snapshots = new MemoryFileSnapshots();
     /**
-     * keeping the range keys outside of the concurrent linked hashmap of the ADelegateRangeTable with memory write
+     * keeping the chunk directory outside of the concurrent linked hashmap of the ADelegateRangeTable with memory write
      * through to disk is still better for increased parallelity and for not having to iterate through each element of
      * the other hashkeys.
      */
-    private volatile MutableSoftReference<ArrayFileBufferCacheResult<RangeTableRow<String, FDate, MemoryFileSummary>>> cachedAllRangeKeys = new MutableSoftReference<ArrayFileBufferCacheResult<RangeTableRow<String, FDate, MemoryFileSummary>>>(
+    private volatile MutableSoftReference<ChunkDirectory> cachedChunkDirectory = new MutableSoftReference<ChunkDirectory>(
             null);
+    private final ChunkManifest chunkManifest;
     private final Log log = new Log(this);
     @GuardedBy("this")
     private MemoryFileMetadata memoryFileMetadata;
@@ -242,14 +231,45 @@ public class TimeSeriesStorageCache<K, V> {
     public TimeSeriesStorageCache(final TimeSeriesStorage storage, final String hashKey, final ISerde<V> valueSerde,
             final Integer fixedLength, final Function<V, FDate> extractTime, final TimeSeriesLookupMode lookupMode,
             final int batchFlushInterval) {
+        this(storage, hashKey, valueSerde, fixedLength, extractTime, lookupMode, batchFlushInterval, null, null);
+    }
+
+    public TimeSeriesStorageCache(final TimeSeriesStorage storage, final String hashKey, final ISerde<V> valueSerde,
+            final Integer fixedLength, final Function<V, FDate> extractTime, final TimeSeriesLookupMode lookupMode,
+            final int batchFlushInterval, final List<AggregateField<V>> aggregateFields, final TimeSeriesCodecs codecs) {
+        this(storage, hashKey, valueSerde, fixedLength, extractTime, lookupMode, batchFlushInterval, aggregateFields,
+                codecs, null);
+    }
+
+    public TimeSeriesStorageCache(final TimeSeriesStorage storage, final String hashKey, final ISerde<V> valueSerde,
+            final Integer fixedLength, final Function<V, FDate> extractTime, final TimeSeriesLookupMode lookupMode,
+            final int batchFlushInterval, final List<AggregateField<V>> aggregateFields, final TimeSeriesCodecs codecs,
+            final ColdStorage coldStorage) {
         this.storage = storage;
         this.hashKey = hashKey;
         this.valueSerde = valueSerde;
         this.fixedLength = fixedLength;
+        this.columnLayout = ColumnLayout.of(valueSerde, fixedLength);
         this.extractEndTime = extractTime;
+        this.chunkManifest = new ChunkManifest(newDataDirectory(), fixedLength);
         final boolean compressed = storage.getCompressionFactory() != DisabledCompressionFactory.INSTANCE;
         final boolean mmap = TimeSeriesProperties.FILE_BUFFER_CACHE_MMAP_ENABLED;
-        this.flyweight = !compressed && mmap && fixedLength != null && fixedLength > 0;
+        //columnar chunks are not stored row wise and thus can not be accessed as flyweights
+        this.flyweight = !compressed && mmap && fixedLength != null && fixedLength > 0 && columnLayout == null;
+        //flyweight and columnar chunks provide their own random access
+        if (flyweight || columnLayout != null || TimeSeriesProperties.MEMORY_FILE_BLOCK_SIZE <= 0) {
+            this.blockSize = null;
+        } else {
+            this.blockSize = TimeSeriesProperties.MEMORY_FILE_BLOCK_SIZE;
+        }
+        this.codecs = codecs;
+        this.writeCodec = newWriteCodec(codecs);
+        this.coldStorage = newColdStorage(coldStorage);
+        if (aggregateFields == null || aggregateFields.isEmpty()) {
+            this.aggregateFields = null;
+        } else {
+            this.aggregateFields = aggregateFields;
+        }
         this.lookupMode = lookupMode;
         this.batchFlushInterval = batchFlushInterval;
         this.resultCache = Caffeine.newBuilder()
@@ -270,6 +290,101 @@ public class TimeSeriesStorageCache<K, V> {
         return batchFlushInterval;
     }
 
+    /**
+     * Returns null if chunks are stored row wise.
+     */
+    public ColumnLayout getColumnLayout() {
+        return columnLayout;
+    }
+
+    /**
+     * Returns null if chunks are not written in independently compressed blocks.
+     */
+    public Integer getBlockSize() {
+        return blockSize;
+    }
+
+    private ITimeSeriesCodec newWriteCodec(final TimeSeriesCodecs codecs) {
+        //flyweight chunks are not compressed
+        if (codecs == null || flyweight) {
+            return null;
+        }
+        final ITimeSeriesCodec codec = codecs.getWriteCodec();
+        final Integer recordLength = codec.getRecordLength();
+        if (recordLength != null) {
+            if (columnLayout != null) {
+                //columns are not stored as records
+                return null;
+            }
+            if (!recordLength.equals(fixedLength)) {
+                throw new IllegalArgumentException("Codec [" + codec + "] with recordLength [" + recordLength
+                        + "] does not match fixedLength [" + fixedLength + "]");
+            }
+        }
+        return codec;
+    }
+
+    private ColdStorage newColdStorage(final ColdStorage coldStorage) {
+        if (coldStorage == null) {
+            return null;
+        }
+        final ITimeSeriesCodec codec = coldStorage.getCodec();
+        final Integer recordLength = codec.getRecordLength();
+        if (recordLength != null && (columnLayout != null || !recordLength.equals(fixedLength))) {
+            throw new IllegalArgumentException("Cold codec [" + codec + "] with recordLength [" + recordLength
+                    + "] can not be used for fixedLength [" + fixedLength + "] and columnLayout [" + columnLayout
+                    + "]");
+        }
+        if (codecs != null && codecs.containsId(codec.getId()) && codecs.getCodec(codec.getId()) != codec) {
+            throw new IllegalArgumentException(
+                    "Cold codec id [" + codec.getId() + "] is already used by a different codec");
+        }
+        return coldStorage;
+    }
+
+    /**
+     * Returns null if no chunks are moved to a cold storage.
+     */
+    public ColdStorage getColdStorage() {
+        return coldStorage;
+    }
+
+    public File getColdDataDirectory() {
+        return coldStorage.newDataDirectory(storage, hashKey);
+    }
+
+    /**
+     * Returns null if chunks are written with the compression factory of the table.
+     */
+    public ITimeSeriesCodec getWriteCodec() {
+        return writeCodec;
+    }
+
+    private InputStream newDecoder(final MemoryFileSummary summary, final InputStream in) {
+        final byte codecId = summary.getCodecId();
+        if (codecId == TimeSeriesCodecs.DEFAULT_ID) {
+            return storage.getCompressionFactory().newDecompressor(in);
+        }
+        if (coldStorage != null && codecId == coldStorage.getCodec().getId()) {
+            return coldStorage.getCodec().newDecoder(in);
+        }
+        if (codecs == null) {
+            throw new IllegalStateException(
+                    "Chunk [" + summary + "] was written with codec id [" + codecId + "] but no codecs are registered");
+        }
+        return codecs.getCodec(codecId).newDecoder(in);
+    }
+
+    /**
+     * Returns null if no aggregates are calculated per chunk.
+     */
+    public ChunkAggregatesBuilder<V> newChunkAggregatesBuilder() {
+        if (aggregateFields == null) {
+            return null;
+        }
+        return new ChunkAggregatesBuilder<V>(aggregateFields);
+    }
+
     private IFileBufferCacheResult<V> resultCache_load(final ResultCacheKey key) throws Exception {
         final IFileBufferCacheResult<V> result = FileBufferCache.getResult(hashKey, key.getSummary(), key.getSource());
         if (result instanceof ArrayFileBufferCacheResult) {
@@ -303,6 +418,13 @@ public class TimeSeriesStorageCache<K, V> {
         return storage.newDataDirectory(hashKey);
     }
 
+    /**
+     * The snapshots that range scans of this key currently read from.
+     */
+    public MemoryFileSnapshots getSnapshots() {
+        return snapshots;
+    }
+
     public File getUpdateLockFile() {
         return new File(getDataDirectory(), "updateRunning.lock");
     }
@@ -330,11 +452,13 @@ public class TimeSeriesStorageCache<K, V> {
 
     public void finishFile(final FDate time, final V firstValue, final V lastValue, final long precedingValueCount,
             final int valueCount, final File memoryFile, final long precedingMemoryOffset, final long memoryOffset,
-            final long memoryLength) {
+            final long memoryLength, final MemoryFileBlockIndex blockIndex, final ChunkAggregates aggregates) {
         final MemoryFileSummary summary = new MemoryFileSummary(valueSerde, firstValue, lastValue, precedingValueCount,
-                valueCount, memoryFile.getAbsolutePath(), precedingMemoryOffset, memoryOffset, memoryLength);
+                valueCount, memoryFile.getAbsolutePath(), precedingMemoryOffset, memoryOffset, memoryLength,
+                blockIndex, aggregates, writeCodec != null ? writeCodec.getId() : TimeSeriesCodecs.DEFAULT_ID);
         assertSummary(summary);
         storage.getFileLookupTable().put(hashKey, time, summary);
+        chunkManifest.append(time, summary);
         final long memoryFileSize = precedingMemoryOffset + memoryFile.length();
         final long expectedMemoryFileSize = precedingMemoryOffset + memoryOffset + memoryLength;
         if (memoryFileSize != expectedMemoryFileSize) {
@@ -358,6 +482,7 @@ public class TimeSeriesStorageCache<K, V> {
     public void finishFile(final FDate time, final MemoryFileSummary summary) {
         assertSummary(summary);
         storage.getFileLookupTable().put(hashKey, time, summary);
+        chunkManifest.append(time, summary);
         clearCaches();
     }
 
@@ -401,70 +526,49 @@ public class TimeSeriesStorageCache<K, V> {
                 } else {
                     usedFrom = from;
                 }
+                final ChunkDirectory directory = getChunkDirectory(readLock);
+                //use latest time available even if there are no chunks after it
+                final int fromChunk = directory.getLatestChunk(usedFrom);
+                if (fromChunk == -1) {
+                    return EmptyCloseableIterator.getInstance();
+                }
+                final int toChunk;
+                if (to == null) {
+                    toChunk = directory.size() - 1;
+                } else {
+                    toChunk = Math.max(fromChunk, directory.getLastChunkStartingUntil(to));
+                }
                 return new ACloseableIterator<MemoryFileSummary>(new TextDescription("%s[%s]: readRangeFiles(%s, %s)",
                         TimeSeriesStorageCache.class.getSimpleName(), hashKey, from, to)) {
 
-                    //use latest time available even if delegate iterator has no values
-                    private RangeTableRow<String, FDate, MemoryFileSummary> latestFirstTime = getLatestRangeKey(
-                            usedFrom);
-                    private final ICloseableIterator<RangeTableRow<String, FDate, MemoryFileSummary>> delegate;
-
-                    {
-                        if (latestFirstTime == null) {
-                            delegate = EmptyCloseableIterator.getInstance();
-                        } else {
-                            delegate = getRangeKeys(latestFirstTime.getRangeKey().addPicoseconds(1), to);
-                        }
-                    }
+                    private int chunk = fromChunk;
 
                     @Override
                     protected boolean innerHasNext() {
-                        return latestFirstTime != null || delegate.hasNext();
-                    }
-
-                    private ICloseableIterator<RangeTableRow<String, FDate, MemoryFileSummary>> getRangeKeys(
-                            final FDate from, final FDate to) {
-                        final ArrayFileBufferCacheResult<RangeTableRow<String, FDate, MemoryFileSummary>> rangeSource = getAllRangeKeys(
-                                readLock);
-                        final ICloseableIterator<RangeTableRow<String, FDate, MemoryFileSummary>> rangeFiltered = rangeSource
-                                .iterator(EXTRACT_END_TIME_FROM_RANGE_KEYS, from, to);
-                        if (skipFileFunction != null) {
-                            return new ASkippingIterator<RangeTableRow<String, FDate, MemoryFileSummary>>(
-                                    rangeFiltered) {
-                                @Override
-                                protected boolean skip(final RangeTableRow<String, FDate, MemoryFileSummary> element) {
-                                    if (!rangeFiltered.hasNext()) {
-                                        /*
-                                         * cannot optimize this further for multiple segments because we don't know if a
-                                         * segment further back might be empty or not and thus the last segment of
-                                         * interest might have been the previous one from which we skipped the last file
-                                         * falsely
-                                         */
-                                        return false;
-                                    }
-                                    return skipFileFunction.skipFile(element.getValue());
-                                }
-                            };
-                        } else {
-                            return rangeFiltered;
-                        }
+                        return chunk <= toChunk;
                     }
 
                     @Override
                     protected MemoryFileSummary innerNext() {
-                        final MemoryFileSummary summary;
-                        if (latestFirstTime != null) {
-                            summary = latestFirstTime.getValue();
-                            latestFirstTime = null;
-                        } else {
-                            summary = delegate.next().getValue();
+                        while (chunk <= toChunk) {
+                            final MemoryFileSummary summary = directory.getSummary(chunk);
+                            chunk++;
+                            if (chunk == fromChunk + 1 || chunk > toChunk || skipFileFunction == null
+                                    || !skipFileFunction.skipFile(summary)) {
+                                /*
+                                 * cannot optimize this further for multiple segments because we don't know if a segment
+                                 * further back might be empty or not and thus the last segment of interest might have
+                                 * been the previous one from which we skipped the last file falsely
+                                 */
+                                return summary;
+                            }
                         }
-                        return summary;
+                        throw FastNoSuchElementException.getInstance("readRangeFiles end reached");
                     }
 
                     @Override
                     protected void innerClose() {
-                        delegate.close();
+                        chunk = toChunk + 1;
                     }
 
                 };
@@ -472,44 +576,6 @@ public class TimeSeriesStorageCache<K, V> {
         };
     }
 
-    private RangeTableRow<String, FDate, MemoryFileSummary> getLatestRangeKey(final FDate key) {
-        return fileLookupTable_latestRangeKeyCache.get(key);
-    }
-
-    private RangeTableRow<String, FDate, MemoryFileSummary> newLatestRangeKey(final FDate key) {
-        return storage.getFileLookupTable().getLatest(hashKey, key);
-    }
-
-    private RangeTableRow<String, FDate, MemoryFileSummary> getLatestRangeKeyIndex(final long key) {
-        return newLatestRangeKeyIndex(key);
-        //        return fileLookupTable_latestRangeKeyIndexCache.get(key);
-    }
-
-    private RangeTableRow<String, FDate, MemoryFileSummary> newLatestRangeKeyIndex(final long key) {
-        final ArrayList<RangeTableRow<String, FDate, MemoryFileSummary>> rows = getAllRangeKeys(DisabledLock.INSTANCE)
-                .getList();
-        if (rows.isEmpty()) {
-            return null;
-        }
-        final RangeTableRow<String, FDate, MemoryFileSummary> firstRow = rows.get(0);
-        if (key <= 0) {
-            return firstRow;
-        }
-        final int segmentSize = firstRow.getValue().getValueCount();
-        final int segmentIndex = SegmentedMemoryBuffer.getSegmentIndex(key, segmentSize);
-        if (segmentIndex >= rows.size()) {
-            return rows.get(rows.size() - 1);
-        } else {
-            final RangeTableRow<String, FDate, MemoryFileSummary> row = rows.get(segmentIndex);
-            final MemoryFileSummary summary = row.getValue();
-            if (summary.getPrecedingValueCount() <= key && key < summary.getCombinedValueCount()) {
-                return row;
-            }
-            throw new IllegalStateException("key [" + key + "] should be in the key range of the returned row ["
-                    + summary.getPrecedingValueCount() + " to " + summary.getCombinedValueCount() + "]: " + row);
-        }
-    }
-
     protected ICloseableIterable<MemoryFileSummary> readRangeFilesReverse(final FDate from, final FDate to,
             final ILock readLock, final ISkipFileFunction skipFileFunction) {
         return new ICloseableIterable<MemoryFileSummary>() {
@@ -526,73 +592,46 @@ public class TimeSeriesStorageCache<K, V> {
                 } else {
                     usedFrom = from;
                 }
+                final ChunkDirectory directory = getChunkDirectory(readLock);
+                //use latest time available even if there are no chunks before it
+                final int fromChunk = directory.getLatestChunk(usedFrom);
+                if (fromChunk == -1) {
+                    return EmptyCloseableIterator.getInstance();
+                }
+                final int toChunk;
+                if (to == null) {
+                    toChunk = 0;
+                } else {
+                    toChunk = Math.min(fromChunk, directory.getFirstChunkStartingFrom(to));
+                }
                 return new ACloseableIterator<MemoryFileSummary>(
                         new TextDescription("%s[%s]: readRangeFilesReverse(%s, %s)",
                                 TimeSeriesStorageCache.class.getSimpleName(), hashKey, from, to)) {
 
-                    //use latest time available even if delegate iterator has no values
-                    private RangeTableRow<String, FDate, MemoryFileSummary> latestLastTime = getLatestRangeKey(
-                            usedFrom);
-                    // add 1 ms to not collide with firstTime
-                    private final ICloseableIterator<RangeTableRow<String, FDate, MemoryFileSummary>> delegate;
-
-                    {
-                        if (latestLastTime == null) {
-                            delegate = EmptyCloseableIterator.getInstance();
-                        } else {
-                            delegate = getRangeKeysReverse(latestLastTime.getRangeKey().addPicoseconds(-1), to);
-                        }
-                    }
+                    private int chunk = fromChunk;
 
                     @Override
                     protected boolean innerHasNext() {
-                        return latestLastTime != null || delegate.hasNext();
-                    }
-
-                    private ICloseableIterator<RangeTableRow<String, FDate, MemoryFileSummary>> getRangeKeysReverse(
-                            final FDate from, final FDate to) {
-                        final ArrayFileBufferCacheResult<RangeTableRow<String, FDate, MemoryFileSummary>> rangeSource = getAllRangeKeys(
-                                readLock);
-                        final ICloseableIterator<RangeTableRow<String, FDate, MemoryFileSummary>> rangeFiltered = rangeSource
-                                .reverseIterator(EXTRACT_END_TIME_FROM_RANGE_KEYS, from, to);
-                        if (skipFileFunction != null) {
-                            return new ASkippingIterator<RangeTableRow<String, FDate, MemoryFileSummary>>(
-                                    rangeFiltered) {
-
-                                @Override
-                                protected boolean skip(final RangeTableRow<String, FDate, MemoryFileSummary> element) {
-                                    if (!rangeFiltered.hasNext()) {
-                                        /*
-                                         * cannot optimize this further for multiple segments because we don't know if a
-                                         * segment further back might be empty or not and thus the last segment of
-                                         * interest might have been the previous one from which we skipped the last file
-                                         * falsely
-                                         */
-                                        return false;
-                                    }
-                                    return skipFileFunction.skipFile(element.getValue());
-                                }
-                            };
-                        } else {
-                            return rangeFiltered;
-                        }
+                        return chunk >= toChunk;
                     }
 
                     @Override
                     protected MemoryFileSummary innerNext() {
-                        final MemoryFileSummary summary;
-                        if (latestLastTime != null) {
-                            summary = latestLastTime.getValue();
-                            latestLastTime = null;
-                        } else {
-                            summary = delegate.next().getValue();
+                        while (chunk >= toChunk) {
+                            final MemoryFileSummary summary = directory.getSummary(chunk);
+                            chunk--;
+                            if (chunk == fromChunk - 1 || chunk < toChunk || skipFileFunction == null
+                                    || !skipFileFunction.skipFile(summary)) {
+                                //see readRangeFiles for why the last chunk of interest is never skipped
+                                return summary;
+                            }
                         }
-                        return summary;
+                        throw FastNoSuchElementException.getInstance("readRangeFilesReverse end reached");
                     }
 
                     @Override
                     protected void innerClose() {
-                        delegate.close();
+                        chunk = toChunk - 1;
                     }
 
                 };
@@ -600,23 +639,50 @@ public class TimeSeriesStorageCache<K, V> {
         };
     }
 
+    private MemoryFileSummary getLatestSummary(final FDate key) {
+        final ChunkDirectory directory = getChunkDirectory(DisabledLock.INSTANCE);
+        final int chunk = directory.getLatestChunk(key);
+        if (chunk == -1) {
+            return null;
+        }
+        return directory.getSummary(chunk);
+    }
+
+    private MemoryFileSummary getLatestSummaryByIndex(final long key) {
+        final ChunkDirectory directory = getChunkDirectory(DisabledLock.INSTANCE);
+        final int chunk = directory.getLatestChunk(key);
+        if (chunk == -1) {
+            return null;
+        }
+        return directory.getSummary(chunk);
+    }
+
+    /**
+     * When a real read lock is given, the chunks are pinned as a snapshot under the lock and decoded without it, so that
+     * an open iterator does not block updates. DisabledLock means that the caller already holds the lock.
+     */
     public ICloseableIterator<V> readRangeValues(final FDate from, final FDate to, final ILock readLock,
             final ISkipFileFunction skipFileFunction) {
-        final PeekingCloseableIterator<MemoryFileSummary> fileIterator = new PeekingCloseableIterator<MemoryFileSummary>(
-                readRangeFiles(from, to, readLock, skipFileFunction).iterator());
-        final ICloseableIterator<ICloseableIterator<V>> chunkIterator = new ATransformingIterator<MemoryFileSummary, ICloseableIterator<V>>(
-                fileIterator) {
+        if (readLock == DisabledLock.INSTANCE) {
+            return readRangeValues(from, to, readRangeFiles(from, to, readLock, skipFileFunction).iterator(),
+                    readLock);
+        }
+        final MemoryFileSnapshot snapshot = pinSnapshot(readRangeFiles(from, to, DisabledLock.INSTANCE,
+                skipFileFunction), readLock);
+        return new SnapshotIterator<V>(new TextDescription("%s[%s]: readRangeValues(%s, %s)",
+                TimeSeriesStorageCache.class.getSimpleName(), hashKey, from, to), snapshot,
+                readRangeValues(from, to, snapshot.iterator(), DisabledLock.INSTANCE));
+    }
+
+    private ICloseableIterator<V> readRangeValues(final FDate from, final FDate to,
+            final ICloseableIterator<MemoryFileSummary> fileIterator, final ILock readLock) {
+        final ICloseableIterator<IFileBufferCacheResult<V>> resultIterator = newReadaheadResultIterator(
+                READ_RANGE_VALUES, fileIterator, readLock);
+        final ICloseableIterator<ICloseableIterator<V>> chunkIterator = new ATransformingIterator<IFileBufferCacheResult<V>, ICloseableIterator<V>>(
+                resultIterator) {
             @Override
-            protected ICloseableIterator<V> transform(final MemoryFileSummary value) {
-                if (TimeSeriesProperties.FILE_BUFFER_CACHE_PRELOAD_ENABLED) {
-                    try {
-                        preloadResultCached(READ_RANGE_VALUES, fileIterator.peek(), readLock);
-                    } catch (final NoSuchElementException e) {
-                        //end reached
-                    }
-                }
-                try (IFileBufferCacheResult<V> serializingCollection = getResultCached(READ_RANGE_VALUES, value,
-                        readLock)) {
+            protected ICloseableIterator<V> transform(final IFileBufferCacheResult<V> value) {
+                try (IFileBufferCacheResult<V> serializingCollection = value) {
                     return serializingCollection.iterator(extractEndTime, from, to);
                 }
             }
@@ -627,23 +693,161 @@ public class TimeSeriesStorageCache<K, V> {
         return rangeValues;
     }
 
-    public ICloseableIterator<V> readRangeValuesReverse(final FDate from, final FDate to, final ILock readLock,
-            final ISkipFileFunction skipFileFunction) {
-        final PeekingCloseableIterator<MemoryFileSummary> fileIterator = new PeekingCloseableIterator<MemoryFileSummary>(
-                readRangeFilesReverse(from, to, readLock, skipFileFunction).iterator());
+    /**
+     * Projected scans over columnar chunks binary search the time column of each chunk and only decompress the
+     * projected columns, see {@link ColumnProjection}. The chunks are decoded for each scan without the result caches,
+     * since those hold fully decoded values, and without the readahead of the next chunks, thus repeated scans over the
+     * same range or scans over many small chunks can be slower than a normal scan. Falls back to a normal scan without a
+     * projection or when the column layout has no bisectable time column.
+     */
+    public ICloseableIterator<V> readRangeValues(final FDate from, final FDate to, final ILock readLock,
+            final ISkipFileFunction skipFileFunction, final ColumnProjection projection) {
+        if (projection == null || columnLayout == null || !columnLayout.isTimeColumnBisectable()) {
+            return readRangeValues(from, to, readLock, skipFileFunction);
+        }
+        if (readLock == DisabledLock.INSTANCE) {
+            return readRangeValuesProjected(from, to,
+                    readRangeFiles(from, to, readLock, skipFileFunction).iterator(), readLock, projection);
+        }
+        final MemoryFileSnapshot snapshot = pinSnapshot(readRangeFiles(from, to, DisabledLock.INSTANCE,
+                skipFileFunction), readLock);
+        return new SnapshotIterator<V>(new TextDescription("%s[%s]: readRangeValuesProjected(%s, %s, %s)",
+                TimeSeriesStorageCache.class.getSimpleName(), hashKey, from, to, projection), snapshot,
+                readRangeValuesProjected(from, to, snapshot.iterator(), DisabledLock.INSTANCE, projection));
+    }
+
+    private ICloseableIterator<V> readRangeValuesProjected(final FDate from, final FDate to,
+            final ICloseableIterator<MemoryFileSummary> fileIterator, final ILock readLock,
+            final ColumnProjection projection) {
         final ICloseableIterator<ICloseableIterator<V>> chunkIterator = new ATransformingIterator<MemoryFileSummary, ICloseableIterator<V>>(
                 fileIterator) {
             @Override
             protected ICloseableIterator<V> transform(final MemoryFileSummary value) {
-                if (TimeSeriesProperties.FILE_BUFFER_CACHE_PRELOAD_ENABLED) {
-                    try {
-                        preloadResultCached(READ_RANGE_VALUES_REVERSE, fileIterator.peek(), readLock);
-                    } catch (final NoSuchElementException e) {
-                        //end reached
+                TimeSeriesMetrics.increment(TimeSeriesMetric.STORAGE_PROJECTED_CHUNKS);
+                return newIterableResult(READ_RANGE_VALUES_PROJECTED, value, readLock).columnarIterator(projection,
+                        from, to);
+            }
+        };
+        return new FlatteningIterator<V>(chunkIterator);
+    }
+
+    public ICloseableIterator<V> readRangeValuesReverse(final FDate from, final FDate to, final ILock readLock,
+            final ISkipFileFunction skipFileFunction) {
+        if (readLock == DisabledLock.INSTANCE) {
+            return readRangeValuesReverse(from, to,
+                    readRangeFilesReverse(from, to, readLock, skipFileFunction).iterator(), readLock);
+        }
+        final MemoryFileSnapshot snapshot = pinSnapshot(
+                readRangeFilesReverse(from, to, DisabledLock.INSTANCE, skipFileFunction), readLock);
+        return new SnapshotIterator<V>(new TextDescription("%s[%s]: readRangeValuesReverse(%s, %s)",
+                TimeSeriesStorageCache.class.getSimpleName(), hashKey, from, to), snapshot,
+                readRangeValuesReverse(from, to, snapshot.iterator(), DisabledLock.INSTANCE));
+    }
+
+    /**
+     * The first chunk is read separately, so that a reverse scan that only needs the last few values can decode its
+     * blocks from the tail backwards. The readahead of the remaining chunks only starts when the first chunk is
+     * exhausted.
+     */
+    private ICloseableIterator<V> readRangeValuesReverse(final FDate from, final FDate to,
+            final ICloseableIterator<MemoryFileSummary> fileIterator, final ILock readLock) {
+        final MemoryFileSummary firstSummary;
+        try {
+            firstSummary = fileIterator.next();
+        } catch (final NoSuchElementException e) {
+            fileIterator.close();
+            return EmptyCloseableIterator.getInstance();
+        }
+        final ICloseableIterable<V> firstChunk = new ICloseableIterable<V>() {
+            @Override
+            public ICloseableIterator<V> iterator() {
+                if (firstSummary.getBlockIndex() != null && !isResultCached(firstSummary)) {
+                    return readBlocksReverse(from, to, firstSummary);
+                }
+                try (IFileBufferCacheResult<V> result = getResultScanned(READ_RANGE_VALUES_REVERSE, firstSummary,
+                        readLock, 1)) {
+                    return result.reverseIterator(extractEndTime, from, to);
+                }
+            }
+        };
+        final ICloseableIterable<V> remainingChunks = new ICloseableIterable<V>() {
+            @Override
+            public ICloseableIterator<V> iterator() {
+                return readRangeValuesReverseChunks(from, to, fileIterator, readLock);
+            }
+        };
+        return new FlatteningIterable<V>(firstChunk, remainingChunks).iterator();
+    }
+
+    /**
+     * Decodes one block after another from the tail of the chunk backwards, thus memory is bounded by the block size and
+     * the work is proportional to the values that are actually consumed.
+     */
+    private ICloseableIterator<V> readBlocksReverse(final FDate from, final FDate to,
+            final MemoryFileSummary summary) {
+        final MemoryFileBlockIndex blockIndex = summary.getBlockIndex();
+        final int fromBlock;
+        if (from == null) {
+            fromBlock = blockIndex.getBlockCount() - 1;
+        } else {
+            fromBlock = blockIndex.getBlock(from);
+        }
+        if (fromBlock < 0) {
+            return EmptyCloseableIterator.getInstance();
+        }
+        return new ACloseableIterator<V>(new TextDescription("%s[%s]: readBlocksReverse(%s, %s, %s)",
+                TimeSeriesStorageCache.class.getSimpleName(), hashKey, from, to, summary)) {
+
+            private int block = fromBlock;
+            private ICloseableIterator<V> blockValues = EmptyCloseableIterator.getInstance();
+
+            @Override
+            protected boolean innerHasNext() {
+                while (!blockValues.hasNext()) {
+                    blockValues.close();
+                    if (block < 0) {
+                        return false;
+                    }
+                    try (IFileBufferCacheResult<V> result = getBlockResult(READ_RANGE_VALUES_REVERSE, summary,
+                            block)) {
+                        blockValues = result.reverseIterator(extractEndTime, from, to);
+                    }
+                    if (to != null && blockIndex.getFirstTime(block) < to.millisValue()) {
+                        //earlier blocks only contain values before to
+                        block = -1;
+                    } else {
+                        block--;
                     }
                 }
-                try (IFileBufferCacheResult<V> serializingCollection = getResultCached(READ_RANGE_VALUES_REVERSE, value,
-                        readLock)) {
+                return true;
+            }
+
+            @Override
+            protected V innerNext() {
+                if (!innerHasNext()) {
+                    throw FastNoSuchElementException.getInstance("readBlocksReverse end reached");
+                }
+                return blockValues.next();
+            }
+
+            @Override
+            protected void innerClose() {
+                blockValues.close();
+                block = -1;
+            }
+
+        };
+    }
+
+    private ICloseableIterator<V> readRangeValuesReverseChunks(final FDate from, final FDate to,
+            final ICloseableIterator<MemoryFileSummary> fileIterator, final ILock readLock) {
+        final ICloseableIterator<IFileBufferCacheResult<V>> resultIterator = newReadaheadResultIterator(
+                READ_RANGE_VALUES_REVERSE, fileIterator, readLock);
+        final ICloseableIterator<ICloseableIterator<V>> chunkIterator = new ATransformingIterator<IFileBufferCacheResult<V>, ICloseableIterator<V>>(
+                resultIterator) {
+            @Override
+            protected ICloseableIterator<V> transform(final IFileBufferCacheResult<V> value) {
+                try (IFileBufferCacheResult<V> serializingCollection = value) {
                     return serializingCollection.reverseIterator(extractEndTime, from, to);
                 }
             }
@@ -654,18 +858,158 @@ public class TimeSeriesStorageCache<K, V> {
         return rangeValuesReverse;
     }
 
+    /**
+     * Collects the chunks while holding the read lock so that the snapshot is consistent.
+     */
+    private MemoryFileSnapshot pinSnapshot(final ICloseableIterable<MemoryFileSummary> files, final ILock readLock) {
+        readLock.lock();
+        try {
+            final ArrayList<MemoryFileSummary> summaries = new ArrayList<>();
+            try (ICloseableIterator<MemoryFileSummary> fileIterator = files.iterator()) {
+                while (true) {
+                    summaries.add(fileIterator.next());
+                }
+            } catch (final NoSuchElementException e) {
+                //end reached
+            }
+            return snapshots.pin(summaries);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Chunks that are fully covered by the range are answered from their summary, only the boundary chunks (or chunks
+     * written before the field was declared) are decoded. The caller should hold the read lock.
+     */
+    public Aggregate aggregate(final String field, final FDate from, final FDate to) {
+        final AggregateField<V> aggregateField = getAggregateField(field);
+        final AggregateBuilder builder = new AggregateBuilder();
+        try (ICloseableIterator<MemoryFileSummary> fileIterator = readRangeFiles(from, to, DisabledLock.INSTANCE, null)
+                .iterator()) {
+            while (true) {
+                final MemoryFileSummary summary = fileIterator.next();
+                final Aggregate chunkAggregate = getCoveredChunkAggregate(summary, aggregateField, from, to);
+                if (chunkAggregate != null) {
+                    builder.add(chunkAggregate);
+                } else {
+                    try (IFileBufferCacheResult<V> result = getResultCached("aggregate", summary,
+                            DisabledLock.INSTANCE);
+                            ICloseableIterator<V> values = result.iterator(extractEndTime, from, to)) {
+                        while (true) {
+                            builder.add(aggregateField.extract(values.next()));
+                        }
+                    } catch (final NoSuchElementException e) {
+                        //end reached
+                    }
+                }
+            }
+        } catch (final NoSuchElementException e) {
+            //end reached
+        }
+        return builder.build();
+    }
+
+    private AggregateField<V> getAggregateField(final String field) {
+        if (aggregateFields != null) {
+            for (int i = 0; i < aggregateFields.size(); i++) {
+                final AggregateField<V> aggregateField = aggregateFields.get(i);
+                if (aggregateField.getName().equals(field)) {
+                    return aggregateField;
+                }
+            }
+        }
+        throw new IllegalArgumentException(
+                "Unknown aggregate field [" + field + "], declared fields are: " + aggregateFields);
+    }
+
+    private Aggregate getCoveredChunkAggregate(final MemoryFileSummary summary, final AggregateField<V> field,
+            final FDate from, final FDate to) {
+        final ChunkAggregates aggregates = summary.getAggregates();
+        if (aggregates == null) {
+            return null;
+        }
+        if (from != null) {
+            final FDate firstTime = extractEndTime.apply(summary.getFirstValue(valueSerde));
+            if (firstTime.isBeforeNotNullSafe(from)) {
+                return null;
+            }
+        }
+        if (to != null) {
+            final FDate lastTime = extractEndTime.apply(summary.getLastValue(valueSerde));
+            if (lastTime.isAfterNotNullSafe(to)) {
+                return null;
+            }
+        }
+        return aggregates.getAggregate(field);
+    }
+
+    /**
+     * Splits on chunk boundaries, each split loads its own chunks from the result cache. The chunks are pinned as a
+     * snapshot until the spliterator is closed.
+     */
+    public RangeValuesSpliterator<V> rangeValuesSpliterator(final FDate from, final FDate to, final ILock readLock) {
+        final MemoryFileSnapshot snapshot = pinSnapshot(readRangeFiles(from, to, DisabledLock.INSTANCE, null),
+                readLock);
+        final AtomicInteger scannedChunks = new AtomicInteger();
+        return new RangeValuesSpliterator<V>(snapshot, (summary) -> {
+            try (IFileBufferCacheResult<V> serializingCollection = getResultScanned(READ_RANGE_VALUES, summary,
+                    DisabledLock.INSTANCE, scannedChunks.incrementAndGet())) {
+                return serializingCollection.iterator(extractEndTime, from, to);
+            }
+        });
+    }
+
+    private ICloseableIterator<IFileBufferCacheResult<V>> newReadaheadResultIterator(final String method,
+            final ICloseableIterator<MemoryFileSummary> fileIterator, final ILock readLock) {
+        final int readaheadCount;
+        if (TimeSeriesProperties.FILE_BUFFER_CACHE_PRELOAD_ENABLED) {
+            readaheadCount = TimeSeriesProperties.FILE_BUFFER_CACHE_PRELOAD_COUNT;
+        } else {
+            readaheadCount = 1;
+        }
+        final AtomicInteger scannedChunks = new AtomicInteger();
+        return new ReadaheadFileBufferCacheResultIterator<V>(
+                new TextDescription("%s[%s]: %s", TimeSeriesStorageCache.class.getSimpleName(), hashKey, method),
+                fileIterator,
+                (summary) -> getResultScanned(method, summary, readLock, scannedChunks.incrementAndGet()),
+                readaheadCount);
+    }
+
+    /**
+     * Range scans only admit their first chunks into the result caches, the remaining chunks pass through the scan
+     * buffer of the FileBufferCache so that a large scan does not evict the chunks of latency sensitive point lookups.
+     */
+    private IFileBufferCacheResult<V> getResultScanned(final String method, final MemoryFileSummary summary,
+            final ILock readLock, final int scannedChunks) {
+        if (FileBufferCache.isScanAdmitted(scannedChunks)) {
+            return getResultCached(method, summary, readLock);
+        }
+        final IFileBufferCacheResult<V> cached = resultCache.getIfPresent(new ResultCacheKey(summary, null));
+        if (cached != null) {
+            return cached;
+        }
+        return FileBufferCache.getScanResult(hashKey, summary, newResult(method, summary, readLock));
+    }
+
     private IFileBufferCacheResult<V> getResultCached(final String method, final MemoryFileSummary summary,
             final ILock readLock) {
         //        return FileBufferCache.getResult(hashKey, summary, newResult(method, summary, readLock));
-        return resultCache.get(new ResultCacheKey(summary, newResult(method, summary, readLock)));
-    }
-
-    private void preloadResultCached(final String method, final MemoryFileSummary summary, final ILock readLock) {
-        FileBufferCache.preloadResult(hashKey, summary, newResult(method, summary, readLock));
+        final ResultCacheKey key = new ResultCacheKey(summary, newResult(method, summary, readLock));
+        if (TimeSeriesMetrics.isEnabled()) {
+            final IFileBufferCacheResult<V> cached = resultCache.getIfPresent(key);
+            if (cached != null) {
+                TimeSeriesMetrics.increment(TimeSeriesMetric.STORAGE_CACHE_HIT);
+                return cached;
+            }
+            TimeSeriesMetrics.increment(TimeSeriesMetric.STORAGE_CACHE_MISS);
+        }
+        return resultCache.get(key);
     }
 
     private IFileBufferSource<V> newResult(final String method, final MemoryFileSummary summary, final ILock readLock) {
-        if (flyweight) {
+        //cold chunks are recompressed and thus can not be accessed as flyweights
+        if (flyweight && summary.getCodecId() == TimeSeriesCodecs.DEFAULT_ID) {
             final IMemoryMappedFile mmapFile = FileBufferCache.getFile(hashKey, summary.getMemoryResourceUri(), false);
             final MemoryFileSummaryByteBuffer buffer = new MemoryFileSummaryByteBuffer(summary);
             buffer.init(mmapFile);
@@ -677,6 +1021,24 @@ public class TimeSeriesStorageCache<K, V> {
 
     private SerializingCollection<V> newIterableResult(final String method, final MemoryFileSummary summary,
             final ILock readLock) {
+        return newIterableResult(method, summary, readLock, summary.getMemoryOffset(), summary.getMemoryLength(),
+                summary.getBlockIndex());
+    }
+
+    /**
+     * Only decompresses a single block of the chunk.
+     */
+    private SerializingCollection<V> newBlockIterableResult(final String method, final MemoryFileSummary summary,
+            final ILock readLock, final int block) {
+        final MemoryFileBlockIndex blockIndex = summary.getBlockIndex();
+        final long blockOffset = summary.getMemoryOffset() + blockIndex.getOffset(block);
+        final long blockLength = blockIndex.getLength(block, summary.getMemoryLength());
+        return newIterableResult(method, summary, readLock, blockOffset, blockLength, null);
+    }
+
+    private SerializingCollection<V> newIterableResult(final String method, final MemoryFileSummary summary,
+            final ILock readLock, final long memoryOffset, final long memoryLength,
+            final MemoryFileBlockIndex blockIndex) {
         final TextDescription name = new TextDescription("%s[%s]: %s(%s)", TimeSeriesStorageCache.class.getSimpleName(),
                 hashKey, method, summary);
         final File memoryFile = new File(summary.getMemoryResourceUri());
@@ -698,7 +1060,9 @@ public class TimeSeriesStorageCache<K, V> {
                         refCounted = mmapFile.incrementRefCount();
                     }
                     if (refCounted) {
-                        return new MmapInputStream(readLock, summary.newBuffer(mmapFile).asInputStream(), mmapFile);
+                        final IByteBuffer buffer = mmapFile.newByteBuffer(memoryOffset,
+                                Integers.checkedCast(memoryLength));
+                        return new MmapInputStream(readLock, buffer.asInputStream(), mmapFile);
                     } else {
                         readLock.unlock();
                     }
@@ -708,15 +1072,15 @@ public class TimeSeriesStorageCache<K, V> {
                     //file buffer cache will close the file quickly
                     final PreLockedBufferedFileDataInputStream in = new PreLockedBufferedFileDataInputStream(readLock,
                             memoryFile);
-                    in.position(summary.getMemoryOffset());
-                    in.limit(summary.getMemoryOffset() + summary.getMemoryLength());
+                    in.position(memoryOffset);
+                    in.limit(memoryOffset + memoryLength);
                     return in;
                 } else {
                     //keep file input stream open as shortly as possible to prevent too many open files error
                     readLock.lock();
                     try (BufferedFileDataInputStream in = new BufferedFileDataInputStream(memoryFile)) {
-                        in.position(summary.getMemoryOffset());
-                        in.limit(summary.getMemoryOffset() + summary.getMemoryLength());
+                        in.position(memoryOffset);
+                        in.limit(memoryOffset + memoryLength);
                         final PooledFastByteArrayOutputStream bos = PooledFastByteArrayOutputStream.newInstance();
                         IOUtils.copy(in, bos.asNonClosing());
                         return bos.asInputStream();
@@ -737,6 +1101,11 @@ public class TimeSeriesStorageCache<K, V> {
                 return fixedLength;
             }
 
+            @Override
+            protected ColumnLayout newColumnLayout() {
+                return columnLayout;
+            }
+
             @Override
             protected ICompressionFactory getCompressionFactory() {
                 return storage.getCompressionFactory();
@@ -747,71 +1116,237 @@ public class TimeSeriesStorageCache<K, V> {
                 return getCompressionFactory().newCompressor(out, ATimeSeriesUpdater.LARGE_COMPRESSOR);
             }
 
+            @Override
+            protected InputStream newDecompressor(final InputStream inputStream) {
+                if (blockIndex != null) {
+                    return new BlockFramedInputStream(inputStream, blockIndex, memoryLength,
+                            in -> newDecoder(summary, in));
+                } else {
+                    return newDecoder(summary, inputStream);
+                }
+            }
+
         };
     }
 
     public V getFirstValue() {
         Optional<V> cachedFirstValueCopy = cachedFirstValue;
         if (cachedFirstValueCopy == null) {
-            final ArrayList<? extends RangeTableRow<String, FDate, MemoryFileSummary>> list = getAllRangeKeys(
-                    DisabledLock.INSTANCE).getList();
-            if (list.isEmpty()) {
+            final ChunkDirectory directory = getChunkDirectory(DisabledLock.INSTANCE);
+            if (directory.isEmpty()) {
                 cachedFirstValueCopy = Optional.empty();
             } else {
-                final RangeTableRow<String, FDate, MemoryFileSummary> row = list.get(0);
-                final MemoryFileSummary latestValue = row.getValue();
+                final MemoryFileSummary latestValue = directory.getFirstSummary();
                 final V firstValue;
                 if (latestValue == null) {
                     firstValue = null;
                 } else {
                     firstValue = latestValue.getFirstValue(valueSerde);
                 }
-                cachedFirstValueCopy = Optional.ofNullable(firstValue);
+                cachedFirstValueCopy = Optional.ofNullable(firstValue);
+            }
+            cachedFirstValue = cachedFirstValueCopy;
+        }
+        return cachedFirstValueCopy.orElse(null);
+    }
+
+    public V getLastValue() {
+        Optional<V> cachedLastValueCopy = cachedLastValue;
+        if (cachedLastValueCopy == null) {
+            final ChunkDirectory directory = getChunkDirectory(DisabledLock.INSTANCE);
+            if (directory.isEmpty()) {
+                cachedLastValueCopy = Optional.empty();
+            } else {
+                final MemoryFileSummary latestValue = directory.getLastSummary();
+                final V lastValue;
+                if (latestValue == null) {
+                    lastValue = null;
+                } else {
+                    lastValue = latestValue.getLastValue(valueSerde);
+                }
+                cachedLastValueCopy = Optional.ofNullable(lastValue);
+            }
+            cachedLastValue = cachedLastValueCopy;
+        }
+        return cachedLastValueCopy.orElse(null);
+    }
+
+    /**
+     * The next update writes a new memory file at the same path, thus range scans that still read a pinned snapshot are
+     * invalidated so that they fail instead of decoding the new bytes at their old offsets.
+     *
+     * Should be called while holding the write lock.
+     */
+    public synchronized void deleteAll() {
+        snapshots.invalidate();
+        storage.getFileLookupTable().deleteRange(hashKey);
+        storage.deleteRange_latestValueLookupTable(hashKey);
+        storage.deleteRange_nextValueLookupTable(hashKey);
+        storage.deleteRange_previousValueLookupTable(hashKey);
+        clearCaches();
+        Files.deleteNative(newDataDirectory());
+        if (coldStorage != null && coldStorage.getDirectory() != null) {
+            Files.deleteNative(getColdDataDirectory());
+        }
+        memoryFileMetadata = null;
+        dataDirectory = null;
+    }
+
+    /**
+     * Drops the leading chunks whose values all end before the cutoff, thus the chunk that contains the cutoff is kept
+     * as a whole. Memory files and cold files that only contained dropped chunks are deleted. The remaining memory file is compacted
+     * by copying the retained bytes to its front when at least half of it became unused and no range scan currently
+     * reads from it. Returns the number of dropped values.
+     *
+     * Should be called while holding the write lock.
+     */
+    public synchronized long deleteBefore(final FDate cutoff) {
+        final ChunkDirectory directory = getChunkDirectory(DisabledLock.INSTANCE);
+        int droppedChunks = 0;
+        while (droppedChunks < directory.size() && extractEndTime
+                .apply(directory.getSummary(droppedChunks).getLastValue(valueSerde))
+                .isBeforeNotNullSafe(cutoff)) {
+            droppedChunks++;
+        }
+        if (droppedChunks == 0) {
+            return 0L;
+        }
+        final long droppedValues = directory.getPrecedingValueCount(droppedChunks - 1)
+                + directory.getValueCount(droppedChunks - 1) - directory.getValueIndexOffset();
+        if (droppedChunks == directory.size()) {
+            deleteAll();
+            return droppedValues;
+        }
+        final ADelegateRangeTable<String, FDate, MemoryFileSummary> fileLookupTable = storage.getFileLookupTable();
+        for (int i = 0; i < droppedChunks; i++) {
+            fileLookupTable.delete(hashKey, new FDate(directory.getFirstTime(i)));
+        }
+        //cached lookups might point into the dropped chunks
+        storage.deleteRange_latestValueLookupTable(hashKey);
+        storage.deleteRange_nextValueLookupTable(hashKey);
+        storage.deleteRange_previousValueLookupTable(hashKey);
+        //release the mapped memory files before deleting or replacing them
+        clearCaches();
+        chunkManifest.delete();
+        if (snapshots.size() == 0) {
+            final int firstHotChunk = Math.max(droppedChunks, directory.getColdChunks());
+            deleteUnusedMemoryFiles(directory, firstHotChunk);
+            compactMemoryFile(directory, firstHotChunk);
+            deleteUnreferencedColdFiles();
+        }
+        clearCaches();
+        rewriteChunkManifest();
+        TimeSeriesMetrics.increment(TimeSeriesMetric.RETENTION_VALUES, droppedValues);
+        return droppedValues;
+    }
+
+    /**
+     * Deletes the memory files that only contain chunks before the given hot chunk, which were either dropped or moved
+     * to the cold storage.
+     */
+    private void deleteUnusedMemoryFiles(final ChunkDirectory directory, final int firstHotChunk) {
+        final File hotMemoryFile = new File(directory.getSummary(firstHotChunk).getMemoryResourceUri());
+        final File memoryFile = new File(getDataDirectory(), "memory.data");
+        for (int i = 0; i < firstHotChunk; i++) {
+            if (directory.getFileId(i) != directory.getFileId(i + 1)) {
+                //cold chunks still have the precedingMemoryOffset of the memory file they were written to
+                final File unusedMemoryFile = newMemoryFile(memoryFile,
+                        directory.getSummary(i).getPrecedingMemoryOffset()).getAbsoluteFile();
+                if (!unusedMemoryFile.equals(hotMemoryFile)) {
+                    Files.deleteQuietly(unusedMemoryFile);
+                }
             }
-            cachedFirstValue = cachedFirstValueCopy;
         }
-        return cachedFirstValueCopy.orElse(null);
     }
 
-    public V getLastValue() {
-        Optional<V> cachedLastValueCopy = cachedLastValue;
-        if (cachedLastValueCopy == null) {
-            final ArrayList<? extends RangeTableRow<String, FDate, MemoryFileSummary>> list = getAllRangeKeys(
-                    DisabledLock.INSTANCE).getList();
-            if (list.isEmpty()) {
-                cachedLastValueCopy = Optional.empty();
-            } else {
-                final RangeTableRow<String, FDate, MemoryFileSummary> row = list.get(list.size() - 1);
-                final MemoryFileSummary latestValue = row.getValue();
-                final V lastValue;
-                if (latestValue == null) {
-                    lastValue = null;
-                } else {
-                    lastValue = latestValue.getLastValue(valueSerde);
+    /**
+     * Deletes cold files of dropped chunks and of recompressions that were aborted. Should only be called while no
+     * snapshot is pinned.
+     */
+    private void deleteUnreferencedColdFiles() {
+        if (coldStorage == null) {
+            return;
+        }
+        final File[] files = getColdDataDirectory().listFiles();
+        if (files == null) {
+            return;
+        }
+        final ChunkDirectory directory = getChunkDirectory(DisabledLock.INSTANCE);
+        final Set<String> referenced = new HashSet<>();
+        for (int i = 0; i < directory.getColdChunks(); i++) {
+            referenced.add(directory.getSummary(i).getMemoryResourceUri());
+        }
+        for (int i = 0; i < files.length; i++) {
+            final File file = files[i];
+            if (!referenced.contains(file.getAbsolutePath())) {
+                Files.deleteQuietly(file);
+            }
+        }
+    }
+
+    /**
+     * Java has no portable way to punch holes into a file, thus the retained bytes of the first kept memory file are
+     * moved to the front of a new file instead. This is only done when the unused prefix is at least as large as the
+     * retained bytes, so that the copy costs are amortized over the dropped data.
+     */
+    private void compactMemoryFile(final ChunkDirectory directory, final int firstChunk) {
+        final MemoryFileSummary firstSummary = directory.getSummary(firstChunk);
+        final long shift = firstSummary.getMemoryOffset();
+        final File memoryFile = new File(firstSummary.getMemoryResourceUri());
+        final long memoryFileLength = memoryFile.length();
+        if (shift <= 0 || shift < memoryFileLength - shift) {
+            return;
+        }
+        final int fileId = directory.getFileId(firstChunk);
+        int endChunk = firstChunk;
+        while (endChunk < directory.size() && directory.getFileId(endChunk) == fileId) {
+            endChunk++;
+        }
+        final File tempFile = new File(memoryFile.getAbsolutePath() + ".tmp");
+        try {
+            try (FileChannel source = FileChannel.open(memoryFile.toPath(), StandardOpenOption.READ);
+                    FileChannel target = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long position = shift;
+                while (position < memoryFileLength) {
+                    position += source.transferTo(position, memoryFileLength - position, target);
                 }
-                cachedLastValueCopy = Optional.ofNullable(lastValue);
+                target.force(false);
             }
-            cachedLastValue = cachedLastValueCopy;
+            //a crash between the move and the updated rows is detected by isEmptyOrInconsistent()
+            java.nio.file.Files.move(tempFile.toPath(), memoryFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            Files.deleteQuietly(tempFile);
+            throw new RuntimeException(e);
+        }
+        final ADelegateRangeTable<String, FDate, MemoryFileSummary> fileLookupTable = storage.getFileLookupTable();
+        for (int i = firstChunk; i < endChunk; i++) {
+            final MemoryFileSummary summary = directory.getSummary(i);
+            fileLookupTable.put(hashKey, new FDate(directory.getFirstTime(i)),
+                    summary.withMemoryOffset(summary.getMemoryOffset() - shift));
+        }
+        if (endChunk == directory.size()) {
+            final MemoryFileMetadata metadata = getMemoryFileMetadata();
+            metadata.setExpectedMemoryFileSize(metadata.getExpectedMemoryFileSize() - shift);
         }
-        return cachedLastValueCopy.orElse(null);
     }
 
-    public synchronized void deleteAll() {
-        storage.getFileLookupTable().deleteRange(hashKey);
-        storage.deleteRange_latestValueLookupTable(hashKey);
-        storage.deleteRange_nextValueLookupTable(hashKey);
-        storage.deleteRange_previousValueLookupTable(hashKey);
-        clearCaches();
-        Files.deleteNative(newDataDirectory());
-        memoryFileMetadata = null;
-        dataDirectory = null;
+    /**
+     * The manifest is deleted before memory files are deleted or compacted, so that a crash in between does not leave
+     * a manifest with outdated offsets behind. Afterwards it is rewritten from the updated file lookup table, so that
+     * the next open does not need to rebuild it.
+     */
+    private void rewriteChunkManifest() {
+        chunkManifest.delete();
+        cachedChunkDirectory.set(null);
+        //loading the directory from the file lookup table writes the manifest
+        getChunkDirectory(DisabledLock.INSTANCE);
     }
 
     private void clearCaches() {
-        fileLookupTable_latestRangeKeyCache.clear();
-        fileLookupTable_latestRangeKeyIndexCache.clear();
         FileBufferCache.remove(hashKey);
-        cachedAllRangeKeys.set(null);
+        cachedChunkDirectory.set(null);
         cachedFirstValue = null;
         cachedLastValue = null;
         cachedSize = -1L;
@@ -834,7 +1369,6 @@ public class TimeSeriesStorageCache<K, V> {
     }
 
     private V getLatestValueByIndex(final FDate date) {
-        final ALatestValueByIndexCache<V> latestValueByIndexCache = latestValueByIndexCacheHolder.get();
         return latestValueByIndexCache.getLatestValueByIndex(date);
     }
 
@@ -844,27 +1378,73 @@ public class TimeSeriesStorageCache<K, V> {
     }
 
     private long latestValueIndexLookup(final FDate date) {
-        final RangeTableRow<String, FDate, MemoryFileSummary> row = getLatestRangeKey(date);
-        if (row == null) {
+        final MemoryFileSummary summary = getLatestSummary(date);
+        if (summary == null) {
             return -1L;
         }
-        final MemoryFileSummary summary = row.getValue();
-        if (summary == null) {
+        final int latestValueIndex = getLatestValueIndexInFile("latestValueLookupCache.loadValue", summary, date);
+        if (latestValueIndex == -1 && getFirstValue() != null) {
+            return 0L;
+        }
+        if (latestValueIndex == -1) {
             return -1L;
         }
-        try (IFileBufferCacheResult<V> result = getResultCached("latestValueLookupCache.loadValue", summary,
-                DisabledLock.INSTANCE)) {
-            final int latestValueIndex = result.getLatestValueIndex(extractEndTime, date);
-            if (latestValueIndex == -1 && getFirstValue() != null) {
-                return 0L;
+        return summary.getPrecedingValueCount() + latestValueIndex
+                - getChunkDirectory(DisabledLock.INSTANCE).getValueIndexOffset();
+    }
+
+    /**
+     * Uses the sparse block index to only decompress the block that contains the date, unless the whole chunk is
+     * already cached anyway.
+     */
+    private int getLatestValueIndexInFile(final String method, final MemoryFileSummary summary, final FDate date) {
+        final MemoryFileBlockIndex blockIndex = summary.getBlockIndex();
+        if (blockIndex != null && !isResultCached(summary)) {
+            //check the previous block too since the index only contains millis
+            for (int block = blockIndex.getBlock(date); block >= 0; block--) {
+                try (IFileBufferCacheResult<V> result = getBlockResult(method, summary, block)) {
+                    final int latestValueIndex = result.getLatestValueIndex(extractEndTime, date);
+                    if (latestValueIndex != -1) {
+                        return blockIndex.getFirstIndex(block) + latestValueIndex;
+                    }
+                }
             }
-            if (latestValueIndex == -1) {
-                return -1L;
+            return -1;
+        }
+        try (IFileBufferCacheResult<V> result = getResultCached(method, summary, DisabledLock.INSTANCE)) {
+            return result.getLatestValueIndex(extractEndTime, date);
+        }
+    }
+
+    private V getLatestValueInFile(final String method, final MemoryFileSummary summary, final FDate date) {
+        final MemoryFileBlockIndex blockIndex = summary.getBlockIndex();
+        if (blockIndex != null && !isResultCached(summary)) {
+            //check the previous block too since the index only contains millis
+            for (int block = blockIndex.getBlock(date); block >= 0; block--) {
+                try (IFileBufferCacheResult<V> result = getBlockResult(method, summary, block)) {
+                    final V latestValue = result.getLatestValue(extractEndTime, date);
+                    if (latestValue != null) {
+                        return latestValue;
+                    }
+                }
             }
-            return row.getValue().getPrecedingValueCount() + latestValueIndex;
+            return null;
+        }
+        try (IFileBufferCacheResult<V> result = getResultCached(method, summary, DisabledLock.INSTANCE)) {
+            return result.getLatestValue(extractEndTime, date);
         }
     }
 
+    private boolean isResultCached(final MemoryFileSummary summary) {
+        return resultCache.getIfPresent(new ResultCacheKey(summary, null)) != null;
+    }
+
+    private IFileBufferCacheResult<V> getBlockResult(final String method, final MemoryFileSummary summary,
+            final int block) {
+        return new IterableFileBufferCacheResult<V>(
+                newBlockIterableResult(method, summary, DisabledLock.INSTANCE, block));
+    }
+
     public V getLatestValue(final long index) {
         if (index >= size() - 1) {
             return getLastValue();
@@ -872,18 +1452,29 @@ public class TimeSeriesStorageCache<K, V> {
         if (index <= 0) {
             return getFirstValue();
         }
-        final RangeTableRow<String, FDate, MemoryFileSummary> row = getLatestRangeKeyIndex(index);
-        if (row == null) {
-            return null;
-        }
-        final MemoryFileSummary summary = row.getValue();
+        //indexes are relative to the first value that was not dropped by a retention
+        final long absoluteIndex = index + getChunkDirectory(DisabledLock.INSTANCE).getValueIndexOffset();
+        final MemoryFileSummary summary = getLatestSummaryByIndex(absoluteIndex);
         if (summary == null) {
             return null;
         }
+        final int rowIndex = Integers.checkedCast(absoluteIndex - summary.getPrecedingValueCount());
+        final MemoryFileBlockIndex blockIndex = summary.getBlockIndex();
+        if (blockIndex != null && !isResultCached(summary)) {
+            //only decompress the block that contains the row, fixed length values before it are skipped undecoded
+            final int block = blockIndex.getBlockByIndex(rowIndex);
+            try (SerializingCollection<V> blockResult = newBlockIterableResult("latestValueLookupCache.loadValue",
+                    summary, DisabledLock.INSTANCE, block)) {
+                final V latestValue = blockResult.getByIndex(rowIndex - blockIndex.getFirstIndex(block));
+                if (latestValue == null) {
+                    return getFirstValue();
+                }
+                return latestValue;
+            }
+        }
         try (IFileBufferCacheResult<V> result = getResultCached("latestValueLookupCache.loadValue", summary,
                 DisabledLock.INSTANCE)) {
-            final long rowIndex = index - row.getValue().getPrecedingValueCount();
-            final V latestValue = result.getLatestValue(Integers.checkedCast(rowIndex));
+            final V latestValue = result.getLatestValue(rowIndex);
             if (latestValue == null) {
                 return getFirstValue();
             }
@@ -891,27 +1482,73 @@ public class TimeSeriesStorageCache<K, V> {
         }
     }
 
+    /**
+     * Reads consecutive values by decoding each touched block or chunk once instead of resolving every index on its
+     * own.
+     */
+    public List<V> getLatestValues(final long fromIndex, final int count) {
+        final List<V> values = new ArrayList<>(count);
+        long absoluteIndex = Math.max(0L, fromIndex) + getChunkDirectory(DisabledLock.INSTANCE).getValueIndexOffset();
+        while (values.size() < count) {
+            final MemoryFileSummary summary = getLatestSummaryByIndex(absoluteIndex);
+            if (summary == null) {
+                break;
+            }
+            final long rowIndex = absoluteIndex - summary.getPrecedingValueCount();
+            if (rowIndex >= summary.getValueCount()) {
+                break;
+            }
+            final int sizeBefore = values.size();
+            final MemoryFileBlockIndex blockIndex = summary.getBlockIndex();
+            if (blockIndex != null && !isResultCached(summary)) {
+                final int block = blockIndex.getBlockByIndex((int) rowIndex);
+                try (ICloseableIterator<V> it = newBlockIterableResult("latestValueLookupCache.loadValues", summary,
+                        DisabledLock.INSTANCE, block).iterator()) {
+                    final int skip = (int) rowIndex - blockIndex.getFirstIndex(block);
+                    for (int i = 0; i < skip; i++) {
+                        it.next();
+                    }
+                    while (values.size() < count) {
+                        values.add(it.next());
+                    }
+                } catch (final NoSuchElementException e) {
+                    //end of block reached
+                }
+            } else {
+                try (IFileBufferCacheResult<V> result = getResultCached("latestValueLookupCache.loadValues", summary,
+                        DisabledLock.INSTANCE)) {
+                    for (int i = (int) rowIndex; i < summary.getValueCount() && values.size() < count; i++) {
+                        final V value = result.getLatestValue(i);
+                        if (value == null) {
+                            break;
+                        }
+                        values.add(value);
+                    }
+                }
+            }
+            final int added = values.size() - sizeBefore;
+            if (added == 0) {
+                break;
+            }
+            absoluteIndex += added;
+        }
+        return values;
+    }
+
     private V getLatestValueByValue(final FDate date) {
         final SingleValue value = storage.getOrLoad_latestValueLookupTable(hashKey, date, () -> {
-            final RangeTableRow<String, FDate, MemoryFileSummary> row = fileLookupTable_latestRangeKeyCache.get(date);
-            if (row == null) {
-                return null;
-            }
-            final MemoryFileSummary summary = row.getValue();
+            final MemoryFileSummary summary = getLatestSummary(date);
             if (summary == null) {
                 return null;
             }
-            try (IFileBufferCacheResult<V> result = getResultCached("latestValueLookupCache.loadValue", summary,
-                    DisabledLock.INSTANCE)) {
-                V latestValue = result.getLatestValue(extractEndTime, date);
-                if (latestValue == null) {
-                    latestValue = getFirstValue();
-                }
-                if (latestValue == null) {
-                    return null;
-                }
-                return new SingleValue(valueSerde, latestValue);
+            V latestValue = getLatestValueInFile("latestValueLookupCache.loadValue", summary, date);
+            if (latestValue == null) {
+                latestValue = getFirstValue();
             }
+            if (latestValue == null) {
+                return null;
+            }
+            return new SingleValue(valueSerde, latestValue);
         });
         if (value == null) {
             return null;
@@ -922,13 +1559,12 @@ public class TimeSeriesStorageCache<K, V> {
     public long size() {
         long cachedSizeCopy = cachedSize;
         if (cachedSizeCopy == -1L) {
-            final ArrayList<? extends RangeTableRow<String, FDate, MemoryFileSummary>> list = getAllRangeKeys(
-                    DisabledLock.INSTANCE).getList();
-            if (list.isEmpty()) {
+            final ChunkDirectory directory = getChunkDirectory(DisabledLock.INSTANCE);
+            if (directory.isEmpty()) {
                 cachedSizeCopy = 0;
             } else {
-                final MemoryFileSummary lastValue = list.get(list.size() - 1).getValue();
-                cachedSizeCopy = lastValue.getCombinedValueCount();
+                cachedSizeCopy = directory.getCombinedValueCount(directory.size() - 1)
+                        - directory.getValueIndexOffset();
             }
             cachedSize = cachedSizeCopy;
         }
@@ -1016,6 +1652,29 @@ public class TimeSeriesStorageCache<K, V> {
         }
     }
 
+    /**
+     * Resolves the index of the current value once and reads the values before it in one pass instead of a shift back
+     * loop per value. Always returns a new modifiable list.
+     */
+    public List<V> getPreviousValues(final FDate date, final int count) {
+        final V firstValue = getFirstValue();
+        if (firstValue == null || count <= 0) {
+            return new ArrayList<>(0);
+        }
+        final FDate firstTime = extractEndTime.apply(firstValue);
+        if (date.isBeforeOrEqualToNotNullSafe(firstTime)) {
+            final List<V> values = new ArrayList<>(1);
+            values.add(firstValue);
+            return values;
+        }
+        final long toIndex = Math.min(getLatestValueIndex(date), size() - 1L);
+        if (toIndex < 0) {
+            return new ArrayList<>(0);
+        }
+        final long fromIndex = Math.max(0L, toIndex - count + 1L);
+        return getLatestValues(fromIndex, Integers.checkedCast(toIndex - fromIndex + 1L));
+    }
+
     private long previousValueIndexLookup(final FDate date, final int shiftBackUnits) {
         final AShiftBackUnitsLoopLongIndex<V> shiftBackLoop = new AShiftBackUnitsLoopLongIndex<V>(date,
                 shiftBackUnits) {
@@ -1100,6 +1759,35 @@ public class TimeSeriesStorageCache<K, V> {
         }
     }
 
+    /**
+     * Resolves the index of the current value once and reads the values after it in one pass instead of a shift
+     * forward loop per value. Always returns a new modifiable list.
+     */
+    public List<V> getNextValues(final FDate date, final int count) {
+        final V lastValue = getLastValue();
+        if (lastValue == null || count <= 0) {
+            return new ArrayList<>(0);
+        }
+        final FDate lastTime = extractEndTime.apply(lastValue);
+        if (date.isAfterOrEqualToNotNullSafe(lastTime)) {
+            final List<V> values = new ArrayList<>(1);
+            values.add(lastValue);
+            return values;
+        }
+        final long latestIndex = getLatestValueIndex(date);
+        if (latestIndex < 0) {
+            return new ArrayList<>(0);
+        }
+        //the latest value might end before the date, then the next value is the current one
+        final List<V> values = getLatestValues(latestIndex, count + 1);
+        if (!values.isEmpty() && extractEndTime.apply(values.get(0)).isBeforeNotNullSafe(date)) {
+            values.remove(0);
+        } else if (values.size() > count) {
+            values.remove(values.size() - 1);
+        }
+        return values;
+    }
+
     private long nextValueIndexLookup(final FDate date, final int shiftForwardUnits) {
         final AShiftForwardUnitsLoopLongIndex<V> shiftForwardLoop = new AShiftForwardUnitsLoopLongIndex<V>(date,
                 shiftForwardUnits) {
@@ -1188,15 +1876,29 @@ public class TimeSeriesStorageCache<K, V> {
                 final MemoryFileSummary summary = summaries.next();
                 final File memoryFile = new File(summary.getMemoryResourceUri());
                 final long memoryFileLength = memoryFile.length();
-                calculatedMemoryFileSize = summary.getPrecedingMemoryOffset() + summary.getMemoryOffset()
-                        + summary.getMemoryLength();
-                if (!Objects.equals(prevMemoryFile, memoryFile)) {
-                    actualMemoryFileSize += memoryFileLength;
-                }
-                if (calculatedMemoryFileSize > actualMemoryFileSize) {
-                    log.warn("Table data for [%s] is inconsistent and needs to be reset. Empty file: [%s]", hashKey,
-                            summary);
-                    return true;
+                if (summary.isCold()) {
+                    //cold chunks have their own file which is not part of the memory file size
+                    if (memoryFileLength != summary.getMemoryLength()) {
+                        log.warn("Table data for [%s] is inconsistent and needs to be reset. Incomplete cold file: [%s]",
+                                hashKey, summary);
+                        return true;
+                    }
+                } else {
+                    calculatedMemoryFileSize = summary.getPrecedingMemoryOffset() + summary.getMemoryOffset()
+                            + summary.getMemoryLength();
+                    if (!Objects.equals(prevMemoryFile, memoryFile)) {
+                        if (prevMemoryFile == null) {
+                            //memory files before the first hot chunk might have been deleted by a retention
+                            actualMemoryFileSize = summary.getPrecedingMemoryOffset();
+                        }
+                        actualMemoryFileSize += memoryFileLength;
+                    }
+                    if (calculatedMemoryFileSize > actualMemoryFileSize) {
+                        log.warn("Table data for [%s] is inconsistent and needs to be reset. Empty file: [%s]", hashKey,
+                                summary);
+                        return true;
+                    }
+                    prevMemoryFile = memoryFile;
                 }
                 try {
                     assertSummary(prevSummary, summary);
@@ -1207,7 +1909,6 @@ public class TimeSeriesStorageCache<K, V> {
                     return true;
                 }
                 prevSummary = summary;
-                prevMemoryFile = memoryFile;
                 noFileFound = false;
             }
             if (noFileFound) {
@@ -1235,7 +1936,33 @@ public class TimeSeriesStorageCache<K, V> {
      * When shouldRedoLastFile=true this deletes the last file in order to create a new updated one (so the files do not
      * get fragmented too much between updates
      */
-    public synchronized PrepareForUpdateResult<V> prepareForUpdate(final boolean shouldRedoLastFile) {
+    public PrepareForUpdateResult<V> prepareForUpdate(final boolean shouldRedoLastFile) {
+        return prepareForUpdate(shouldRedoLastFile, false);
+    }
+
+    /**
+     * With shouldAppendToTail=true only the open tail (trailing chunks that did not reach the batchFlushInterval yet)
+     * is considered. Normally only the last tail chunk is redone, which only contains the values of the previous
+     * update. The whole tail is rewritten into full chunks (sealed) once it reaches the batchFlushInterval or
+     * UPDATER_APPEND_TAIL_MAX_CHUNKS. Redone chunks are overwritten and the memory file is truncated behind them since
+     * the rewritten chunks might be smaller than before. When a pinned snapshot still references the redone chunks,
+     * the new chunks are written behind them instead (copy on write).
+     */
+    public PrepareForUpdateResult<V> prepareForUpdate(final boolean shouldRedoLastFile,
+            final boolean shouldAppendToTail) {
+        return prepareForUpdate(shouldRedoLastFile, shouldAppendToTail, false);
+    }
+
+    /**
+     * Redoes the small chunks that were found by isCompactionRequired(). All of their values are given back as last
+     * values, so that the updater rewrites them into chunks of batchFlushInterval values without needing a source.
+     */
+    public PrepareForUpdateResult<V> prepareForCompaction() {
+        return prepareForUpdate(true, false, true);
+    }
+
+    private synchronized PrepareForUpdateResult<V> prepareForUpdate(final boolean shouldRedoLastFile,
+            final boolean shouldAppendToTail, final boolean shouldCompact) {
         final RangeTableRow<String, FDate, MemoryFileSummary> latestFile = storage.getFileLookupTable()
                 .getLatest(hashKey, FDates.MAX_DATE);
         final FDate updateFrom;
@@ -1243,23 +1970,64 @@ public class TimeSeriesStorageCache<K, V> {
         final long precedingMemoryOffset;
         final long memoryOffset;
         final long precedingValueCount;
+        File truncateMemoryFile = null;
+        final ChunkDirectory directory = getChunkDirectory(DisabledLock.INSTANCE);
+        int removedChunks = 0;
         if (latestFile != null) {
             final FDate latestRangeKey;
             final MemoryFileSummary latestSummary = latestFile.getValue();
-            if (shouldRedoLastFile && latestSummary.getValueCount() < batchFlushInterval) {
+            final List<MemoryFileSummary> redoFiles;
+            if (!shouldRedoLastFile) {
+                redoFiles = Collections.emptyList();
+            } else if (shouldCompact) {
+                redoFiles = getCompactionRedoFiles();
+            } else if (shouldAppendToTail) {
+                redoFiles = getOpenTailRedoFiles();
+            } else if (latestSummary.getValueCount() < batchFlushInterval) {
+                redoFiles = Collections.singletonList(latestSummary);
+            } else {
+                redoFiles = Collections.emptyList();
+            }
+            if (!redoFiles.isEmpty()) {
                 lastValues = new ArrayList<V>();
-                try (ICloseableIterator<V> lastColl = newIterableResult("prepareForUpdate", latestSummary,
-                        DisabledLock.INSTANCE).iterator()) {
-                    Lists.toListWithoutHasNext(lastColl, lastValues);
+                for (int i = 0; i < redoFiles.size(); i++) {
+                    try (ICloseableIterator<V> lastColl = newIterableResult("prepareForUpdate",
+                            redoFiles.get(i), DisabledLock.INSTANCE).iterator()) {
+                        Lists.toListWithoutHasNext(lastColl, lastValues);
+                    }
                 }
+                final MemoryFileSummary firstRedoSummary = redoFiles.get(0);
                 if (!lastValues.isEmpty()) {
-                    //remove last value because it might be an incomplete bar
-                    final V lastValue = lastValues.remove(lastValues.size() - 1);
-                    precedingMemoryOffset = latestSummary.getPrecedingMemoryOffset();
-                    memoryOffset = latestSummary.getMemoryOffset();
-                    precedingValueCount = latestSummary.getPrecedingValueCount();
+                    final V lastValue;
+                    if (shouldCompact) {
+                        //compaction has no source that could provide the last value again
+                        lastValue = lastValues.get(lastValues.size() - 1);
+                    } else {
+                        //remove last value because it might be an incomplete bar
+                        lastValue = lastValues.remove(lastValues.size() - 1);
+                    }
+                    precedingMemoryOffset = firstRedoSummary.getPrecedingMemoryOffset();
+                    final File memoryFile = new File(firstRedoSummary.getMemoryResourceUri());
+                    final long liveMemoryEnd = getLiveMemoryEnd(redoFiles.size());
+                    if (snapshots.isPinned(precedingMemoryOffset + liveMemoryEnd)) {
+                        //a range scan still reads the redone chunks, thus write their new version behind them
+                        memoryOffset = memoryFile.length();
+                        TimeSeriesMetrics.increment(TimeSeriesMetric.SNAPSHOT_COPY_ON_WRITE);
+                        log.debug("Writing [%s] redone chunks of [%s] behind [%s] pinned snapshots at offset [%s]",
+                                redoFiles.size(), hashKey, snapshots.size(), memoryOffset);
+                    } else {
+                        //overwrite the redone chunks and reclaim space of chunks that were replaced while pinned
+                        memoryOffset = liveMemoryEnd;
+                        truncateMemoryFile = memoryFile;
+                    }
+                    precedingValueCount = firstRedoSummary.getPrecedingValueCount();
+                    removedChunks = redoFiles.size();
+                    if (shouldCompact) {
+                        TimeSeriesMetrics.increment(TimeSeriesMetric.COMPACTION_CHUNKS, removedChunks);
+                    }
                     updateFrom = extractEndTime.apply(lastValue);
-                    latestRangeKey = latestFile.getRangeKey();
+                    //the range key is the end time of the first value in the chunk
+                    latestRangeKey = extractEndTime.apply(firstRedoSummary.getFirstValue(valueSerde));
                 } else {
                     precedingMemoryOffset = latestSummary.getPrecedingMemoryOffset();
                     memoryOffset = latestSummary.getMemoryOffset() + latestSummary.getMemoryLength() + 1L;
@@ -1291,40 +2059,349 @@ public class TimeSeriesStorageCache<K, V> {
             precedingValueCount = 0L;
         }
         clearCaches();
+        if (truncateMemoryFile != null) {
+            //caches are cleared and no snapshot is pinned, so no mapped segments remain for the truncated range
+            truncateMemoryFile(truncateMemoryFile, precedingMemoryOffset, memoryOffset);
+        }
+        if (latestFile == null) {
+            chunkManifest.delete();
+        } else if (removedChunks > 0) {
+            //new chunks are appended to the manifest in finishFile
+            chunkManifest.write(directory, directory.size() - removedChunks);
+        }
         return new PrepareForUpdateResult<>(updateFrom, lastValues, precedingMemoryOffset, memoryOffset,
                 precedingValueCount);
     }
 
+    /**
+     * Returns the last chunk of the open tail, or all of its chunks when the tail should be sealed. Returns an empty
+     * list when the last chunk is already full.
+     */
+    private List<MemoryFileSummary> getOpenTailRedoFiles() {
+        final ChunkDirectory directory = getChunkDirectory(DisabledLock.INSTANCE);
+        final int lastChunk = directory.size() - 1;
+        if (lastChunk < 0) {
+            return Collections.emptyList();
+        }
+        if (directory.getValueCount(lastChunk) >= batchFlushInterval) {
+            return Collections.emptyList();
+        }
+        long tailValueCount = directory.getValueCount(lastChunk);
+        int firstChunk = lastChunk;
+        while (firstChunk > 0) {
+            final int chunk = firstChunk - 1;
+            if (directory.getValueCount(chunk) >= batchFlushInterval
+                    || directory.getFileId(chunk) != directory.getFileId(lastChunk)) {
+                //only chunks inside the same memory file can be rewritten after truncation
+                break;
+            }
+            tailValueCount += directory.getValueCount(chunk);
+            firstChunk--;
+        }
+        final int tailChunks = lastChunk - firstChunk + 1;
+        if (tailChunks > 1 && (tailValueCount >= batchFlushInterval
+                || tailChunks > TimeSeriesProperties.UPDATER_APPEND_TAIL_MAX_CHUNKS)) {
+            //seal the tail
+            return directory.getSummaries(firstChunk, lastChunk);
+        } else {
+            return Collections.singletonList(directory.getSummary(lastChunk));
+        }
+    }
+
+    public boolean isCompactionRequired() {
+        return !getCompactionRedoFiles().isEmpty();
+    }
+
+    /**
+     * Walks back from the last chunk of the last memory file and returns the chunks starting with the earliest small
+     * chunk (that did not reach the batchFlushInterval). Stops at the point where more full than small chunks would be
+     * rewritten, so that the cost of a compaction stays proportional to the fragmentation. Returns an empty list when
+     * there are less than STORAGE_COMPACTION_MIN_CHUNKS small chunks.
+     */
+    private List<MemoryFileSummary> getCompactionRedoFiles() {
+        final int minChunks = TimeSeriesProperties.STORAGE_COMPACTION_MIN_CHUNKS;
+        if (minChunks <= 0) {
+            return Collections.emptyList();
+        }
+        final ChunkDirectory directory = getChunkDirectory(DisabledLock.INSTANCE);
+        final int lastChunk = directory.size() - 1;
+        if (lastChunk < 0) {
+            return Collections.emptyList();
+        }
+        int smallChunks = 0;
+        int fullChunks = 0;
+        int firstSmallChunk = -1;
+        for (int chunk = lastChunk; chunk >= 0; chunk--) {
+            if (directory.getFileId(chunk) != directory.getFileId(lastChunk)) {
+                //only chunks inside the same memory file can be rewritten after truncation
+                break;
+            }
+            if (directory.getValueCount(chunk) < batchFlushInterval) {
+                smallChunks++;
+                firstSmallChunk = chunk;
+            } else {
+                fullChunks++;
+                if (fullChunks > smallChunks) {
+                    break;
+                }
+            }
+        }
+        if (smallChunks < minChunks) {
+            return Collections.emptyList();
+        }
+        return directory.getSummaries(firstSmallChunk, lastChunk);
+    }
+
+    /**
+     * Returns true when hot chunks became older than the age of the cold storage.
+     */
+    public boolean isRecompressionRequired() {
+        if (coldStorage == null) {
+            return false;
+        }
+        final ChunkDirectory directory = getChunkDirectory(DisabledLock.INSTANCE);
+        return getRecompressionEndChunk(directory) > directory.getColdChunks();
+    }
+
+    /**
+     * The age is measured from the last value of the key instead of the current time, so that historical data is
+     * tiered the same way. The last chunk and the open tail stay hot so that updates can redo them.
+     */
+    private int getRecompressionEndChunk(final ChunkDirectory directory) {
+        final int lastChunk = directory.size() - 1;
+        int endChunk = directory.getColdChunks();
+        if (endChunk >= lastChunk) {
+            return endChunk;
+        }
+        final FDate lastTime = extractEndTime.apply(directory.getLastSummary().getLastValue(valueSerde));
+        final FDate cutoff = new FDate(
+                lastTime.millisValue() - coldStorage.getAge().longValue(FTimeUnit.MILLISECONDS));
+        while (endChunk < lastChunk && directory.getValueCount(endChunk) >= batchFlushInterval
+                && extractEndTime.apply(directory.getSummary(endChunk).getLastValue(valueSerde))
+                        .isBeforeNotNullSafe(cutoff)) {
+            endChunk++;
+        }
+        return endChunk;
+    }
+
+    /**
+     * Recompresses the chunks that were found by isRecompressionRequired() with the codec of the cold storage into a
+     * file per chunk. The chunks are encoded while only holding the read lock, afterwards the summaries are swapped
+     * while holding the write lock. Returns the number of chunks that were moved to the cold storage.
+     */
+    public int recompressColdChunks(final IReentrantReadWriteLock tableLock, final OptimisticReadGate readGate) {
+        final PrepareForRecompressionResult prepared = prepareForRecompression(tableLock.readLock());
+        if (prepared == null) {
+            return 0;
+        }
+        return swapColdChunks(prepared, tableLock, readGate);
+    }
+
+    /**
+     * Encodes the chunks that were found by isRecompressionRequired() into cold files while holding the read lock.
+     * Returns null when there is nothing to recompress.
+     */
+    public PrepareForRecompressionResult prepareForRecompression(final ILock readLock) {
+        if (coldStorage == null) {
+            return null;
+        }
+        readLock.lock();
+        try {
+            final ChunkDirectory directory = getChunkDirectory(DisabledLock.INSTANCE);
+            final int coldChunks = directory.getColdChunks();
+            final int endChunk = getRecompressionEndChunk(directory);
+            if (endChunk <= coldChunks) {
+                return null;
+            }
+            final List<MemoryFileSummary> hotSummaries = directory.getSummaries(coldChunks, endChunk - 1);
+            final List<MemoryFileSummary> coldSummaries = new ArrayList<>(hotSummaries.size());
+            for (int i = 0; i < hotSummaries.size(); i++) {
+                coldSummaries.add(writeColdChunk(hotSummaries.get(i)));
+            }
+            return new PrepareForRecompressionResult(hotSummaries, coldSummaries);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the hot chunks with their cold files while holding the write lock. The swap is rejected when an update
+     * or a retention changed the chunks since they were prepared. Returns the number of chunks that were moved to the
+     * cold storage.
+     */
+    public int swapColdChunks(final PrepareForRecompressionResult prepared, final IReentrantReadWriteLock tableLock,
+            final OptimisticReadGate readGate) {
+        final ILock writeLock = tableLock.writeLock();
+        try {
+            if (!writeLock.tryLock(TimeSeriesProperties.ACQUIRE_WRITE_LOCK_TIMEOUT)) {
+                //the cold files get cleaned up by the next recompression
+                return 0;
+            }
+        } catch (final InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        try {
+            readGate.enterWrite();
+            try {
+                return swapColdChunks(prepared.getHotSummaries(), prepared.getColdSummaries());
+            } finally {
+                readGate.exitWrite();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private MemoryFileSummary writeColdChunk(final MemoryFileSummary summary) {
+        final ITimeSeriesCodec codec = coldStorage.getCodec();
+        final File coldFile = new File(getColdDataDirectory(), "cold." + summary.getPrecedingValueCount() + ".data");
+        try {
+            Files.forceMkdirParent(coldFile);
+            try (BufferedFileDataInputStream in = new BufferedFileDataInputStream(
+                    new File(summary.getMemoryResourceUri()))) {
+                in.position(summary.getMemoryOffset());
+                in.limit(summary.getMemoryOffset() + summary.getMemoryLength());
+                if (columnLayout != null) {
+                    //the columns are compressed separately, thus they are recompressed one at a time
+                    try (ColumnarInputStream decodedIn = new ColumnarInputStream(in, columnLayout,
+                            columnIn -> newDecoder(summary, columnIn));
+                            ColumnarOutputStream encodedOut = new ColumnarOutputStream(
+                                    new BufferedOutputStream(new FileOutputStream(coldFile)), columnLayout,
+                                    codec::newEncoder)) {
+                        IOUtils.copy(decodedIn, encodedOut);
+                    }
+                } else {
+                    final MemoryFileBlockIndex blockIndex = summary.getBlockIndex();
+                    final InputStream decoded;
+                    if (blockIndex != null) {
+                        decoded = new BlockFramedInputStream(in, blockIndex, summary.getMemoryLength(),
+                                blockIn -> newDecoder(summary, blockIn));
+                    } else {
+                        decoded = newDecoder(summary, in);
+                    }
+                    try (InputStream decodedIn = decoded;
+                            OutputStream encodedOut = codec
+                                    .newEncoder(new BufferedOutputStream(new FileOutputStream(coldFile)))) {
+                        IOUtils.copy(decodedIn, encodedOut);
+                    }
+                }
+            }
+            try (FileChannel channel = FileChannel.open(coldFile.toPath(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        return summary.toCold(coldFile.getAbsolutePath(), coldFile.length(), codec.getId());
+    }
+
+    private synchronized int swapColdChunks(final List<MemoryFileSummary> hotSummaries,
+            final List<MemoryFileSummary> coldSummaries) {
+        final ChunkDirectory directory = getChunkDirectory(DisabledLock.INSTANCE);
+        final int firstChunk = directory.getColdChunks();
+        final int endChunk = firstChunk + hotSummaries.size();
+        boolean unchanged = endChunk < directory.size();
+        for (int i = 0; unchanged && i < hotSummaries.size(); i++) {
+            final MemoryFileSummary coldSummary = coldSummaries.get(i);
+            //a retention might have deleted the cold file in the mean time
+            unchanged = directory.getSummary(firstChunk + i).equals(hotSummaries.get(i))
+                    && new File(coldSummary.getMemoryResourceUri()).length() == coldSummary.getMemoryLength();
+        }
+        if (!unchanged) {
+            //an update or retention changed the chunks in the mean time
+            if (snapshots.size() == 0) {
+                deleteUnreferencedColdFiles();
+            }
+            return 0;
+        }
+        final ADelegateRangeTable<String, FDate, MemoryFileSummary> fileLookupTable = storage.getFileLookupTable();
+        for (int i = 0; i < coldSummaries.size(); i++) {
+            fileLookupTable.put(hashKey, new FDate(directory.getFirstTime(firstChunk + i)), coldSummaries.get(i));
+        }
+        //release the mapped memory files before deleting or replacing them
+        clearCaches();
+        chunkManifest.delete();
+        if (snapshots.size() == 0) {
+            deleteUnusedMemoryFiles(directory, endChunk);
+            compactMemoryFile(directory, endChunk);
+            clearCaches();
+        }
+        rewriteChunkManifest();
+        TimeSeriesMetrics.increment(TimeSeriesMetric.RECOMPRESSION_CHUNKS, coldSummaries.size());
+        return coldSummaries.size();
+    }
+
+    /**
+     * Returns the end of the last chunk before the redone chunks inside the same memory file, which might be before the
+     * first redone chunk when it was written behind chunks that were pinned by a snapshot.
+     */
+    private long getLiveMemoryEnd(final int redoFilesCount) {
+        final ChunkDirectory directory = getChunkDirectory(DisabledLock.INSTANCE);
+        final int liveChunk = directory.size() - redoFilesCount - 1;
+        if (liveChunk < 0) {
+            return 0L;
+        }
+        if (directory.getFileId(liveChunk) != directory.getFileId(liveChunk + 1)) {
+            return 0L;
+        }
+        final MemoryFileSummary liveSummary = directory.getSummary(liveChunk);
+        if (liveSummary.isCold()) {
+            //the bytes before the first hot chunk are unused but might not have been compacted yet
+            return directory.getSummary(liveChunk + 1).getMemoryOffset();
+        }
+        return liveSummary.getMemoryOffset() + liveSummary.getMemoryLength();
+    }
+
+    private void truncateMemoryFile(final File memoryFile, final long precedingMemoryOffset, final long memoryOffset) {
+        try (FileChannel channel = FileChannel.open(memoryFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(memoryOffset);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        getMemoryFileMetadata().setExpectedMemoryFileSize(precedingMemoryOffset + memoryOffset);
+    }
+
     private void assertShiftUnitsPositiveNonZero(final int shiftUnits) {
         if (shiftUnits < 0) {
             throw new IllegalArgumentException("shiftUnits needs to be a positive or zero value: " + shiftUnits);
         }
     }
 
-    private ArrayFileBufferCacheResult<RangeTableRow<String, FDate, MemoryFileSummary>> getAllRangeKeys(
-            final ILock readLock) {
-        ArrayFileBufferCacheResult<RangeTableRow<String, FDate, MemoryFileSummary>> cachedAllRangeKeysCopy = cachedAllRangeKeys
-                .get();
-        if (cachedAllRangeKeysCopy == null) {
+    private ChunkDirectory getChunkDirectory(final ILock readLock) {
+        ChunkDirectory cachedChunkDirectoryCopy = cachedChunkDirectory.get();
+        if (cachedChunkDirectoryCopy == null) {
             readLock.lock();
             try {
-                cachedAllRangeKeysCopy = cachedAllRangeKeys.get();
-                if (cachedAllRangeKeysCopy == null) {
-                    try (ICloseableIterator<RangeTableRow<String, FDate, MemoryFileSummary>> range = storage
-                            .getFileLookupTable()
-                            .range(hashKey, FDates.MIN_DATE, FDates.MAX_DATE)) {
-                        final ArrayList<RangeTableRow<String, FDate, MemoryFileSummary>> allRangeKeys = new ArrayList<>();
-                        Lists.toListWithoutHasNext(range, allRangeKeys);
-                        cachedAllRangeKeysCopy = new ArrayFileBufferCacheResult<RangeTableRow<String, FDate, MemoryFileSummary>>(
-                                allRangeKeys);
-                        cachedAllRangeKeys.set(cachedAllRangeKeysCopy);
-                    }
+                cachedChunkDirectoryCopy = cachedChunkDirectory.get();
+                if (cachedChunkDirectoryCopy == null) {
+                    cachedChunkDirectoryCopy = loadChunkDirectory();
+                    cachedChunkDirectory.set(cachedChunkDirectoryCopy);
                 }
             } finally {
                 readLock.unlock();
             }
         }
-        return cachedAllRangeKeysCopy;
+        return cachedChunkDirectoryCopy;
+    }
+
+    /**
+     * Prefers the manifest so that opening a key does not need to load its rows from the file lookup table.
+     */
+    private ChunkDirectory loadChunkDirectory() {
+        final ChunkDirectory manifestDirectory = chunkManifest.read();
+        if (manifestDirectory != null) {
+            return manifestDirectory;
+        }
+        try (ICloseableIterator<RangeTableRow<String, FDate, MemoryFileSummary>> range = storage.getFileLookupTable()
+                .range(hashKey, FDates.MIN_DATE, FDates.MAX_DATE)) {
+            final ArrayList<RangeTableRow<String, FDate, MemoryFileSummary>> allRangeKeys = new ArrayList<>();
+            Lists.toListWithoutHasNext(range, allRangeKeys);
+            final ChunkDirectory tableDirectory = ChunkDirectory.valueOf(allRangeKeys);
+            if (!tableDirectory.isEmpty()) {
+                chunkManifest.write(tableDirectory, tableDirectory.size());
+            }
+            return tableDirectory;
+        }
     }
 
     private final class LatestValueByIndexCache extends ALatestValueByIndexCache<V> {
@@ -1347,6 +2424,47 @@ public class TimeSeriesStorageCache<K, V> {
         protected int getLastResetIndex() {
             return lastResetIndex;
         }
+
+        @Override
+        protected long size() {
+            return TimeSeriesStorageCache.this.size();
+        }
+
+        @Override
+        protected List<V> getLatestValues(final long fromIndex, final int count) {
+            return TimeSeriesStorageCache.this.getLatestValues(fromIndex, count);
+        }
+    }
+
+    private static final class SnapshotIterator<V> extends ACloseableIterator<V> {
+        private final MemoryFileSnapshot snapshot;
+        private final ICloseableIterator<V> delegate;
+
+        private SnapshotIterator(final TextDescription name, final MemoryFileSnapshot snapshot,
+                final ICloseableIterator<V> delegate) {
+            super(name);
+            this.snapshot = snapshot;
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected boolean innerHasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        protected V innerNext() {
+            final V next = delegate.next();
+            //the value might have been decoded from a memory file that replaced the one of the snapshot
+            snapshot.assertValid();
+            return next;
+        }
+
+        @Override
+        protected void innerClose() {
+            delegate.close();
+            snapshot.close();
+        }
     }
 
     private static final class MmapInputStream extends SimpleDelegateInputStream {
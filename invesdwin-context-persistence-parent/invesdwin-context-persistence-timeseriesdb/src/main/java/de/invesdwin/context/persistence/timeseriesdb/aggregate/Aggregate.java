@@ -0,0 +1,70 @@
+package de.invesdwin.context.persistence.timeseriesdb.aggregate;
+
+import javax.annotation.concurrent.Immutable;
+
+import de.invesdwin.util.lang.Objects;
+
+@Immutable
+public class Aggregate {
+
+    public static final Aggregate EMPTY = new Aggregate(Double.NaN, Double.NaN, 0D, 0L);
+
+    private final double min;
+    private final double max;
+    private final double sum;
+    private final long count;
+
+    public Aggregate(final double min, final double max, final double sum, final long count) {
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+        this.count = count;
+    }
+
+    /**
+     * NaN if count is 0.
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * NaN if count is 0.
+     */
+    public double getMax() {
+        return max;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * NaN if count is 0.
+     */
+    public double getAverage() {
+        if (count == 0L) {
+            return Double.NaN;
+        }
+        return sum / count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0L;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("min", min)
+                .add("max", max)
+                .add("sum", sum)
+                .add("count", count)
+                .toString();
+    }
+
+}
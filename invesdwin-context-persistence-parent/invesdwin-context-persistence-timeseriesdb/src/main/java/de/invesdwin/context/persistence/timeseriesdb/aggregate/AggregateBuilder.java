@@ -0,0 +1,59 @@
+package de.invesdwin.context.persistence.timeseriesdb.aggregate;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+@NotThreadSafe
+public class AggregateBuilder {
+
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private double sum = 0D;
+    private long count = 0L;
+
+    public AggregateBuilder add(final double value) {
+        if (Double.isNaN(value)) {
+            return this;
+        }
+        if (count == 0L) {
+            min = value;
+            max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        sum += value;
+        count++;
+        return this;
+    }
+
+    public AggregateBuilder add(final Aggregate aggregate) {
+        if (aggregate.isEmpty()) {
+            return this;
+        }
+        if (count == 0L) {
+            min = aggregate.getMin();
+            max = aggregate.getMax();
+        } else {
+            min = Math.min(min, aggregate.getMin());
+            max = Math.max(max, aggregate.getMax());
+        }
+        sum += aggregate.getSum();
+        count += aggregate.getCount();
+        return this;
+    }
+
+    public Aggregate build() {
+        if (count == 0L) {
+            return Aggregate.EMPTY;
+        }
+        return new Aggregate(min, max, sum, count);
+    }
+
+    public void reset() {
+        min = Double.NaN;
+        max = Double.NaN;
+        sum = 0D;
+        count = 0L;
+    }
+
+}
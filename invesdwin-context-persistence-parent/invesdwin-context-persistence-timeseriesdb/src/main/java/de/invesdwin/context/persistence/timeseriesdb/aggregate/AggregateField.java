@@ -0,0 +1,49 @@
+package de.invesdwin.context.persistence.timeseriesdb.aggregate;
+
+import java.util.function.ToDoubleFunction;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Declares a numeric field of a value for which min, max, sum and count are stored per chunk. The name identifies the
+ * aggregate in the chunk summaries, thus renaming a field invalidates the stored aggregates (they will then be
+ * calculated by decoding the chunks instead). NaN values are ignored.
+ */
+@Immutable
+public class AggregateField<V> {
+
+    private final String name;
+    private final int nameHash;
+    private final ToDoubleFunction<V> extractor;
+
+    public AggregateField(final String name, final ToDoubleFunction<V> extractor) {
+        this.name = name;
+        this.nameHash = newNameHash(name);
+        this.extractor = extractor;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getNameHash() {
+        return nameHash;
+    }
+
+    public double extract(final V value) {
+        return extractor.applyAsDouble(value);
+    }
+
+    /**
+     * String.hashCode() is specified and thus stable between JVM instances.
+     */
+    public static int newNameHash(final String name) {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
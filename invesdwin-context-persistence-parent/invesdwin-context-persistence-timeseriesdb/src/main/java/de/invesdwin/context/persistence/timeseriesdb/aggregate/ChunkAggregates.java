@@ -0,0 +1,93 @@
+package de.invesdwin.context.persistence.timeseriesdb.aggregate;
+
+import javax.annotation.concurrent.Immutable;
+
+import de.invesdwin.util.streams.buffer.bytes.IByteBuffer;
+
+/**
+ * Aggregates of the declared fields over all values of a chunk, stored as an extension in the MemoryFileSummary. Fields
+ * are identified by their name hash so that declaring additional fields later does not break existing chunks.
+ */
+@Immutable
+public class ChunkAggregates {
+
+    private static final int FIELDCOUNT_INDEX = 0;
+    private static final int FIELDCOUNT_SIZE = Integer.BYTES;
+
+    private static final int FIELDS_INDEX = FIELDCOUNT_INDEX + FIELDCOUNT_SIZE;
+    private static final int FIELD_SIZE = Integer.BYTES + Double.BYTES + Double.BYTES + Double.BYTES + Long.BYTES;
+
+    private final int[] nameHashes;
+    private final Aggregate[] aggregates;
+
+    public ChunkAggregates(final int[] nameHashes, final Aggregate[] aggregates) {
+        if (nameHashes.length != aggregates.length) {
+            throw new IllegalArgumentException(
+                    "nameHashes.length [" + nameHashes.length + "] != aggregates.length [" + aggregates.length + "]");
+        }
+        this.nameHashes = nameHashes;
+        this.aggregates = aggregates;
+    }
+
+    public int getFieldCount() {
+        return aggregates.length;
+    }
+
+    /**
+     * Returns null if the field was not declared when the chunk was written.
+     */
+    public Aggregate getAggregate(final AggregateField<?> field) {
+        final int nameHash = field.getNameHash();
+        for (int i = 0; i < nameHashes.length; i++) {
+            if (nameHashes[i] == nameHash) {
+                return aggregates[i];
+            }
+        }
+        return null;
+    }
+
+    public int getBufferLength() {
+        return FIELDS_INDEX + aggregates.length * FIELD_SIZE;
+    }
+
+    public int toBuffer(final IByteBuffer buffer, final int index) {
+        buffer.putInt(index + FIELDCOUNT_INDEX, aggregates.length);
+        int position = index + FIELDS_INDEX;
+        for (int i = 0; i < aggregates.length; i++) {
+            final Aggregate aggregate = aggregates[i];
+            buffer.putInt(position, nameHashes[i]);
+            position += Integer.BYTES;
+            buffer.putDouble(position, aggregate.getMin());
+            position += Double.BYTES;
+            buffer.putDouble(position, aggregate.getMax());
+            position += Double.BYTES;
+            buffer.putDouble(position, aggregate.getSum());
+            position += Double.BYTES;
+            buffer.putLong(position, aggregate.getCount());
+            position += Long.BYTES;
+        }
+        return position;
+    }
+
+    public static ChunkAggregates fromBuffer(final IByteBuffer buffer, final int index) {
+        final int fieldCount = buffer.getInt(index + FIELDCOUNT_INDEX);
+        final int[] nameHashes = new int[fieldCount];
+        final Aggregate[] aggregates = new Aggregate[fieldCount];
+        int position = index + FIELDS_INDEX;
+        for (int i = 0; i < fieldCount; i++) {
+            nameHashes[i] = buffer.getInt(position);
+            position += Integer.BYTES;
+            final double min = buffer.getDouble(position);
+            position += Double.BYTES;
+            final double max = buffer.getDouble(position);
+            position += Double.BYTES;
+            final double sum = buffer.getDouble(position);
+            position += Double.BYTES;
+            final long count = buffer.getLong(position);
+            position += Long.BYTES;
+            aggregates[i] = new Aggregate(min, max, sum, count);
+        }
+        return new ChunkAggregates(nameHashes, aggregates);
+    }
+
+}
@@ -0,0 +1,46 @@
+package de.invesdwin.context.persistence.timeseriesdb.aggregate;
+
+import java.util.List;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Accumulates the declared aggregates while a chunk is being written.
+ */
+@NotThreadSafe
+public class ChunkAggregatesBuilder<V> {
+
+    private final List<AggregateField<V>> fields;
+    private final AggregateBuilder[] builders;
+
+    public ChunkAggregatesBuilder(final List<AggregateField<V>> fields) {
+        this.fields = fields;
+        this.builders = new AggregateBuilder[fields.size()];
+        for (int i = 0; i < builders.length; i++) {
+            builders[i] = new AggregateBuilder();
+        }
+    }
+
+    public void add(final V value) {
+        for (int i = 0; i < builders.length; i++) {
+            builders[i].add(fields.get(i).extract(value));
+        }
+    }
+
+    public ChunkAggregates build() {
+        final int[] nameHashes = new int[builders.length];
+        final Aggregate[] aggregates = new Aggregate[builders.length];
+        for (int i = 0; i < builders.length; i++) {
+            nameHashes[i] = fields.get(i).getNameHash();
+            aggregates[i] = builders[i].build();
+        }
+        return new ChunkAggregates(nameHashes, aggregates);
+    }
+
+    public void reset() {
+        for (int i = 0; i < builders.length; i++) {
+            builders[i].reset();
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package de.invesdwin.context.persistence.timeseriesdb.block;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Function;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.apache.commons.io.IOUtils;
+
+import de.invesdwin.context.persistence.timeseriesdb.storage.MemoryFileBlockIndex;
+import de.invesdwin.util.math.Integers;
+import it.unimi.dsi.fastutil.io.FastByteArrayInputStream;
+
+/**
+ * Reads the blocks of a chunk written by {@link BlockFramedOutputStream} one after another as one continuous stream.
+ */
+@NotThreadSafe
+public class BlockFramedInputStream extends InputStream {
+
+    private InputStream in;
+    private final MemoryFileBlockIndex blockIndex;
+    private final long memoryLength;
+    private final Function<InputStream, InputStream> decompressorFactory;
+    private InputStream decompressor;
+    private int nextBlock;
+
+    public BlockFramedInputStream(final InputStream in, final MemoryFileBlockIndex blockIndex, final long memoryLength,
+            final Function<InputStream, InputStream> decompressorFactory) {
+        this.in = in;
+        this.blockIndex = blockIndex;
+        this.memoryLength = memoryLength;
+        this.decompressorFactory = decompressorFactory;
+    }
+
+    private boolean nextDecompressor() throws IOException {
+        if (decompressor != null) {
+            decompressor.close();
+            decompressor = null;
+        }
+        if (nextBlock >= blockIndex.getBlockCount()) {
+            return false;
+        }
+        final byte[] compressedBlock = new byte[Integers
+                .checkedCast(blockIndex.getLength(nextBlock, memoryLength))];
+        IOUtils.readFully(in, compressedBlock);
+        decompressor = decompressorFactory.apply(new FastByteArrayInputStream(compressedBlock));
+        nextBlock++;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (true) {
+            if (decompressor != null) {
+                final int b = decompressor.read();
+                if (b != -1) {
+                    return b;
+                }
+            }
+            if (!nextDecompressor()) {
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            if (decompressor != null) {
+                final int read = decompressor.read(b, off, len);
+                if (read != -1) {
+                    return read;
+                }
+            }
+            if (!nextDecompressor()) {
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (decompressor != null) {
+            decompressor.close();
+            decompressor = null;
+        }
+        if (in != null) {
+            in.close();
+            in = null;
+        }
+    }
+
+}
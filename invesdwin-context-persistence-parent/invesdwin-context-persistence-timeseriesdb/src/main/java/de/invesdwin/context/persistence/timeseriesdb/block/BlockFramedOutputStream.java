@@ -0,0 +1,117 @@
+package de.invesdwin.context.persistence.timeseriesdb.block;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Function;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * Writes records in independently compressed blocks of blockSize records. The byte offset of each block (relative to
+ * the start of this stream) is collected so that a block can later be decompressed on its own.
+ */
+@NotThreadSafe
+public class BlockFramedOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final int blockSize;
+    private final Function<OutputStream, OutputStream> compressorFactory;
+    private final LongArrayList blockOffsets;
+    private final CountingOutputStream counting = new CountingOutputStream();
+    private OutputStream compressor;
+    private long position;
+    private int recordCount;
+
+    public BlockFramedOutputStream(final OutputStream out, final int blockSize,
+            final Function<OutputStream, OutputStream> compressorFactory, final LongArrayList blockOffsets) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize should be positive: " + blockSize);
+        }
+        this.out = out;
+        this.blockSize = blockSize;
+        this.compressorFactory = compressorFactory;
+        this.blockOffsets = blockOffsets;
+    }
+
+    /**
+     * Needs to be called before each record is written so that blocks are split on record boundaries.
+     */
+    public void startRecord() throws IOException {
+        if (recordCount > 0 && recordCount % blockSize == 0) {
+            finishBlock();
+        }
+        recordCount++;
+    }
+
+    private void finishBlock() throws IOException {
+        if (compressor != null) {
+            //close so that the compressor writes out its footer bytes (a flush is not sufficient)
+            compressor.close();
+            compressor = null;
+        }
+    }
+
+    private OutputStream getCompressor() {
+        if (compressor == null) {
+            blockOffsets.add(position);
+            compressor = compressorFactory.apply(counting);
+        }
+        return compressor;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        getCompressor().write(b);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        getCompressor().write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (compressor != null) {
+            compressor.flush();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finishBlock();
+        } finally {
+            out.close();
+        }
+    }
+
+    private final class CountingOutputStream extends OutputStream {
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            //the underlying stream is closed when the last block is finished
+        }
+
+    }
+
+}
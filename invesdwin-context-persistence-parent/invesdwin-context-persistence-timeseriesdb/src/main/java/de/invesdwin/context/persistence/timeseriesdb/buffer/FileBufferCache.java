@@ -5,19 +5,24 @@ import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import javax.annotation.concurrent.Immutable;
 import javax.annotation.concurrent.ThreadSafe;
 
 import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.Policy.Eviction;
 import com.github.benmanes.caffeine.cache.RemovalCause;
 
 import de.invesdwin.context.beans.hook.ReinitializationHookManager;
@@ -25,6 +30,8 @@ import de.invesdwin.context.beans.hook.ReinitializationHookSupport;
 import de.invesdwin.context.persistence.timeseriesdb.IDeserializingCloseableIterable;
 import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesProperties;
 import de.invesdwin.context.persistence.timeseriesdb.buffer.source.IFileBufferSource;
+import de.invesdwin.context.persistence.timeseriesdb.metrics.TimeSeriesMetric;
+import de.invesdwin.context.persistence.timeseriesdb.metrics.TimeSeriesMetrics;
 import de.invesdwin.context.persistence.timeseriesdb.storage.MemoryFileSummary;
 import de.invesdwin.context.persistence.timeseriesdb.updater.ATimeSeriesUpdater;
 import de.invesdwin.util.collections.factory.ILockCollectionFactory;
@@ -36,6 +43,7 @@ import de.invesdwin.util.concurrent.lock.ILock;
 import de.invesdwin.util.concurrent.pool.AgronaObjectPool;
 import de.invesdwin.util.concurrent.pool.IObjectPool;
 import de.invesdwin.util.concurrent.pool.MemoryLimit;
+import de.invesdwin.util.error.Throwables;
 import de.invesdwin.util.lang.Objects;
 import de.invesdwin.util.streams.buffer.bytes.IByteBuffer;
 import de.invesdwin.util.streams.buffer.file.IMemoryMappedFile;
@@ -52,16 +60,33 @@ public final class FileBufferCache {
     static {
         if (TimeSeriesProperties.FILE_BUFFER_CACHE_SEGMENTS_ENABLED
                 && TimeSeriesProperties.FILE_BUFFER_CACHE_PRELOAD_ENABLED) {
-            PRELOAD_EXECUTOR = Executors.newFixedThreadPool(FileBufferCache.class.getSimpleName() + "_PRELOAD", 1)
+            PRELOAD_EXECUTOR = Executors
+                    .newFixedThreadPool(FileBufferCache.class.getSimpleName() + "_PRELOAD",
+                            TimeSeriesProperties.FILE_BUFFER_CACHE_PRELOAD_THREADS)
                     .setDynamicThreadName(false);
         } else {
             PRELOAD_EXECUTOR = null;
         }
-        LOAD_EXECUTOR = Executors.newFixedCallerRunsThreadPool(FileBufferCache.class.getSimpleName() + "_LOAD", 1)
+        //preload threads load through the async cache, thus it needs the same parallelism
+        LOAD_EXECUTOR = Executors
+                .newFixedCallerRunsThreadPool(FileBufferCache.class.getSimpleName() + "_LOAD",
+                        TimeSeriesProperties.FILE_BUFFER_CACHE_PRELOAD_THREADS)
                 .setDynamicThreadName(false);
     }
 
-    private static final AsyncLoadingCache<ResultCacheKey, SoftReference<IFileBufferCacheResult>> RESULT_CACHE;
+    /**
+     * When a byte budget is configured, results are weighed by their decoded size and held strongly so that the
+     * budget and not the garbage collector decides what stays cached. Otherwise results are counted and held via soft
+     * references.
+     */
+    private static final long RESULT_CACHE_MAX_BYTES = TimeSeriesProperties.FILE_BUFFER_CACHE_MAX_SEGMENTS_MEGABYTES
+            * 1024L * 1024L;
+    private static final AsyncLoadingCache<ResultCacheKey, ResultHolder> RESULT_CACHE;
+    /**
+     * Chunks of large range scans pass through here instead of the RESULT_CACHE so that they do not evict the chunks of
+     * point lookups.
+     */
+    private static final Cache<ResultCacheKey, ResultHolder> SCAN_BUFFER;
     private static final LoadingCache<FileCacheKey, IMemoryMappedFile> FILE_CACHE;
 
     private static final IObjectPool<ArrayList> LIST_POOL = new AgronaObjectPool<ArrayList>(
@@ -75,14 +100,19 @@ public final class FileBufferCache {
             .newLock(FileBufferCache.class.getSimpleName() + "_RESULT_CACHE_CLEAR_LOCK");
 
     static {
-        RESULT_CACHE = Caffeine.newBuilder()
-                .maximumSize(TimeSeriesProperties.FILE_BUFFER_CACHE_MAX_SEGMENTS_COUNT)
-                .expireAfterAccess(
+        RESULT_CACHE = newResultCacheBuilder().expireAfterAccess(
                         TimeSeriesProperties.FILE_BUFFER_CACHE_EVICTION_TIMEOUT.longValue(FTimeUnit.MILLISECONDS),
                         TimeUnit.MILLISECONDS)
                 .removalListener(FileBufferCache::resultCache_onRemoval)
                 .executor(LOAD_EXECUTOR)
-                .<ResultCacheKey, SoftReference<IFileBufferCacheResult>> buildAsync(FileBufferCache::resultCache_load);
+                .<ResultCacheKey, ResultHolder> buildAsync(FileBufferCache::resultCache_load);
+        SCAN_BUFFER = Caffeine.newBuilder()
+                .maximumSize(TimeSeriesProperties.FILE_BUFFER_CACHE_SCAN_BUFFER_COUNT)
+                .expireAfterAccess(
+                        TimeSeriesProperties.FILE_BUFFER_CACHE_EVICTION_TIMEOUT.longValue(FTimeUnit.MILLISECONDS),
+                        TimeUnit.MILLISECONDS)
+                .removalListener(FileBufferCache::resultCache_onRemoval)
+                .<ResultCacheKey, ResultHolder> build();
         FILE_CACHE = Caffeine.newBuilder()
                 .maximumSize(TimeSeriesProperties.FILE_BUFFER_CACHE_MAX_MMAP_COUNT)
                 .expireAfterAccess(
@@ -94,6 +124,7 @@ public final class FileBufferCache {
             @Override
             public void reinitializationStarted() {
                 RESULT_CACHE.asMap().clear();
+                SCAN_BUFFER.asMap().clear();
                 FILE_CACHE.asMap().clear();
             }
         });
@@ -101,8 +132,28 @@ public final class FileBufferCache {
 
     private FileBufferCache() {}
 
-    private static void resultCache_onRemoval(final ResultCacheKey key,
-            final SoftReference<IFileBufferCacheResult> valueHolder, final RemovalCause cause) {
+    /**
+     * Caffeine uses W-TinyLFU admission for the weight bound, thus a scan over many cold chunks can not flush out
+     * frequently used ones. Without a byte budget each entry weighs 1, which makes the bound a count.
+     */
+    private static Caffeine<ResultCacheKey, ResultHolder> newResultCacheBuilder() {
+        final long maximumWeight;
+        if (isResultCacheWeighed()) {
+            maximumWeight = RESULT_CACHE_MAX_BYTES;
+        } else {
+            maximumWeight = TimeSeriesProperties.FILE_BUFFER_CACHE_MAX_SEGMENTS_COUNT;
+        }
+        return Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((final ResultCacheKey key, final ResultHolder value) -> value.getWeight());
+    }
+
+    public static boolean isResultCacheWeighed() {
+        return RESULT_CACHE_MAX_BYTES > 0L;
+    }
+
+    private static void resultCache_onRemoval(final ResultCacheKey key, final ResultHolder valueHolder,
+            final RemovalCause cause) {
         if (valueHolder == null) {
             return;
         }
@@ -117,7 +168,18 @@ public final class FileBufferCache {
         }
     }
 
-    private static SoftReference resultCache_load(final ResultCacheKey key) throws Exception {
+    private static ResultHolder resultCache_load(final ResultCacheKey key) throws Exception {
+        final long start = TimeSeriesMetrics.startNanos();
+        final ResultHolder valueHolder = newResultHolder(key);
+        if (valueHolder != null) {
+            TimeSeriesMetrics.recordNanosSince(TimeSeriesMetric.FILE_BUFFER_CACHE_LOAD_NANOS, start);
+            TimeSeriesMetrics.increment(TimeSeriesMetric.FILE_BUFFER_CACHE_DECODED_BYTES,
+                    valueHolder.getDecodedLength());
+        }
+        return valueHolder;
+    }
+
+    private static ResultHolder newResultHolder(final ResultCacheKey key) {
         final IFileBufferSource source = key.getSource();
         final ILock readLock = source.getReadLock();
         if (!readLock.tryLock()) {
@@ -128,14 +190,16 @@ public final class FileBufferCache {
         try {
             final IByteBuffer buffer = source.getBuffer();
             if (buffer != null) {
-                return new SoftReference<IFileBufferCacheResult>(
-                        new ByteBufferFileBufferCacheResult<>(buffer, source.getSerde(), source.getFixedLength()));
+                return new ResultHolder(
+                        new ByteBufferFileBufferCacheResult<>(buffer, source.getSerde(), source.getFixedLength()),
+                        buffer.capacity());
             } else {
                 final IDeserializingCloseableIterable iterable = source.getIterable();
                 if (TimeSeriesProperties.FILE_BUFFER_CACHE_FLYWEIGHT_ARRAY_ALLOCATOR != null
                         && iterable.getFixedLength() != null && iterable.getFixedLength() > 0) {
-                    return new SoftReference<IFileBufferCacheResult>(new ByteBufferFileBufferCacheResult<>(
-                            TimeSeriesProperties.FILE_BUFFER_CACHE_FLYWEIGHT_ARRAY_ALLOCATOR, iterable));
+                    final ByteBufferFileBufferCacheResult result = new ByteBufferFileBufferCacheResult<>(
+                            TimeSeriesProperties.FILE_BUFFER_CACHE_FLYWEIGHT_ARRAY_ALLOCATOR, iterable);
+                    return new ResultHolder(result, (long) iterable.size() * iterable.getFixedLength());
                 } else {
                     key.setSource(null);
                     final ArrayList list = LIST_POOL.borrowObject();
@@ -146,7 +210,8 @@ public final class FileBufferCache {
                     } catch (final NoSuchElementException e) {
                         //end reached
                     }
-                    return new SoftReference<IFileBufferCacheResult>(new ArrayFileBufferCacheResult(list));
+                    return new ResultHolder(new ArrayFileBufferCacheResult(list),
+                            newDecodedLength(key.getSummary(), list.size(), iterable.getFixedLength()));
                 }
             }
         } finally {
@@ -154,6 +219,31 @@ public final class FileBufferCache {
         }
     }
 
+    /**
+     * Deserialized objects carry more overhead than this, but the decoded record length is what scales with the chunk.
+     * Without a fixed length the record length is estimated from the first and last value that the summary of the
+     * chunk keeps serialized anyway, the compressed length would understate the decoded size by the compression ratio.
+     */
+    private static long newDecodedLength(final MemoryFileSummary summary, final int size, final Integer fixedLength) {
+        if (fixedLength != null && fixedLength > 0) {
+            return (long) size * fixedLength;
+        } else {
+            final long sampledLength = getLength(summary.getFirstValue()) + getLength(summary.getLastValue());
+            if (sampledLength == 0L) {
+                return summary.getMemoryLength();
+            }
+            final long averageLength = Math.max(1L, sampledLength / 2L);
+            return Math.max(summary.getMemoryLength(), size * averageLength);
+        }
+    }
+
+    private static long getLength(final byte[] value) {
+        if (value == null) {
+            return 0L;
+        }
+        return value.length;
+    }
+
     private static void fileCache_onRemoval(final FileCacheKey key, final IMemoryMappedFile value,
             final RemovalCause cause) {
         synchronized (value.getRefCountLock()) {
@@ -178,19 +268,31 @@ public final class FileBufferCache {
 
     public static void remove(final String hashKey) {
         resultCache_remove(hashKey);
+        scanBuffer_remove(hashKey);
         fileCache_remove(hashKey);
     }
 
     private static void resultCache_remove(final String hashKey) {
-        final Set<Entry<ResultCacheKey, CompletableFuture<SoftReference<IFileBufferCacheResult>>>> entries = RESULT_CACHE
-                .asMap()
-                .entrySet();
-        final Iterator<Entry<ResultCacheKey, CompletableFuture<SoftReference<IFileBufferCacheResult>>>> iterator = entries
-                .iterator();
+        final Set<Entry<ResultCacheKey, CompletableFuture<ResultHolder>>> entries = RESULT_CACHE.asMap().entrySet();
+        final Iterator<Entry<ResultCacheKey, CompletableFuture<ResultHolder>>> iterator = entries.iterator();
         try {
             while (true) {
-                final Entry<ResultCacheKey, CompletableFuture<SoftReference<IFileBufferCacheResult>>> next = iterator
-                        .next();
+                final Entry<ResultCacheKey, CompletableFuture<ResultHolder>> next = iterator.next();
+                if (next.getKey().getHashKey().equals(hashKey)) {
+                    iterator.remove();
+                }
+            }
+        } catch (final NoSuchElementException e) {
+            //end reached
+        }
+    }
+
+    private static void scanBuffer_remove(final String hashKey) {
+        final Set<Entry<ResultCacheKey, ResultHolder>> entries = SCAN_BUFFER.asMap().entrySet();
+        final Iterator<Entry<ResultCacheKey, ResultHolder>> iterator = entries.iterator();
+        try {
+            while (true) {
+                final Entry<ResultCacheKey, ResultHolder> next = iterator.next();
                 if (next.getKey().getHashKey().equals(hashKey)) {
                     iterator.remove();
                 }
@@ -224,14 +326,21 @@ public final class FileBufferCache {
             }
             final ResultCacheKey key = new ResultCacheKey(hashKey, summary, source);
             final ConcurrentMap<ResultCacheKey, ?> asMap = RESULT_CACHE.asMap();
+            if (TimeSeriesMetrics.isEnabled()) {
+                if (asMap.containsKey(key)) {
+                    TimeSeriesMetrics.increment(TimeSeriesMetric.FILE_BUFFER_CACHE_HIT);
+                } else {
+                    TimeSeriesMetrics.increment(TimeSeriesMetric.FILE_BUFFER_CACHE_MISS);
+                }
+            }
             if (MemoryLimit.isMemoryLimitReached() && !asMap.containsKey(key)) {
                 if (!MemoryLimit.maybeClearCacheUnchecked(FileBufferCache.class, "RESULT_CACHE", RESULT_CACHE,
                         RESULT_CACHE_CLEAR_LOCK, TimeSeriesProperties.FILE_BUFFER_CACHE_MIN_SEGMENTS_COUNT)) {
-                    maybeEvictOneResult(asMap);
+                    maybeEvictColdestResult(asMap);
                 }
             }
             try {
-                final SoftReference<IFileBufferCacheResult> valueHolder = Futures.getNoInterrupt(RESULT_CACHE.get(key),
+                final ResultHolder valueHolder = Futures.getNoInterrupt(RESULT_CACHE.get(key),
                         TimeSeriesProperties.FILE_BUFFER_CACHE_ASYNC_TIMEOUT);
                 if (valueHolder == null) {
                     RESULT_CACHE.asMap().remove(key);
@@ -252,22 +361,73 @@ public final class FileBufferCache {
         }
     }
 
-    protected static void maybeEvictOneResult(final ConcurrentMap<ResultCacheKey, ?> asMap) {
+    /**
+     * Returns true if the given (1 based) chunk of a range scan should be admitted into the result caches like a point
+     * lookup, which is the case for the first FILE_BUFFER_CACHE_SCAN_ADMIT_COUNT chunks or when scan resistance is
+     * disabled.
+     */
+    public static boolean isScanAdmitted(final int scannedChunks) {
+        return TimeSeriesProperties.FILE_BUFFER_CACHE_SCAN_ADMIT_COUNT < 0
+                || scannedChunks <= TimeSeriesProperties.FILE_BUFFER_CACHE_SCAN_ADMIT_COUNT;
+    }
+
+    /**
+     * Loads a chunk for a range scan without admitting it into the RESULT_CACHE. A chunk that is already cached is
+     * still served from there, otherwise it is decoded by the calling thread (which might be a readahead thread) and
+     * only kept in the small SCAN_BUFFER.
+     */
+    public static <T> IFileBufferCacheResult<T> getScanResult(final String hashKey, final MemoryFileSummary summary,
+            final IFileBufferSource source) {
+        if (!TimeSeriesProperties.FILE_BUFFER_CACHE_SEGMENTS_ENABLED || source.getReadLock().isLocked()) {
+            //prevent async deadlock when write lock is active
+            return getResultNoCache(source);
+        }
+        final ResultCacheKey key = new ResultCacheKey(hashKey, summary, source);
+        final CompletableFuture<ResultHolder> cached = RESULT_CACHE.getIfPresent(key);
+        if (cached != null && cached.isDone() && !cached.isCompletedExceptionally()) {
+            final IFileBufferCacheResult value = getValue(cached.getNow(null));
+            if (value != null) {
+                return value;
+            }
+        }
+        final IFileBufferCacheResult value = getValue(SCAN_BUFFER.get(key, FileBufferCache::scanBuffer_load));
+        if (value == null) {
+            SCAN_BUFFER.invalidate(key);
+            return getResultNoCache(source);
+        }
+        return value;
+    }
+
+    private static ResultHolder scanBuffer_load(final ResultCacheKey key) {
+        try {
+            return resultCache_load(key);
+        } catch (final Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private static IFileBufferCacheResult getValue(final ResultHolder valueHolder) {
+        if (valueHolder == null) {
+            return null;
+        }
+        return valueHolder.get();
+    }
+
+    /**
+     * Evicts the entry that the W-TinyLFU policy of the cache considers least valuable to make space for loading another
+     * one when the memory limit is reached, or clears the whole cache in maybeClearCacheUnchecked instead.
+     */
+    protected static void maybeEvictColdestResult(final ConcurrentMap<ResultCacheKey, ?> asMap) {
         if (asMap.size() >= TimeSeriesProperties.FILE_BUFFER_CACHE_MIN_SEGMENTS_COUNT) {
             synchronized (RESULT_CACHE) {
                 if (asMap.size() >= TimeSeriesProperties.FILE_BUFFER_CACHE_MIN_SEGMENTS_COUNT) {
-                    /*
-                     * either clear the whole cache in maybeClearCacheUnchecked or evict one element to make space for
-                     * loading another element; don't know which order the iterator will go through the elements
-                     * (hopefully least recently accessed/added), maybe picking a random one or using a heuristic based
-                     * on time comparisons would be better (e.g. when this request is earlier, evict the newest and vice
-                     * versa)
-                     */
-                    final Iterator<ResultCacheKey> iterator = asMap.keySet().iterator();
-                    while (iterator.hasNext()) {
-                        final ResultCacheKey first = iterator.next();
-                        if (asMap.remove(first) != null) {
-                            break;
+                    final Optional<Eviction<ResultCacheKey, ResultHolder>> eviction = RESULT_CACHE.synchronous()
+                            .policy()
+                            .eviction();
+                    if (eviction.isPresent()) {
+                        final Map<ResultCacheKey, ResultHolder> coldest = eviction.get().coldest(1);
+                        for (final ResultCacheKey key : coldest.keySet()) {
+                            asMap.remove(key);
                         }
                     }
                 }
@@ -295,19 +455,11 @@ public final class FileBufferCache {
         }
     }
 
-    public static <T> void preloadResult(final String hashKey, final MemoryFileSummary summary,
-            final IFileBufferSource source) {
-        if (PRELOAD_EXECUTOR == null) {
-            return;
-        }
-        if (PRELOAD_EXECUTOR.getPendingCount() > 3) {
-            return;
-        }
-        if (source.getReadLock().isLocked()) {
-            //prevent async deadlock when write lock is active
-            return;
-        }
-        PRELOAD_EXECUTOR.execute(() -> getResult(hashKey, summary, source));
+    /**
+     * Returns null if preloading is disabled. Used by ReadaheadFileBufferCacheResultIterator to load chunks in parallel.
+     */
+    static WrappedExecutorService getPreloadExecutor() {
+        return PRELOAD_EXECUTOR;
     }
 
     private static final class ResultCacheKey {
@@ -356,6 +508,50 @@ public final class FileBufferCache {
 
     }
 
+    /**
+     * Holds the result strongly and weighs it by its decoded length when the cache has a byte budget, otherwise holds
+     * it softly and counts it. The decoded length is exact for fixed length values and an estimate otherwise, the
+     * object overhead of deserialized values comes on top, thus the budget should leave some headroom in the heap.
+     */
+    @Immutable
+    private static final class ResultHolder {
+
+        private final IFileBufferCacheResult strongValue;
+        private final SoftReference<IFileBufferCacheResult> softValue;
+        private final int weight;
+        private final long decodedLength;
+
+        private ResultHolder(final IFileBufferCacheResult value, final long decodedLength) {
+            this.decodedLength = decodedLength;
+            if (isResultCacheWeighed()) {
+                this.strongValue = value;
+                this.softValue = null;
+                this.weight = (int) Math.max(1L, Math.min(Integer.MAX_VALUE, decodedLength));
+            } else {
+                this.strongValue = null;
+                this.softValue = new SoftReference<IFileBufferCacheResult>(value);
+                this.weight = 1;
+            }
+        }
+
+        public IFileBufferCacheResult get() {
+            if (strongValue != null) {
+                return strongValue;
+            } else {
+                return softValue.get();
+            }
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public long getDecodedLength() {
+            return decodedLength;
+        }
+
+    }
+
     private static final class FileCacheKey {
 
         private final String hashKey;
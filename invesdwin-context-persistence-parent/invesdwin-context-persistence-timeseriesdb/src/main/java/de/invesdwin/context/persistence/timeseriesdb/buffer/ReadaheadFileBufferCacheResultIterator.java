@@ -0,0 +1,168 @@
+package de.invesdwin.context.persistence.timeseriesdb.buffer;
+
+import java.util.ArrayDeque;
+import java.util.function.Function;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.persistence.timeseriesdb.metrics.TimeSeriesMetric;
+import de.invesdwin.context.persistence.timeseriesdb.metrics.TimeSeriesMetrics;
+import de.invesdwin.context.persistence.timeseriesdb.storage.MemoryFileSummary;
+import de.invesdwin.util.collections.iterable.ACloseableIterator;
+import de.invesdwin.util.collections.iterable.ICloseableIterator;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
+import de.invesdwin.util.error.FastNoSuchElementException;
+import de.invesdwin.util.error.Throwables;
+import de.invesdwin.util.lang.string.description.TextDescription;
+
+/**
+ * Loads the next readaheadCount chunks of a range scan in parallel on the preload executor of the FileBufferCache
+ * while the consumer is still iterating the current chunk. Results are returned in the order of the summaries. The
+ * window only moves forward when the consumer requests the next chunk, thus a slow consumer causes back-pressure
+ * instead of filling up the cache. If the executor did not start loading the next chunk yet, the consumer loads it
+ * itself so that a busy pool never delays the scan more than a sequential load would.
+ */
+@NotThreadSafe
+public class ReadaheadFileBufferCacheResultIterator<V> extends ACloseableIterator<IFileBufferCacheResult<V>> {
+
+    private final ICloseableIterator<MemoryFileSummary> summaries;
+    private final Function<MemoryFileSummary, IFileBufferCacheResult<V>> loader;
+    private final WrappedExecutorService executor;
+    private final int readaheadCount;
+    private final ArrayDeque<ReadaheadTask> pending;
+    private int chunks;
+
+    public ReadaheadFileBufferCacheResultIterator(final TextDescription name,
+            final ICloseableIterator<MemoryFileSummary> summaries,
+            final Function<MemoryFileSummary, IFileBufferCacheResult<V>> loader, final int readaheadCount) {
+        super(name);
+        this.summaries = summaries;
+        this.loader = loader;
+        this.executor = FileBufferCache.getPreloadExecutor();
+        if (executor == null) {
+            this.readaheadCount = 1;
+        } else {
+            this.readaheadCount = Math.max(1, readaheadCount);
+        }
+        this.pending = new ArrayDeque<>(this.readaheadCount);
+    }
+
+    private void fill() {
+        while (pending.size() < readaheadCount && summaries.hasNext()) {
+            final ReadaheadTask task = new ReadaheadTask(summaries.next());
+            pending.add(task);
+            if (executor != null) {
+                executor.execute(task);
+            }
+        }
+    }
+
+    @Override
+    protected boolean innerHasNext() {
+        return !pending.isEmpty() || summaries.hasNext();
+    }
+
+    @Override
+    protected IFileBufferCacheResult<V> innerNext() {
+        fill();
+        final ReadaheadTask head = pending.pollFirst();
+        if (head == null) {
+            throw FastNoSuchElementException.getInstance("ReadaheadFileBufferCacheResultIterator: pending is empty");
+        }
+        //keep the pipeline busy while the consumer works on the head
+        fill();
+        chunks++;
+        return head.await();
+    }
+
+    @Override
+    protected void innerClose() {
+        TimeSeriesMetrics.record(TimeSeriesMetric.QUERY_CHUNKS, chunks);
+        while (!pending.isEmpty()) {
+            pending.pollFirst().abandon();
+        }
+        summaries.close();
+    }
+
+    @ThreadSafe
+    private final class ReadaheadTask implements Runnable {
+
+        private final MemoryFileSummary summary;
+        @GuardedBy("this")
+        private boolean started;
+        @GuardedBy("this")
+        private boolean done;
+        @GuardedBy("this")
+        private boolean abandoned;
+        @GuardedBy("this")
+        private IFileBufferCacheResult<V> result;
+        @GuardedBy("this")
+        private Throwable error;
+
+        private ReadaheadTask(final MemoryFileSummary summary) {
+            this.summary = summary;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (started || abandoned) {
+                    return;
+                }
+                started = true;
+            }
+            IFileBufferCacheResult<V> loaded = null;
+            Throwable loadError = null;
+            try {
+                loaded = loader.apply(summary);
+            } catch (final Throwable t) {
+                loadError = t;
+            }
+            synchronized (this) {
+                if (abandoned) {
+                    if (loaded != null) {
+                        loaded.close();
+                    }
+                } else {
+                    result = loaded;
+                    error = loadError;
+                }
+                done = true;
+                notifyAll();
+            }
+        }
+
+        public IFileBufferCacheResult<V> await() {
+            //caller runs if the executor did not pick this up yet
+            run();
+            synchronized (this) {
+                while (!done) {
+                    try {
+                        wait();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException(e);
+                    }
+                }
+                if (error != null) {
+                    throw Throwables.propagate(error);
+                }
+                final IFileBufferCacheResult<V> ret = result;
+                result = null;
+                return ret;
+            }
+        }
+
+        public synchronized void abandon() {
+            abandoned = true;
+            if (result != null) {
+                result.close();
+                result = null;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,65 @@
+package de.invesdwin.context.persistence.timeseriesdb.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Reads bits MSB first as written by BitOutputStream.
+ */
+@NotThreadSafe
+public class BitInputStream extends InputStream {
+
+    private final InputStream in;
+    private int buffer;
+    private int bufferedBits;
+
+    public BitInputStream(final InputStream in) {
+        this.in = in;
+    }
+
+    public boolean readBit() throws IOException {
+        return readBits(1) != 0L;
+    }
+
+    /**
+     * Reads count bits, count can be between 1 and 64.
+     */
+    public long readBits(final int count) throws IOException {
+        long value = 0L;
+        int remaining = count;
+        while (remaining > 0) {
+            if (bufferedBits == 0) {
+                final int read = in.read();
+                if (read < 0) {
+                    throw new EOFException();
+                }
+                buffer = read;
+                bufferedBits = Byte.SIZE;
+            }
+            final int chunk = Math.min(bufferedBits, remaining);
+            final int chunkBits = (buffer >>> (bufferedBits - chunk)) & ((1 << chunk) - 1);
+            value = (value << chunk) | chunkBits;
+            bufferedBits -= chunk;
+            remaining -= chunk;
+        }
+        return value;
+    }
+
+    @Override
+    public int read() throws IOException {
+        try {
+            return (int) readBits(Byte.SIZE);
+        } catch (final EOFException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
@@ -0,0 +1,77 @@
+package de.invesdwin.context.persistence.timeseriesdb.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Writes bits MSB first, the last byte is padded with zeros on close.
+ */
+@NotThreadSafe
+public class BitOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private long buffer;
+    private int bufferedBits;
+
+    public BitOutputStream(final OutputStream out) {
+        this.out = out;
+    }
+
+    public void writeBit(final boolean bit) throws IOException {
+        writeBits(bit ? 1L : 0L, 1);
+    }
+
+    /**
+     * Writes the lowest count bits of value, count can be between 1 and 64.
+     */
+    public void writeBits(final long value, final int count) throws IOException {
+        int remaining = count;
+        while (remaining > 0) {
+            final int free = Long.SIZE - bufferedBits;
+            final int chunk = Math.min(free, remaining);
+            final long chunkBits = (value >>> (remaining - chunk)) & mask(chunk);
+            buffer = (chunk == Long.SIZE ? 0L : buffer << chunk) | chunkBits;
+            bufferedBits += chunk;
+            remaining -= chunk;
+            while (bufferedBits >= Byte.SIZE) {
+                bufferedBits -= Byte.SIZE;
+                out.write((int) (buffer >>> bufferedBits));
+            }
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        writeBits(b, Byte.SIZE);
+    }
+
+    private void flushBits() throws IOException {
+        if (bufferedBits > 0) {
+            out.write((int) (buffer << (Byte.SIZE - bufferedBits)));
+            bufferedBits = 0;
+        }
+        buffer = 0L;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        //only whole bytes can be flushed
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBits();
+        out.close();
+    }
+
+    static long mask(final int bits) {
+        if (bits == Long.SIZE) {
+            return -1L;
+        }
+        return (1L << bits) - 1L;
+    }
+
+}
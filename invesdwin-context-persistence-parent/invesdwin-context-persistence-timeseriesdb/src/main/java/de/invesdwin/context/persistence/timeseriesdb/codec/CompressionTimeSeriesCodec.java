@@ -0,0 +1,49 @@
+package de.invesdwin.context.persistence.timeseriesdb.codec;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.annotation.concurrent.Immutable;
+
+import de.invesdwin.context.integration.compression.ICompressionFactory;
+
+/**
+ * Generic codec on opaque bytes. Register multiple instances with different ids to mix compression algorithms or levels
+ * (e.g. fast vs high compression) within a key.
+ */
+@Immutable
+public class CompressionTimeSeriesCodec implements ITimeSeriesCodec {
+
+    private final byte id;
+    private final ICompressionFactory compressionFactory;
+    private final boolean large;
+
+    public CompressionTimeSeriesCodec(final byte id, final ICompressionFactory compressionFactory,
+            final boolean large) {
+        TimeSeriesCodecs.assertId(id);
+        this.id = id;
+        this.compressionFactory = compressionFactory;
+        this.large = large;
+    }
+
+    @Override
+    public byte getId() {
+        return id;
+    }
+
+    @Override
+    public OutputStream newEncoder(final OutputStream out) {
+        return compressionFactory.newCompressor(out, large);
+    }
+
+    @Override
+    public InputStream newDecoder(final InputStream in) {
+        return compressionFactory.newDecompressor(in);
+    }
+
+    @Override
+    public Integer getRecordLength() {
+        return null;
+    }
+
+}
@@ -0,0 +1,251 @@
+package de.invesdwin.context.persistence.timeseriesdb.codec;
+
+import java.io.IOException;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Built in field encodings. Numeric fields are interpreted as big endian 8 byte values. The encodings are lossless for
+ * any byte content, but only compress well when the serde writes big endian.
+ */
+@Immutable
+public final class FieldEncodings {
+
+    private static final int LONG_LENGTH = Long.BYTES;
+    //zigzag encoded delta of delta buckets as in the gorilla paper, the last bucket stores the full 64 bits
+    private static final int[] DELTA_OF_DELTA_BUCKET_BITS = { 7, 9, 12, 32 };
+    private static final int XOR_LEADING_BITS = 6;
+    private static final int XOR_MEANINGFUL_BITS = 6;
+
+    private FieldEncodings() {}
+
+    /**
+     * Copies the bytes of the field without transformation.
+     */
+    public static IFieldEncoding raw(final int length) {
+        return new IFieldEncoding() {
+            @Override
+            public int getLength() {
+                return length;
+            }
+
+            @Override
+            public IFieldCodec newCodec() {
+                return new RawFieldCodec(length);
+            }
+        };
+    }
+
+    /**
+     * For monotonic long timestamps (e.g. FDate millis or nanos) with regular intervals.
+     */
+    public static IFieldEncoding deltaOfDelta() {
+        return new IFieldEncoding() {
+            @Override
+            public int getLength() {
+                return LONG_LENGTH;
+            }
+
+            @Override
+            public IFieldCodec newCodec() {
+                return new DeltaOfDeltaFieldCodec();
+            }
+        };
+    }
+
+    /**
+     * For slowly changing doubles (e.g. prices), encodes the XOR against the previous value as in the gorilla paper.
+     */
+    public static IFieldEncoding xor() {
+        return new IFieldEncoding() {
+            @Override
+            public int getLength() {
+                return LONG_LENGTH;
+            }
+
+            @Override
+            public IFieldCodec newCodec() {
+                return new XorFieldCodec();
+            }
+        };
+    }
+
+    static long getLong(final byte[] bytes, final int offset) {
+        long value = 0L;
+        for (int i = 0; i < LONG_LENGTH; i++) {
+            value = (value << Byte.SIZE) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    static void putLong(final byte[] bytes, final int offset, final long value) {
+        for (int i = LONG_LENGTH - 1; i >= 0; i--) {
+            bytes[offset + i] = (byte) (value >>> ((LONG_LENGTH - 1 - i) * Byte.SIZE));
+        }
+    }
+
+    @NotThreadSafe
+    private static final class RawFieldCodec implements IFieldCodec {
+
+        private final int length;
+
+        private RawFieldCodec(final int length) {
+            this.length = length;
+        }
+
+        @Override
+        public void encode(final byte[] record, final int offset, final BitOutputStream out) throws IOException {
+            for (int i = 0; i < length; i++) {
+                out.writeBits(record[offset + i], Byte.SIZE);
+            }
+        }
+
+        @Override
+        public void decode(final BitInputStream in, final byte[] record, final int offset) throws IOException {
+            for (int i = 0; i < length; i++) {
+                record[offset + i] = (byte) in.readBits(Byte.SIZE);
+            }
+        }
+
+    }
+
+    @NotThreadSafe
+    private static final class DeltaOfDeltaFieldCodec implements IFieldCodec {
+
+        private boolean first = true;
+        private long prevValue;
+        private long prevDelta;
+
+        @Override
+        public void encode(final byte[] record, final int offset, final BitOutputStream out) throws IOException {
+            final long value = getLong(record, offset);
+            if (first) {
+                first = false;
+                out.writeBits(value, Long.SIZE);
+            } else {
+                final long delta = value - prevValue;
+                final long deltaOfDelta = delta - prevDelta;
+                final long zigzag = (deltaOfDelta << 1) ^ (deltaOfDelta >> (Long.SIZE - 1));
+                if (zigzag == 0L) {
+                    out.writeBit(false);
+                } else {
+                    writeBucket(out, zigzag);
+                }
+                prevDelta = delta;
+            }
+            prevValue = value;
+        }
+
+        private void writeBucket(final BitOutputStream out, final long zigzag) throws IOException {
+            for (int i = 0; i < DELTA_OF_DELTA_BUCKET_BITS.length; i++) {
+                final int bits = DELTA_OF_DELTA_BUCKET_BITS[i];
+                if (zigzag >>> bits == 0L) {
+                    //prefix of i+1 ones followed by a zero
+                    out.writeBits((1L << (i + 2)) - 2L, i + 2);
+                    out.writeBits(zigzag, bits);
+                    return;
+                }
+            }
+            //prefix of only ones without terminating zero
+            final int prefixBits = DELTA_OF_DELTA_BUCKET_BITS.length + 1;
+            out.writeBits((1L << prefixBits) - 1L, prefixBits);
+            out.writeBits(zigzag, Long.SIZE);
+        }
+
+        @Override
+        public void decode(final BitInputStream in, final byte[] record, final int offset) throws IOException {
+            final long value;
+            if (first) {
+                first = false;
+                value = in.readBits(Long.SIZE);
+            } else {
+                final long zigzag = readBucket(in);
+                final long deltaOfDelta = (zigzag >>> 1) ^ -(zigzag & 1L);
+                final long delta = prevDelta + deltaOfDelta;
+                value = prevValue + delta;
+                prevDelta = delta;
+            }
+            prevValue = value;
+            putLong(record, offset, value);
+        }
+
+        private long readBucket(final BitInputStream in) throws IOException {
+            if (!in.readBit()) {
+                return 0L;
+            }
+            for (int i = 0; i < DELTA_OF_DELTA_BUCKET_BITS.length; i++) {
+                if (!in.readBit()) {
+                    return in.readBits(DELTA_OF_DELTA_BUCKET_BITS[i]);
+                }
+            }
+            return in.readBits(Long.SIZE);
+        }
+
+    }
+
+    @NotThreadSafe
+    private static final class XorFieldCodec implements IFieldCodec {
+
+        private boolean first = true;
+        private long prevBits;
+        private int prevLeading = -1;
+        private int prevTrailing;
+
+        @Override
+        public void encode(final byte[] record, final int offset, final BitOutputStream out) throws IOException {
+            final long bits = getLong(record, offset);
+            if (first) {
+                first = false;
+                out.writeBits(bits, Long.SIZE);
+            } else {
+                final long xor = bits ^ prevBits;
+                if (xor == 0L) {
+                    out.writeBit(false);
+                } else {
+                    out.writeBit(true);
+                    final int leading = Math.min(Long.numberOfLeadingZeros(xor), (1 << XOR_LEADING_BITS) - 1);
+                    final int trailing = Long.numberOfTrailingZeros(xor);
+                    if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+                        //reuse the previous window
+                        out.writeBit(false);
+                        out.writeBits(xor >>> prevTrailing, Long.SIZE - prevLeading - prevTrailing);
+                    } else {
+                        out.writeBit(true);
+                        final int meaningful = Long.SIZE - leading - trailing;
+                        out.writeBits(leading, XOR_LEADING_BITS);
+                        out.writeBits(meaningful - 1, XOR_MEANINGFUL_BITS);
+                        out.writeBits(xor >>> trailing, meaningful);
+                        prevLeading = leading;
+                        prevTrailing = trailing;
+                    }
+                }
+            }
+            prevBits = bits;
+        }
+
+        @Override
+        public void decode(final BitInputStream in, final byte[] record, final int offset) throws IOException {
+            final long bits;
+            if (first) {
+                first = false;
+                bits = in.readBits(Long.SIZE);
+            } else if (!in.readBit()) {
+                bits = prevBits;
+            } else {
+                if (in.readBit()) {
+                    prevLeading = (int) in.readBits(XOR_LEADING_BITS);
+                    final int meaningful = (int) in.readBits(XOR_MEANINGFUL_BITS) + 1;
+                    prevTrailing = Long.SIZE - prevLeading - meaningful;
+                }
+                final int meaningful = Long.SIZE - prevLeading - prevTrailing;
+                final long xor = in.readBits(meaningful) << prevTrailing;
+                bits = prevBits ^ xor;
+            }
+            prevBits = bits;
+            putLong(record, offset, bits);
+        }
+
+    }
+
+}
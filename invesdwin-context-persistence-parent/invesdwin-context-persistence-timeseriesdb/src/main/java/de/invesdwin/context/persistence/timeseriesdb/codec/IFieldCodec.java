@@ -0,0 +1,14 @@
+package de.invesdwin.context.persistence.timeseriesdb.codec;
+
+import java.io.IOException;
+
+/**
+ * Stateful encoder/decoder for one field of a fixed length record, a new instance is used for each chunk or block.
+ */
+public interface IFieldCodec {
+
+    void encode(byte[] record, int offset, BitOutputStream out) throws IOException;
+
+    void decode(BitInputStream in, byte[] record, int offset) throws IOException;
+
+}
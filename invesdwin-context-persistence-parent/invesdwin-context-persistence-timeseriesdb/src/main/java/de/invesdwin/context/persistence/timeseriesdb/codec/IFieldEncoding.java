@@ -0,0 +1,12 @@
+package de.invesdwin.context.persistence.timeseriesdb.codec;
+
+public interface IFieldEncoding {
+
+    /**
+     * The number of bytes of this field inside the record.
+     */
+    int getLength();
+
+    IFieldCodec newCodec();
+
+}
@@ -0,0 +1,28 @@
+package de.invesdwin.context.persistence.timeseriesdb.codec;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Encodes the serialized values of a chunk (or of a block inside a chunk). The id is stored in the MemoryFileSummary of
+ * each chunk, thus codecs can be changed for new chunks without rewriting existing ones as long as codecs with the old
+ * ids stay registered.
+ */
+public interface ITimeSeriesCodec {
+
+    /**
+     * Id 0 is reserved for the compression factory of the table, which is also used for chunks that were written
+     * before codecs were introduced.
+     */
+    byte getId();
+
+    OutputStream newEncoder(OutputStream out);
+
+    InputStream newDecoder(InputStream in);
+
+    /**
+     * Returns null if the codec works on arbitrary bytes, otherwise the fixed length of the records it expects.
+     */
+    Integer getRecordLength();
+
+}
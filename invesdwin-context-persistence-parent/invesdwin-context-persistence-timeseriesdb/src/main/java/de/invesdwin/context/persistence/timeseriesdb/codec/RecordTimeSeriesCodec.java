@@ -0,0 +1,209 @@
+package de.invesdwin.context.persistence.timeseriesdb.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.integration.compression.ICompressionFactory;
+
+/**
+ * Encodes fixed length records field by field (e.g. delta of delta for the timestamp and xor for prices) into a bit
+ * stream that is additionally compressed by the given compression factory. Each record is prefixed with a one bit so
+ * that the end of the stream can be detected despite the padding of the last byte.
+ */
+@Immutable
+public class RecordTimeSeriesCodec implements ITimeSeriesCodec {
+
+    private final byte id;
+    private final IFieldEncoding[] fields;
+    private final int recordLength;
+    private final ICompressionFactory compressionFactory;
+    private final boolean large;
+
+    public RecordTimeSeriesCodec(final byte id, final ICompressionFactory compressionFactory, final boolean large,
+            final IFieldEncoding... fields) {
+        TimeSeriesCodecs.assertId(id);
+        this.id = id;
+        this.fields = fields;
+        int length = 0;
+        for (int i = 0; i < fields.length; i++) {
+            length += fields[i].getLength();
+        }
+        this.recordLength = length;
+        this.compressionFactory = compressionFactory;
+        this.large = large;
+    }
+
+    @Override
+    public byte getId() {
+        return id;
+    }
+
+    @Override
+    public Integer getRecordLength() {
+        return recordLength;
+    }
+
+    private IFieldCodec[] newFieldCodecs() {
+        final IFieldCodec[] codecs = new IFieldCodec[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            codecs[i] = fields[i].newCodec();
+        }
+        return codecs;
+    }
+
+    @Override
+    public OutputStream newEncoder(final OutputStream out) {
+        return new RecordEncoderOutputStream(new BitOutputStream(compressionFactory.newCompressor(out, large)));
+    }
+
+    @Override
+    public InputStream newDecoder(final InputStream in) {
+        return new RecordDecoderInputStream(new BitInputStream(compressionFactory.newDecompressor(in)));
+    }
+
+    @NotThreadSafe
+    private final class RecordEncoderOutputStream extends OutputStream {
+
+        private final BitOutputStream out;
+        private final IFieldCodec[] codecs = newFieldCodecs();
+        private final byte[] record = new byte[recordLength];
+        private int position;
+
+        private RecordEncoderOutputStream(final BitOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            record[position++] = (byte) b;
+            maybeEncodeRecord();
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            int offset = off;
+            int remaining = len;
+            while (remaining > 0) {
+                final int count = Math.min(remaining, recordLength - position);
+                System.arraycopy(b, offset, record, position, count);
+                position += count;
+                offset += count;
+                remaining -= count;
+                maybeEncodeRecord();
+            }
+        }
+
+        private void maybeEncodeRecord() throws IOException {
+            if (position < recordLength) {
+                return;
+            }
+            out.writeBit(true);
+            int fieldOffset = 0;
+            for (int i = 0; i < codecs.length; i++) {
+                codecs[i].encode(record, fieldOffset, out);
+                fieldOffset += fields[i].getLength();
+            }
+            position = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (position != 0) {
+                throw new IllegalStateException(
+                        "Incomplete record with [" + position + "] of [" + recordLength + "] bytes");
+            }
+            //end marker, trailing padding bits are zeros as well
+            out.writeBit(false);
+            out.close();
+        }
+
+    }
+
+    @NotThreadSafe
+    private final class RecordDecoderInputStream extends InputStream {
+
+        private final BitInputStream in;
+        private final IFieldCodec[] codecs = newFieldCodecs();
+        private final byte[] record = new byte[recordLength];
+        private int position = recordLength;
+        private boolean finished;
+
+        private RecordDecoderInputStream(final BitInputStream in) {
+            this.in = in;
+        }
+
+        private boolean maybeDecodeRecord() throws IOException {
+            if (position < recordLength) {
+                return true;
+            }
+            if (finished) {
+                return false;
+            }
+            final boolean hasRecord;
+            try {
+                hasRecord = in.readBit();
+            } catch (final EOFException e) {
+                //empty stream
+                finished = true;
+                return false;
+            }
+            if (!hasRecord) {
+                finished = true;
+                return false;
+            }
+            int fieldOffset = 0;
+            for (int i = 0; i < codecs.length; i++) {
+                codecs[i].decode(in, record, fieldOffset);
+                fieldOffset += fields[i].getLength();
+            }
+            position = 0;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!maybeDecodeRecord()) {
+                return -1;
+            }
+            return record[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int offset = off;
+            int remaining = len;
+            while (remaining > 0 && maybeDecodeRecord()) {
+                final int count = Math.min(remaining, recordLength - position);
+                System.arraycopy(record, position, b, offset, count);
+                position += count;
+                offset += count;
+                remaining -= count;
+            }
+            final int read = offset - off;
+            if (read == 0) {
+                return -1;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,61 @@
+package de.invesdwin.context.persistence.timeseriesdb.codec;
+
+import java.util.List;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The codecs of a table. The first codec is used for writing new chunks, all of them can be referenced by existing
+ * chunks. Thus a codec should only be removed once no chunk references its id anymore.
+ */
+@Immutable
+public class TimeSeriesCodecs {
+
+    public static final byte DEFAULT_ID = 0;
+
+    private final ITimeSeriesCodec[] codecs = new ITimeSeriesCodec[Byte.MAX_VALUE + 1];
+    private final ITimeSeriesCodec writeCodec;
+
+    public TimeSeriesCodecs(final List<? extends ITimeSeriesCodec> codecs) {
+        for (int i = 0; i < codecs.size(); i++) {
+            final ITimeSeriesCodec codec = codecs.get(i);
+            final byte id = codec.getId();
+            assertId(id);
+            if (this.codecs[id] != null) {
+                throw new IllegalArgumentException("Duplicate codec id [" + id + "]: " + this.codecs[id] + " and "
+                        + codec);
+            }
+            this.codecs[id] = codec;
+        }
+        this.writeCodec = codecs.get(0);
+    }
+
+    public ITimeSeriesCodec getWriteCodec() {
+        return writeCodec;
+    }
+
+    public boolean containsId(final byte id) {
+        return id > 0 && codecs[id] != null;
+    }
+
+    public ITimeSeriesCodec getCodec(final byte id) {
+        final ITimeSeriesCodec codec;
+        if (id > 0) {
+            codec = codecs[id];
+        } else {
+            codec = null;
+        }
+        if (codec == null) {
+            throw new IllegalStateException("No codec registered for id [" + id + "]");
+        }
+        return codec;
+    }
+
+    static void assertId(final byte id) {
+        if (id <= DEFAULT_ID) {
+            throw new IllegalArgumentException(
+                    "Codec id [" + id + "] should be positive since [" + DEFAULT_ID + "] is reserved");
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package de.invesdwin.context.persistence.timeseriesdb.column;
+
+import java.util.Arrays;
+
+import javax.annotation.concurrent.Immutable;
+
+import de.invesdwin.util.marshallers.serde.ISerde;
+
+/**
+ * Describes how a fixed length record is split into columns. Column 0 is expected to be the time column. When it holds
+ * the end time as epoch millis in an 8 byte long (written via IByteBuffer.putLong like FDateSerde does), range scans
+ * can binary search it without deserializing any values.
+ */
+@Immutable
+public final class ColumnLayout {
+
+    public static final int TIME_COLUMN = 0;
+
+    private final int[] columnLengths;
+    private final int[] columnOffsets;
+    private final int[] byteToColumn;
+    private final int rowLength;
+
+    private ColumnLayout(final int[] columnLengths) {
+        if (columnLengths.length == 0) {
+            throw new IllegalArgumentException("columnLengths should not be empty");
+        }
+        this.columnLengths = columnLengths.clone();
+        this.columnOffsets = new int[columnLengths.length];
+        int offset = 0;
+        for (int i = 0; i < columnLengths.length; i++) {
+            final int columnLength = columnLengths[i];
+            if (columnLength <= 0) {
+                throw new IllegalArgumentException(
+                        "columnLengths[" + i + "] should be positive: " + Arrays.toString(columnLengths));
+            }
+            columnOffsets[i] = offset;
+            offset += columnLength;
+        }
+        this.rowLength = offset;
+        this.byteToColumn = new int[rowLength];
+        for (int i = 0; i < columnLengths.length; i++) {
+            Arrays.fill(byteToColumn, columnOffsets[i], columnOffsets[i] + columnLengths[i], i);
+        }
+    }
+
+    public int getColumnCount() {
+        return columnLengths.length;
+    }
+
+    public int getColumnLength(final int column) {
+        return columnLengths[column];
+    }
+
+    public int getColumnOffset(final int column) {
+        return columnOffsets[column];
+    }
+
+    /**
+     * Returns the column that contains the given byte position of a row.
+     */
+    public int getColumn(final int rowPosition) {
+        return byteToColumn[rowPosition];
+    }
+
+    public int getRowLength() {
+        return rowLength;
+    }
+
+    /**
+     * Returns true when the time column has the length of the epoch millis so that it can be binary searched.
+     */
+    public boolean isTimeColumnBisectable() {
+        return columnLengths[TIME_COLUMN] == Long.BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return ColumnLayout.class.getSimpleName() + Arrays.toString(columnLengths);
+    }
+
+    public static ColumnLayout of(final int... columnLengths) {
+        return new ColumnLayout(columnLengths);
+    }
+
+    /**
+     * Returns null when the serde does not declare a column layout or when the values are not of fixed length.
+     */
+    public static ColumnLayout of(final ISerde<?> serde, final Integer fixedLength) {
+        if (fixedLength == null || fixedLength <= 0 || !(serde instanceof IColumnarSerde)) {
+            return null;
+        }
+        final IColumnarSerde<?> columnarSerde = (IColumnarSerde<?>) serde;
+        final ColumnLayout layout = columnarSerde.getColumnLayout();
+        if (layout == null) {
+            return null;
+        }
+        if (layout.getRowLength() != fixedLength) {
+            throw new IllegalArgumentException(
+                    "ColumnLayout rowLength [" + layout.getRowLength() + "] != fixedLength [" + fixedLength + "]");
+        }
+        return layout;
+    }
+
+}
@@ -0,0 +1,67 @@
+package de.invesdwin.context.persistence.timeseriesdb.column;
+
+import java.util.Arrays;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Selects the columns of a {@link ColumnLayout} that a scan decodes. The time column is always included since it is
+ * needed to find the range of the scan. Columns that are not projected are neither decompressed nor copied, they are
+ * read as zero bytes, thus the deserialized values only contain meaningful data in the projected fields.
+ */
+@Immutable
+public final class ColumnProjection {
+
+    private final int[] columns;
+    private final boolean[] projected;
+
+    private ColumnProjection(final int[] columns) {
+        int maxColumn = ColumnLayout.TIME_COLUMN;
+        for (int i = 0; i < columns.length; i++) {
+            final int column = columns[i];
+            if (column < 0) {
+                throw new IllegalArgumentException("columns should not be negative: " + Arrays.toString(columns));
+            }
+            maxColumn = Math.max(maxColumn, column);
+        }
+        this.projected = new boolean[maxColumn + 1];
+        projected[ColumnLayout.TIME_COLUMN] = true;
+        for (int i = 0; i < columns.length; i++) {
+            projected[columns[i]] = true;
+        }
+        int count = 0;
+        for (int i = 0; i < projected.length; i++) {
+            if (projected[i]) {
+                count++;
+            }
+        }
+        this.columns = new int[count];
+        int index = 0;
+        for (int i = 0; i < projected.length; i++) {
+            if (projected[i]) {
+                this.columns[index++] = i;
+            }
+        }
+    }
+
+    public boolean isProjected(final int column) {
+        return column < projected.length && projected[column];
+    }
+
+    /**
+     * Returns the sorted projected columns including the time column.
+     */
+    public int[] getColumns() {
+        return columns.clone();
+    }
+
+    @Override
+    public String toString() {
+        return ColumnProjection.class.getSimpleName() + Arrays.toString(columns);
+    }
+
+    public static ColumnProjection of(final int... columns) {
+        return new ColumnProjection(columns);
+    }
+
+}
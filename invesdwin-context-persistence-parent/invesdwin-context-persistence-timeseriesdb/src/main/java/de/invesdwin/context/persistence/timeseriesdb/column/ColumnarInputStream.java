@@ -0,0 +1,296 @@
+package de.invesdwin.context.persistence.timeseriesdb.column;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.apache.commons.io.IOUtils;
+
+import de.invesdwin.util.streams.InputStreams;
+import de.invesdwin.util.streams.buffer.bytes.ByteBuffers;
+import de.invesdwin.util.streams.buffer.bytes.IByteBuffer;
+import it.unimi.dsi.fastutil.io.FastByteArrayInputStream;
+
+/**
+ * Reads a chunk written by {@link ColumnarOutputStream}. Columns are only decompressed when they are accessed, either
+ * directly via {@link #getColumn(int)}, when binary searching the time column or when reading row wise bytes via the
+ * InputStream interface. With a {@link ColumnProjection} the columns that are not projected are never decompressed.
+ */
+@NotThreadSafe
+public class ColumnarInputStream extends InputStream {
+
+    private InputStream in;
+    private final ColumnLayout layout;
+    private final Function<InputStream, InputStream> decompressorFactory;
+    private final int rowCount;
+    private final byte[][] compressedColumns;
+    private final byte[][] columns;
+    private final long length;
+    private long position;
+    private ColumnProjection projection;
+    private IByteBuffer timeColumn;
+
+    public ColumnarInputStream(final InputStream in, final ColumnLayout layout,
+            final Function<InputStream, InputStream> decompressorFactory) throws IOException {
+        this.in = in;
+        this.layout = layout;
+        this.decompressorFactory = decompressorFactory;
+        final int columnCount = layout.getColumnCount();
+        this.compressedColumns = new byte[columnCount][];
+        this.columns = new byte[columnCount][];
+        int readColumnCount;
+        try {
+            readColumnCount = InputStreams.readInt(in);
+        } catch (final EOFException e) {
+            //empty chunk
+            readColumnCount = -1;
+        }
+        if (readColumnCount == -1) {
+            this.rowCount = 0;
+        } else {
+            if (readColumnCount != columnCount) {
+                throw new IllegalStateException(
+                        "columnCount [" + readColumnCount + "] does not match expected layout: " + layout);
+            }
+            this.rowCount = InputStreams.readInt(in);
+            final int[] compressedLengths = new int[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                compressedLengths[c] = InputStreams.readInt(in);
+            }
+            for (int c = 0; c < columnCount; c++) {
+                final byte[] compressedColumn = new byte[compressedLengths[c]];
+                IOUtils.readFully(in, compressedColumn);
+                compressedColumns[c] = compressedColumn;
+            }
+        }
+        this.length = (long) rowCount * layout.getRowLength();
+    }
+
+    public ColumnLayout getLayout() {
+        return layout;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Null reads all columns.
+     */
+    public void setProjection(final ColumnProjection projection) {
+        this.projection = projection;
+    }
+
+    public ColumnProjection getProjection() {
+        return projection;
+    }
+
+    private boolean isProjected(final int column) {
+        return projection == null || projection.isProjected(column);
+    }
+
+    /**
+     * Returns the decompressed bytes of the given column, each row having getLayout().getColumnLength(column) bytes.
+     */
+    public byte[] getColumn(final int column) throws IOException {
+        byte[] decoded = columns[column];
+        if (decoded == null) {
+            decoded = new byte[rowCount * layout.getColumnLength(column)];
+            if (decoded.length > 0) {
+                try (InputStream decompressor = decompressorFactory
+                        .apply(new FastByteArrayInputStream(compressedColumns[column]))) {
+                    IOUtils.readFully(decompressor, decoded);
+                }
+            }
+            columns[column] = decoded;
+            //free memory
+            compressedColumns[column] = null;
+        }
+        return decoded;
+    }
+
+    /**
+     * Returns the end time millis of the given row, only decompresses the time column.
+     */
+    public long getTimeMillis(final int row) throws IOException {
+        return getTimeColumn().getLong(row * Long.BYTES);
+    }
+
+    private IByteBuffer getTimeColumn() throws IOException {
+        if (timeColumn == null) {
+            if (!layout.isTimeColumnBisectable()) {
+                throw new IllegalStateException("time column can not be bisected for layout: " + layout);
+            }
+            timeColumn = ByteBuffers.wrap(getColumn(ColumnLayout.TIME_COLUMN));
+        }
+        return timeColumn;
+    }
+
+    /**
+     * Returns the first row whose time is at or after the given millis, or the rowCount if there is none.
+     */
+    public int bisectFrom(final long fromMillis) throws IOException {
+        int low = 0;
+        int high = rowCount;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (getTimeMillis(mid) < fromMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the last row whose time is at or before the given millis, or -1 if there is none.
+     */
+    public int bisectTo(final long toMillis) throws IOException {
+        int low = 0;
+        int high = rowCount;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (getTimeMillis(mid) <= toMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * Positions the row wise reading at the start of the given row.
+     */
+    public void seekRow(final int row) {
+        position = Math.min((long) row * layout.getRowLength(), length);
+    }
+
+    /**
+     * Copies the next row into the given array, which needs to have at least the row length. Returns false when no
+     * row is left.
+     */
+    public boolean readRow(final byte[] row) throws IOException {
+        final int rowLength = layout.getRowLength();
+        if (position % rowLength != 0) {
+            throw new IllegalStateException("position [" + position + "] is not at the start of a row");
+        }
+        if (position >= length) {
+            return false;
+        }
+        copyRows((int) (position / rowLength), 1, row, 0);
+        position += rowLength;
+        return true;
+    }
+
+    /**
+     * Transposes whole rows from the columns, one column at a time.
+     */
+    private void copyRows(final int fromRow, final int count, final byte[] b, final int off) throws IOException {
+        final int rowLength = layout.getRowLength();
+        for (int c = 0; c < layout.getColumnCount(); c++) {
+            final int columnLength = layout.getColumnLength(c);
+            final int columnOffset = layout.getColumnOffset(c);
+            if (isProjected(c)) {
+                final byte[] decoded = getColumn(c);
+                for (int r = 0; r < count; r++) {
+                    System.arraycopy(decoded, (fromRow + r) * columnLength, b, off + r * rowLength + columnOffset,
+                            columnLength);
+                }
+            } else {
+                for (int r = 0; r < count; r++) {
+                    final int rowOffset = off + r * rowLength + columnOffset;
+                    Arrays.fill(b, rowOffset, rowOffset + columnLength, (byte) 0);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position >= length) {
+            return -1;
+        }
+        final int rowLength = layout.getRowLength();
+        final int row = (int) (position / rowLength);
+        final int rowPosition = (int) (position % rowLength);
+        final int column = layout.getColumn(rowPosition);
+        position++;
+        if (!isProjected(column)) {
+            return 0;
+        }
+        final int columnLength = layout.getColumnLength(column);
+        final byte[] decoded = getColumn(column);
+        return decoded[row * columnLength + rowPosition - layout.getColumnOffset(column)] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= length) {
+            return -1;
+        }
+        final int rowLength = layout.getRowLength();
+        int remaining = (int) Math.min(len, length - position);
+        int offset = off;
+        while (remaining > 0) {
+            final int row = (int) (position / rowLength);
+            final int rowPosition = (int) (position % rowLength);
+            if (rowPosition == 0 && remaining >= rowLength) {
+                //bulk copy of whole rows
+                final int count = remaining / rowLength;
+                copyRows(row, count, b, offset);
+                final int copied = count * rowLength;
+                offset += copied;
+                remaining -= copied;
+                position += copied;
+                continue;
+            }
+            final int column = layout.getColumn(rowPosition);
+            final int columnLength = layout.getColumnLength(column);
+            final int columnPosition = rowPosition - layout.getColumnOffset(column);
+            final int count = Math.min(remaining, columnLength - columnPosition);
+            if (isProjected(column)) {
+                final byte[] decoded = getColumn(column);
+                System.arraycopy(decoded, row * columnLength + columnPosition, b, offset, count);
+            } else {
+                Arrays.fill(b, offset, offset + count, (byte) 0);
+            }
+            offset += count;
+            remaining -= count;
+            position += count;
+        }
+        return offset - off;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        final long skipped = Math.min(n, length - position);
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, length - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+            in = null;
+        }
+    }
+
+}
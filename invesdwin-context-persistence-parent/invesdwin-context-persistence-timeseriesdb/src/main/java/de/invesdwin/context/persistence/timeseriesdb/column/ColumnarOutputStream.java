@@ -0,0 +1,109 @@
+package de.invesdwin.context.persistence.timeseriesdb.column;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.util.streams.OutputStreams;
+import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+
+/**
+ * Collects row wise records and writes them on close as separately compressed columns. The chunk format is:
+ * columnCount(int), rowCount(int), compressedLength(int) per column, followed by the compressed column blocks.
+ *
+ * Flushing is a noop because a chunk can only be transposed once all rows are known.
+ */
+@NotThreadSafe
+public class ColumnarOutputStream extends OutputStream {
+
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private final OutputStream out;
+    private final ColumnLayout layout;
+    private final Function<OutputStream, OutputStream> compressorFactory;
+    private byte[] rows = new byte[INITIAL_CAPACITY];
+    private int length;
+    private boolean closed;
+
+    public ColumnarOutputStream(final OutputStream out, final ColumnLayout layout,
+            final Function<OutputStream, OutputStream> compressorFactory) {
+        this.out = out;
+        this.layout = layout;
+        this.compressorFactory = compressorFactory;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(capacity, rows.length * 2));
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        ensureCapacity(length + 1);
+        rows[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        ensureCapacity(length + len);
+        System.arraycopy(b, off, rows, length, len);
+        length += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        //noop
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writeColumns();
+        } finally {
+            rows = null;
+            out.close();
+        }
+    }
+
+    private void writeColumns() throws IOException {
+        final int rowLength = layout.getRowLength();
+        if (length % rowLength != 0) {
+            throw new IllegalStateException(
+                    "length [" + length + "] is not a multiple of rowLength [" + rowLength + "] for " + layout);
+        }
+        final int rowCount = length / rowLength;
+        final int columnCount = layout.getColumnCount();
+        final FastByteArrayOutputStream[] compressedColumns = new FastByteArrayOutputStream[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            final int columnLength = layout.getColumnLength(c);
+            final int columnOffset = layout.getColumnOffset(c);
+            final byte[] column = new byte[rowCount * columnLength];
+            for (int r = 0; r < rowCount; r++) {
+                System.arraycopy(rows, r * rowLength + columnOffset, column, r * columnLength, columnLength);
+            }
+            final FastByteArrayOutputStream compressedColumn = new FastByteArrayOutputStream(column.length / 2 + 16);
+            try (OutputStream compressor = compressorFactory.apply(compressedColumn)) {
+                compressor.write(column);
+            }
+            compressedColumns[c] = compressedColumn;
+        }
+        OutputStreams.writeInt(out, columnCount);
+        OutputStreams.writeInt(out, rowCount);
+        for (int c = 0; c < columnCount; c++) {
+            OutputStreams.writeInt(out, Math.toIntExact(compressedColumns[c].length));
+        }
+        for (int c = 0; c < columnCount; c++) {
+            final FastByteArrayOutputStream compressedColumn = compressedColumns[c];
+            out.write(compressedColumn.array, 0, Math.toIntExact(compressedColumn.length));
+        }
+    }
+
+}
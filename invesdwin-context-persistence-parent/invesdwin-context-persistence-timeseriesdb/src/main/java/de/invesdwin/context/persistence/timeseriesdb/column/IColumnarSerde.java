@@ -0,0 +1,13 @@
+package de.invesdwin.context.persistence.timeseriesdb.column;
+
+import de.invesdwin.util.marshallers.serde.ISerde;
+
+/**
+ * Fixed length serdes can implement this to have each chunk stored as separately compressed columns instead of a row
+ * wise stream of records.
+ */
+public interface IColumnarSerde<E> extends ISerde<E> {
+
+    ColumnLayout getColumnLayout();
+
+}
@@ -2,12 +2,16 @@ package de.invesdwin.context.persistence.timeseriesdb.delegate;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.stream.Stream;
 
 import javax.annotation.concurrent.ThreadSafe;
 
 import de.invesdwin.context.integration.compression.ICompressionFactory;
 import de.invesdwin.context.persistence.timeseriesdb.ITimeSeriesDB;
 import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesLookupMode;
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.Aggregate;
+import de.invesdwin.context.persistence.timeseriesdb.column.ColumnProjection;
 import de.invesdwin.util.collections.iterable.ICloseableIterable;
 import de.invesdwin.util.concurrent.lock.readwrite.IReentrantReadWriteLock;
 import de.invesdwin.util.marshallers.serde.ISerde;
@@ -53,11 +57,27 @@ public abstract class ADelegateTimeSeriesDB<K, V> implements ITimeSeriesDB<K, V>
         return delegate.rangeValues(key, from, to);
     }
 
+    @Override
+    public ICloseableIterable<V> rangeValues(final K key, final FDate from, final FDate to,
+            final ColumnProjection projection) {
+        return delegate.rangeValues(key, from, to, projection);
+    }
+
+    @Override
+    public Stream<V> rangeValuesParallel(final K key, final FDate from, final FDate to) {
+        return delegate.rangeValuesParallel(key, from, to);
+    }
+
     @Override
     public ICloseableIterable<V> rangeReverseValues(final K key, final FDate from, final FDate to) {
         return delegate.rangeReverseValues(key, from, to);
     }
 
+    @Override
+    public Aggregate aggregate(final K key, final String field, final FDate from, final FDate to) {
+        return delegate.aggregate(key, field, from, to);
+    }
+
     @Override
     public V getLatestValue(final K key, final FDate date) {
         return delegate.getLatestValue(key, date);
@@ -123,6 +143,21 @@ public abstract class ADelegateTimeSeriesDB<K, V> implements ITimeSeriesDB<K, V>
         delegate.deleteRange(key);
     }
 
+    @Override
+    public List<V> getPreviousValues(final K key, final FDate date, final int count) {
+        return delegate.getPreviousValues(key, date, count);
+    }
+
+    @Override
+    public List<V> getNextValues(final K key, final FDate date, final int count) {
+        return delegate.getNextValues(key, date, count);
+    }
+
+    @Override
+    public long deleteRangeBefore(final K key, final FDate cutoff) {
+        return delegate.deleteRangeBefore(key, cutoff);
+    }
+
     @Override
     public void deleteRangeForced(final K key) {
         delegate.deleteRangeForced(key);
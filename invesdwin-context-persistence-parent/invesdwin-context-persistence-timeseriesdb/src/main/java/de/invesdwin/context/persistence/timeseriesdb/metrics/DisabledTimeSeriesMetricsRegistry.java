@@ -0,0 +1,23 @@
+package de.invesdwin.context.persistence.timeseriesdb.metrics;
+
+import javax.annotation.concurrent.Immutable;
+
+@Immutable
+public final class DisabledTimeSeriesMetricsRegistry implements ITimeSeriesMetricsRegistry {
+
+    public static final DisabledTimeSeriesMetricsRegistry INSTANCE = new DisabledTimeSeriesMetricsRegistry();
+
+    private DisabledTimeSeriesMetricsRegistry() {}
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+    @Override
+    public void increment(final TimeSeriesMetric metric, final long delta) {}
+
+    @Override
+    public void record(final TimeSeriesMetric metric, final long value) {}
+
+}
@@ -0,0 +1,14 @@
+package de.invesdwin.context.persistence.timeseriesdb.metrics;
+
+public interface ITimeSeriesMetricsRegistry {
+
+    /**
+     * Allows callers to skip measurements (e.g. System.nanoTime()) when nothing is recorded anyway.
+     */
+    boolean isEnabled();
+
+    void increment(TimeSeriesMetric metric, long delta);
+
+    void record(TimeSeriesMetric metric, long value);
+
+}
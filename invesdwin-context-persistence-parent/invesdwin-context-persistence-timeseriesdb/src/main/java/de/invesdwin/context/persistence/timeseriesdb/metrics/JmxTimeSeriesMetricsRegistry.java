@@ -0,0 +1,85 @@
+package de.invesdwin.context.persistence.timeseriesdb.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Records all metrics in memory and exposes each of them as an MXBean with the name
+ * "de.invesdwin.context.persistence.timeseriesdb:type=TimeSeriesMetrics,name=&lt;METRIC&gt;".
+ */
+@ThreadSafe
+public class JmxTimeSeriesMetricsRegistry implements ITimeSeriesMetricsRegistry {
+
+    public static final String DOMAIN = "de.invesdwin.context.persistence.timeseriesdb";
+
+    private final TimeSeriesMetricRecorder[] recorders;
+
+    public JmxTimeSeriesMetricsRegistry() {
+        final TimeSeriesMetric[] metrics = TimeSeriesMetric.values();
+        this.recorders = new TimeSeriesMetricRecorder[metrics.length];
+        for (int i = 0; i < metrics.length; i++) {
+            recorders[i] = new TimeSeriesMetricRecorder(metrics[i]);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void increment(final TimeSeriesMetric metric, final long delta) {
+        recorders[metric.ordinal()].increment(delta);
+    }
+
+    @Override
+    public void record(final TimeSeriesMetric metric, final long value) {
+        recorders[metric.ordinal()].record(value);
+    }
+
+    public TimeSeriesMetricRecorder getRecorder(final TimeSeriesMetric metric) {
+        return recorders[metric.ordinal()];
+    }
+
+    /**
+     * Replaces MXBeans of a previously registered instance.
+     */
+    public JmxTimeSeriesMetricsRegistry register() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (int i = 0; i < recorders.length; i++) {
+                final ObjectName name = newObjectName(recorders[i].getMetric());
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(recorders[i], name);
+            }
+        } catch (final JMException e) {
+            throw new RuntimeException(e);
+        }
+        return this;
+    }
+
+    public void unregister() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (int i = 0; i < recorders.length; i++) {
+                final ObjectName name = newObjectName(recorders[i].getMetric());
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            }
+        } catch (final JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static ObjectName newObjectName(final TimeSeriesMetric metric) throws JMException {
+        return new ObjectName(DOMAIN + ":type=TimeSeriesMetrics,name=" + metric.name());
+    }
+
+}
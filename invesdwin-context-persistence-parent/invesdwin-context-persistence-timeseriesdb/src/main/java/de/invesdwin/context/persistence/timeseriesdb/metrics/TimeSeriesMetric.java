@@ -0,0 +1,94 @@
+package de.invesdwin.context.persistence.timeseriesdb.metrics;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Counters only accumulate a sum, histograms additionally track the distribution of the recorded values.
+ */
+@Immutable
+public enum TimeSeriesMetric {
+    /**
+     * Chunk requests that were answered by the FileBufferCache.
+     */
+    FILE_BUFFER_CACHE_HIT(false),
+    /**
+     * Chunk requests that had to be loaded by the FileBufferCache.
+     */
+    FILE_BUFFER_CACHE_MISS(false),
+    /**
+     * Time needed to decompress and decode a chunk.
+     */
+    FILE_BUFFER_CACHE_LOAD_NANOS(true),
+    /**
+     * Decoded bytes of all loaded chunks. Exact for fixed length values, otherwise estimated from the serialized length
+     * of the first and last value of each chunk.
+     */
+    FILE_BUFFER_CACHE_DECODED_BYTES(false),
+    /**
+     * Chunk requests that were answered by the per key result cache of a TimeSeriesStorageCache.
+     */
+    STORAGE_CACHE_HIT(false),
+    /**
+     * Chunk requests that went past the per key result cache of a TimeSeriesStorageCache.
+     */
+    STORAGE_CACHE_MISS(false),
+    /**
+     * Columnar chunks that were decoded by a projected range scan, which bypasses the result caches.
+     */
+    STORAGE_PROJECTED_CHUNKS(false),
+    /**
+     * Chunks that were touched by a single range query.
+     */
+    QUERY_CHUNKS(true),
+    /**
+     * Values that were written by updaters.
+     */
+    UPDATER_VALUES(false),
+    /**
+     * Duration of a single update while holding the write lock.
+     */
+    UPDATER_NANOS(true),
+    /**
+     * Time an updater waited for the write lock of the table.
+     */
+    UPDATER_WRITE_LOCK_WAIT_NANOS(true),
+    /**
+     * Small chunks that were rewritten by the background compaction.
+     */
+    COMPACTION_CHUNKS(false),
+    /**
+     * Values that were dropped by a retention.
+     */
+    RETENTION_VALUES(false),
+    /**
+     * Chunks that were recompressed into the cold storage.
+     */
+    RECOMPRESSION_CHUNKS(false),
+    /**
+     * Updates that wrote their redone chunks behind chunks that were still pinned by a range scan (copy on write).
+     */
+    SNAPSHOT_COPY_ON_WRITE(false),
+    /**
+     * Snapshots of range scans that were released by the garbage collector because they were not closed.
+     */
+    SNAPSHOT_LEAKS(false),
+    /**
+     * Time an appender needed to write one batch of a key.
+     */
+    APPENDER_FLUSH_NANOS(true),
+    /**
+     * Time needed to append a live value.
+     */
+    LIVE_APPEND_NANOS(true);
+
+    private final boolean histogram;
+
+    TimeSeriesMetric(final boolean histogram) {
+        this.histogram = histogram;
+    }
+
+    public boolean isHistogram() {
+        return histogram;
+    }
+
+}
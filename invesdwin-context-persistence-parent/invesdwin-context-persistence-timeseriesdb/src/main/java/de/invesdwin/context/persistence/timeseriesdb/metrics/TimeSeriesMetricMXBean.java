@@ -0,0 +1,27 @@
+package de.invesdwin.context.persistence.timeseriesdb.metrics;
+
+public interface TimeSeriesMetricMXBean {
+
+    long getCount();
+
+    long getSum();
+
+    long getMin();
+
+    long getMax();
+
+    double getMean();
+
+    /**
+     * Upper bound of the power of two bucket that contains the median, 0 for counters.
+     */
+    long getP50();
+
+    /**
+     * Upper bound of the power of two bucket that contains the 99th percentile, 0 for counters.
+     */
+    long getP99();
+
+    void reset();
+
+}
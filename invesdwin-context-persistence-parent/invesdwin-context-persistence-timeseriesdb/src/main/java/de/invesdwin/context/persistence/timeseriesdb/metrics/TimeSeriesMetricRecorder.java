@@ -0,0 +1,158 @@
+package de.invesdwin.context.persistence.timeseriesdb.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Records values without locking, histograms use power of two buckets so that percentiles are accurate within a
+ * factor of two which is sufficient to spot latency outliers.
+ */
+@ThreadSafe
+public class TimeSeriesMetricRecorder implements TimeSeriesMetricMXBean {
+
+    private static final int BUCKETS = Long.SIZE + 1;
+
+    private final TimeSeriesMetric metric;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+    private final AtomicLongArray buckets;
+
+    public TimeSeriesMetricRecorder(final TimeSeriesMetric metric) {
+        this.metric = metric;
+        if (metric.isHistogram()) {
+            this.buckets = new AtomicLongArray(BUCKETS);
+        } else {
+            this.buckets = null;
+        }
+    }
+
+    public TimeSeriesMetric getMetric() {
+        return metric;
+    }
+
+    public void increment(final long delta) {
+        count.increment();
+        sum.add(delta);
+    }
+
+    public void record(final long value) {
+        count.increment();
+        sum.add(value);
+        if (buckets != null) {
+            min.accumulate(value);
+            max.accumulate(value);
+            buckets.incrementAndGet(bucketOf(value));
+        }
+    }
+
+    private static int bucketOf(final long value) {
+        if (value <= 0L) {
+            return 0;
+        }
+        return Long.SIZE - Long.numberOfLeadingZeros(value);
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getSum() {
+        return sum.sum();
+    }
+
+    @Override
+    public long getMin() {
+        final long value = min.get();
+        if (value == Long.MAX_VALUE) {
+            return 0L;
+        }
+        return value;
+    }
+
+    @Override
+    public long getMax() {
+        final long value = max.get();
+        if (value == Long.MIN_VALUE) {
+            return 0L;
+        }
+        return value;
+    }
+
+    @Override
+    public double getMean() {
+        final long countValue = getCount();
+        if (countValue == 0L) {
+            return 0D;
+        }
+        return (double) getSum() / countValue;
+    }
+
+    @Override
+    public long getP50() {
+        return getPercentile(0.5D);
+    }
+
+    @Override
+    public long getP99() {
+        return getPercentile(0.99D);
+    }
+
+    public long getPercentile(final double percentile) {
+        if (buckets == null) {
+            return 0L;
+        }
+        long total = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += buckets.get(i);
+        }
+        if (total == 0L) {
+            return 0L;
+        }
+        final long rank = (long) Math.ceil(total * percentile);
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return bucketUpperBound(i);
+            }
+        }
+        return getMax();
+    }
+
+    private static long bucketUpperBound(final int bucket) {
+        if (bucket == 0) {
+            return 0L;
+        } else if (bucket >= Long.SIZE - 1) {
+            return Long.MAX_VALUE;
+        } else {
+            return (1L << bucket) - 1L;
+        }
+    }
+
+    @Override
+    public void reset() {
+        count.reset();
+        sum.reset();
+        min.reset();
+        max.reset();
+        if (buckets != null) {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0L);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return metric + "[count=" + getCount() + ", sum=" + getSum() + ", p50=" + getP50() + ", p99=" + getP99()
+                + "]";
+    }
+
+}
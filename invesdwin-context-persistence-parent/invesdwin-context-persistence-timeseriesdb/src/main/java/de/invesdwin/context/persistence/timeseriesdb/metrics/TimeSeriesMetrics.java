@@ -0,0 +1,71 @@
+package de.invesdwin.context.persistence.timeseriesdb.metrics;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesProperties;
+
+/**
+ * Entry point for the instrumentation of the read and write paths. Metrics are discarded by default, a JMX binding can
+ * be enabled via TimeSeriesProperties.METRICS_JMX_ENABLED or any other registry can be installed via setRegistry().
+ */
+@ThreadSafe
+public final class TimeSeriesMetrics {
+
+    private static volatile ITimeSeriesMetricsRegistry registry;
+
+    static {
+        if (TimeSeriesProperties.METRICS_JMX_ENABLED) {
+            registry = new JmxTimeSeriesMetricsRegistry().register();
+        } else {
+            registry = DisabledTimeSeriesMetricsRegistry.INSTANCE;
+        }
+    }
+
+    private TimeSeriesMetrics() {}
+
+    public static ITimeSeriesMetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    public static void setRegistry(final ITimeSeriesMetricsRegistry registry) {
+        if (registry == null) {
+            TimeSeriesMetrics.registry = DisabledTimeSeriesMetricsRegistry.INSTANCE;
+        } else {
+            TimeSeriesMetrics.registry = registry;
+        }
+    }
+
+    public static boolean isEnabled() {
+        return registry.isEnabled();
+    }
+
+    public static void increment(final TimeSeriesMetric metric) {
+        registry.increment(metric, 1L);
+    }
+
+    public static void increment(final TimeSeriesMetric metric, final long delta) {
+        registry.increment(metric, delta);
+    }
+
+    public static void record(final TimeSeriesMetric metric, final long value) {
+        registry.record(metric, value);
+    }
+
+    /**
+     * Returns 0 when metrics are disabled so that System.nanoTime() is not called needlessly.
+     */
+    public static long startNanos() {
+        if (registry.isEnabled()) {
+            return System.nanoTime();
+        } else {
+            return 0L;
+        }
+    }
+
+    public static void recordNanosSince(final TimeSeriesMetric metric, final long startNanos) {
+        if (startNanos != 0L) {
+            registry.record(metric, System.nanoTime() - startNanos);
+        }
+    }
+
+}
@@ -1,6 +1,9 @@
 package de.invesdwin.context.persistence.timeseriesdb.segmented;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -9,11 +12,14 @@ import javax.annotation.concurrent.ThreadSafe;
 import de.invesdwin.context.integration.compression.ICompressionFactory;
 import de.invesdwin.context.integration.compression.lz4.LZ4Streams;
 import de.invesdwin.context.persistence.timeseriesdb.ATimeSeriesDB;
+import de.invesdwin.context.persistence.timeseriesdb.ITimeSeriesDB;
 import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesLookupMode;
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.Aggregate;
 import de.invesdwin.context.persistence.timeseriesdb.segmented.finder.ISegmentFinder;
 import de.invesdwin.context.persistence.timeseriesdb.storage.TimeSeriesStorage;
 import de.invesdwin.context.persistence.timeseriesdb.updater.ATimeSeriesUpdater;
 import de.invesdwin.context.persistence.timeseriesdb.updater.ITimeSeriesUpdater;
+import de.invesdwin.util.collections.Collections;
 import de.invesdwin.util.collections.iterable.ACloseableIterator;
 import de.invesdwin.util.collections.iterable.EmptyCloseableIterator;
 import de.invesdwin.util.collections.iterable.ICloseableIterable;
@@ -283,6 +289,26 @@ public abstract class ASegmentedTimeSeriesDB<K, V> implements ISegmentedTimeSeri
         }
     }
 
+    /**
+     * Segments are recalculated from the source when they are missing, thus dropping the front of the data would not
+     * persist. Limit the range of the segment finder instead.
+     */
+    @Override
+    public long deleteRangeBefore(final K key, final FDate cutoff) {
+        throw new UnsupportedOperationException(
+                "deleteRangeBefore(...) is not supported by segmented tables, limit the segment finder instead");
+    }
+
+    /**
+     * Segments do not declare aggregate fields, use rangeValues(...) instead.
+     */
+    @Override
+    public Aggregate aggregate(final K key, final String field, final FDate from, final FDate to) {
+        throw new UnsupportedOperationException(
+                "aggregate(...) is not supported by segmented tables, use rangeValues(...) instead for field: "
+                        + field);
+    }
+
     @Override
     public String getName() {
         return segmentedTable.getName();
@@ -453,6 +479,78 @@ public abstract class ASegmentedTimeSeriesDB<K, V> implements ISegmentedTimeSeri
         }
     }
 
+    @Override
+    public List<V> getPreviousValues(final K key, final FDate date, final int count) {
+        final ILock readLock = getTableLock(key).readLock();
+        readLock.lock();
+        try {
+            return getPreviousValuesByRange(this, key, date, count);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public List<V> getNextValues(final K key, final FDate date, final int count) {
+        final ILock readLock = getTableLock(key).readLock();
+        readLock.lock();
+        try {
+            return getNextValuesByRange(this, key, date, count);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Segments have no contiguous value index, thus the current value is resolved via the segment lookups and the
+     * values before it are read by a reverse range scan from there. Always returns a new modifiable list.
+     */
+    public static <K, V> List<V> getPreviousValuesByRange(final ITimeSeriesDB<K, V> table, final K key,
+            final FDate date, final int count) {
+        final List<V> values = new ArrayList<>();
+        if (date == null || count <= 0) {
+            return values;
+        }
+        final V currentValue = table.getPreviousValue(key, date, 0);
+        if (currentValue == null) {
+            return values;
+        }
+        try (ICloseableIterator<V> it = table.rangeReverseValues(key, table.extractEndTime(currentValue), null)
+                .iterator()) {
+            while (values.size() < count) {
+                values.add(it.next());
+            }
+        } catch (final NoSuchElementException e) {
+            //beginning reached
+        }
+        Collections.reverse(values);
+        return values;
+    }
+
+    /**
+     * Segments have no contiguous value index, thus the current value is resolved via the segment lookups and the
+     * values after it are read by a range scan from there. Always returns a new modifiable list.
+     */
+    public static <K, V> List<V> getNextValuesByRange(final ITimeSeriesDB<K, V> table, final K key, final FDate date,
+            final int count) {
+        final List<V> values = new ArrayList<>();
+        if (count <= 0) {
+            return values;
+        }
+        final V currentValue = table.getNextValue(key, date, 0);
+        if (currentValue == null) {
+            return values;
+        }
+        try (ICloseableIterator<V> it = table.rangeValues(key, table.extractEndTime(currentValue), null).iterator()) {
+            while (values.size() < count) {
+                values.add(it.next());
+            }
+        } catch (final NoSuchElementException e) {
+            //end reached
+        }
+        return values;
+    }
+
     @Override
     public File getBaseDirectory() {
         return ATimeSeriesDB.getDefaultBaseDirectory();
@@ -65,7 +65,6 @@ import de.invesdwin.util.concurrent.lock.Locks;
 import de.invesdwin.util.concurrent.lock.disabled.DisabledLock;
 import de.invesdwin.util.concurrent.lock.readwrite.IReadWriteLock;
 import de.invesdwin.util.concurrent.lock.readwrite.IReentrantReadWriteLock;
-import de.invesdwin.util.concurrent.reference.WeakThreadLocalReference;
 import de.invesdwin.util.concurrent.taskinfo.provider.TaskInfoCallable;
 import de.invesdwin.util.error.FastNoSuchElementException;
 import de.invesdwin.util.error.Throwables;
@@ -204,12 +203,7 @@ public abstract class ASegmentedTimeSeriesStorageCache<K, V> implements Closeabl
         }
 
     };
-    private final WeakThreadLocalReference<ALatestValueByIndexCache<V>> latestValueByIndexCacheHolder = new WeakThreadLocalReference<ALatestValueByIndexCache<V>>() {
-        @Override
-        protected ALatestValueByIndexCache<V> initialValue() {
-            return new LatestValueByIndexCache();
-        };
-    };
+    private final ALatestValueByIndexCache<V> latestValueByIndexCache = new LatestValueByIndexCache();
     @GuardedBy("precedingValueCountCache")
     private boolean lookupByIndexAvailable;
     @GuardedBy("precedingValueCountCache")
@@ -981,7 +975,6 @@ public abstract class ASegmentedTimeSeriesStorageCache<K, V> implements Closeabl
     }
 
     private V getLatestValueByIndex(final FDate date) {
-        final ALatestValueByIndexCache<V> latestValueByIndexCache = latestValueByIndexCacheHolder.get();
         return latestValueByIndexCache.getLatestValueByIndex(date);
     }
 
@@ -1688,6 +1681,11 @@ public abstract class ASegmentedTimeSeriesStorageCache<K, V> implements Closeabl
         protected int getLastResetIndex() {
             return lastResetIndex;
         }
+
+        @Override
+        protected long size() {
+            return ASegmentedTimeSeriesStorageCache.this.size();
+        }
     }
 
 }
@@ -1,6 +1,7 @@
 package de.invesdwin.context.persistence.timeseriesdb.segmented.live;
 
 import java.io.File;
+import java.util.List;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -10,6 +11,9 @@ import de.invesdwin.context.integration.compression.ICompressionFactory;
 import de.invesdwin.context.integration.compression.lz4.LZ4Streams;
 import de.invesdwin.context.persistence.timeseriesdb.ATimeSeriesDB;
 import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesLookupMode;
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.Aggregate;
+import de.invesdwin.context.persistence.timeseriesdb.metrics.TimeSeriesMetric;
+import de.invesdwin.context.persistence.timeseriesdb.metrics.TimeSeriesMetrics;
 import de.invesdwin.context.persistence.timeseriesdb.segmented.ASegmentedTimeSeriesDB;
 import de.invesdwin.context.persistence.timeseriesdb.segmented.ISegmentedTimeSeriesDBInternals;
 import de.invesdwin.context.persistence.timeseriesdb.segmented.SegmentedKey;
@@ -89,6 +93,12 @@ public abstract class ALiveSegmentedTimeSeriesDB<K, V> implements ILiveSegmented
                                 batchFlushInterval);
                     }
 
+                    @Override
+                    protected LiveSegmentWriteAheadLog<V> newWriteAheadLog(
+                            final ISegmentedTimeSeriesDBInternals<K, V> historicalSegmentTable, final K key) {
+                        return ALiveSegmentedTimeSeriesDB.this.newWriteAheadLog(historicalSegmentTable, key);
+                    }
+
                 };
             }
 
@@ -307,6 +317,15 @@ public abstract class ALiveSegmentedTimeSeriesDB<K, V> implements ILiveSegmented
                 batchFlushInterval);
     }
 
+    /**
+     * Returns null to disable the write-ahead log for the live values of this table, by default it is enabled via
+     * LIVE_SEGMENT_WAL_ENABLED.
+     */
+    protected LiveSegmentWriteAheadLog<V> newWriteAheadLog(
+            final ISegmentedTimeSeriesDBInternals<K, V> historicalSegmentTable, final K key) {
+        return ALiveSegmentedTimeSeriesStorageCache.newDefaultWriteAheadLog(historicalSegmentTable, key);
+    }
+
     protected abstract String getElementsName();
 
     @Override
@@ -364,6 +383,26 @@ public abstract class ALiveSegmentedTimeSeriesDB<K, V> implements ILiveSegmented
         }
     }
 
+    /**
+     * Historical segments are recalculated from the source when they are missing, thus dropping the front of the data
+     * would not persist. Limit the range of the segment finder instead.
+     */
+    @Override
+    public long deleteRangeBefore(final K key, final FDate cutoff) {
+        throw new UnsupportedOperationException(
+                "deleteRangeBefore(...) is not supported by live segmented tables, limit the segment finder instead");
+    }
+
+    /**
+     * Neither the historical segments nor the live segment declare aggregate fields, use rangeValues(...) instead.
+     */
+    @Override
+    public Aggregate aggregate(final K key, final String field, final FDate from, final FDate to) {
+        throw new UnsupportedOperationException(
+                "aggregate(...) is not supported by live segmented tables, use rangeValues(...) instead for field: "
+                        + field);
+    }
+
     @Override
     public String getName() {
         return historicalSegmentTable.getName();
@@ -538,6 +577,28 @@ public abstract class ALiveSegmentedTimeSeriesDB<K, V> implements ILiveSegmented
         }
     }
 
+    @Override
+    public List<V> getPreviousValues(final K key, final FDate date, final int count) {
+        final ILock readLock = getTableLock(key).readLock();
+        readLock.lock();
+        try {
+            return ASegmentedTimeSeriesDB.getPreviousValuesByRange(this, key, date, count);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public List<V> getNextValues(final K key, final FDate date, final int count) {
+        final ILock readLock = getTableLock(key).readLock();
+        readLock.lock();
+        try {
+            return ASegmentedTimeSeriesDB.getNextValuesByRange(this, key, date, count);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
     @Override
     public File getBaseDirectory() {
         return ATimeSeriesDB.getDefaultBaseDirectory();
@@ -548,12 +609,14 @@ public abstract class ALiveSegmentedTimeSeriesDB<K, V> implements ILiveSegmented
     }
 
     public boolean putNextLiveValue(final K key, final V nextLiveValue) {
+        final long start = TimeSeriesMetrics.startNanos();
         final ILock readLock = getTableLock(key).readLock();
         readLock.lock();
         try {
             return getLiveSegmentedLookupTableCache(key).putNextLiveValue(nextLiveValue);
         } finally {
             readLock.unlock();
+            TimeSeriesMetrics.recordNanosSince(TimeSeriesMetric.LIVE_APPEND_NANOS, start);
         }
     }
 
@@ -10,10 +10,12 @@ import javax.annotation.concurrent.ThreadSafe;
 
 import org.apache.commons.lang3.mutable.MutableInt;
 
+import de.invesdwin.context.log.Log;
 import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesLookupMode;
 import de.invesdwin.context.persistence.timeseriesdb.segmented.ASegmentedTimeSeriesStorageCache;
 import de.invesdwin.context.persistence.timeseriesdb.segmented.ISegmentedTimeSeriesDB;
 import de.invesdwin.context.persistence.timeseriesdb.segmented.ISegmentedTimeSeriesDBInternals;
+import de.invesdwin.context.persistence.timeseriesdb.segmented.SegmentStatus;
 import de.invesdwin.context.persistence.timeseriesdb.segmented.SegmentedKey;
 import de.invesdwin.context.persistence.timeseriesdb.segmented.finder.ISegmentFinder;
 import de.invesdwin.context.persistence.timeseriesdb.segmented.live.segment.ILiveSegment;
@@ -39,6 +41,8 @@ import de.invesdwin.util.time.range.TimeRange;
 @ThreadSafe
 public abstract class ALiveSegmentedTimeSeriesStorageCache<K, V> implements Closeable {
 
+    private static final Log LOG = new Log(ALiveSegmentedTimeSeriesStorageCache.class);
+
     private final ALiveSegmentedTimeSeriesDB<K, V>.HistoricalSegmentTable historicalSegmentTable;
     private final ASegmentedTimeSeriesStorageCache<K, V> historicalSegmentLookupTableCache;
     private final TimeSeriesLookupMode lookupMode;
@@ -80,6 +84,10 @@ public abstract class ALiveSegmentedTimeSeriesStorageCache<K, V> implements Clos
     private final List<ToLongFunction<FDate>> latestValueIndexProviders = Arrays
             .asList(liveSegmentLatestValueIndexProvider, historicalSegmentLatestValueIndexProvider);
     private final int batchFlushInterval;
+    /**
+     * null when the write-ahead log is disabled
+     */
+    private final LiveSegmentWriteAheadLog<V> writeAheadLog;
 
     public ALiveSegmentedTimeSeriesStorageCache(
             final ALiveSegmentedTimeSeriesDB<K, V>.HistoricalSegmentTable historicalSegmentTable, final K key,
@@ -91,6 +99,68 @@ public abstract class ALiveSegmentedTimeSeriesStorageCache<K, V> implements Clos
         this.batchFlushInterval = batchFlushInterval;
         this.liveSegmentLock = Locks
                 .newReentrantReadWriteLock("liveSegmentLock_" + historicalSegmentTable.hashKeyToString(key));
+        this.writeAheadLog = newWriteAheadLog(historicalSegmentTable, key);
+        replayWriteAheadLog();
+    }
+
+    /**
+     * Restores the live segment of a previous run from the write-ahead log. The log is discarded when its segment was
+     * already converted to a historical segment or when it can not be replayed, then the live values need to be
+     * provided again as it would be without a log.
+     */
+    private void replayWriteAheadLog() {
+        if (writeAheadLog == null || !writeAheadLog.exists()) {
+            return;
+        }
+        final ILock liveWriteLock = liveSegmentLock.writeLock();
+        liveWriteLock.lock();
+        try {
+            final MutableInt replayed = new MutableInt();
+            final TimeRange segment = writeAheadLog.replay((value) -> {
+                if (liveSegment == null) {
+                    //the header was read before the first value is given
+                    throw new IllegalStateException("liveSegment should not be null");
+                }
+                if (liveSegment.putNextLiveValue(historicalSegmentTable.extractStartTime(value),
+                        historicalSegmentTable.extractEndTime(value), value)) {
+                    replayed.increment();
+                }
+            }, this::maybeInitReplayLiveSegment);
+            if (segment == null || liveSegment == null || liveSegment.isEmpty()) {
+                discardReplayedLiveSegment();
+            } else {
+                LOG.info("Replayed [%s] live values of [%s] for segment [%s] from: %s", replayed.intValue(),
+                        historicalSegmentTable.hashKeyToString(key), segment, writeAheadLog.getFile());
+            }
+        } catch (final Throwable t) {
+            LOG.warn("Discarding write-ahead log of [%s] because it could not be replayed: %s",
+                    historicalSegmentTable.hashKeyToString(key), t.toString());
+            discardReplayedLiveSegment();
+        } finally {
+            liveWriteLock.unlock();
+        }
+    }
+
+    private boolean maybeInitReplayLiveSegment(final TimeRange segment) {
+        final SegmentStatus existingStatus = historicalSegmentTable.getStorage()
+                .getSegmentStatusTable()
+                .get(historicalSegmentTable.hashKeyToString(key), segment);
+        if (existingStatus != null && existingStatus != SegmentStatus.INITIALIZING) {
+            //the process died after the segment was converted but before the log was deleted
+            return false;
+        }
+        final SegmentedKey<K> segmentedKey = new SegmentedKey<K>(key, segment);
+        liveSegment = new ReadLockedLiveSegment<K, V>(
+                newLiveSegment(segmentedKey, historicalSegmentTable, batchFlushInterval), liveSegmentLock.readLock());
+        return true;
+    }
+
+    private void discardReplayedLiveSegment() {
+        if (liveSegment != null) {
+            liveSegment.close();
+            liveSegment = null;
+        }
+        writeAheadLog.delete();
     }
 
     public boolean isEmptyOrInconsistent() {
@@ -105,6 +175,9 @@ public abstract class ALiveSegmentedTimeSeriesStorageCache<K, V> implements Clos
             liveSegment.close();
         }
         liveSegment = null;
+        if (writeAheadLog != null) {
+            writeAheadLog.delete();
+        }
         historicalSegmentTable.deleteRange(key);
     }
 
@@ -113,6 +186,9 @@ public abstract class ALiveSegmentedTimeSeriesStorageCache<K, V> implements Clos
             liveSegment.close();
         }
         liveSegment = null;
+        if (writeAheadLog != null) {
+            writeAheadLog.delete();
+        }
         historicalSegmentTable.deleteRangeForced(key);
     }
 
@@ -487,14 +563,25 @@ public abstract class ALiveSegmentedTimeSeriesStorageCache<K, V> implements Clos
                 liveSegment.convertLiveSegmentToHistorical();
                 liveSegment.close();
                 liveSegment = null;
+                if (writeAheadLog != null) {
+                    writeAheadLog.delete();
+                }
             }
             if (liveSegment == null) {
                 final SegmentedKey<K> segmentedKey = new SegmentedKey<K>(key, segment);
                 liveSegment = new ReadLockedLiveSegment<K, V>(
                         newLiveSegment(segmentedKey, historicalSegmentTable, batchFlushInterval),
                         liveSegmentLock.readLock());
+                if (writeAheadLog != null) {
+                    writeAheadLog.create(segment);
+                }
+            }
+            final boolean added = liveSegment.putNextLiveValue(nextLiveStartTime, nextLiveEndTimeKey, nextLiveValue);
+            if (added && writeAheadLog != null) {
+                //logged before the caller gets the acknowledgement
+                writeAheadLog.append(nextLiveValue);
             }
-            return liveSegment.putNextLiveValue(nextLiveStartTime, nextLiveEndTimeKey, nextLiveValue);
+            return added;
         } finally {
             liveWriteLock.unlock();
         }
@@ -524,6 +611,9 @@ public abstract class ALiveSegmentedTimeSeriesStorageCache<K, V> implements Clos
             liveSegment = new ReadLockedLiveSegment<K, V>(
                     newLiveSegment(segmentedKey, historicalSegmentTable, batchFlushInterval),
                     liveSegmentLock.readLock());
+            if (writeAheadLog != null) {
+                writeAheadLog.create(segment);
+            }
         } finally {
             liveWriteLock.unlock();
         }
@@ -542,6 +632,17 @@ public abstract class ALiveSegmentedTimeSeriesStorageCache<K, V> implements Clos
         return newDefaultLiveSegment(segmentedKey, historicalSegmentTable, batchFlushInterval);
     }
 
+    protected LiveSegmentWriteAheadLog<V> newWriteAheadLog(
+            final ISegmentedTimeSeriesDBInternals<K, V> historicalSegmentTable, final K key) {
+        return newDefaultWriteAheadLog(historicalSegmentTable, key);
+    }
+
+    public static <K, V> LiveSegmentWriteAheadLog<V> newDefaultWriteAheadLog(
+            final ISegmentedTimeSeriesDBInternals<K, V> historicalSegmentTable, final K key) {
+        return LiveSegmentWriteAheadLog.newDefaultWriteAheadLog(historicalSegmentTable.getDirectory(),
+                historicalSegmentTable.hashKeyToString(key), historicalSegmentTable.getValueSerde());
+    }
+
     public static <K, V> ILiveSegment<K, V> newDefaultLiveSegment(final SegmentedKey<K> segmentedKey,
             final ISegmentedTimeSeriesDBInternals<K, V> historicalSegmentTable, final int batchFlushInterval) {
         return new SwitchingLiveSegment<>(segmentedKey, historicalSegmentTable, batchFlushInterval);
@@ -552,6 +653,10 @@ public abstract class ALiveSegmentedTimeSeriesStorageCache<K, V> implements Clos
         if (liveSegment != null) {
             liveSegment.close();
         }
+        if (writeAheadLog != null) {
+            //keep the log so that the live segment can be replayed on the next start
+            writeAheadLog.close();
+        }
     }
 
 }
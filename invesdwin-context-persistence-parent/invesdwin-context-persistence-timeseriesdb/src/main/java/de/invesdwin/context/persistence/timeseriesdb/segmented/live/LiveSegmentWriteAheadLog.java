@@ -0,0 +1,350 @@
+package de.invesdwin.context.persistence.timeseriesdb.segmented.live;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.log.Log;
+import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesProperties;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
+import de.invesdwin.util.error.UnknownArgumentException;
+import de.invesdwin.util.lang.Files;
+import de.invesdwin.util.marshallers.serde.ISerde;
+import de.invesdwin.util.marshallers.serde.basic.FDateSerde;
+import de.invesdwin.util.time.date.FDate;
+import de.invesdwin.util.time.date.FTimeUnit;
+import de.invesdwin.util.time.range.TimeRange;
+
+/**
+ * Write-ahead log for the live values of a key. The header contains the segment that the live values belong to,
+ * followed by one record per value that is prefixed by its length and a checksum over the length and the value. A torn
+ * write at the end of the log is detected during the replay and cut off, so that appending continues behind the last
+ * complete value.
+ *
+ * Access is guarded by the live segment lock, only the background sync of the INTERVAL policy runs concurrently.
+ */
+@NotThreadSafe
+public class LiveSegmentWriteAheadLog<V> implements Closeable {
+
+    private static final Log LOG = new Log(LiveSegmentWriteAheadLog.class);
+    private static final int MAGIC = 0x57414C31;
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+
+    private final File file;
+    private final ISerde<V> valueSerde;
+    private final WriteAheadLogSyncPolicy syncPolicy;
+    private final CRC32 checksum = new CRC32();
+    private ByteBuffer recordBuffer = ByteBuffer.allocate(256);
+    private volatile FileChannel channel;
+    private volatile boolean unsynced;
+
+    public LiveSegmentWriteAheadLog(final File file, final ISerde<V> valueSerde,
+            final WriteAheadLogSyncPolicy syncPolicy) {
+        this.file = file;
+        this.valueSerde = valueSerde;
+        this.syncPolicy = syncPolicy;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public WriteAheadLogSyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Starts a new log for the given segment, an existing log is replaced.
+     */
+    public void create(final TimeRange segment) {
+        close();
+        Files.deleteQuietly(file);
+        try {
+            Files.forceMkdirParent(file);
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+            header.putInt(MAGIC);
+            header.flip();
+            writeFully(header);
+            writeRecord(FDateSerde.GET.toBytes(segment.getFrom()));
+            writeRecord(FDateSerde.GET.toBytes(segment.getTo()));
+            //the header needs to be durable independent of the policy, otherwise the values can not be assigned
+            channel.force(true);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads the values of an existing log into the consumer and returns the segment they belong to. The segment is
+     * given to the filter before the first value, so that the consumer can be prepared or the replay can be skipped.
+     * Afterwards new values are appended behind the last complete value. Returns null when the replay was skipped or
+     * the header is incomplete, which happens when the process died right after creating the log.
+     */
+    public TimeRange replay(final Consumer<V> consumer, final Predicate<TimeRange> segmentFilter) {
+        close();
+        try {
+            final long fileLength = file.length();
+            long validLength;
+            final TimeRange segment;
+            try (InputStream in = new BufferedInputStream(java.nio.file.Files.newInputStream(file.toPath()))) {
+                final DataInputStream data = new DataInputStream(in);
+                if (data.readInt() != MAGIC) {
+                    throw new IllegalStateException("Not a write-ahead log: " + file);
+                }
+                validLength = Integer.BYTES;
+                final byte[] fromBytes = readRecord(data, fileLength - validLength);
+                if (fromBytes == null) {
+                    return null;
+                }
+                validLength += RECORD_HEADER_SIZE + fromBytes.length;
+                final byte[] toBytes = readRecord(data, fileLength - validLength);
+                if (toBytes == null) {
+                    return null;
+                }
+                validLength += RECORD_HEADER_SIZE + toBytes.length;
+                final FDate from = FDateSerde.GET.fromBytes(fromBytes);
+                final FDate to = FDateSerde.GET.fromBytes(toBytes);
+                segment = new TimeRange(from, to);
+                if (!segmentFilter.test(segment)) {
+                    return null;
+                }
+                while (true) {
+                    final byte[] valueBytes = readRecord(data, fileLength - validLength);
+                    if (valueBytes == null) {
+                        break;
+                    }
+                    consumer.accept(valueSerde.fromBytes(valueBytes));
+                    validLength += RECORD_HEADER_SIZE + valueBytes.length;
+                }
+            } catch (final EOFException e) {
+                //header is incomplete
+                return null;
+            }
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+            if (channel.size() > validLength) {
+                LOG.warn("Cutting off [%s] bytes of an incomplete value at the end of: %s",
+                        channel.size() - validLength, file);
+                channel.truncate(validLength);
+            }
+            channel.position(validLength);
+            return segment;
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void append(final V value) {
+        if (channel == null) {
+            throw new IllegalStateException("create or replay needs to be called first: " + file);
+        }
+        try {
+            writeRecord(valueSerde.toBytes(value));
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        switch (syncPolicy) {
+        case ALWAYS:
+            sync();
+            break;
+        case INTERVAL:
+            if (!unsynced) {
+                unsynced = true;
+                IntervalSync.register(this);
+            }
+            break;
+        case OS:
+            break;
+        default:
+            throw UnknownArgumentException.newInstance(WriteAheadLogSyncPolicy.class, syncPolicy);
+        }
+    }
+
+    /**
+     * Forces the appended values to the disk.
+     */
+    public void sync() {
+        final FileChannel channelCopy = channel;
+        if (channelCopy == null) {
+            return;
+        }
+        unsynced = false;
+        try {
+            channelCopy.force(false);
+        } catch (final IOException e) {
+            if (channelCopy.isOpen()) {
+                throw new RuntimeException(e);
+            }
+            //closed in the mean time
+        }
+    }
+
+    /**
+     * Syncs and closes the log, the file is kept for a replay.
+     */
+    @Override
+    public void close() {
+        final FileChannel channelCopy = channel;
+        if (channelCopy == null) {
+            return;
+        }
+        sync();
+        channel = null;
+        try {
+            channelCopy.close();
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Removes the log after its values were converted into a historical segment or were discarded.
+     */
+    public void delete() {
+        final FileChannel channelCopy = channel;
+        channel = null;
+        unsynced = false;
+        if (channelCopy != null) {
+            try {
+                channelCopy.close();
+            } catch (final IOException e) {
+                //ignore
+            }
+        }
+        Files.deleteQuietly(file);
+    }
+
+    private void writeRecord(final byte[] bytes) throws IOException {
+        final int size = RECORD_HEADER_SIZE + bytes.length;
+        if (recordBuffer.capacity() < size) {
+            recordBuffer = ByteBuffer.allocate(Math.max(size, recordBuffer.capacity() * 2));
+        }
+        recordBuffer.clear();
+        recordBuffer.putInt(bytes.length);
+        recordBuffer.putInt(newChecksum(bytes.length, bytes));
+        recordBuffer.put(bytes);
+        recordBuffer.flip();
+        writeFully(recordBuffer);
+    }
+
+    private void writeFully(final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private int newChecksum(final int length, final byte[] bytes) {
+        checksum.reset();
+        //a corrupted length would otherwise only be noticed when the value can not be read
+        checksum.update(length >>> 24);
+        checksum.update(length >>> 16);
+        checksum.update(length >>> 8);
+        checksum.update(length);
+        checksum.update(bytes, 0, bytes.length);
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Returns null when the record is incomplete or does not match its checksum. The length is not trusted before it was
+     * compared with the remaining bytes of the file, so that a torn length does not allocate a huge buffer.
+     */
+    private byte[] readRecord(final DataInputStream data, final long remainingBytes) throws IOException {
+        final int length;
+        final int expectedChecksum;
+        try {
+            length = data.readInt();
+            expectedChecksum = data.readInt();
+        } catch (final EOFException e) {
+            return null;
+        }
+        if (length < 0 || length > remainingBytes - RECORD_HEADER_SIZE) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        try {
+            data.readFully(bytes);
+        } catch (final EOFException e) {
+            return null;
+        }
+        if (newChecksum(length, bytes) != expectedChecksum) {
+            return null;
+        }
+        return bytes;
+    }
+
+    public static <V> LiveSegmentWriteAheadLog<V> newDefaultWriteAheadLog(final File directory,
+            final String hashKey, final ISerde<V> valueSerde) {
+        if (!TimeSeriesProperties.LIVE_SEGMENT_WAL_ENABLED) {
+            return null;
+        }
+        final File file = new File(directory,
+                Files.normalizePath(hashKey.replace("/", "_").replace("\\", "_") + "_live.wal"));
+        return new LiveSegmentWriteAheadLog<V>(file, valueSerde, TimeSeriesProperties.LIVE_SEGMENT_WAL_SYNC_POLICY);
+    }
+
+    /**
+     * Forces logs with unsynced values to the disk in the background, so that appends do not wait for the disk.
+     */
+    private static final class IntervalSync {
+
+        private static final Set<LiveSegmentWriteAheadLog<?>> UNSYNCED = ConcurrentHashMap.newKeySet();
+        private static final WrappedExecutorService EXECUTOR = newExecutor();
+
+        private IntervalSync() {}
+
+        private static WrappedExecutorService newExecutor() {
+            final WrappedExecutorService executor = Executors
+                    .newFixedThreadPool(LiveSegmentWriteAheadLog.class.getSimpleName() + "_sync", 1)
+                    .setDynamicThreadName(false);
+            executor.execute(IntervalSync::syncLoop);
+            return executor;
+        }
+
+        private static void register(final LiveSegmentWriteAheadLog<?> log) {
+            UNSYNCED.add(log);
+        }
+
+        private static void syncLoop() {
+            final long intervalMillis = Math.max(1L,
+                    TimeSeriesProperties.LIVE_SEGMENT_WAL_SYNC_INTERVAL.longValue(FTimeUnit.MILLISECONDS));
+            try {
+                while (true) {
+                    Thread.sleep(intervalMillis);
+                    final Iterator<LiveSegmentWriteAheadLog<?>> iterator = UNSYNCED.iterator();
+                    while (iterator.hasNext()) {
+                        final LiveSegmentWriteAheadLog<?> log = iterator.next();
+                        iterator.remove();
+                        try {
+                            log.sync();
+                        } catch (final Throwable t) {
+                            LOG.warn("Sync of [%s] failed: %s", log.getFile(), t.toString());
+                        }
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package de.invesdwin.context.persistence.timeseriesdb.segmented.live;
+
+import java.util.List;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.persistence.timeseriesdb.updater.ATimeSeriesAppender;
+import de.invesdwin.util.time.duration.Duration;
+
+/**
+ * Appends the batches to the live segment of the key. Producers only touch the lock free queues of the appender, thus
+ * the live segment lock is only contended by the flusher and readers.
+ */
+@ThreadSafe
+public class LiveSegmentedTimeSeriesDBAppender<K, V> extends ATimeSeriesAppender<K, V> {
+
+    private final ALiveSegmentedTimeSeriesDB<K, V> table;
+
+    public LiveSegmentedTimeSeriesDBAppender(final ALiveSegmentedTimeSeriesDB<K, V> table) {
+        super(LiveSegmentedTimeSeriesDBAppender.class.getSimpleName() + "_" + table.getName());
+        this.table = table;
+    }
+
+    public LiveSegmentedTimeSeriesDBAppender(final ALiveSegmentedTimeSeriesDB<K, V> table, final int batchSize,
+            final Duration maxDelay) {
+        super(LiveSegmentedTimeSeriesDBAppender.class.getSimpleName() + "_" + table.getName(), batchSize, maxDelay);
+        this.table = table;
+    }
+
+    public ALiveSegmentedTimeSeriesDB<K, V> getTable() {
+        return table;
+    }
+
+    @Override
+    protected void write(final K key, final List<V> values) throws Exception {
+        int written = 0;
+        try {
+            for (int i = 0; i < values.size(); i++) {
+                table.putNextLiveValue(key, values.get(i));
+                written++;
+            }
+        } finally {
+            if (written < values.size()) {
+                //only retry the values that did not make it into the live segment
+                values.subList(0, written).clear();
+            }
+        }
+    }
+
+}
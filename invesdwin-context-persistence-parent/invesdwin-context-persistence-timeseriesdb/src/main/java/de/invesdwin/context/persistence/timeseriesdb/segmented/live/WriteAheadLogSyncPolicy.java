@@ -0,0 +1,25 @@
+package de.invesdwin.context.persistence.timeseriesdb.segmented.live;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Defines when appended live values are forced to the disk.
+ */
+@Immutable
+public enum WriteAheadLogSyncPolicy {
+    /**
+     * Each value is forced to the disk before putNextLiveValue returns. Survives power loss, but limits the append rate
+     * to the sync rate of the disk.
+     */
+    ALWAYS,
+    /**
+     * Values are forced to the disk in the background every LIVE_SEGMENT_WAL_SYNC_INTERVAL. A power loss can lose
+     * the values of the last interval.
+     */
+    INTERVAL,
+    /**
+     * Values are only written to the page cache and the operating system decides when to write them. Survives a crash
+     * or kill of the process, but not a power loss.
+     */
+    OS;
+}
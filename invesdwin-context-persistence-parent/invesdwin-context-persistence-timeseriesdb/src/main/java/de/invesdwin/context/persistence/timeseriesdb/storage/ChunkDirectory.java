@@ -0,0 +1,220 @@
+package de.invesdwin.context.persistence.timeseriesdb.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.concurrent.Immutable;
+
+import de.invesdwin.util.time.date.FDate;
+import ezdb.table.RangeTableRow;
+
+/**
+ * Compact directory over the chunks of a key. Instead of keeping a RangeTableRow (with its hashKey and rangeKey
+ * objects) per chunk, the lookup columns are stored in primitive arrays that are searched by binary search without
+ * allocating. The summaries are only kept for reading the chunk contents. Times are stored in millis, thus chunks
+ * that start inside the same millisecond resolve to the later one.
+ */
+@Immutable
+public final class ChunkDirectory {
+
+    public static final ChunkDirectory EMPTY = new ChunkDirectory(new long[0], new long[0], new int[0], new int[0],
+            new MemoryFileSummary[0], 0);
+
+    //end time millis of the first value of each chunk (which is the range key in the file lookup table)
+    private final long[] firstTimes;
+    private final long[] precedingValueCounts;
+    private final int[] valueCounts;
+    //chunks that share a memory file have the same id
+    private final int[] fileIds;
+    private final MemoryFileSummary[] summaries;
+    //cold chunks are always a prefix of the chunks
+    private final int coldChunks;
+
+    private ChunkDirectory(final long[] firstTimes, final long[] precedingValueCounts, final int[] valueCounts,
+            final int[] fileIds, final MemoryFileSummary[] summaries, final int coldChunks) {
+        this.firstTimes = firstTimes;
+        this.precedingValueCounts = precedingValueCounts;
+        this.valueCounts = valueCounts;
+        this.fileIds = fileIds;
+        this.summaries = summaries;
+        this.coldChunks = coldChunks;
+    }
+
+    public int size() {
+        return summaries.length;
+    }
+
+    public boolean isEmpty() {
+        return summaries.length == 0;
+    }
+
+    public long getFirstTime(final int chunk) {
+        return firstTimes[chunk];
+    }
+
+    public long getPrecedingValueCount(final int chunk) {
+        return precedingValueCounts[chunk];
+    }
+
+    public int getValueCount(final int chunk) {
+        return valueCounts[chunk];
+    }
+
+    public long getCombinedValueCount(final int chunk) {
+        return precedingValueCounts[chunk] + valueCounts[chunk];
+    }
+
+    /**
+     * Values before the first chunk might have been dropped by a retention, thus value indexes are relative to the
+     * precedingValueCount of the first chunk.
+     */
+    public long getValueIndexOffset() {
+        if (precedingValueCounts.length == 0) {
+            return 0L;
+        }
+        return precedingValueCounts[0];
+    }
+
+    /**
+     * Returns the number of leading chunks that were moved to the cold storage, which is also the first hot chunk.
+     */
+    public int getColdChunks() {
+        return coldChunks;
+    }
+
+    public int getFileId(final int chunk) {
+        return fileIds[chunk];
+    }
+
+    public MemoryFileSummary getSummary(final int chunk) {
+        return summaries[chunk];
+    }
+
+    public MemoryFileSummary getFirstSummary() {
+        if (summaries.length == 0) {
+            return null;
+        }
+        return summaries[0];
+    }
+
+    public MemoryFileSummary getLastSummary() {
+        if (summaries.length == 0) {
+            return null;
+        }
+        return summaries[summaries.length - 1];
+    }
+
+    /**
+     * Returns the last chunk that starts at or before the given date. Falls back to the first chunk when the date is
+     * before all chunks (same as the latest lookup of the range table) and returns -1 only when there are no chunks.
+     */
+    public int getLatestChunk(final FDate date) {
+        if (summaries.length == 0) {
+            return -1;
+        }
+        return Math.max(0, getLastChunkStartingUntil(date));
+    }
+
+    /**
+     * Returns the chunk that contains the given value index. Indexes outside of the values are clamped to the first or
+     * last chunk, -1 is only returned when there are no chunks.
+     */
+    public int getLatestChunk(final long index) {
+        if (summaries.length == 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = precedingValueCounts.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (precedingValueCounts[mid] <= index) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return Math.max(0, high);
+    }
+
+    /**
+     * Returns the last chunk that starts at or before the given date or -1 if all chunks start after it.
+     */
+    public int getLastChunkStartingUntil(final FDate date) {
+        final long millis = date.millisValue();
+        int low = 0;
+        int high = firstTimes.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (firstTimes[mid] <= millis) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Returns the first chunk that starts at or after the given date or size() if all chunks start before it.
+     */
+    public int getFirstChunkStartingFrom(final FDate date) {
+        final long millis = date.millisValue();
+        int low = 0;
+        int high = firstTimes.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (firstTimes[mid] < millis) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    public ArrayList<MemoryFileSummary> getSummaries(final int fromChunk, final int toChunk) {
+        final ArrayList<MemoryFileSummary> list = new ArrayList<>(toChunk - fromChunk + 1);
+        for (int i = fromChunk; i <= toChunk; i++) {
+            list.add(summaries[i]);
+        }
+        return list;
+    }
+
+    public static ChunkDirectory valueOf(final List<RangeTableRow<String, FDate, MemoryFileSummary>> rows) {
+        final int size = rows.size();
+        final long[] firstTimes = new long[size];
+        final MemoryFileSummary[] summaries = new MemoryFileSummary[size];
+        for (int i = 0; i < size; i++) {
+            final RangeTableRow<String, FDate, MemoryFileSummary> row = rows.get(i);
+            firstTimes[i] = row.getRangeKey().millisValue();
+            summaries[i] = row.getValue();
+        }
+        return valueOf(firstTimes, summaries);
+    }
+
+    public static ChunkDirectory valueOf(final long[] firstTimes, final MemoryFileSummary[] summaries) {
+        final int size = summaries.length;
+        if (size == 0) {
+            return EMPTY;
+        }
+        final long[] precedingValueCounts = new long[size];
+        final int[] valueCounts = new int[size];
+        final int[] fileIds = new int[size];
+        int fileId = 0;
+        int coldChunks = 0;
+        for (int i = 0; i < size; i++) {
+            final MemoryFileSummary summary = summaries[i];
+            precedingValueCounts[i] = summary.getPrecedingValueCount();
+            valueCounts[i] = summary.getValueCount();
+            if (i > 0 && summary.getPrecedingMemoryOffset() != summaries[i - 1].getPrecedingMemoryOffset()) {
+                fileId++;
+            }
+            fileIds[i] = fileId;
+            if (coldChunks == i && summary.isCold()) {
+                coldChunks++;
+            }
+        }
+        return new ChunkDirectory(firstTimes, precedingValueCounts, valueCounts, fileIds, summaries, coldChunks);
+    }
+
+}
@@ -0,0 +1,185 @@
+package de.invesdwin.context.persistence.timeseriesdb.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.util.lang.Files;
+import de.invesdwin.util.time.date.FDate;
+
+/**
+ * Binary copy of the chunk directory of a key, so that opening a key does not need to load its rows from the file
+ * lookup table. The file lookup table stays the source of truth: the manifest is only used when its last chunk ends
+ * exactly at the end of its memory file, otherwise (e.g. after a crash during an update) the directory is rebuilt
+ * from the table and the manifest is rewritten.
+ *
+ * Layout: magic(int), version(int), end(long) followed by firstTime(long), summaryLength(int), summary records. New
+ * chunks are appended behind the end and then the end is updated, so that a partially written record is never
+ * visible. Removing chunks rewrites the whole file and atomically replaces it.
+ */
+@ThreadSafe
+public class ChunkManifest {
+
+    public static final String FILE_NAME = "chunks.manifest";
+
+    private static final int MAGIC = 0x43484E4B;
+    private static final int VERSION = 1;
+
+    private static final int MAGIC_INDEX = 0;
+    private static final int MAGIC_SIZE = Integer.BYTES;
+
+    private static final int VERSION_INDEX = MAGIC_INDEX + MAGIC_SIZE;
+    private static final int VERSION_SIZE = Integer.BYTES;
+
+    private static final int END_INDEX = VERSION_INDEX + VERSION_SIZE;
+    private static final int END_SIZE = Long.BYTES;
+
+    private static final int RECORDS_INDEX = END_INDEX + END_SIZE;
+    private static final int RECORD_HEADER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private final File file;
+    private final MemoryFileSummarySerde summarySerde;
+
+    public ChunkManifest(final File dataDirectory, final Integer valueFixedLength) {
+        this.file = new File(dataDirectory, FILE_NAME);
+        this.summarySerde = new MemoryFileSummarySerde(valueFixedLength);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns null when the manifest is missing, empty or does not match the memory file.
+     */
+    public synchronized ChunkDirectory read() {
+        if (!file.exists()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < RECORDS_INDEX) {
+                return null;
+            }
+            final MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0L, size);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (buffer.getInt(MAGIC_INDEX) != MAGIC || buffer.getInt(VERSION_INDEX) != VERSION) {
+                return null;
+            }
+            final long end = buffer.getLong(END_INDEX);
+            if (end > size || end < RECORDS_INDEX) {
+                return null;
+            }
+            int count = 0;
+            int position = RECORDS_INDEX;
+            while (position < end) {
+                position += RECORD_HEADER_SIZE + buffer.getInt(position + Long.BYTES);
+                count++;
+            }
+            if (count == 0 || position != end) {
+                return null;
+            }
+            final long[] firstTimes = new long[count];
+            final MemoryFileSummary[] summaries = new MemoryFileSummary[count];
+            position = RECORDS_INDEX;
+            for (int i = 0; i < count; i++) {
+                firstTimes[i] = buffer.getLong(position);
+                final int length = buffer.getInt(position + Long.BYTES);
+                final byte[] bytes = new byte[length];
+                buffer.position(position + RECORD_HEADER_SIZE);
+                buffer.get(bytes);
+                summaries[i] = summarySerde.fromBytes(bytes);
+                position += RECORD_HEADER_SIZE + length;
+            }
+            final MemoryFileSummary lastSummary = summaries[count - 1];
+            final long memoryFileLength = new File(lastSummary.getMemoryResourceUri()).length();
+            if (memoryFileLength != lastSummary.getMemoryOffset() + lastSummary.getMemoryLength()) {
+                //an update did not finish, let the file lookup table decide
+                return null;
+            }
+            return ChunkDirectory.valueOf(firstTimes, summaries);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Rewrites the manifest with the first chunks of the directory and atomically replaces the previous one.
+     */
+    public synchronized void write(final ChunkDirectory directory, final int chunks) {
+        final File tempFile = new File(file.getAbsolutePath() + ".tmp");
+        try {
+            Files.forceMkdirParent(tempFile);
+            try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                final ByteBuffer header = ByteBuffer.allocate(RECORDS_INDEX);
+                header.putInt(MAGIC_INDEX, MAGIC);
+                header.putInt(VERSION_INDEX, VERSION);
+                long end = RECORDS_INDEX;
+                for (int i = 0; i < chunks; i++) {
+                    end = writeRecord(channel, end, directory.getFirstTime(i), directory.getSummary(i));
+                }
+                header.putLong(END_INDEX, end);
+                channel.write(header, 0L);
+                channel.force(false);
+            }
+            java.nio.file.Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Appends a finished chunk. Does nothing when there is no manifest yet, in that case it will be rebuilt from the
+     * file lookup table on the next read.
+     */
+    public synchronized void append(final FDate firstTime, final MemoryFileSummary summary) {
+        if (!file.exists()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            final ByteBuffer header = ByteBuffer.allocate(RECORDS_INDEX);
+            if (channel.read(header, 0L) != RECORDS_INDEX || header.getInt(MAGIC_INDEX) != MAGIC
+                    || header.getInt(VERSION_INDEX) != VERSION) {
+                delete();
+                return;
+            }
+            final long end = writeRecord(channel, header.getLong(END_INDEX), firstTime.millisValue(), summary);
+            final ByteBuffer endBuffer = ByteBuffer.allocate(END_SIZE);
+            endBuffer.putLong(0, end);
+            channel.write(endBuffer, END_INDEX);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public synchronized void delete() {
+        Files.deleteQuietly(file);
+    }
+
+    private long writeRecord(final FileChannel channel, final long position, final long firstTime,
+            final MemoryFileSummary summary) throws IOException {
+        final byte[] bytes = summarySerde.toBytes(summary);
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + bytes.length);
+        record.putLong(firstTime);
+        record.putInt(bytes.length);
+        record.put(bytes);
+        record.flip();
+        long writePosition = position;
+        while (record.hasRemaining()) {
+            writePosition += channel.write(record, writePosition);
+        }
+        return writePosition;
+    }
+
+}
@@ -0,0 +1,56 @@
+package de.invesdwin.context.persistence.timeseriesdb.storage;
+
+import java.io.File;
+
+import javax.annotation.concurrent.Immutable;
+
+import de.invesdwin.context.persistence.timeseriesdb.codec.ITimeSeriesCodec;
+import de.invesdwin.util.time.duration.Duration;
+
+/**
+ * Chunks whose values all end more than the given age before the last value of a key are recompressed in the
+ * background with the given codec (e.g. a high compression codec) into a file per chunk. The directory allows to move
+ * these rarely read chunks to a cheaper disk, while recent chunks stay in the memory file with the fast codec or
+ * uncompressed for flyweight access.
+ */
+@Immutable
+public class ColdStorage {
+
+    private final ITimeSeriesCodec codec;
+    private final Duration age;
+    private final File directory;
+
+    public ColdStorage(final ITimeSeriesCodec codec, final Duration age) {
+        this(codec, age, null);
+    }
+
+    /**
+     * When directory is null, cold chunks are stored in the data directory of their key.
+     */
+    public ColdStorage(final ITimeSeriesCodec codec, final Duration age, final File directory) {
+        this.codec = codec;
+        this.age = age;
+        this.directory = directory;
+    }
+
+    public ITimeSeriesCodec getCodec() {
+        return codec;
+    }
+
+    public Duration getAge() {
+        return age;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public File newDataDirectory(final TimeSeriesStorage storage, final String hashKey) {
+        if (directory == null) {
+            return new File(storage.newDataDirectory(hashKey), "cold");
+        } else {
+            return new File(directory, storage.getDirectory().getName() + "/" + hashKey);
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package de.invesdwin.context.persistence.timeseriesdb.storage;
+
+import javax.annotation.concurrent.Immutable;
+
+import de.invesdwin.util.streams.buffer.bytes.IByteBuffer;
+import de.invesdwin.util.time.date.FDate;
+
+/**
+ * Sparse index over a chunk whose records are written in independently compressed blocks of blockSize records. For
+ * each block the end time millis of its first record and its byte offset relative to the chunk memoryOffset are
+ * stored, thus a point lookup only needs to decompress a single block.
+ */
+@Immutable
+public class MemoryFileBlockIndex {
+
+    private static final int BLOCKSIZE_INDEX = 0;
+    private static final int BLOCKSIZE_SIZE = Integer.BYTES;
+
+    private static final int BLOCKCOUNT_INDEX = BLOCKSIZE_INDEX + BLOCKSIZE_SIZE;
+    private static final int BLOCKCOUNT_SIZE = Integer.BYTES;
+
+    private static final int BLOCKS_INDEX = BLOCKCOUNT_INDEX + BLOCKCOUNT_SIZE;
+    private static final int BLOCK_SIZE = Long.BYTES + Long.BYTES;
+
+    private final int blockSize;
+    private final long[] firstTimes;
+    private final long[] offsets;
+
+    public MemoryFileBlockIndex(final int blockSize, final long[] firstTimes, final long[] offsets) {
+        if (firstTimes.length != offsets.length) {
+            throw new IllegalArgumentException(
+                    "firstTimes.length [" + firstTimes.length + "] != offsets.length [" + offsets.length + "]");
+        }
+        this.blockSize = blockSize;
+        this.firstTimes = firstTimes;
+        this.offsets = offsets;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getBlockCount() {
+        return offsets.length;
+    }
+
+    public long getFirstTime(final int block) {
+        return firstTimes[block];
+    }
+
+    /**
+     * Relative to the memoryOffset of the chunk.
+     */
+    public long getOffset(final int block) {
+        return offsets[block];
+    }
+
+    public long getLength(final int block, final long memoryLength) {
+        if (block + 1 < offsets.length) {
+            return offsets[block + 1] - offsets[block];
+        } else {
+            return memoryLength - offsets[block];
+        }
+    }
+
+    public int getFirstIndex(final int block) {
+        return block * blockSize;
+    }
+
+    public int getBlockByIndex(final int index) {
+        return Math.min(index / blockSize, offsets.length - 1);
+    }
+
+    /**
+     * Returns the last block whose first record is not after the given date, or -1 if the date is before the first
+     * record. Since the times are stored in millis, callers should check the previous block when the found block does
+     * not contain a matching record.
+     */
+    public int getBlock(final FDate date) {
+        final long millis = date.millisValue();
+        int low = 0;
+        int high = firstTimes.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final long midTime = firstTimes[mid];
+            if (midTime <= millis) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    public int getBufferLength() {
+        return BLOCKS_INDEX + offsets.length * BLOCK_SIZE;
+    }
+
+    public int toBuffer(final IByteBuffer buffer, final int index) {
+        buffer.putInt(index + BLOCKSIZE_INDEX, blockSize);
+        buffer.putInt(index + BLOCKCOUNT_INDEX, offsets.length);
+        int position = index + BLOCKS_INDEX;
+        for (int i = 0; i < offsets.length; i++) {
+            buffer.putLong(position, firstTimes[i]);
+            position += Long.BYTES;
+            buffer.putLong(position, offsets[i]);
+            position += Long.BYTES;
+        }
+        return position;
+    }
+
+    public static MemoryFileBlockIndex fromBuffer(final IByteBuffer buffer, final int index) {
+        final int blockSize = buffer.getInt(index + BLOCKSIZE_INDEX);
+        final int blockCount = buffer.getInt(index + BLOCKCOUNT_INDEX);
+        final long[] firstTimes = new long[blockCount];
+        final long[] offsets = new long[blockCount];
+        int position = index + BLOCKS_INDEX;
+        for (int i = 0; i < blockCount; i++) {
+            firstTimes[i] = buffer.getLong(position);
+            position += Long.BYTES;
+            offsets[i] = buffer.getLong(position);
+            position += Long.BYTES;
+        }
+        return new MemoryFileBlockIndex(blockSize, firstTimes, offsets);
+    }
+
+}
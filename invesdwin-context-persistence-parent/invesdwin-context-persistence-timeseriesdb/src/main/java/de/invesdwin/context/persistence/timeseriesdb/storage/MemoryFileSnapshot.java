@@ -0,0 +1,149 @@
+package de.invesdwin.context.persistence.timeseriesdb.storage;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.integration.retry.RetryLaterRuntimeException;
+import de.invesdwin.context.log.Log;
+import de.invesdwin.context.persistence.timeseriesdb.metrics.TimeSeriesMetric;
+import de.invesdwin.context.persistence.timeseriesdb.metrics.TimeSeriesMetrics;
+import de.invesdwin.util.collections.iterable.ICloseableIterator;
+import de.invesdwin.util.collections.iterable.collection.arraylist.ArrayListCloseableIterable;
+import de.invesdwin.util.lang.finalizer.AFinalizer;
+
+/**
+ * An immutable version of the chunks that a range scan reads. It is taken under the read lock, afterwards the scan
+ * decodes its chunks without holding the lock. Updates do not overwrite or truncate the memory file bytes that are
+ * referenced by a pinned snapshot, instead they write the new chunks behind them. The space is reclaimed by the next
+ * update after the snapshot got closed.
+ *
+ * Only the finalizer is registered as a pin, thus a snapshot that is not closed (e.g. an abandoned range iterator) is
+ * released by the garbage collector instead of blocking the reclaiming of space forever.
+ */
+@ThreadSafe
+public class MemoryFileSnapshot implements Closeable {
+
+    private static final Log LOG = new Log(MemoryFileSnapshot.class);
+
+    private final ArrayList<MemoryFileSummary> summaries;
+    private final MemoryFileSnapshotFinalizer finalizer;
+
+    MemoryFileSnapshot(final ArrayList<MemoryFileSummary> summaries, final Set<MemoryFileSnapshotFinalizer> pinned) {
+        this.summaries = summaries;
+        this.finalizer = new MemoryFileSnapshotFinalizer(newMemoryFileEnd(summaries), pinned);
+        this.finalizer.register(this);
+    }
+
+    private static long newMemoryFileEnd(final List<MemoryFileSummary> summaries) {
+        long memoryFileEnd = 0L;
+        for (int i = 0; i < summaries.size(); i++) {
+            final MemoryFileSummary summary = summaries.get(i);
+            memoryFileEnd = Math.max(memoryFileEnd,
+                    summary.getPrecedingMemoryOffset() + summary.getMemoryOffset() + summary.getMemoryLength());
+        }
+        return memoryFileEnd;
+    }
+
+    public List<MemoryFileSummary> getSummaries() {
+        return summaries;
+    }
+
+    /**
+     * The end of the furthest memory file range that is referenced by this snapshot (including precedingMemoryOffset).
+     */
+    public long getMemoryFileEnd() {
+        return finalizer.memoryFileEnd;
+    }
+
+    public ICloseableIterator<MemoryFileSummary> iterator() {
+        return new ArrayListCloseableIterable<>(summaries).iterator();
+    }
+
+    public boolean isPinned() {
+        return finalizer.isPinned();
+    }
+
+    /**
+     * True when the memory files of this snapshot were deleted and might be replaced by new ones at the same path (e.g.
+     * when all values of the key were deleted).
+     */
+    public boolean isInvalidated() {
+        return finalizer.invalidated;
+    }
+
+    /**
+     * Should be called after a value was decoded from this snapshot, so that a scan fails instead of returning values
+     * that were decoded from replaced memory files.
+     */
+    public void assertValid() {
+        if (finalizer.invalidated) {
+            throw new RetryLaterRuntimeException("Memory files of snapshot up to memory file offset ["
+                    + finalizer.memoryFileEnd + "] were deleted while it was being read");
+        }
+    }
+
+    @Override
+    public void close() {
+        finalizer.closed = true;
+        finalizer.close();
+    }
+
+    static final class MemoryFileSnapshotFinalizer extends AFinalizer {
+
+        private final long memoryFileEnd;
+        private volatile Set<MemoryFileSnapshotFinalizer> pinned;
+        private volatile boolean closed;
+        private volatile boolean invalidated;
+
+        private MemoryFileSnapshotFinalizer(final long memoryFileEnd, final Set<MemoryFileSnapshotFinalizer> pinned) {
+            this.memoryFileEnd = memoryFileEnd;
+            this.pinned = pinned;
+            pinned.add(this);
+        }
+
+        long getMemoryFileEnd() {
+            return memoryFileEnd;
+        }
+
+        void invalidate() {
+            invalidated = true;
+        }
+
+        boolean isPinned() {
+            return pinned != null;
+        }
+
+        @Override
+        protected void clean() {
+            final Set<MemoryFileSnapshotFinalizer> pinnedCopy = pinned;
+            if (pinnedCopy == null) {
+                return;
+            }
+            pinnedCopy.remove(this);
+            pinned = null;
+            if (!closed) {
+                //the snapshot became unreachable without being closed
+                TimeSeriesMetrics.increment(TimeSeriesMetric.SNAPSHOT_LEAKS);
+                LOG.warn("Released a leaked snapshot up to memory file offset [%s], "
+                        + "please ensure that range iterators are closed", memoryFileEnd);
+            }
+        }
+
+        @Override
+        protected boolean isCleaned() {
+            return !isPinned();
+        }
+
+        @Override
+        public boolean isThreadLocal() {
+            //range scans might be closed by a different thread than the one that started them
+            return false;
+        }
+
+    }
+
+}
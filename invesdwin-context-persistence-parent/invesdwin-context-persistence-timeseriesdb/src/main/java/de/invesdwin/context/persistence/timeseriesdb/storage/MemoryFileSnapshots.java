@@ -0,0 +1,52 @@
+package de.invesdwin.context.persistence.timeseriesdb.storage;
+
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Keeps track of the snapshots that range scans of a key are currently reading from. Snapshots that were not closed
+ * are removed once they got garbage collected.
+ */
+@ThreadSafe
+public class MemoryFileSnapshots {
+
+    private final Set<MemoryFileSnapshot.MemoryFileSnapshotFinalizer> pinned = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Should be called while holding the read lock so that no update can change the given chunks concurrently.
+     */
+    public MemoryFileSnapshot pin(final ArrayList<MemoryFileSummary> summaries) {
+        return new MemoryFileSnapshot(summaries, pinned);
+    }
+
+    /**
+     * Returns true if a pinned snapshot still references memory file bytes at or after the given offset (including
+     * precedingMemoryOffset). Should be called while holding the write lock so that no snapshot is pinned concurrently.
+     */
+    public boolean isPinned(final long memoryFileOffset) {
+        for (final MemoryFileSnapshot.MemoryFileSnapshotFinalizer snapshot : pinned) {
+            if (snapshot.getMemoryFileEnd() > memoryFileOffset) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lets the range scans that currently read from a pinned snapshot fail on their next value. Should be called while
+     * holding the write lock before memory files are deleted that a new memory file might replace at the same path.
+     */
+    public void invalidate() {
+        for (final MemoryFileSnapshot.MemoryFileSnapshotFinalizer snapshot : pinned) {
+            snapshot.invalidate();
+        }
+    }
+
+    public int size() {
+        return pinned.size();
+    }
+
+}
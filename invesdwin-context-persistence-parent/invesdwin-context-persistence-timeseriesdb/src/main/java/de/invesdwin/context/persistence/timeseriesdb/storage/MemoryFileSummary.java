@@ -2,6 +2,8 @@ package de.invesdwin.context.persistence.timeseriesdb.storage;
 
 import javax.annotation.concurrent.Immutable;
 
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.ChunkAggregates;
+import de.invesdwin.context.persistence.timeseriesdb.codec.TimeSeriesCodecs;
 import de.invesdwin.norva.marker.ISerializableValueObject;
 import de.invesdwin.util.lang.Objects;
 import de.invesdwin.util.marshallers.serde.ISerde;
@@ -20,11 +22,51 @@ public class MemoryFileSummary implements ISerializableValueObject {
     private final long precedingMemoryOffset;
     private final long memoryOffset;
     private final long memoryLength;
+    /**
+     * can be null when the chunk was not written in blocks
+     */
+    private final MemoryFileBlockIndex blockIndex;
+    /**
+     * can be null when no aggregate fields were declared
+     */
+    private final ChunkAggregates aggregates;
+    /**
+     * 0 when the chunk was encoded with the compression factory of the table
+     */
+    private final byte codecId;
+    /**
+     * true when the chunk was recompressed into its own file of the cold storage, then memoryOffset and memoryLength
+     * refer to that file while precedingMemoryOffset still refers to the memory file it was written to originally
+     */
+    private final boolean cold;
     private final int hashCode;
 
     public <V> MemoryFileSummary(final byte[] firstValue, final byte[] lastValue, final long precedingValueCount,
             final int valueCount, final String memoryResourceUri, final long precedingMemoryOffset,
             final long memoryOffset, final long memoryLength) {
+        this(firstValue, lastValue, precedingValueCount, valueCount, memoryResourceUri, precedingMemoryOffset,
+                memoryOffset, memoryLength, null);
+    }
+
+    public <V> MemoryFileSummary(final byte[] firstValue, final byte[] lastValue, final long precedingValueCount,
+            final int valueCount, final String memoryResourceUri, final long precedingMemoryOffset,
+            final long memoryOffset, final long memoryLength, final MemoryFileBlockIndex blockIndex) {
+        this(firstValue, lastValue, precedingValueCount, valueCount, memoryResourceUri, precedingMemoryOffset,
+                memoryOffset, memoryLength, blockIndex, null, TimeSeriesCodecs.DEFAULT_ID);
+    }
+
+    public <V> MemoryFileSummary(final byte[] firstValue, final byte[] lastValue, final long precedingValueCount,
+            final int valueCount, final String memoryResourceUri, final long precedingMemoryOffset,
+            final long memoryOffset, final long memoryLength, final MemoryFileBlockIndex blockIndex,
+            final ChunkAggregates aggregates, final byte codecId) {
+        this(firstValue, lastValue, precedingValueCount, valueCount, memoryResourceUri, precedingMemoryOffset,
+                memoryOffset, memoryLength, blockIndex, aggregates, codecId, false);
+    }
+
+    public <V> MemoryFileSummary(final byte[] firstValue, final byte[] lastValue, final long precedingValueCount,
+            final int valueCount, final String memoryResourceUri, final long precedingMemoryOffset,
+            final long memoryOffset, final long memoryLength, final MemoryFileBlockIndex blockIndex,
+            final ChunkAggregates aggregates, final byte codecId, final boolean cold) {
         this.firstValue = firstValue;
         this.lastValue = lastValue;
         this.precedingValueCount = precedingValueCount;
@@ -33,12 +75,32 @@ public class MemoryFileSummary implements ISerializableValueObject {
         this.precedingMemoryOffset = precedingMemoryOffset;
         this.memoryOffset = memoryOffset;
         this.memoryLength = memoryLength;
+        this.blockIndex = blockIndex;
+        this.aggregates = aggregates;
+        this.codecId = codecId;
+        this.cold = cold;
         this.hashCode = newHashCode();
     }
 
     public <V> MemoryFileSummary(final ISerde<V> serde, final V firstValue, final V lastValue,
             final long precedingValueCount, final int valueCount, final String memoryResourceUri,
             final long precedingMemoryOffset, final long memoryOffset, final long memoryLength) {
+        this(serde, firstValue, lastValue, precedingValueCount, valueCount, memoryResourceUri, precedingMemoryOffset,
+                memoryOffset, memoryLength, null);
+    }
+
+    public <V> MemoryFileSummary(final ISerde<V> serde, final V firstValue, final V lastValue,
+            final long precedingValueCount, final int valueCount, final String memoryResourceUri,
+            final long precedingMemoryOffset, final long memoryOffset, final long memoryLength,
+            final MemoryFileBlockIndex blockIndex) {
+        this(serde, firstValue, lastValue, precedingValueCount, valueCount, memoryResourceUri, precedingMemoryOffset,
+                memoryOffset, memoryLength, blockIndex, null, TimeSeriesCodecs.DEFAULT_ID);
+    }
+
+    public <V> MemoryFileSummary(final ISerde<V> serde, final V firstValue, final V lastValue,
+            final long precedingValueCount, final int valueCount, final String memoryResourceUri,
+            final long precedingMemoryOffset, final long memoryOffset, final long memoryLength,
+            final MemoryFileBlockIndex blockIndex, final ChunkAggregates aggregates, final byte codecId) {
         this.firstValue = serde.toBytes(firstValue);
         this.lastValue = serde.toBytes(lastValue);
         this.precedingValueCount = precedingValueCount;
@@ -47,9 +109,30 @@ public class MemoryFileSummary implements ISerializableValueObject {
         this.precedingMemoryOffset = precedingMemoryOffset;
         this.memoryOffset = memoryOffset;
         this.memoryLength = memoryLength;
+        this.blockIndex = blockIndex;
+        this.aggregates = aggregates;
+        this.codecId = codecId;
+        this.cold = false;
         this.hashCode = newHashCode();
     }
 
+    /**
+     * Returns a copy that points to the same bytes after they were moved inside the memory file.
+     */
+    public MemoryFileSummary withMemoryOffset(final long newMemoryOffset) {
+        return new MemoryFileSummary(firstValue, lastValue, precedingValueCount, valueCount, memoryResourceUri,
+                precedingMemoryOffset, newMemoryOffset, memoryLength, blockIndex, aggregates, codecId, cold);
+    }
+
+    /**
+     * Returns a copy that points to the whole file into which the chunk was recompressed with the given codec.
+     */
+    public MemoryFileSummary toCold(final String coldResourceUri, final long coldMemoryLength,
+            final byte coldCodecId) {
+        return new MemoryFileSummary(firstValue, lastValue, precedingValueCount, valueCount, coldResourceUri,
+                precedingMemoryOffset, 0L, coldMemoryLength, null, aggregates, coldCodecId, true);
+    }
+
     private int newHashCode() {
         return Objects.hashCode(memoryResourceUri, precedingMemoryOffset, memoryOffset, memoryLength);
     }
@@ -98,6 +181,22 @@ public class MemoryFileSummary implements ISerializableValueObject {
         return memoryLength;
     }
 
+    public MemoryFileBlockIndex getBlockIndex() {
+        return blockIndex;
+    }
+
+    public ChunkAggregates getAggregates() {
+        return aggregates;
+    }
+
+    public byte getCodecId() {
+        return codecId;
+    }
+
+    public boolean isCold() {
+        return cold;
+    }
+
     public IByteBuffer newBuffer(final IMemoryMappedFile file) {
         final int length = Integers.checkedCast(getMemoryLength());
         return file.newByteBuffer(getMemoryOffset(), length);
@@ -126,6 +225,7 @@ public class MemoryFileSummary implements ISerializableValueObject {
                 .add("precedingOffset", precedingMemoryOffset)
                 .add("offset", memoryOffset)
                 .add("length", memoryLength)
+                .add("cold", cold)
                 .toString();
     }
 
@@ -2,6 +2,8 @@ package de.invesdwin.context.persistence.timeseriesdb.storage;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.ChunkAggregates;
+import de.invesdwin.context.persistence.timeseriesdb.codec.TimeSeriesCodecs;
 import de.invesdwin.util.marshallers.serde.ISerde;
 import de.invesdwin.util.streams.buffer.bytes.ByteBuffers;
 import de.invesdwin.util.streams.buffer.bytes.IByteBuffer;
@@ -29,6 +31,17 @@ public final class MemoryFileSummarySerde implements ISerde<MemoryFileSummary> {
 
     private static final int VALUELENGTH_SIZE = Integer.BYTES;
 
+    /*
+     * optional extensions are appended after the memoryResourceUri as type(byte), length(int), payload so that older
+     * summaries without extensions can still be read
+     */
+    private static final int EXTENSIONTYPE_SIZE = Byte.BYTES;
+    private static final int EXTENSIONLENGTH_SIZE = Integer.BYTES;
+    private static final byte EXTENSIONTYPE_BLOCKINDEX = 1;
+    private static final byte EXTENSIONTYPE_AGGREGATES = 2;
+    private static final byte EXTENSIONTYPE_CODECID = 3;
+    private static final byte EXTENSIONTYPE_COLD = 4;
+
     private final int firstValueLengthIndex;
     private final int lastValueLengthIndex;
     private final int firstValueIndex;
@@ -68,8 +81,10 @@ public final class MemoryFileSummarySerde implements ISerde<MemoryFileSummary> {
             final byte[] lastValue = ByteBuffers.allocateByteArray(valueFixedLength);
             buffer.getBytes(lastValueIndex, lastValue);
             final String memoryResourceUri = buffer.getStringUtf8(memoryResourceUriIndex, memoryResourceUriSize);
+            final Extensions extensions = readExtensions(buffer, memoryResourceUriIndex + memoryResourceUriSize);
             return new MemoryFileSummary(firstValue, lastValue, precedingValueCount, valueCount, memoryResourceUri,
-                    precedingMemoryOffset, memoryOffset, memoryLength);
+                    precedingMemoryOffset, memoryOffset, memoryLength, extensions.blockIndex, extensions.aggregates,
+                    extensions.codecId, extensions.cold);
         } else {
             final int firstValueLength = buffer.getInt(firstValueLengthIndex);
             final int lastValueLength = buffer.getInt(lastValueLengthIndex);
@@ -81,8 +96,11 @@ public final class MemoryFileSummarySerde implements ISerde<MemoryFileSummary> {
             buffer.getBytes(position, lastValue);
             position += lastValueLength;
             final String memoryResourceUri = buffer.getStringUtf8(position, memoryResourceUriSize);
+            position += memoryResourceUriSize;
+            final Extensions extensions = readExtensions(buffer, position);
             return new MemoryFileSummary(firstValue, lastValue, precedingValueCount, valueCount, memoryResourceUri,
-                    precedingMemoryOffset, memoryOffset, memoryLength);
+                    precedingMemoryOffset, memoryOffset, memoryLength, extensions.blockIndex, extensions.aggregates,
+                    extensions.codecId, extensions.cold);
         }
     }
 
@@ -109,7 +127,7 @@ public final class MemoryFileSummarySerde implements ISerde<MemoryFileSummary> {
             buffer.putBytes(firstValueIndex, firstValue);
             buffer.putBytes(lastValueIndex, lastValue);
             buffer.putBytes(memoryResourceUriIndex, memoryResourceUriBytes);
-            return memoryResourceUriIndex + memoryResourceUriBytes.length;
+            return writeExtensions(buffer, memoryResourceUriIndex + memoryResourceUriBytes.length, obj);
         } else {
             buffer.putInt(firstValueLengthIndex, firstValue.length);
             buffer.putInt(lastValueLengthIndex, lastValue.length);
@@ -120,8 +138,89 @@ public final class MemoryFileSummarySerde implements ISerde<MemoryFileSummary> {
             position += lastValue.length;
             buffer.putBytes(position, memoryResourceUriBytes);
             position += memoryResourceUriBytes.length;
-            return position;
+            return writeExtensions(buffer, position, obj);
+        }
+    }
+
+    private Extensions readExtensions(final IByteBuffer buffer, final int extensionsIndex) {
+        final Extensions extensions = new Extensions();
+        int position = extensionsIndex;
+        final int capacity = buffer.capacity();
+        while (position + EXTENSIONTYPE_SIZE + EXTENSIONLENGTH_SIZE <= capacity) {
+            final byte type = buffer.getByte(position);
+            position += EXTENSIONTYPE_SIZE;
+            final int length = buffer.getInt(position);
+            position += EXTENSIONLENGTH_SIZE;
+            if (length < 0 || position + length > capacity) {
+                throw new IllegalStateException("Invalid extension length [" + length + "] at position [" + position
+                        + "] for capacity [" + capacity + "]");
+            }
+            switch (type) {
+            case EXTENSIONTYPE_BLOCKINDEX:
+                extensions.blockIndex = MemoryFileBlockIndex.fromBuffer(buffer, position);
+                break;
+            case EXTENSIONTYPE_AGGREGATES:
+                extensions.aggregates = ChunkAggregates.fromBuffer(buffer, position);
+                break;
+            case EXTENSIONTYPE_CODECID:
+                extensions.codecId = buffer.getByte(position);
+                break;
+            case EXTENSIONTYPE_COLD:
+                extensions.cold = true;
+                break;
+            default:
+                //skip unknown extensions that might have been written by a newer version
+                break;
+            }
+            position += length;
+        }
+        return extensions;
+    }
+
+    private int writeExtensions(final IByteBuffer buffer, final int extensionsIndex, final MemoryFileSummary obj) {
+        int position = extensionsIndex;
+        final MemoryFileBlockIndex blockIndex = obj.getBlockIndex();
+        if (blockIndex != null) {
+            buffer.putByte(position, EXTENSIONTYPE_BLOCKINDEX);
+            position += EXTENSIONTYPE_SIZE;
+            final int length = blockIndex.getBufferLength();
+            buffer.putInt(position, length);
+            position += EXTENSIONLENGTH_SIZE;
+            position = blockIndex.toBuffer(buffer, position);
+        }
+        final ChunkAggregates aggregates = obj.getAggregates();
+        if (aggregates != null) {
+            buffer.putByte(position, EXTENSIONTYPE_AGGREGATES);
+            position += EXTENSIONTYPE_SIZE;
+            final int length = aggregates.getBufferLength();
+            buffer.putInt(position, length);
+            position += EXTENSIONLENGTH_SIZE;
+            position = aggregates.toBuffer(buffer, position);
+        }
+        final byte codecId = obj.getCodecId();
+        if (codecId != TimeSeriesCodecs.DEFAULT_ID) {
+            buffer.putByte(position, EXTENSIONTYPE_CODECID);
+            position += EXTENSIONTYPE_SIZE;
+            buffer.putInt(position, Byte.BYTES);
+            position += EXTENSIONLENGTH_SIZE;
+            buffer.putByte(position, codecId);
+            position += Byte.BYTES;
         }
+        if (obj.isCold()) {
+            //the type alone marks the chunk as cold
+            buffer.putByte(position, EXTENSIONTYPE_COLD);
+            position += EXTENSIONTYPE_SIZE;
+            buffer.putInt(position, 0);
+            position += EXTENSIONLENGTH_SIZE;
+        }
+        return position;
+    }
+
+    private static final class Extensions {
+        private MemoryFileBlockIndex blockIndex;
+        private ChunkAggregates aggregates;
+        private byte codecId = TimeSeriesCodecs.DEFAULT_ID;
+        private boolean cold;
     }
 
 }
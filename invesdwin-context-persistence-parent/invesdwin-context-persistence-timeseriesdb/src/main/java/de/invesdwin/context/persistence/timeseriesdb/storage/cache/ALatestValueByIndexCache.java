@@ -1,25 +1,53 @@
 package de.invesdwin.context.persistence.timeseriesdb.storage.cache;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.concurrent.Immutable;
 import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 
-import de.invesdwin.util.collections.array.primitive.circular.CircularGenericPrimitiveArrayQueue;
-import de.invesdwin.util.error.UnknownArgumentException;
+import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesProperties;
+import de.invesdwin.util.concurrent.reference.WeakThreadLocalReference;
 import de.invesdwin.util.time.date.BisectDuplicateKeyHandling;
 import de.invesdwin.util.time.date.FDate;
 import de.invesdwin.util.time.date.FDates;
 
-@NotThreadSafe
+/**
+ * Sliding window over the values of a key that is shared between all threads. The values are decoded in windows of
+ * LATEST_VALUE_BY_INDEX_WINDOW_SIZE consecutive indexes that are aligned to multiples of the window size, thus threads
+ * stepping through the same range find the same windows. Each thread only keeps a reference to its current window,
+ * the shared cache holds the windows weakly so that a window is dropped once no thread references it anymore.
+ * Leaving the current window slides by a whole window into the direction of the date before falling back to an index
+ * lookup.
+ */
+@ThreadSafe
 public abstract class ALatestValueByIndexCache<V> {
 
-    private static final int PREV_PREV_INDEX = 0;
-    private static final int PREV_INDEX = 1;
-    private static final int CUR_INDEX = 2;
-    private static final int NEXT_INDEX = 3;
-    private static final int NEXT_NEXT_INDEX = 4;
+    private final int windowSize;
+    private final Cache<Long, LatestValueWindow<V>> windows;
+    private final WeakThreadLocalReference<Cursor<V>> cursorHolder = new WeakThreadLocalReference<Cursor<V>>() {
+        @Override
+        protected Cursor<V> initialValue() {
+            return new Cursor<V>();
+        };
+    };
+
+    public ALatestValueByIndexCache() {
+        this(TimeSeriesProperties.LATEST_VALUE_BY_INDEX_WINDOW_SIZE);
+    }
+
+    public ALatestValueByIndexCache(final int windowSize) {
+        this.windowSize = Math.max(1, windowSize);
+        this.windows = Caffeine.newBuilder().weakValues().<Long, LatestValueWindow<V>> build();
+    }
 
-    private final CircularGenericPrimitiveArrayQueue<V> values = new CircularGenericPrimitiveArrayQueue<>(5);
-    private long curStorageIndex;
-    private int prevResetIndex = getLastResetIndex() - 1;
+    public int getWindowSize() {
+        return windowSize;
+    }
 
     protected abstract int getLastResetIndex();
 
@@ -29,102 +57,186 @@ public abstract class ALatestValueByIndexCache<V> {
 
     protected abstract FDate extractEndTime(V value);
 
-    private FDate getKey(final int index) {
-        final V value = values.get(index);
-        return extractEndTime(value);
+    protected abstract long size();
+
+    /**
+     * Can be overridden to read consecutive values more efficiently than one index at a time.
+     */
+    protected List<V> getLatestValues(final long fromIndex, final int count) {
+        final long size = size();
+        final long toIndex = Math.min(fromIndex + count, size);
+        final List<V> values = new ArrayList<>((int) Math.max(0L, toIndex - fromIndex));
+        for (long i = fromIndex; i < toIndex; i++) {
+            final V value = getLatestValue(i);
+            if (value == null) {
+                break;
+            }
+            values.add(value);
+        }
+        return values;
     }
 
     public V getLatestValueByIndex(final FDate date) {
         final int lastResetIndex = getLastResetIndex();
-        if (prevResetIndex != lastResetIndex) {
-            return init(date, lastResetIndex);
+        final Cursor<V> cursor = cursorHolder.get();
+        final LatestValueWindow<V> window = cursor.window;
+        if (window != null && window.resetIndex == lastResetIndex) {
+            final V value = window.getLatestValue(date);
+            if (value != null) {
+                return value;
+            }
+            final V neighborValue = getLatestValueFromNeighbor(cursor, window, date, lastResetIndex);
+            if (neighborValue != null) {
+                return neighborValue;
+            }
         }
-        final FDate prevPrevKey = getKey(PREV_PREV_INDEX);
-        final FDate nextNextKey = getKey(NEXT_NEXT_INDEX);
-        if (!date.isBetweenInclusiveNotNullSafe(prevPrevKey, nextNextKey)) {
-            return init(date, lastResetIndex);
+        final long index = getLatestValueIndex(date);
+        if (index < 0) {
+            cursor.window = null;
+            return null;
         }
-        final int bisect = FDates.bisect(this::extractEndTime, values, date, BisectDuplicateKeyHandling.UNDEFINED);
-        switch (bisect) {
-        case PREV_PREV_INDEX: {
-            final V prevPrevValue = values.get(PREV_PREV_INDEX);
-            //now for sure move backward
-            moveBackward();
-            return prevPrevValue;
+        final LatestValueWindow<V> indexWindow = getWindow(index / windowSize, lastResetIndex);
+        cursor.window = indexWindow;
+        return indexWindow.get(index);
+    }
+
+    private V getLatestValueFromNeighbor(final Cursor<V> cursor, final LatestValueWindow<V> window, final FDate date,
+            final int lastResetIndex) {
+        if (date.isAfterNotNullSafe(window.lastKey)) {
+            if (window.last) {
+                return null;
+            }
+            final LatestValueWindow<V> next = getWindow(window.windowIndex + 1, lastResetIndex);
+            if (next.isEmpty()) {
+                return null;
+            }
+            cursor.window = next;
+            if (date.isBeforeNotNullSafe(next.firstKey)) {
+                //the date lies in the gap between the windows
+                return window.getLastValue();
+            }
+            return next.getLatestValue(date);
+        } else {
+            if (window.windowIndex == 0) {
+                return null;
+            }
+            final LatestValueWindow<V> prev = getWindow(window.windowIndex - 1, lastResetIndex);
+            if (prev.isEmpty()) {
+                return null;
+            }
+            cursor.window = prev;
+            if (!date.isBeforeNotNullSafe(prev.lastKey)) {
+                //the date lies in the gap between the windows
+                return prev.getLastValue();
+            }
+            return prev.getLatestValue(date);
         }
-        case PREV_INDEX: {
-            return values.get(PREV_INDEX);
+    }
+
+    private LatestValueWindow<V> getWindow(final long windowIndex, final int lastResetIndex) {
+        final LatestValueWindow<V> cached = windows.getIfPresent(windowIndex);
+        if (cached != null) {
+            if (cached.resetIndex == lastResetIndex) {
+                return cached;
+            }
+            windows.asMap().remove(windowIndex, cached);
         }
-        case CUR_INDEX: {
-            return values.get(CUR_INDEX);
+        final LatestValueWindow<V> loaded = windows.get(windowIndex, k -> newWindow(k, lastResetIndex));
+        if (loaded.resetIndex != lastResetIndex) {
+            //a concurrent reset happened, use a private window for this lookup
+            return newWindow(windowIndex, lastResetIndex);
         }
-        case NEXT_INDEX: {
-            final V nextValue = values.get(NEXT_INDEX);
-            final FDate nextKey = extractEndTime(nextValue);
-            if (date.isAfterNotNullSafe(nextKey)) {
-                //move forward a bit earlier to increase hit rate
-                moveForward();
-            }
-            return nextValue;
+        return loaded;
+    }
+
+    private LatestValueWindow<V> newWindow(final long windowIndex, final int resetIndex) {
+        final long fromIndex = windowIndex * windowSize;
+        final List<V> values = getLatestValues(fromIndex, windowSize);
+        final FDate[] keys = new FDate[values.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = extractEndTime(values.get(i));
         }
-        case NEXT_NEXT_INDEX: {
-            final V nextNextValue = values.get(NEXT_NEXT_INDEX);
-            //now for sure move forward
-            moveForward();
-            return nextNextValue;
+        final boolean last = fromIndex + values.size() >= size();
+        return new LatestValueWindow<V>(windowIndex, fromIndex, resetIndex, values, keys, last);
+    }
+
+    @NotThreadSafe
+    private static final class Cursor<V> {
+        private LatestValueWindow<V> window;
+    }
+
+    @Immutable
+    private static final class LatestValueWindow<V> {
+        private final long windowIndex;
+        private final long fromIndex;
+        private final int resetIndex;
+        private final List<V> values;
+        private final FDate[] keys;
+        private final FDate firstKey;
+        private final FDate lastKey;
+        private final boolean last;
+
+        private LatestValueWindow(final long windowIndex, final long fromIndex, final int resetIndex,
+                final List<V> values, final FDate[] keys, final boolean last) {
+            this.windowIndex = windowIndex;
+            this.fromIndex = fromIndex;
+            this.resetIndex = resetIndex;
+            this.values = values;
+            this.keys = keys;
+            this.last = last;
+            if (keys.length > 0) {
+                this.firstKey = keys[0];
+                this.lastKey = keys[keys.length - 1];
+            } else {
+                this.firstKey = null;
+                this.lastKey = null;
+            }
         }
-        default:
-            throw UnknownArgumentException.newInstance(Integer.class, bisect);
+
+        private boolean isEmpty() {
+            return keys.length == 0;
         }
-    }
 
-    private void moveForward() {
-        if (getKey(NEXT_NEXT_INDEX).equalsNotNullSafe(getKey(NEXT_INDEX))) {
-            //no more data to move to
-            return;
+        private V get(final long index) {
+            final long windowRowIndex = index - fromIndex;
+            if (windowRowIndex < 0) {
+                return values.isEmpty() ? null : values.get(0);
+            } else if (windowRowIndex >= values.size()) {
+                return getLastValue();
+            } else {
+                return values.get((int) windowRowIndex);
+            }
         }
-        final long nextNextNextStorageIndex = curStorageIndex + 3L;
-        curStorageIndex++;
-        final V nextNextNextValue = getLatestValue(nextNextNextStorageIndex);
-        values.circularAdd(nextNextNextValue);
-    }
 
-    private void moveBackward() {
-        if (getKey(PREV_PREV_INDEX).equalsNotNullSafe(getKey(PREV_INDEX))) {
-            //no more data to move to
-            return;
+        private V getLastValue() {
+            if (values.isEmpty()) {
+                return null;
+            }
+            return values.get(values.size() - 1);
         }
-        final long prevPrevPrevStorageIndex = curStorageIndex - 3L;
-        curStorageIndex--;
-        final V prevPrevPrevValue = getLatestValue(prevPrevPrevStorageIndex);
-        values.circularPrepend(prevPrevPrevValue);
-    }
 
-    private V init(final FDate date, final int lastResetIndex) {
-        curStorageIndex = getLatestValueIndex(date);
-        final V curValue = getLatestValue(curStorageIndex);
-        if (curValue != null) {
-            final long prevPrevStorageIndex = curStorageIndex - 2L;
-            final V prevPrevValue = getLatestValue(prevPrevStorageIndex);
-            final long prevStorageIndex = curStorageIndex - 1L;
-            final V prevValue = getLatestValue(prevStorageIndex);
-            final long nextStorageIndex = curStorageIndex + 1L;
-            final V nextValue = getLatestValue(nextStorageIndex);
-            final long nextNextStorageIndex = curStorageIndex + 2L;
-            final V nextNextValue = getLatestValue(nextNextStorageIndex);
-
-            values.pretendClear();
-            values.add(prevPrevValue);
-            values.add(prevValue);
-            values.add(curValue);
-            values.add(nextValue);
-            values.add(nextNextValue);
-
-            prevResetIndex = lastResetIndex;
-            return curValue;
-        } else {
-            prevResetIndex = lastResetIndex - 1;
-            return null;
+        /**
+         * Returns null when the date is not covered by this window.
+         */
+        private V getLatestValue(final FDate date) {
+            if (isEmpty()) {
+                return null;
+            }
+            if (date.isBeforeNotNullSafe(firstKey)) {
+                if (fromIndex == 0) {
+                    //the latest value of a date before the first value is the first value
+                    return values.get(0);
+                }
+                return null;
+            }
+            if (date.isAfterNotNullSafe(lastKey)) {
+                if (last) {
+                    return getLastValue();
+                }
+                return null;
+            }
+            final int bisect = FDates.bisect(keys, date, BisectDuplicateKeyHandling.UNDEFINED);
+            return values.get(bisect);
         }
     }
 
@@ -85,6 +85,9 @@ public abstract class ALazyDataUpdater<K, V> implements ILazyDataUpdater<K, V> {
         return updateLock;
     }
 
+    /**
+     * Only used when the TimeSeriesUpdateScheduler is disabled.
+     */
     protected abstract ANestedExecutor getNestedExecutor();
 
     public static void setSkipUpdateOnCurrentThreadIfAlreadyRunning(final boolean skipUpdateIfRunning) {
@@ -124,25 +127,7 @@ public abstract class ALazyDataUpdater<K, V> implements ILazyDataUpdater<K, V> {
                 final String reason;
                 if (updateFutureCopy == null
                         || updateFutureCopy.isDone() && (force || shouldCheckForUpdate(newUpdateCheck))) {
-                    updateFutureCopy = getNestedExecutor().getNestedExecutor().submit(new Runnable() {
-                        @Override
-                        public void run() {
-                            final ILock writeLock = getTable().getTableLock(key).writeLock();
-                            if (!writeLock.tryLock()) {
-                                //don't try to update if currently a backtest is running which is keeping iterators open
-                                return;
-                            }
-                            try {
-                                innerMaybeUpdate(key);
-                                LazyDataUpdaterProperties.maybeUpdateFinished(getUpdaterId());
-                                //update timestamp only at the end if successful
-                                lastUpdateCheck = newUpdateCheck;
-                                lastResetIndex = getTable().getLastResetIndex();
-                            } finally {
-                                writeLock.unlock();
-                            }
-                        }
-                    });
+                    updateFutureCopy = submitUpdate(newUpdateCheck, TimeSeriesUpdatePriority.WAITING_READER);
                     updateFuture = updateFutureCopy;
                     reason = "started";
                 } else {
@@ -159,6 +144,10 @@ public abstract class ALazyDataUpdater<K, V> implements ILazyDataUpdater<K, V> {
                                         + " while operating in non-blocking mode for " + getElementsName() + ": " + key,
                                 e);
                     }
+                } else if (TimeSeriesProperties.UPDATER_SCHEDULER_ENABLED) {
+                    //runs the update on this thread when it is stuck in the queue
+                    TimeSeriesUpdateScheduler.INSTANCE.await(updateFutureCopy);
+                    updateFuture = null;
                 } else {
                     Futures.waitNoInterrupt(updateFutureCopy);
                     updateFuture = null;
@@ -169,6 +158,48 @@ public abstract class ALazyDataUpdater<K, V> implements ILazyDataUpdater<K, V> {
         }
     }
 
+    /**
+     * Queues an update without waiting for it, e.g. to catch up all keys after a restart. Returns null if no update is
+     * needed. A reader that calls maybeUpdate() while the update is still queued raises its priority instead of
+     * queueing a second one.
+     */
+    public final Future<?> maybeUpdateInBackground() {
+        final FDate newUpdateCheck = FDate.now();
+        if (!shouldCheckForUpdate(newUpdateCheck)) {
+            return null;
+        }
+        return submitUpdate(newUpdateCheck, TimeSeriesUpdatePriority.BACKGROUND);
+    }
+
+    private Future<?> submitUpdate(final FDate newUpdateCheck, final TimeSeriesUpdatePriority priority) {
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                final ILock writeLock = getTable().getTableLock(key).writeLock();
+                if (!writeLock.tryLock()) {
+                    //don't try to update if currently a backtest is running which is holding read locks
+                    //(open range iterators only pin a snapshot without holding the lock)
+                    return;
+                }
+                try {
+                    innerMaybeUpdate(key);
+                    LazyDataUpdaterProperties.maybeUpdateFinished(getUpdaterId());
+                    //update timestamp only at the end if successful
+                    lastUpdateCheck = newUpdateCheck;
+                    lastResetIndex = getTable().getLastResetIndex();
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        };
+        if (TimeSeriesProperties.UPDATER_SCHEDULER_ENABLED) {
+            return TimeSeriesUpdateScheduler.INSTANCE.schedule(getUpdaterId(), getTable().getName(), priority,
+                    task);
+        } else {
+            return getNestedExecutor().getNestedExecutor().submit(task);
+        }
+    }
+
     protected <T> void logReload(final boolean logged, final String name, final T oldValue, final String reason,
             final T newValue) {
         if (!logged) {
@@ -0,0 +1,258 @@
+package de.invesdwin.context.persistence.timeseriesdb.updater;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.log.Log;
+import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesProperties;
+import de.invesdwin.context.persistence.timeseriesdb.metrics.TimeSeriesMetric;
+import de.invesdwin.context.persistence.timeseriesdb.metrics.TimeSeriesMetrics;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
+import de.invesdwin.util.concurrent.future.Futures;
+import de.invesdwin.util.time.date.FTimeUnit;
+import de.invesdwin.util.time.duration.Duration;
+
+/**
+ * Push based ingestion: many producer threads append values without locking, a single flusher thread drains them and
+ * writes each key as one batch (group commit). A batch is written once it reaches the batchSize, when flush() is
+ * called or at the latest after the maxDelay. The values of a key need to be appended in ascending time order.
+ *
+ * The future returned by flush() completes after all values that were appended before the call have been written, or
+ * exceptionally when a write failed. Values of a failed write are kept and retried with the next batch.
+ */
+@ThreadSafe
+public abstract class ATimeSeriesAppender<K, V> implements Closeable {
+
+    private static final Log LOG = new Log(ATimeSeriesAppender.class);
+
+    private final ConcurrentHashMap<K, KeyQueue<V>> key_queue = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<CompletableFuture<Void>> flushRequests = new ConcurrentLinkedQueue<>();
+    private final CompletableFuture<Void> stopped = new CompletableFuture<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final String name;
+    private final int batchSize;
+    private final long maxDelayMillis;
+    private final WrappedExecutorService executor;
+    private final Object signalLock = new Object();
+    @GuardedBy("signalLock")
+    private boolean signaled;
+    private volatile boolean closed;
+
+    public ATimeSeriesAppender(final String name) {
+        this(name, ATimeSeriesUpdater.DEFAULT_BATCH_FLUSH_INTERVAL, TimeSeriesProperties.APPENDER_FLUSH_DELAY);
+    }
+
+    public ATimeSeriesAppender(final String name, final int batchSize, final Duration maxDelay) {
+        this.name = name;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxDelayMillis = Math.max(1L, maxDelay.longValue(FTimeUnit.MILLISECONDS));
+        this.executor = Executors.newFixedThreadPool(name, 1).setDynamicThreadName(false);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void append(final K key, final V value) {
+        final KeyQueue<V> queue = key_queue.computeIfAbsent(key, k -> new KeyQueue<V>());
+        //count the value before checking closed, this way the flusher does not stop before a value that passed the
+        //check is written
+        final int size = queue.size.incrementAndGet();
+        if (closed) {
+            queue.size.decrementAndGet();
+            throw new IllegalStateException("Appender [" + name + "] is already closed");
+        }
+        queue.values.offer(value);
+        if (size >= batchSize && !queue.batchSignaled.get()
+                && queue.batchSignaled.compareAndSet(false, true)) {
+            //wake the flusher once per full batch instead of on every value, the size can already be above the
+            //batchSize when the values of a failed write were put back
+            signal();
+        }
+        maybeStart();
+    }
+
+    public void append(final K key, final Iterable<? extends V> values) {
+        for (final V value : values) {
+            append(key, value);
+        }
+    }
+
+    /**
+     * Returns the number of values that were appended but not written yet.
+     */
+    public int getPendingCount() {
+        int pending = 0;
+        for (final KeyQueue<V> queue : key_queue.values()) {
+            pending += queue.size.get();
+        }
+        return pending;
+    }
+
+    /**
+     * Requests a write of all pending values and returns a future that completes after they have been written.
+     */
+    public Future<?> flush() {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        flushRequests.add(future);
+        signal();
+        maybeStart();
+        return future;
+    }
+
+    /**
+     * Writes the pending values and stops the flusher. Appends that run concurrently to close() are either rejected or
+     * written before this method returns.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        final Future<?> future = flush();
+        try {
+            Futures.waitNoInterrupt(future);
+            Futures.waitNoInterrupt(stopped);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Writes a batch of values that were appended for the given key in the same order. Is only called from the flusher
+     * thread, thus never concurrently. Throwing an exception keeps the values for the next attempt, values that were
+     * already written should be removed from the list beforehand so that they are not written twice.
+     */
+    protected abstract void write(K key, List<V> values) throws Exception;
+
+    private void maybeStart() {
+        //start lazily so that subclasses are fully initialized before the first write
+        if (!started.get() && started.compareAndSet(false, true)) {
+            executor.execute(this::flushLoop);
+        }
+    }
+
+    private void signal() {
+        synchronized (signalLock) {
+            signaled = true;
+            signalLock.notifyAll();
+        }
+    }
+
+    private void awaitSignal() throws InterruptedException {
+        synchronized (signalLock) {
+            if (!signaled && !closed) {
+                signalLock.wait(maxDelayMillis);
+            }
+            signaled = false;
+        }
+    }
+
+    private void flushLoop() {
+        try {
+            while (true) {
+                awaitSignal();
+                //only values that were appended before the request are guaranteed to be part of this cycle
+                final List<CompletableFuture<Void>> requests = pollFlushRequests();
+                final Throwable error = writePending();
+                for (int i = 0; i < requests.size(); i++) {
+                    if (error == null) {
+                        requests.get(i).complete(null);
+                    } else {
+                        requests.get(i).completeExceptionally(error);
+                    }
+                }
+                if (closed && flushRequests.isEmpty()) {
+                    if (error != null) {
+                        //the remaining values can not be written anymore, let close() report it
+                        stopped.completeExceptionally(error);
+                        return;
+                    } else if (getPendingCount() == 0) {
+                        stopped.complete(null);
+                        return;
+                    }
+                    //an append that passed the closed check is still in progress, awaitSignal() does not block anymore
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            final List<CompletableFuture<Void>> requests = pollFlushRequests();
+            for (int i = 0; i < requests.size(); i++) {
+                requests.get(i).completeExceptionally(e);
+            }
+            stopped.completeExceptionally(e);
+        }
+    }
+
+    private List<CompletableFuture<Void>> pollFlushRequests() {
+        final List<CompletableFuture<Void>> requests = new ArrayList<>();
+        CompletableFuture<Void> request;
+        while ((request = flushRequests.poll()) != null) {
+            requests.add(request);
+        }
+        return requests;
+    }
+
+    private Throwable writePending() {
+        Throwable error = null;
+        for (final Entry<K, KeyQueue<V>> entry : key_queue.entrySet()) {
+            final KeyQueue<V> queue = entry.getValue();
+            if (queue.size.get() == 0) {
+                continue;
+            }
+            //appends from now on belong to the next batch
+            queue.batchSignaled.set(false);
+            final List<V> batch = new ArrayList<>();
+            V value;
+            while ((value = queue.values.poll()) != null) {
+                batch.add(value);
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            queue.size.addAndGet(-batch.size());
+            final long start = TimeSeriesMetrics.startNanos();
+            try {
+                write(entry.getKey(), batch);
+                TimeSeriesMetrics.recordNanosSince(TimeSeriesMetric.APPENDER_FLUSH_NANOS, start);
+            } catch (final Throwable t) {
+                //put the values back in front of the ones that were appended in the meantime
+                for (int i = batch.size() - 1; i >= 0; i--) {
+                    queue.values.addFirst(batch.get(i));
+                }
+                queue.size.addAndGet(batch.size());
+                LOG.warn("Appender [%s] failed to write %s values for [%s]: %s", name, batch.size(), entry.getKey(),
+                        t.toString());
+                error = t;
+            }
+        }
+        return error;
+    }
+
+    @ThreadSafe
+    private static final class KeyQueue<V> {
+        private final ConcurrentLinkedDeque<V> values = new ConcurrentLinkedDeque<>();
+        //size() of the deque is not constant time
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean batchSignaled = new AtomicBoolean();
+    }
+
+}
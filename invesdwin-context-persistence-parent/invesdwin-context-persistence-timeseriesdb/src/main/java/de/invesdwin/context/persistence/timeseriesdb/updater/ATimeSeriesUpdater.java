@@ -11,9 +11,12 @@ import de.invesdwin.context.persistence.timeseriesdb.ITimeSeriesDB;
 import de.invesdwin.context.persistence.timeseriesdb.ITimeSeriesDBInternals;
 import de.invesdwin.context.persistence.timeseriesdb.IncompleteUpdateAbortedException;
 import de.invesdwin.context.persistence.timeseriesdb.IncompleteUpdateRetryableException;
+import de.invesdwin.context.persistence.timeseriesdb.OptimisticReadGate;
 import de.invesdwin.context.persistence.timeseriesdb.PrepareForUpdateResult;
 import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesProperties;
 import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesStorageCache;
+import de.invesdwin.context.persistence.timeseriesdb.metrics.TimeSeriesMetric;
+import de.invesdwin.context.persistence.timeseriesdb.metrics.TimeSeriesMetrics;
 import de.invesdwin.context.persistence.timeseriesdb.updater.progress.ITimeSeriesUpdaterInternalMethods;
 import de.invesdwin.context.persistence.timeseriesdb.updater.progress.IUpdateProgress;
 import de.invesdwin.context.persistence.timeseriesdb.updater.progress.ParallelUpdateProgress;
@@ -94,6 +97,7 @@ public abstract class ATimeSeriesUpdater<K, V> implements ITimeSeriesUpdater<K,
         }
         try {
             final ILock segmentWriteLock = segmentTableLock.writeLock();
+            final long writeLockWaitStart = TimeSeriesMetrics.startNanos();
             try {
                 if (!segmentWriteLock.tryLock(TimeSeriesProperties.ACQUIRE_WRITE_LOCK_TIMEOUT)) {
                     throw segmentWriteLock.getLockTrace()
@@ -105,6 +109,15 @@ public abstract class ATimeSeriesUpdater<K, V> implements ITimeSeriesUpdater<K,
             } catch (final InterruptedException e) {
                 throw new RuntimeException(e);
             }
+            //wait for optimistic point lookups to finish
+            final OptimisticReadGate readGate = table.getReadGate(key);
+            try {
+                readGate.enterWrite();
+            } catch (final Throwable t) {
+                segmentWriteLock.unlock();
+                throw t;
+            }
+            TimeSeriesMetrics.recordNanosSince(TimeSeriesMetric.UPDATER_WRITE_LOCK_WAIT_NANOS, writeLockWaitStart);
             final File updateLockSyncFile = new File(updateLockFile.getAbsolutePath() + ".sync");
             try (FileChannelLock updateLockSyncFileLock = new FileChannelLock(updateLockSyncFile) {
                 @Override
@@ -119,9 +132,21 @@ public abstract class ATimeSeriesUpdater<K, V> implements ITimeSeriesUpdater<K,
                 Files.touchQuietly(updateLockFile);
                 try {
                     final Instant updateStart = new Instant();
+                    final long updateStartNanos = TimeSeriesMetrics.startNanos();
+                    final int countBefore = count;
                     onUpdateStart();
                     doUpdate();
+                    TimeSeriesMetrics.recordNanosSince(TimeSeriesMetric.UPDATER_NANOS, updateStartNanos);
+                    TimeSeriesMetrics.increment(TimeSeriesMetric.UPDATER_VALUES, count - countBefore);
+                    final FDate retentionCutoff = getRetentionCutoff();
+                    if (retentionCutoff != null) {
+                        lookupTable.deleteBefore(retentionCutoff);
+                    }
                     onUpdateFinished(updateStart);
+                    if (shouldScheduleCompaction()
+                            && (lookupTable.isCompactionRequired() || lookupTable.isRecompressionRequired())) {
+                        TimeSeriesCompactionService.schedule(table, key);
+                    }
                     return true;
                 } catch (final Throwable t) {
                     throw propagateIncompleteUpdateException(t);
@@ -129,6 +154,7 @@ public abstract class ATimeSeriesUpdater<K, V> implements ITimeSeriesUpdater<K,
                     Files.deleteQuietly(updateLockFile);
                 }
             } finally {
+                readGate.exitWrite();
                 segmentWriteLock.unlock();
             }
         } finally {
@@ -153,7 +179,8 @@ public abstract class ATimeSeriesUpdater<K, V> implements ITimeSeriesUpdater<K,
     }
 
     private void doUpdate() {
-        final PrepareForUpdateResult<V> prepareForUpdateResult = lookupTable.prepareForUpdate(shouldRedoLastFile());
+        final boolean appendToTail = shouldAppendToTail();
+        final PrepareForUpdateResult<V> prepareForUpdateResult = prepareForUpdate(lookupTable, appendToTail);
         final FDate updateFrom = prepareForUpdateResult.getUpdateFrom();
         final List<V> lastValues = prepareForUpdateResult.getLastValues();
         final long initialPrecedingMemoryOffset = prepareForUpdateResult.getPrecedingMemorOffset();
@@ -180,6 +207,8 @@ public abstract class ATimeSeriesUpdater<K, V> implements ITimeSeriesUpdater<K,
 
         final ITimeSeriesUpdaterInternalMethods<K, V> internalMethods = new ITimeSeriesUpdaterInternalMethods<K, V>() {
 
+            private int remainingLastValues = appendToTail ? lastValues.size() : 0;
+
             @Override
             public K getKey() {
                 return key;
@@ -225,6 +254,18 @@ public abstract class ATimeSeriesUpdater<K, V> implements ITimeSeriesUpdater<K,
                 ATimeSeriesUpdater.this.onElement(updateProgress);
             }
 
+            @Override
+            public boolean shouldFlush(final IUpdateProgress<K, V> updateProgress) {
+                if (remainingLastValues > 0) {
+                    remainingLastValues--;
+                    if (remainingLastValues == 0) {
+                        //keep the redone tail separate so that the new tail chunk only contains the new values
+                        return true;
+                    }
+                }
+                return ITimeSeriesUpdaterInternalMethods.super.shouldFlush(updateProgress);
+            }
+
         };
         final FlatteningIterable<? extends V> flatteningSources = new FlatteningIterable<>(lastValues, skippingSource);
 
@@ -237,6 +278,27 @@ public abstract class ATimeSeriesUpdater<K, V> implements ITimeSeriesUpdater<K,
         }
     }
 
+    protected PrepareForUpdateResult<V> prepareForUpdate(final TimeSeriesStorageCache<K, V> lookupTable,
+            final boolean appendToTail) {
+        return lookupTable.prepareForUpdate(shouldRedoLastFile(), appendToTail);
+    }
+
+    /**
+     * Small chunks that accumulated at the end of the key are merged and old chunks are moved to the cold storage in the
+     * background after the update finished.
+     */
+    protected boolean shouldScheduleCompaction() {
+        return true;
+    }
+
+    /**
+     * Chunks whose values all end before this date are dropped after each update (e.g. to keep a rolling window of a
+     * few years). Null keeps everything.
+     */
+    protected FDate getRetentionCutoff() {
+        return null;
+    }
+
     protected boolean shouldWriteInParallel() {
         //LZ4HC should be compressed in parallel
         return true;
@@ -247,6 +309,16 @@ public abstract class ATimeSeriesUpdater<K, V> implements ITimeSeriesUpdater<K,
         return true;
     }
 
+    /**
+     * When enabled, an update only redoes the values of the previous update instead of the whole last chunk. Small
+     * appends accumulate as separate chunks in an open tail that readers see like any other chunk. The tail gets sealed
+     * into full chunks once it reaches the batchFlushInterval, thus an update costs O(new values) instead of O(chunk
+     * size). Useful for intraday data that gets a few new values per update.
+     */
+    protected boolean shouldAppendToTail() {
+        return false;
+    }
+
     protected abstract ICloseableIterable<? extends V> getSource(FDate updateFrom);
 
     protected abstract void onUpdateFinished(Instant updateStart);
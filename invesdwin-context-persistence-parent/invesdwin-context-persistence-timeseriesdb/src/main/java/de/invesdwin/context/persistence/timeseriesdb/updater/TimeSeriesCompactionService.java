@@ -0,0 +1,77 @@
+package de.invesdwin.context.persistence.timeseriesdb.updater;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.log.Log;
+import de.invesdwin.context.persistence.timeseriesdb.ITimeSeriesDBInternals;
+import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesStorageCache;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
+
+/**
+ * Merges small chunks of keys and moves old chunks to the cold storage in the background after they were updated. A
+ * single thread is used so that compactions do not compete with each other for disk bandwidth, each key is queued only
+ * once until its compaction ran.
+ */
+@ThreadSafe
+public final class TimeSeriesCompactionService {
+
+    private static final WrappedExecutorService EXECUTOR = Executors
+            .newFixedThreadPool(TimeSeriesCompactionService.class.getSimpleName(), 1)
+            .setDynamicThreadName(false);
+    private static final Set<String> PENDING = ConcurrentHashMap.newKeySet();
+    private static final Log LOG = new Log(TimeSeriesCompactionService.class);
+
+    private TimeSeriesCompactionService() {}
+
+    public static <K, V> void schedule(final ITimeSeriesDBInternals<K, V> table, final K key) {
+        final String pendingKey = table.getName() + "_" + table.hashKeyToString(key);
+        if (!PENDING.add(pendingKey)) {
+            return;
+        }
+        EXECUTOR.execute(() -> {
+            PENDING.remove(pendingKey);
+            compact(table, key);
+            recompress(table, key);
+        });
+    }
+
+    /**
+     * Returns true if small chunks were merged.
+     */
+    public static <K, V> boolean compact(final ITimeSeriesDBInternals<K, V> table, final K key) {
+        try {
+            if (!table.getLookupTableCache(key).isCompactionRequired()) {
+                return false;
+            }
+            return new TimeSeriesCompactionUpdater<K, V>(key, table).update();
+        } catch (final Throwable t) {
+            //the next update will schedule the compaction again
+            LOG.warn("Compaction of [%s] for [%s] failed: %s", table.getName(), table.hashKeyToString(key),
+                    t.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of chunks that were moved to the cold storage.
+     */
+    public static <K, V> int recompress(final ITimeSeriesDBInternals<K, V> table, final K key) {
+        try {
+            final TimeSeriesStorageCache<K, V> lookupTable = table.getLookupTableCache(key);
+            if (!lookupTable.isRecompressionRequired()) {
+                return 0;
+            }
+            return lookupTable.recompressColdChunks(table.getTableLock(key), table.getReadGate(key));
+        } catch (final Throwable t) {
+            //the next update will schedule the recompression again
+            LOG.warn("Recompression of [%s] for [%s] failed: %s", table.getName(), table.hashKeyToString(key),
+                    t.toString());
+            return 0;
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package de.invesdwin.context.persistence.timeseriesdb.updater;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import de.invesdwin.context.persistence.timeseriesdb.ITimeSeriesDBInternals;
+import de.invesdwin.context.persistence.timeseriesdb.PrepareForUpdateResult;
+import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesStorageCache;
+import de.invesdwin.context.persistence.timeseriesdb.updater.progress.IUpdateProgress;
+import de.invesdwin.util.collections.iterable.EmptyCloseableIterable;
+import de.invesdwin.util.collections.iterable.ICloseableIterable;
+import de.invesdwin.util.time.Instant;
+import de.invesdwin.util.time.date.FDate;
+
+/**
+ * Rewrites the small chunks at the end of a key into chunks of batchFlushInterval values. Runs as a normal update so
+ * that it holds the write lock of the key, excludes optimistic readers and writes behind chunks that are still pinned
+ * by range scans.
+ */
+@NotThreadSafe
+public class TimeSeriesCompactionUpdater<K, V> extends ATimeSeriesUpdater<K, V> {
+
+    private final ITimeSeriesDBInternals<K, V> table;
+
+    public TimeSeriesCompactionUpdater(final K key, final ITimeSeriesDBInternals<K, V> table) {
+        super(key, table);
+        this.table = table;
+    }
+
+    @Override
+    protected PrepareForUpdateResult<V> prepareForUpdate(final TimeSeriesStorageCache<K, V> lookupTable,
+            final boolean appendToTail) {
+        return lookupTable.prepareForCompaction();
+    }
+
+    @Override
+    protected boolean shouldScheduleCompaction() {
+        return false;
+    }
+
+    @Override
+    protected ICloseableIterable<? extends V> getSource(final FDate updateFrom) {
+        //all values are given back by prepareForCompaction
+        return EmptyCloseableIterable.getInstance();
+    }
+
+    @Override
+    protected void onUpdateFinished(final Instant updateStart) {}
+
+    @Override
+    protected void onUpdateStart() {}
+
+    @Override
+    protected FDate extractStartTime(final V element) {
+        return table.extractStartTime(element);
+    }
+
+    @Override
+    protected FDate extractEndTime(final V element) {
+        return table.extractEndTime(element);
+    }
+
+    @Override
+    protected void onFlush(final int flushIndex, final IUpdateProgress<K, V> updateProgress) {}
+
+    @Override
+    protected void onElement(final IUpdateProgress<K, V> updateProgress) {}
+
+}
@@ -0,0 +1,148 @@
+package de.invesdwin.context.persistence.timeseriesdb.updater;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.persistence.timeseriesdb.ITimeSeriesDBInternals;
+import de.invesdwin.context.persistence.timeseriesdb.PrepareForUpdateResult;
+import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesStorageCache;
+import de.invesdwin.context.persistence.timeseriesdb.updater.progress.IUpdateProgress;
+import de.invesdwin.util.collections.iterable.ICloseableIterable;
+import de.invesdwin.util.collections.iterable.WrapperCloseableIterable;
+import de.invesdwin.util.concurrent.lock.ILock;
+import de.invesdwin.util.time.Instant;
+import de.invesdwin.util.time.date.FDate;
+import de.invesdwin.util.time.duration.Duration;
+
+/**
+ * Appends the batches to the open tail of the key (see ATimeSeriesUpdater.shouldAppendToTail()), thus a batch only
+ * redoes the chunk of the previous batch and the tail gets sealed into full chunks once it reaches the
+ * batchFlushInterval. Each batch runs as a normal update and holds the write lock of the key while it is written.
+ * Values that do not end after the last stored value are skipped, thus a retried batch or a producer that resends the
+ * last value does not store it twice.
+ */
+@ThreadSafe
+public class TimeSeriesDBAppender<K, V> extends ATimeSeriesAppender<K, V> {
+
+    private final ITimeSeriesDBInternals<K, V> table;
+
+    public TimeSeriesDBAppender(final ITimeSeriesDBInternals<K, V> table) {
+        super(TimeSeriesDBAppender.class.getSimpleName() + "_" + table.getName());
+        this.table = table;
+    }
+
+    public TimeSeriesDBAppender(final ITimeSeriesDBInternals<K, V> table, final int batchSize,
+            final Duration maxDelay) {
+        super(TimeSeriesDBAppender.class.getSimpleName() + "_" + table.getName(), batchSize, maxDelay);
+        this.table = table;
+    }
+
+    public ITimeSeriesDBInternals<K, V> getTable() {
+        return table;
+    }
+
+    @Override
+    protected void write(final K key, final List<V> values) throws Exception {
+        final V lastValue;
+        final ILock readLock = table.getTableLock(key).readLock();
+        readLock.lock();
+        try {
+            lastValue = table.getLookupTableCache(key).getLastValue();
+        } finally {
+            readLock.unlock();
+        }
+        final List<V> newValues;
+        if (lastValue != null) {
+            final FDate lastValueTime = table.extractEndTime(lastValue);
+            newValues = new ArrayList<>(values.size());
+            for (int i = 0; i < values.size(); i++) {
+                final V value = values.get(i);
+                if (!table.extractEndTime(value).isBeforeOrEqualToNotNullSafe(lastValueTime)) {
+                    newValues.add(value);
+                }
+            }
+        } else {
+            newValues = values;
+        }
+        if (newValues.isEmpty()) {
+            return;
+        }
+        new AppendUpdater(key, newValues).update();
+    }
+
+    private final class AppendUpdater extends ATimeSeriesUpdater<K, V> {
+
+        private final List<V> values;
+        private V redoneLastValue;
+
+        private AppendUpdater(final K key, final List<V> values) {
+            super(key, table);
+            this.values = values;
+        }
+
+        @Override
+        protected boolean shouldAppendToTail() {
+            //frequent small batches would otherwise each write a tiny chunk that compaction has to merge again
+            return true;
+        }
+
+        @Override
+        protected PrepareForUpdateResult<V> prepareForUpdate(final TimeSeriesStorageCache<K, V> lookupTable,
+                final boolean appendToTail) {
+            final V lastValue = lookupTable.getLastValue();
+            final PrepareForUpdateResult<V> result = super.prepareForUpdate(lookupTable, appendToTail);
+            //the redone tail chunk drops the stored last value because it might be an incomplete bar, the source only
+            //contains the new values, thus it has to be given again in front of them (values ascend strictly here)
+            if (lastValue != null && (!result.getLastValues().isEmpty()
+                    || table.extractEndTime(lastValue).equalsNotNullSafe(result.getUpdateFrom()))) {
+                redoneLastValue = lastValue;
+            } else {
+                redoneLastValue = null;
+            }
+            return result;
+        }
+
+        @Override
+        protected boolean shouldWriteInParallel() {
+            //batches are small, compression in parallel would only add overhead
+            return false;
+        }
+
+        @Override
+        protected ICloseableIterable<? extends V> getSource(final FDate updateFrom) {
+            if (redoneLastValue == null) {
+                return WrapperCloseableIterable.maybeWrap(values);
+            }
+            final List<V> source = new ArrayList<>(values.size() + 1);
+            source.add(redoneLastValue);
+            source.addAll(values);
+            return WrapperCloseableIterable.maybeWrap(source);
+        }
+
+        @Override
+        protected void onUpdateFinished(final Instant updateStart) {}
+
+        @Override
+        protected void onUpdateStart() {}
+
+        @Override
+        protected FDate extractStartTime(final V element) {
+            return table.extractStartTime(element);
+        }
+
+        @Override
+        protected FDate extractEndTime(final V element) {
+            return table.extractEndTime(element);
+        }
+
+        @Override
+        protected void onFlush(final int flushIndex, final IUpdateProgress<K, V> updateProgress) {}
+
+        @Override
+        protected void onElement(final IUpdateProgress<K, V> updateProgress) {}
+
+    }
+
+}
@@ -0,0 +1,18 @@
+package de.invesdwin.context.persistence.timeseriesdb.updater;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Pending updates with a higher priority (lower ordinal) are started first by the TimeSeriesUpdateScheduler.
+ */
+@Immutable
+public enum TimeSeriesUpdatePriority {
+    /**
+     * A reader blocks until the update finished.
+     */
+    WAITING_READER,
+    /**
+     * Catch-up or refresh that nobody waits for.
+     */
+    BACKGROUND;
+}
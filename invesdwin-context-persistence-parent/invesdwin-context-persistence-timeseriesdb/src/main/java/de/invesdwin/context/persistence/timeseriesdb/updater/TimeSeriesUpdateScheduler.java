@@ -0,0 +1,272 @@
+package de.invesdwin.context.persistence.timeseriesdb.updater;
+
+import java.io.Closeable;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesProperties;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
+import de.invesdwin.util.concurrent.future.Futures;
+import de.invesdwin.util.time.duration.Duration;
+
+/**
+ * Central scheduler for the updates of all ALazyDataUpdaters. It bounds the number of concurrent updates overall and
+ * per table, so that a catch-up after a restart uses the hardware without letting a single table take all the disk
+ * bandwidth. Updates that readers wait for are started before background updates and identical pending updates are
+ * merged (a waiting reader raises the priority of a pending background update).
+ *
+ * Updates that are requested from inside another update run on the calling thread, since the outer update occupies a
+ * worker that could otherwise be needed to run the nested one. Threads that an update fans out to are not known as
+ * workers, thus await(...) runs an update on the calling thread when it did not start within the inline timeout.
+ */
+@ThreadSafe
+public final class TimeSeriesUpdateScheduler implements Closeable {
+
+    public static final TimeSeriesUpdateScheduler INSTANCE = new TimeSeriesUpdateScheduler(
+            TimeSeriesUpdateScheduler.class.getSimpleName(), TimeSeriesProperties.UPDATER_SCHEDULER_THREADS,
+            TimeSeriesProperties.UPDATER_SCHEDULER_TABLE_THREADS,
+            TimeSeriesProperties.UPDATER_SCHEDULER_INLINE_TIMEOUT);
+
+    private final WrappedExecutorService executor;
+    private final int tableThreads;
+    private final Duration inlineTimeout;
+    private final ThreadLocal<Boolean> worker = new ThreadLocal<Boolean>();
+    private final Object lock = new Object();
+    @GuardedBy("lock")
+    private final TreeSet<ScheduledUpdate> queue = new TreeSet<>(
+            Comparator.comparing(ScheduledUpdate::getPriority).thenComparingLong(ScheduledUpdate::getSequence));
+    @GuardedBy("lock")
+    private final Map<String, ScheduledUpdate> id_pending = new HashMap<>();
+    @GuardedBy("lock")
+    private final Map<String, Integer> table_running = new HashMap<>();
+    @GuardedBy("lock")
+    private long sequence = 0;
+
+    public TimeSeriesUpdateScheduler(final String name, final int threads, final int tableThreads,
+            final Duration inlineTimeout) {
+        this.executor = Executors.newFixedThreadPool(name, threads).setDynamicThreadName(false);
+        this.tableThreads = Math.max(1, Math.min(tableThreads, threads));
+        this.inlineTimeout = inlineTimeout;
+    }
+
+    /**
+     * Returns the future of an identical update that is already pending or running, otherwise the given task is
+     * queued. The id should identify the update (e.g. the updaterId), the table name is used for the per table budget.
+     */
+    public Future<?> schedule(final String id, final String tableName, final TimeSeriesUpdatePriority priority,
+            final Runnable task) {
+        final boolean nested = isWorker();
+        final ScheduledUpdate update;
+        synchronized (lock) {
+            final ScheduledUpdate existing = id_pending.get(id);
+            if (existing != null) {
+                if (existing.isRunning()) {
+                    return existing;
+                }
+                if (!nested) {
+                    if (priority.compareTo(existing.getPriority()) < 0) {
+                        //reinsert to keep the queue ordered
+                        queue.remove(existing);
+                        existing.setPriority(priority);
+                        queue.add(existing);
+                    }
+                    return existing;
+                }
+                //steal the queued update so that the outer update does not wait for a free worker
+                queue.remove(existing);
+                update = existing;
+            } else {
+                update = new ScheduledUpdate(id, tableName, priority, sequence++, task);
+                id_pending.put(id, update);
+                if (!nested) {
+                    queue.add(update);
+                }
+            }
+            if (nested) {
+                markRunning(update);
+            }
+        }
+        if (nested) {
+            runAsWorker(update);
+        } else {
+            executor.execute(this::runNext);
+        }
+        return update;
+    }
+
+    /**
+     * Waits for an update that was returned by schedule(...). When it is still queued after the inline timeout
+     * (immediately when called from inside an update) it is removed from the queue and run on the calling thread. This
+     * prevents a deadlock when the threads that a running update fans out to wait for other updates while all workers
+     * (or the budget of the table) are occupied.
+     */
+    public void await(final Future<?> future) {
+        if (!(future instanceof ScheduledUpdate)) {
+            Futures.waitNoInterrupt(future);
+            return;
+        }
+        final ScheduledUpdate update = (ScheduledUpdate) future;
+        if (!isWorker()) {
+            try {
+                Futures.waitNoInterrupt(update, inlineTimeout);
+                return;
+            } catch (final TimeoutException e) {
+                //still queued or running
+            }
+        }
+        final boolean stolen;
+        synchronized (lock) {
+            stolen = !update.isRunning() && queue.remove(update);
+            if (stolen) {
+                markRunning(update);
+            }
+        }
+        if (stolen) {
+            runAsWorker(update);
+        }
+        Futures.waitNoInterrupt(update);
+    }
+
+    public int getPendingCount() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    public int getRunningCount(final String tableName) {
+        synchronized (lock) {
+            final Integer running = table_running.get(tableName);
+            if (running == null) {
+                return 0;
+            } else {
+                return running;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private boolean isWorker() {
+        return worker.get() != null;
+    }
+
+    private void runNext() {
+        final ScheduledUpdate next;
+        synchronized (lock) {
+            next = pollNext();
+            if (next == null) {
+                //queued updates wait for their table budget, finishing updates of that table will try again
+                return;
+            }
+            markRunning(next);
+        }
+        runAsWorker(next);
+    }
+
+    @GuardedBy("lock")
+    private ScheduledUpdate pollNext() {
+        final Iterator<ScheduledUpdate> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            final ScheduledUpdate update = iterator.next();
+            final Integer running = table_running.get(update.getTableName());
+            if (running == null || running < tableThreads) {
+                iterator.remove();
+                return update;
+            }
+        }
+        return null;
+    }
+
+    @GuardedBy("lock")
+    private void markRunning(final ScheduledUpdate update) {
+        update.setRunning();
+        table_running.merge(update.getTableName(), 1, Integer::sum);
+    }
+
+    private void runAsWorker(final ScheduledUpdate update) {
+        final boolean outer = !isWorker();
+        if (outer) {
+            worker.set(Boolean.TRUE);
+        }
+        try {
+            update.run();
+        } finally {
+            if (outer) {
+                worker.remove();
+            }
+            final boolean queued;
+            synchronized (lock) {
+                id_pending.remove(update.getId(), update);
+                table_running.computeIfPresent(update.getTableName(), (k, v) -> v > 1 ? v - 1 : null);
+                queued = !queue.isEmpty();
+            }
+            if (queued) {
+                //an update that waited for the budget of this table might be able to run now
+                executor.execute(this::runNext);
+            }
+        }
+    }
+
+    private static final class ScheduledUpdate extends FutureTask<Object> {
+
+        private final String id;
+        private final String tableName;
+        private final long sequence;
+        @GuardedBy("lock")
+        private TimeSeriesUpdatePriority priority;
+        @GuardedBy("lock")
+        private boolean running;
+
+        private ScheduledUpdate(final String id, final String tableName, final TimeSeriesUpdatePriority priority,
+                final long sequence, final Runnable task) {
+            super(task, null);
+            this.id = id;
+            this.tableName = tableName;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public TimeSeriesUpdatePriority getPriority() {
+            return priority;
+        }
+
+        public void setPriority(final TimeSeriesUpdatePriority priority) {
+            this.priority = priority;
+        }
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        public void setRunning() {
+            this.running = true;
+        }
+
+    }
+
+}
@@ -21,6 +21,10 @@ public interface ITimeSeriesUpdaterInternalMethods<K, V> {
 
     void onFlush(int flushIndex, IUpdateProgress<K, V> updateProgress);
 
+    default boolean shouldFlush(final IUpdateProgress<K, V> updateProgress) {
+        return updateProgress.getValueCount() % getLookupTable().getBatchFlushInterval() == 0;
+    }
+
     K getKey();
 
 }
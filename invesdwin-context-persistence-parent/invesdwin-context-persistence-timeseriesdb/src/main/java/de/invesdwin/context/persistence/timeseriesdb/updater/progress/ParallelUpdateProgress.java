@@ -13,6 +13,11 @@ import javax.annotation.concurrent.NotThreadSafe;
 import de.invesdwin.context.integration.compression.ICompressionFactory;
 import de.invesdwin.context.persistence.timeseriesdb.SerializingCollection;
 import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesStorageCache;
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.ChunkAggregates;
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.ChunkAggregatesBuilder;
+import de.invesdwin.context.persistence.timeseriesdb.codec.ITimeSeriesCodec;
+import de.invesdwin.context.persistence.timeseriesdb.column.ColumnLayout;
+import de.invesdwin.context.persistence.timeseriesdb.storage.MemoryFileBlockIndex;
 import de.invesdwin.context.persistence.timeseriesdb.updater.ATimeSeriesUpdater;
 import de.invesdwin.util.collections.iterable.ACloseableIterator;
 import de.invesdwin.util.collections.iterable.ICloseableIterable;
@@ -28,6 +33,7 @@ import de.invesdwin.util.marshallers.serde.ISerde;
 import de.invesdwin.util.streams.buffer.bytes.IByteBuffer;
 import de.invesdwin.util.streams.buffer.file.IMemoryMappedFile;
 import de.invesdwin.util.time.date.FDate;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 
 @NotThreadSafe
 public class ParallelUpdateProgress<K, V> implements IUpdateProgress<K, V> {
@@ -46,12 +52,16 @@ public class ParallelUpdateProgress<K, V> implements IUpdateProgress<K, V> {
     private V lastElement;
     private FDate maxTime;
     private Object[] batch;
+    private final LongArrayList blockFirstTimes = new LongArrayList();
+    private ChunkAggregatesBuilder<V> aggregates;
+    private MemoryFileBlockIndex blockIndex;
 
     public void init(final ITimeSeriesUpdaterInternalMethods<K, V> parent, final File tempFile) {
         this.parent = parent;
         this.name = new TextDescription("%s[%s]: write", ATimeSeriesUpdater.class.getSimpleName(), parent.getKey());
         this.tempFile = tempFile;
         this.batch = new Object[parent.getLookupTable().getBatchFlushInterval()];
+        this.aggregates = parent.getLookupTable().newChunkAggregatesBuilder();
     }
 
     public File getTempFile() {
@@ -67,6 +77,9 @@ public class ParallelUpdateProgress<K, V> implements IUpdateProgress<K, V> {
         minTime = null;
         lastElement = null;
         maxTime = null;
+        blockFirstTimes.clear();
+        blockIndex = null;
+        aggregates = null;
     }
 
     @Override
@@ -103,10 +116,17 @@ public class ParallelUpdateProgress<K, V> implements IUpdateProgress<K, V> {
         }
         maxTime = endTime;
         lastElement = element;
+        final Integer blockSize = parent.getLookupTable().getBlockSize();
+        if (blockSize != null && valueCount % blockSize == 0) {
+            blockFirstTimes.add(endTime.millisValue());
+        }
+        if (aggregates != null) {
+            aggregates.add(element);
+        }
         batch[valueCount] = element;
         valueCount++;
         parent.onElement(this);
-        return valueCount % parent.getLookupTable().getBatchFlushInterval() == 0;
+        return parent.shouldFlush(this);
     }
 
     @SuppressWarnings("unchecked")
@@ -117,6 +137,7 @@ public class ParallelUpdateProgress<K, V> implements IUpdateProgress<K, V> {
             batch[i] = null;
         }
         collection.close();
+        blockIndex = SequentialUpdateProgress.newBlockIndex(parent, collection, blockFirstTimes);
     }
 
     public void transferToMemoryFile(final FileOutputStream memoryFileOut, final File memoryFile,
@@ -133,7 +154,8 @@ public class ParallelUpdateProgress<K, V> implements IUpdateProgress<K, V> {
             //close first so that lz4 writes out its footer bytes (a flush is not sufficient)
             parent.getLookupTable()
                     .finishFile(minTime, firstElement, lastElement, precedingValueCount, valueCount, memoryFile,
-                            precedingMemoryOffset, memoryOffset, tempFileLength);
+                            precedingMemoryOffset, memoryOffset, tempFileLength, blockIndex,
+                            SequentialUpdateProgress.newChunkAggregates(aggregates));
             Files.deleteQuietly(tempFile);
             parent.onFlush(flushIndex, this);
         } catch (final IOException e) {
@@ -180,6 +202,10 @@ public class ParallelUpdateProgress<K, V> implements IUpdateProgress<K, V> {
 
         @Override
         protected OutputStream newCompressor(final OutputStream out) {
+            final ITimeSeriesCodec codec = parent.getLookupTable().getWriteCodec();
+            if (codec != null) {
+                return codec.newEncoder(out);
+            }
             return getCompressionFactory().newCompressor(out, ATimeSeriesUpdater.LARGE_COMPRESSOR);
         }
 
@@ -188,6 +214,16 @@ public class ParallelUpdateProgress<K, V> implements IUpdateProgress<K, V> {
             return parent.getTable().getValueFixedLength();
         }
 
+        @Override
+        protected ColumnLayout newColumnLayout() {
+            return parent.getLookupTable().getColumnLayout();
+        }
+
+        @Override
+        protected Integer newBlockSize() {
+            return parent.getLookupTable().getBlockSize();
+        }
+
     }
 
     public V getFirstElement() {
@@ -11,6 +11,11 @@ import javax.annotation.concurrent.NotThreadSafe;
 import de.invesdwin.context.integration.compression.ICompressionFactory;
 import de.invesdwin.context.persistence.timeseriesdb.SerializingCollection;
 import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesStorageCache;
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.ChunkAggregates;
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.ChunkAggregatesBuilder;
+import de.invesdwin.context.persistence.timeseriesdb.codec.ITimeSeriesCodec;
+import de.invesdwin.context.persistence.timeseriesdb.column.ColumnLayout;
+import de.invesdwin.context.persistence.timeseriesdb.storage.MemoryFileBlockIndex;
 import de.invesdwin.context.persistence.timeseriesdb.updater.ATimeSeriesUpdater;
 import de.invesdwin.util.collections.iterable.ICloseableIterable;
 import de.invesdwin.util.collections.iterable.ICloseableIterator;
@@ -21,6 +26,7 @@ import de.invesdwin.util.streams.buffer.bytes.IByteBuffer;
 import de.invesdwin.util.streams.buffer.file.IMemoryMappedFile;
 import de.invesdwin.util.streams.pool.buffered.BufferedFileDataOutputStream;
 import de.invesdwin.util.time.date.FDate;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 
 @NotThreadSafe
 public class SequentialUpdateProgress<K, V> implements IUpdateProgress<K, V>, Closeable {
@@ -39,6 +45,8 @@ public class SequentialUpdateProgress<K, V> implements IUpdateProgress<K, V>, Cl
     private FDate maxTime;
     private ConfiguredSerializingCollection collection;
     private BufferedFileDataOutputStream out;
+    private final LongArrayList blockFirstTimes = new LongArrayList();
+    private ChunkAggregatesBuilder<V> aggregates;
 
     public SequentialUpdateProgress(final ITimeSeriesUpdaterInternalMethods<K, V> parent,
             final long initialPrecedingMemoryOffset, final long initialMemoryOffset,
@@ -48,6 +56,7 @@ public class SequentialUpdateProgress<K, V> implements IUpdateProgress<K, V>, Cl
         this.precedingMemoryOffset = initialPrecedingMemoryOffset;
         this.memoryOffset = initialMemoryOffset;
         this.precedingValueCount = initialPrecedingValueCount;
+        this.aggregates = parent.getLookupTable().newChunkAggregatesBuilder();
         this.memoryFile = newMemoryFile();
         try {
             this.out = new BufferedFileDataOutputStream(memoryFile);
@@ -75,6 +84,10 @@ public class SequentialUpdateProgress<K, V> implements IUpdateProgress<K, V>, Cl
         this.lastElement = null;
         this.maxTime = null;
         this.collection = null;
+        this.blockFirstTimes.clear();
+        if (this.aggregates != null) {
+            this.aggregates.reset();
+        }
     }
 
     @Override
@@ -107,10 +120,17 @@ public class SequentialUpdateProgress<K, V> implements IUpdateProgress<K, V>, Cl
         }
         maxTime = endTime;
         lastElement = element;
+        final Integer blockSize = parent.getLookupTable().getBlockSize();
+        if (blockSize != null && valueCount % blockSize == 0) {
+            blockFirstTimes.add(endTime.millisValue());
+        }
+        if (aggregates != null) {
+            aggregates.add(element);
+        }
         collection.add(element);
         valueCount++;
         parent.onElement(this);
-        return valueCount % parent.getLookupTable().getBatchFlushInterval() == 0;
+        return parent.shouldFlush(this);
     }
 
     private void write(final int flushIndex) {
@@ -118,9 +138,11 @@ public class SequentialUpdateProgress<K, V> implements IUpdateProgress<K, V>, Cl
             //close first so that lz4 writes out its footer bytes (a flush is not sufficient)
             collection.close();
             final long memoryLength = out.position() - memoryOffset;
+            final MemoryFileBlockIndex blockIndex = newBlockIndex(parent, collection, blockFirstTimes);
+            final ChunkAggregates chunkAggregates = newChunkAggregates(aggregates);
             parent.getLookupTable()
                     .finishFile(minTime, firstElement, lastElement, precedingValueCount, valueCount, memoryFile,
-                            precedingMemoryOffset, memoryOffset, memoryLength);
+                            precedingMemoryOffset, memoryOffset, memoryLength, blockIndex, chunkAggregates);
             memoryOffset += memoryLength;
             precedingValueCount += valueCount;
             parent.onFlush(flushIndex, this);
@@ -145,6 +167,27 @@ public class SequentialUpdateProgress<K, V> implements IUpdateProgress<K, V>, Cl
         }
     }
 
+    static MemoryFileBlockIndex newBlockIndex(final ITimeSeriesUpdaterInternalMethods<?, ?> parent,
+            final SerializingCollection<?> collection, final LongArrayList blockFirstTimes) {
+        final Integer blockSize = parent.getLookupTable().getBlockSize();
+        final long[] blockOffsets = collection.getBlockOffsets();
+        if (blockSize == null || blockOffsets == null) {
+            return null;
+        }
+        if (blockOffsets.length != blockFirstTimes.size()) {
+            throw new IllegalStateException("blockOffsets.length [" + blockOffsets.length
+                    + "] != blockFirstTimes.size [" + blockFirstTimes.size() + "]");
+        }
+        return new MemoryFileBlockIndex(blockSize, blockFirstTimes.toLongArray(), blockOffsets);
+    }
+
+    static ChunkAggregates newChunkAggregates(final ChunkAggregatesBuilder<?> aggregates) {
+        if (aggregates == null) {
+            return null;
+        }
+        return aggregates.build();
+    }
+
     @Override
     public void close() {
         if (out != null) {
@@ -196,6 +239,10 @@ public class SequentialUpdateProgress<K, V> implements IUpdateProgress<K, V>, Cl
 
         @Override
         protected OutputStream newCompressor(final OutputStream out) {
+            final ITimeSeriesCodec codec = parent.getLookupTable().getWriteCodec();
+            if (codec != null) {
+                return codec.newEncoder(out);
+            }
             return getCompressionFactory().newCompressor(out, ATimeSeriesUpdater.LARGE_COMPRESSOR);
         }
 
@@ -209,6 +256,16 @@ public class SequentialUpdateProgress<K, V> implements IUpdateProgress<K, V>, Cl
             return parent.getTable().getValueFixedLength();
         }
 
+        @Override
+        protected ColumnLayout newColumnLayout() {
+            return parent.getLookupTable().getColumnLayout();
+        }
+
+        @Override
+        protected Integer newBlockSize() {
+            return parent.getLookupTable().getBlockSize();
+        }
+
     }
 
     public static <K, V> void doUpdate(final ITimeSeriesUpdaterInternalMethods<K, V> parent,
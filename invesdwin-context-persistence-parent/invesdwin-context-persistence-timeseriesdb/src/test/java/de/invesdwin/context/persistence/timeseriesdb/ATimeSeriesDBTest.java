@@ -1,30 +1,61 @@
 package de.invesdwin.context.persistence.timeseriesdb;
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import javax.annotation.concurrent.Immutable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 import org.apache.commons.lang3.mutable.MutableInt;
 import org.junit.jupiter.api.Test;
 
 import de.invesdwin.context.ContextProperties;
+import de.invesdwin.context.integration.compression.DisabledCompressionFactory;
+import de.invesdwin.context.integration.retry.RetryLaterRuntimeException;
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.Aggregate;
+import de.invesdwin.context.persistence.timeseriesdb.aggregate.AggregateField;
+import de.invesdwin.context.persistence.timeseriesdb.codec.CompressionTimeSeriesCodec;
+import de.invesdwin.context.persistence.timeseriesdb.column.ColumnLayout;
+import de.invesdwin.context.persistence.timeseriesdb.column.ColumnProjection;
+import de.invesdwin.context.persistence.timeseriesdb.column.IColumnarSerde;
+import de.invesdwin.context.persistence.timeseriesdb.storage.ChunkDirectory;
+import de.invesdwin.context.persistence.timeseriesdb.storage.ChunkManifest;
+import de.invesdwin.context.persistence.timeseriesdb.storage.ColdStorage;
+import de.invesdwin.context.persistence.timeseriesdb.storage.MemoryFileBlockIndex;
+import de.invesdwin.context.persistence.timeseriesdb.storage.MemoryFileSummary;
 import de.invesdwin.context.persistence.timeseriesdb.updater.ATimeSeriesUpdater;
+import de.invesdwin.context.persistence.timeseriesdb.updater.TimeSeriesCompactionService;
+import de.invesdwin.context.persistence.timeseriesdb.updater.TimeSeriesDBAppender;
 import de.invesdwin.context.persistence.timeseriesdb.updater.progress.IUpdateProgress;
 import de.invesdwin.context.test.ATest;
 import de.invesdwin.util.assertions.Assertions;
 import de.invesdwin.util.collections.iterable.ICloseableIterable;
 import de.invesdwin.util.collections.iterable.ICloseableIterator;
 import de.invesdwin.util.collections.iterable.WrapperCloseableIterable;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
 import de.invesdwin.util.marshallers.serde.ISerde;
 import de.invesdwin.util.marshallers.serde.basic.FDateSerde;
 import de.invesdwin.util.math.decimal.scaled.Percent;
+import de.invesdwin.util.streams.buffer.bytes.IByteBuffer;
 import de.invesdwin.util.time.Instant;
 import de.invesdwin.util.time.date.FDate;
 import de.invesdwin.util.time.date.FDateBuilder;
 import de.invesdwin.util.time.date.FDates;
+import de.invesdwin.util.time.date.FTimeUnit;
+import de.invesdwin.util.time.duration.Duration;
 
 // CHECKSTYLE:OFF
 @NotThreadSafe
@@ -410,4 +441,1035 @@ public class ATimeSeriesDBTest extends ATest {
 
     }
 
+    @Test
+    public void testRangeValuesParallel() throws IncompleteUpdateRetryableException {
+        final String key = "asdf";
+        final ATimeSeriesDB<String, FDate> table = newTable("testRangeValuesParallel", true);
+        try {
+            final List<FDate> dates = newDates(0L, 100_000, 1L);
+            update(table, key, dates);
+
+            try (Stream<FDate> stream = table.rangeValuesParallel(key, null, null)) {
+                final List<FDate> values = stream.collect(Collectors.toList());
+                Assertions.checkEquals(dates, values);
+            }
+            final FDate from = dates.get(12_345);
+            final FDate to = dates.get(87_654);
+            try (Stream<FDate> stream = table.rangeValuesParallel(key, from, to)) {
+                final List<FDate> values = stream.collect(Collectors.toList());
+                Assertions.checkEquals(dates.subList(12_345, 87_655), values);
+            }
+            try (Stream<FDate> stream = table.rangeValuesParallel(key, from, to)) {
+                Assertions.checkEquals(from, stream.findFirst().get());
+            }
+        } finally {
+            table.close();
+        }
+    }
+
+    @Test
+    public void testAggregate() throws IncompleteUpdateRetryableException {
+        final String key = "asdf";
+        final ATimeSeriesDB<String, FDate> table = newTable("testAggregate", FDateSerde.GET, FDateSerde.FIXED_LENGTH,
+                ATimeSeriesUpdater.DEFAULT_BATCH_FLUSH_INTERVAL,
+                Arrays.asList(new AggregateField<FDate>("millis", (value) -> value.millisValue())));
+        try {
+            final List<FDate> dates = newDates(0L, 100_000, 1L);
+            update(table, key, dates);
+
+            final Aggregate all = table.aggregate(key, "millis", null, null);
+            Assertions.checkEquals(0D, all.getMin());
+            Assertions.checkEquals(99_999D, all.getMax());
+            Assertions.checkEquals(100_000L, all.getCount());
+            Assertions.checkEquals(99_999D * 100_000D / 2D, all.getSum());
+
+            final Aggregate range = table.aggregate(key, "millis", dates.get(12_345), dates.get(87_654));
+            Assertions.checkEquals(12_345D, range.getMin());
+            Assertions.checkEquals(87_654D, range.getMax());
+            Assertions.checkEquals(75_310L, range.getCount());
+            Assertions.checkEquals((12_345D + 87_654D) * 75_310D / 2D, range.getSum());
+        } finally {
+            table.close();
+        }
+    }
+
+    @Test
+    public void testAppendToTailSealsAndTruncates() throws Exception {
+        final String key = "asdf";
+        final String name = "testAppendToTailSealsAndTruncates";
+        final int batch = 20;
+        ATimeSeriesDB<String, FDate> table = newTable(name, true, batch);
+        final List<FDate> source = newIrregularDates(10_000L, 300, 1, 9, 11L);
+        final List<FDate> expected = new ArrayList<>(source.subList(0, 45));
+        appendToTail(table, key, expected);
+        //two full chunks and the open tail
+        Assertions.checkEquals(Arrays.asList(20, 20, 5), getChunkValueCounts(table, key));
+        final int maxAppend = 6;
+        boolean sealed = false;
+        int prevChunks = 3;
+        for (int i = 0; expected.size() + maxAppend <= source.size(); i++) {
+            expected.addAll(source.subList(expected.size(), expected.size() + 1 + i % maxAppend));
+            appendToTail(table, key, expected);
+            assertLookups(table, key, expected);
+
+            final List<Integer> counts = getChunkValueCounts(table, key);
+            //full chunks followed by the open tail of small chunks
+            int tailStart = counts.size();
+            while (tailStart > 0 && counts.get(tailStart - 1) < batch) {
+                tailStart--;
+            }
+            int tailValues = 0;
+            for (int c = 0; c < counts.size(); c++) {
+                if (c < tailStart) {
+                    Assertions.checkEquals(batch, counts.get(c));
+                } else {
+                    tailValues += counts.get(c);
+                }
+            }
+            //the tail is sealed before it grows beyond one batch plus the values of a single update
+            Assertions.checkTrue(tailValues < batch + maxAppend, "%s", counts);
+            if (counts.size() < prevChunks) {
+                sealed = true;
+            }
+            prevChunks = counts.size();
+            assertMemoryFileEndsWithLastChunk(table, key);
+        }
+        Assertions.checkTrue(sealed);
+
+        table.close();
+        table = newTable(name, true, batch);
+        try {
+            assertLookups(table, key, expected);
+            assertMemoryFileEndsWithLastChunk(table, key);
+        } finally {
+            table.close();
+        }
+    }
+
+    @Test
+    public void testOptimisticReadFallsBackDuringUpdate() throws Exception {
+        final String key = "asdf";
+        final ATimeSeriesDB<String, FDate> table = newTable("testOptimisticReadFallsBackDuringUpdate", true);
+        update(table, key, newDates(0L, 1_000, 1L));
+        final List<FDate> appended = newDates(1_000L, 500, 3L);
+        final CountDownLatch updateStarted = new CountDownLatch(1);
+        final CountDownLatch releaseUpdate = new CountDownLatch(1);
+        final WrappedExecutorService executor = Executors
+                .newFixedThreadPool("testOptimisticReadFallsBackDuringUpdate", 2);
+        try {
+            final Future<?> updateFuture = executor.submit(() -> {
+                new TestUpdater(table, key, appended) {
+                    @Override
+                    protected ICloseableIterable<? extends FDate> getSource(final FDate updateFrom) {
+                        //the write lock and the read gate are held at this point
+                        updateStarted.countDown();
+                        try {
+                            releaseUpdate.await();
+                        } catch (final InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        return super.getSource(updateFrom);
+                    }
+                }.update();
+                return null;
+            });
+            updateStarted.await();
+            final OptimisticReadGate readGate = table.getReadGate(key);
+            Assertions.checkEquals(OptimisticReadGate.FALLBACK, readGate.tryEnterRead());
+            final Future<FDate> readFuture = executor.submit(() -> table.getLatestValue(key, FDates.MAX_DATE));
+            Thread.sleep(100);
+            //the read fell back to the read lock and waits for the update
+            Assertions.checkFalse(readFuture.isDone());
+            releaseUpdate.countDown();
+            updateFuture.get();
+            Assertions.checkEquals(appended.get(appended.size() - 1), readFuture.get());
+            final int readIndex = readGate.tryEnterRead();
+            Assertions.checkTrue(readIndex >= 0);
+            readGate.exitRead(readIndex);
+        } finally {
+            releaseUpdate.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSnapshotCopyOnWriteAndTruncate() throws Exception {
+        final String key = "asdf";
+        final ATimeSeriesDB<String, FDate> table = newTable("testSnapshotCopyOnWriteAndTruncate", true);
+        final List<FDate> initial = newDates(0L, 1_000, 2L);
+        update(table, key, initial);
+        final TimeSeriesStorageCache<String, FDate> cache = table.getLookupTableCache(key);
+        final File memoryFile = TimeSeriesStorageCache.newMemoryFile(new File(cache.getDataDirectory(), "memory.data"),
+                0L);
+        final long initialLength = memoryFile.length();
+
+        final List<FDate> expected = new ArrayList<>(initial);
+        try (ICloseableIterator<FDate> pinned = table.rangeValues(key, FDates.MIN_DATE, FDates.MAX_DATE).iterator()) {
+            final List<FDate> scanned = new ArrayList<>();
+            scanned.add(pinned.next());
+            Assertions.checkEquals(1, cache.getSnapshots().size());
+            //the last value is redone, the redone chunk needs to be written behind the pinned one
+            final List<FDate> appended = newDates(initial.get(initial.size() - 1).millisValue(), 1_000, 3L);
+            update(table, key, appended);
+            expected.remove(expected.size() - 1);
+            expected.addAll(appended);
+            Assertions.checkTrue(memoryFile.length() > initialLength);
+            while (pinned.hasNext()) {
+                scanned.add(pinned.next());
+            }
+            //the scan still sees the chunk it started with
+            Assertions.checkEquals(initial, scanned);
+        }
+        Assertions.checkEquals(0, cache.getSnapshots().size());
+        Assertions.checkEquals(expected, readAll(table, key));
+        final long copyOnWriteLength = memoryFile.length();
+
+        //without a pinned snapshot the redone chunk is overwritten and the space of the old chunk is reclaimed
+        update(table, key, expected.subList(expected.size() - 1, expected.size()));
+        Assertions.checkTrue(memoryFile.length() < copyOnWriteLength);
+        Assertions.checkEquals(expected, readAll(table, key));
+        Assertions.checkEquals(expected.get(500), table.getLatestValue(key, 500L));
+    }
+
+    @Test
+    public void testLeakedSnapshotIsReleased() throws Exception {
+        final String key = "asdf";
+        final ATimeSeriesDB<String, FDate> table = newTable("testLeakedSnapshotIsReleased", false);
+        update(table, key, newDates(100L, 300, 7L));
+        final TimeSeriesStorageCache<String, FDate> cache = table.getLookupTableCache(key);
+        leakSnapshot(table, key);
+        Assertions.checkEquals(1, cache.getSnapshots().size());
+        final long start = System.currentTimeMillis();
+        while (cache.getSnapshots().size() > 0 && System.currentTimeMillis() - start < 10_000) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assertions.checkEquals(0, cache.getSnapshots().size());
+    }
+
+    @Test
+    public void testDeleteRangeBeforeKeepsIndexesAndManifest() throws Exception {
+        final String key = "asdf";
+        final String name = "testDeleteRangeBeforeKeepsIndexesAndManifest";
+        ATimeSeriesDB<String, FDate> table = newTable(name, true, 100);
+        final List<FDate> values = newDates(0L, 1_000, 10L);
+        update(table, key, values);
+
+        //drops the first 3 of 10 chunks, the memory file is not compacted yet
+        Assertions.checkEquals(300L, table.deleteRangeBefore(key, values.get(350)));
+        assertLookups(table, key, values.subList(300, values.size()));
+        //drops 3 more chunks, now the retained bytes are moved to the front of the memory file
+        Assertions.checkEquals(300L, table.deleteRangeBefore(key, values.get(650)));
+        final List<FDate> retained = values.subList(600, values.size());
+        assertLookups(table, key, retained);
+        //nothing before the first retained value
+        Assertions.checkEquals(0L, table.deleteRangeBefore(key, values.get(600)));
+
+        final File dataDirectory = table.getLookupTableCache(key).getDataDirectory();
+        final ChunkDirectory manifest = new ChunkManifest(dataDirectory, FDateSerde.FIXED_LENGTH).read();
+        Assertions.checkNotNull(manifest);
+        Assertions.checkEquals(4, manifest.size());
+        Assertions.checkEquals(600L, manifest.getValueIndexOffset());
+
+        table.close();
+        table = newTable(name, true, 100);
+        try {
+            //the chunk directory is loaded from the rewritten manifest
+            assertLookups(table, key, retained);
+        } finally {
+            table.close();
+        }
+    }
+
+    @Test
+    public void testChunkDirectoryValueIndexOffset() throws Exception {
+        final String key = "asdf";
+        final ATimeSeriesDB<String, FDate> table = newTable("testChunkDirectoryValueIndexOffset", true, 64);
+        try {
+            //a short chunk in the middle gives chunks of different sizes: 64, 64, 64, 10, 64, 64, 2
+            final List<FDate> expected = newIrregularDates(2_000L, 202, 3, 17, 7L);
+            update(table, key, expected);
+            final FDate last = expected.get(expected.size() - 1);
+            final List<FDate> appended = newIrregularDates(last.millisValue() + 5L, 130, 3, 17, 8L);
+            new TestUpdater(table, key, appended) {
+                @Override
+                protected boolean shouldRedoLastFile() {
+                    return false;
+                }
+            }.update();
+            expected.addAll(appended);
+            ChunkDirectory directory = readChunkManifest(table, key);
+            Assertions.checkEquals(Arrays.asList(64, 64, 64, 10, 64, 64, 2), getChunkValueCounts(table, key));
+            Assertions.checkEquals(0L, directory.getValueIndexOffset());
+            assertChunkDirectory(directory, expected, 0L);
+
+            //the retention drops the first two chunks, the directory keeps the absolute preceding value counts
+            Assertions.checkEquals(128L, table.deleteRangeBefore(key, expected.get(150)));
+            directory = readChunkManifest(table, key);
+            Assertions.checkEquals(128L, directory.getValueIndexOffset());
+            final List<FDate> retained = expected.subList(128, expected.size());
+            assertChunkDirectory(directory, retained, 128L);
+            //the value indexes of the table are relative to the first retained value
+            Assertions.checkEquals(retained.get(0), table.getLatestValue(key, 0L));
+            Assertions.checkEquals(0L, table.getLatestValueIndex(key, retained.get(0)));
+            Assertions.checkEquals(retained.get(8), table.getLatestValue(key, 8L));
+            Assertions.checkEquals(retained.get(9), table.getLatestValue(key, 9L));
+            Assertions.checkEquals(retained.get(10), table.getLatestValue(key, 10L));
+            assertLookups(table, key, retained);
+        } finally {
+            table.close();
+        }
+    }
+
+    /**
+     * Checks the chunk lookups of the directory by index and by date against the values.
+     */
+    private static void assertChunkDirectory(final ChunkDirectory directory, final List<FDate> values,
+            final long valueIndexOffset) {
+        long index = valueIndexOffset;
+        for (int c = 0; c < directory.size(); c++) {
+            Assertions.checkEquals(index, directory.getPrecedingValueCount(c));
+            final FDate first = values.get((int) (index - valueIndexOffset));
+            Assertions.checkEquals(first.millisValue(), directory.getFirstTime(c));
+            Assertions.checkEquals(c, directory.getLatestChunk(index));
+            Assertions.checkEquals(c, directory.getLatestChunk(index + directory.getValueCount(c) - 1));
+            Assertions.checkEquals(c, directory.getLatestChunk(first));
+            Assertions.checkEquals(c, directory.getFirstChunkStartingFrom(first));
+            if (c > 0) {
+                //between the last value of the previous chunk and the first value of this chunk
+                Assertions.checkEquals(c - 1, directory.getLatestChunk(first.addMilliseconds(-1)));
+                Assertions.checkEquals(c, directory.getFirstChunkStartingFrom(first.addMilliseconds(-1)));
+            }
+            index += directory.getValueCount(c);
+        }
+        Assertions.checkEquals(valueIndexOffset + values.size(), index);
+        //indexes and dates outside of the values are clamped
+        Assertions.checkEquals(0, directory.getLatestChunk(valueIndexOffset - 1));
+        Assertions.checkEquals(0, directory.getLatestChunk(-1L));
+        Assertions.checkEquals(directory.size() - 1, directory.getLatestChunk(index));
+        Assertions.checkEquals(0, directory.getLatestChunk(FDates.MIN_DATE));
+        Assertions.checkEquals(-1, directory.getLastChunkStartingUntil(values.get(0).addMilliseconds(-1)));
+        Assertions.checkEquals(directory.size() - 1, directory.getLatestChunk(FDates.MAX_DATE));
+        Assertions.checkEquals(directory.size(),
+                directory.getFirstChunkStartingFrom(values.get(values.size() - 1).addMilliseconds(1)));
+    }
+
+    @Test
+    public void testChunkManifestIsValidatedAgainstMemoryFile() throws Exception {
+        final String key = "asdf";
+        final String name = "testChunkManifestIsValidatedAgainstMemoryFile";
+        final List<Integer> counts = Arrays.asList(40, 40, 40, 40, 10);
+        final List<FDate> values = newDates(500L, 170, 2L);
+        ATimeSeriesDB<String, FDate> table = newTable(name, false, 40);
+        update(table, key, values);
+        final ChunkDirectory directory = readChunkManifest(table, key);
+        Assertions.checkEquals(counts, getChunkValueCounts(table, key));
+        final ChunkManifest manifest = new ChunkManifest(table.getLookupTableCache(key).getDataDirectory(),
+                table.getValueFixedLength());
+        table.close();
+
+        //a manifest that matches the memory file is used as is, a rewrite would replace the file
+        Assertions.checkTrue(manifest.getFile().setLastModified(1_000_000L));
+        table = newTable(name, false, 40);
+        try {
+            assertLookups(table, key, values);
+            Assertions.checkEquals(1_000_000L, manifest.getFile().lastModified());
+        } finally {
+            table.close();
+        }
+
+        //an update that crashed before appending its chunks leaves a manifest that ends before the memory file
+        manifest.write(directory, 3);
+        assertChunkManifestRebuilt(name, key, values, counts, manifest);
+
+        //a foreign or damaged header
+        try (FileChannel channel = FileChannel.open(manifest.getFile().toPath(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES), 0L);
+        }
+        assertChunkManifestRebuilt(name, key, values, counts, manifest);
+
+        //the end points behind a partially written record
+        try (FileChannel channel = FileChannel.open(manifest.getFile().toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        assertChunkManifestRebuilt(name, key, values, counts, manifest);
+
+        //a missing manifest
+        manifest.delete();
+        assertChunkManifestRebuilt(name, key, values, counts, manifest);
+    }
+
+    /**
+     * The manifest is rejected, thus reopening the table falls back to the file lookup table and rewrites it.
+     */
+    private static void assertChunkManifestRebuilt(final String name, final String key, final List<FDate> values,
+            final List<Integer> counts, final ChunkManifest manifest) {
+        Assertions.checkNull(manifest.read());
+        final ATimeSeriesDB<String, FDate> table = newTable(name, false, 40);
+        try {
+            assertLookups(table, key, values);
+            Assertions.checkEquals(counts, getChunkValueCounts(table, key));
+        } finally {
+            table.close();
+        }
+    }
+
+    @Test
+    public void testRangeReverseDecodesFirstChunkBlockwise() throws Exception {
+        final String key = "asdf";
+        final ATimeSeriesDB<String, FDate> table = newTable("testRangeReverseDecodesFirstChunkBlockwise", true, 1000);
+        try {
+            //steps of at least 2 millis leave room between the values
+            final List<FDate> values = newIrregularDates(50_000L, 2_300, 2, 5, 22L);
+            update(table, key, values);
+            Assertions.checkEquals(Arrays.asList(1000, 1000, 300), getChunkValueCounts(table, key));
+            final MemoryFileBlockIndex blockIndex = readChunkManifest(table, key).getSummary(0).getBlockIndex();
+            Assertions.checkNotNull(blockIndex);
+            Assertions.checkTrue(blockIndex.getBlockCount() > 1);
+            final int blockSize = blockIndex.getBlockSize();
+            //block boundaries, inside of blocks and chunk boundaries
+            final int[] fromIndexes = { 0, 1, blockSize - 1, blockSize, blockSize + 1, 2 * blockSize + 17, 999, 1000,
+                    1000 + blockSize - 1, 1000 + blockSize, 1999, 2000, 2299 };
+            for (final int fromIndex : fromIndexes) {
+                final FDate from = values.get(fromIndex);
+                //within the block, across blocks of the chunk and across chunks
+                final int[] toIndexes = { fromIndex, Math.max(0, fromIndex - 5), Math.max(0, fromIndex - blockSize - 3),
+                        Math.max(0, fromIndex - 1100) };
+                for (final int toIndex : toIndexes) {
+                    assertRangeReverse(table, key, values, from, values.get(toIndex), Integer.MAX_VALUE);
+                    //between two values
+                    assertRangeReverse(table, key, values, new FDate(from.millisValue() + 1),
+                            new FDate(values.get(toIndex).millisValue() - 1), Integer.MAX_VALUE);
+                }
+                //only the last few values before from
+                assertRangeReverse(table, key, values, from, FDates.MIN_DATE, 3);
+                assertRangeReverse(table, key, values, from, FDates.MIN_DATE, blockSize + 1);
+            }
+            assertRangeReverse(table, key, values, FDates.MAX_DATE, FDates.MIN_DATE, Integer.MAX_VALUE);
+            assertRangeReverse(table, key, values, FDates.MAX_DATE, values.get(2299), Integer.MAX_VALUE);
+            assertRangeReverse(table, key, values, new FDate(values.get(0).millisValue() - 1), FDates.MIN_DATE,
+                    Integer.MAX_VALUE);
+        } finally {
+            table.close();
+        }
+    }
+
+    /**
+     * Consumes at most limit values of the reverse range and closes it early.
+     */
+    private static void assertRangeReverse(final ATimeSeriesDB<String, FDate> table, final String key,
+            final List<FDate> values, final FDate from, final FDate to, final int limit) {
+        final List<FDate> expected = new ArrayList<>();
+        for (int i = values.size() - 1; i >= 0 && expected.size() < limit; i--) {
+            final long millis = values.get(i).millisValue();
+            if (millis <= from.millisValue() && millis >= to.millisValue()) {
+                expected.add(values.get(i));
+            }
+        }
+        final List<FDate> actual = new ArrayList<>();
+        try (ICloseableIterator<FDate> it = table.rangeReverseValues(key, from, to).iterator()) {
+            while (actual.size() < limit && it.hasNext()) {
+                actual.add(it.next());
+            }
+        }
+        Assertions.checkEquals(expected, actual, "from=%s to=%s limit=%s", from, to, limit);
+    }
+
+    @Test
+    public void testLatestValueWindowsAfterReset() throws Exception {
+        final String key = "asdf";
+        final String name = "testLatestValueWindowsAfterReset";
+        final ATimeSeriesDB<String, FDate> table = newTable(name, false, 300);
+        final WrappedExecutorService executor = Executors.newFixedThreadPool(name, 1);
+        try {
+            final List<FDate> expected = newDates(100_000L, 700, 10L);
+            update(table, key, expected);
+            //both threads leave their cursor in the last window, which is complete at this point
+            assertLatestValueWindows(table, key, expected);
+            executor.submit(() -> assertLatestValueWindows(table, key, expected)).get();
+
+            //the appended values need to be visible through the windows that were loaded before the update
+            final List<FDate> appended = newDates(107_003L, 250, 7L);
+            update(table, key, appended);
+            expected.addAll(appended);
+            assertLatestValueWindows(table, key, expected);
+            executor.submit(() -> assertLatestValueWindows(table, key, expected)).get();
+
+            //the retention shifts the value indexes that the windows are aligned to
+            final long deleted = table.deleteRangeBefore(key, expected.get(650));
+            Assertions.checkTrue(deleted > 0);
+            final List<FDate> retained = expected.subList((int) deleted, expected.size());
+            assertLatestValueWindows(table, key, retained);
+            executor.submit(() -> assertLatestValueWindows(table, key, retained)).get();
+        } finally {
+            executor.shutdownNow();
+            table.close();
+        }
+    }
+
+    /**
+     * Steps forward through all values, jumps backwards across windows and finishes in the last window.
+     */
+    private static void assertLatestValueWindows(final ATimeSeriesDB<String, FDate> table, final String key,
+            final List<FDate> values) {
+        final TimeSeriesStorageCache<String, FDate> cache = table.getLookupTableCache(key);
+        for (int i = 0; i < values.size(); i++) {
+            final FDate value = values.get(i);
+            Assertions.checkEquals(value, cache.getLatestValue(value));
+            //between two values
+            Assertions.checkEquals(value, cache.getLatestValue(new FDate(value.millisValue() + 1)));
+        }
+        for (int i = values.size() - 1; i >= 0; i -= 37) {
+            Assertions.checkEquals(values.get(i), cache.getLatestValue(values.get(i)));
+        }
+        Assertions.checkEquals(values.get(0), cache.getLatestValue(FDates.MIN_DATE));
+        final FDate last = values.get(values.size() - 1);
+        Assertions.checkEquals(last, cache.getLatestValue(FDates.MAX_DATE));
+        Assertions.checkEquals(last, cache.getLatestValue(last));
+    }
+
+    @Test
+    public void testDeleteRangeInvalidatesOpenScans() throws Exception {
+        final String key = "asdf";
+        final ATimeSeriesDB<String, FDate> table = newTable("testDeleteRangeInvalidatesOpenScans", true, 100);
+        try {
+            update(table, key, newDates(0L, 500, 10L));
+            final ICloseableIterator<FDate> open = table.rangeValues(key, FDates.MIN_DATE, FDates.MAX_DATE)
+                    .iterator();
+            try {
+                Assertions.checkEquals(new FDate(0L), open.next());
+                table.deleteRange(key);
+                //the new memory file is written at the same path as the deleted one
+                final List<FDate> replaced = newIrregularDates(3L, 430, 1, 13, 12L);
+                update(table, key, replaced);
+                assertLookups(table, key, replaced);
+                boolean failed = false;
+                try {
+                    open.next();
+                } catch (final RetryLaterRuntimeException e) {
+                    failed = true;
+                }
+                Assertions.checkTrue(failed);
+            } finally {
+                open.close();
+            }
+            Assertions.checkEquals(0, table.getLookupTableCache(key).getSnapshots().size());
+        } finally {
+            table.close();
+        }
+    }
+
+    @Test
+    public void testCompactionKeepsLookups() throws Exception {
+        final String key = "asdf";
+        final ATimeSeriesDB<String, FDate> table = newTable("testCompactionKeepsLookups", false, 100);
+        final List<FDate> expected = newDates(1_000L, 500, 5L);
+        update(table, key, expected);
+        //every update without redoing the last chunk leaves a small chunk behind
+        for (int i = 0; i < 10; i++) {
+            final FDate last = expected.get(expected.size() - 1);
+            final List<FDate> appended = newDates(last.millisValue() + 11L, 7, 11L);
+            new TestUpdater(table, key, appended) {
+                @Override
+                protected boolean shouldRedoLastFile() {
+                    return false;
+                }
+            }.update();
+            expected.addAll(appended);
+        }
+        final TimeSeriesStorageCache<String, FDate> cache = table.getLookupTableCache(key);
+        Assertions.checkTrue(cache.isCompactionRequired());
+        assertLookups(table, key, expected);
+
+        Assertions.checkTrue(TimeSeriesCompactionService.compact(table, key));
+        Assertions.checkFalse(cache.isCompactionRequired());
+        assertLookups(table, key, expected);
+    }
+
+    @Test
+    public void testRecompressColdChunksKeepsLookups() throws Exception {
+        final String key = "asdf";
+        final String name = "testRecompressColdChunksKeepsLookups";
+        ATimeSeriesDB<String, FDate> table = newColdTable(name);
+        final List<FDate> expected = newDates(0L, 1_000, DAY_MILLIS);
+        update(table, key, expected);
+        assertLookups(table, key, expected);
+
+        //chunks that end more than 100 days before the last value are moved, the last chunk stays hot
+        Assertions.checkEquals(8, TimeSeriesCompactionService.recompress(table, key));
+        Assertions.checkEquals(8, table.getLookupTableCache(key).getColdDataDirectory().listFiles().length);
+        assertLookups(table, key, expected);
+        Assertions.checkEquals(0, TimeSeriesCompactionService.recompress(table, key));
+
+        table.close();
+        table = newColdTable(name);
+        try {
+            assertLookups(table, key, expected);
+        } finally {
+            table.close();
+        }
+    }
+
+    @Test
+    public void testRejectedColdSwap() throws Exception {
+        final String key = "asdf";
+        final ATimeSeriesDB<String, FDate> table = newColdTable("testRejectedColdSwap");
+        final List<FDate> values = newDates(DAY_MILLIS, 1_000, DAY_MILLIS);
+        update(table, key, values);
+        final TimeSeriesStorageCache<String, FDate> cache = table.getLookupTableCache(key);
+        final PrepareForRecompressionResult prepared = cache
+                .prepareForRecompression(table.getTableLock(key).readLock());
+        Assertions.checkEquals(8, prepared.getColdSummaries().size());
+
+        //a retention drops the first chunk before the swap
+        Assertions.checkEquals(100L, table.deleteRangeBefore(key, values.get(150)));
+        Assertions.checkEquals(0, cache.swapColdChunks(prepared, table.getTableLock(key), table.getReadGate(key)));
+        //the cold files of the rejected swap are cleaned up
+        Assertions.checkEquals(0, cache.getColdDataDirectory().listFiles().length);
+        final List<FDate> retained = values.subList(100, values.size());
+        assertLookups(table, key, retained);
+
+        //the next recompression starts from the current chunks
+        Assertions.checkEquals(7, TimeSeriesCompactionService.recompress(table, key));
+        assertLookups(table, key, retained);
+    }
+
+    @Test
+    public void testAppenderSkipsStoredValues() throws Exception {
+        final String key = "asdf";
+        final ATimeSeriesDB<String, FDate> table = newTable("testAppenderSkipsStoredValues", true, 20);
+        final TimeSeriesDBAppender<String, FDate> appender = new TimeSeriesDBAppender<>(table, 1_000,
+                new Duration(1, FTimeUnit.HOURS));
+        try {
+            final List<FDate> expected = newDates(500L, 50, 3L);
+            appender.append(key, expected);
+            appender.flush().get();
+            Assertions.checkEquals(expected, readAll(table, key));
+
+            //a producer resends the last value together with new ones
+            final FDate last = expected.get(expected.size() - 1);
+            final List<FDate> next = newDates(last.millisValue() + 3L, 10, 3L);
+            appender.append(key, last);
+            appender.append(key, next);
+            appender.flush().get();
+            expected.addAll(next);
+            Assertions.checkEquals(expected, readAll(table, key));
+
+            //a retried batch that was already stored completely is dropped
+            appender.append(key, next);
+            appender.flush().get();
+            Assertions.checkEquals(expected, readAll(table, key));
+            Assertions.checkEquals(0, appender.getPendingCount());
+        } finally {
+            appender.close();
+            table.close();
+        }
+    }
+
+    @Test
+    public void testProjectedRangeValues() throws Exception {
+        final String key = "asdf";
+        final ATimeSeriesDB<String, FDate> table = newTable("testProjectedRangeValues", new ColumnarFDateSerde(),
+                FDateSerde.FIXED_LENGTH, 100);
+        try {
+            final List<FDate> values = newDates(1_000L, 1_000, 7L);
+            update(table, key, values);
+            Assertions.checkNotNull(table.getLookupTableCache(key).getColumnLayout());
+            assertLookups(table, key, values);
+
+            final ColumnProjection projection = ColumnProjection.of();
+            assertProjectedRange(table, key, projection, FDates.MIN_DATE, FDates.MAX_DATE, values);
+            //the last value of a chunk and the first value of the next chunk
+            assertProjectedRange(table, key, projection, values.get(99), values.get(100),
+                    values.subList(99, 101));
+            //bounds between values
+            assertProjectedRange(table, key, projection, values.get(150).addMilliseconds(-1),
+                    values.get(450).addMilliseconds(1), values.subList(150, 451));
+            assertProjectedRange(table, key, projection, values.get(0), values.get(0), values.subList(0, 1));
+            assertProjectedRange(table, key, projection, values.get(999), FDates.MAX_DATE, values.subList(999, 1000));
+            assertProjectedRange(table, key, projection, FDates.MIN_DATE, values.get(0).addMilliseconds(-1),
+                    Collections.emptyList());
+            //without a projection the normal scan is used
+            assertProjectedRange(table, key, null, values.get(10), values.get(20), values.subList(10, 21));
+        } finally {
+            table.close();
+        }
+    }
+
+    @Test
+    public void testPreviousAndNextValuesAcrossChunks() throws Exception {
+        final String key = "asdf";
+        final ATimeSeriesDB<String, FDate> table = newTable("testPreviousAndNextValuesAcrossChunks", false, 100);
+        try {
+            //irregular gaps, the values are split into 11 chunks with a short last one
+            final List<FDate> values = newIrregularDates(5_000L, 1_050, 2, 50, 25L);
+            update(table, key, values);
+            final List<FDate> dates = new ArrayList<>();
+            dates.add(FDates.MIN_DATE);
+            dates.add(FDates.MAX_DATE);
+            dates.add(values.get(0).addMilliseconds(-1));
+            dates.add(values.get(values.size() - 1).addMilliseconds(1));
+            for (final int index : new int[] { 0, 1, 99, 100, 101, 199, 200, 555, 999, 1_000, 1_048, 1_049 }) {
+                dates.add(values.get(index));
+                //between this and the next value
+                dates.add(values.get(index).addMilliseconds(1));
+            }
+            for (final FDate date : dates) {
+                for (final int count : new int[] { 0, 1, 2, 99, 100, 101, 250, values.size() + 10 }) {
+                    assertPreviousAndNextValues(table, key, date, count);
+                }
+            }
+            //the whole data in one call
+            Assertions.checkEquals(values, table.getPreviousValues(key, FDates.MAX_DATE, values.size()));
+            Assertions.checkEquals(values, table.getNextValues(key, FDates.MIN_DATE, values.size()));
+        } finally {
+            table.close();
+        }
+    }
+
+    /**
+     * The bulk lookups need to return the same values as repeated shift lookups, clamped values only once.
+     */
+    private static void assertPreviousAndNextValues(final ATimeSeriesDB<String, FDate> table, final String key,
+            final FDate date, final int count) {
+        final List<FDate> expectedPrevious = new ArrayList<>();
+        for (int i = count - 1; i >= 0; i--) {
+            final FDate value = table.getPreviousValue(key, date, i);
+            if (expectedPrevious.isEmpty() || !expectedPrevious.get(expectedPrevious.size() - 1).equals(value)) {
+                expectedPrevious.add(value);
+            }
+        }
+        final List<FDate> previous = table.getPreviousValues(key, date, count);
+        Assertions.checkEquals(expectedPrevious, previous, date + " " + count);
+        final List<FDate> expectedNext = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final FDate value = table.getNextValue(key, date, i);
+            if (expectedNext.isEmpty() || !expectedNext.get(expectedNext.size() - 1).equals(value)) {
+                expectedNext.add(value);
+            }
+        }
+        final List<FDate> next = table.getNextValues(key, date, count);
+        Assertions.checkEquals(expectedNext, next, date + " " + count);
+        //always modifiable
+        previous.add(date);
+        next.add(date);
+    }
+
+    private static void assertProjectedRange(final ATimeSeriesDB<String, FDate> table, final String key,
+            final ColumnProjection projection, final FDate from, final FDate to, final List<FDate> expected) {
+        final List<FDate> values = new ArrayList<>();
+        try (ICloseableIterator<FDate> it = table.rangeValues(key, from, to, projection).iterator()) {
+            while (it.hasNext()) {
+                values.add(it.next());
+            }
+        }
+        Assertions.checkEquals(expected, values);
+    }
+
+    private static ATimeSeriesDB<String, FDate> newColdTable(final String name) {
+        return new ATimeSeriesDB<String, FDate>(name) {
+
+            @Override
+            protected int newBatchFlushInterval() {
+                return 100;
+            }
+
+            @Override
+            protected ColdStorage newColdStorage() {
+                return new ColdStorage(new CompressionTimeSeriesCodec((byte) 2, DisabledCompressionFactory.INSTANCE,
+                        false), new Duration(100, FTimeUnit.DAYS));
+            }
+
+            @Override
+            protected ISerde<FDate> newValueSerde() {
+                return FDateSerde.GET;
+            }
+
+            @Override
+            protected Integer newValueFixedLength() {
+                return FDateSerde.FIXED_LENGTH;
+            }
+
+            @Override
+            protected String innerHashKeyToString(final String key) {
+                return key;
+            }
+
+            @Override
+            public FDate extractStartTime(final FDate value) {
+                return value;
+            }
+
+            @Override
+            public FDate extractEndTime(final FDate value) {
+                return value;
+            }
+
+            @Override
+            public File getBaseDirectory() {
+                return ContextProperties.TEMP_DIRECTORY;
+            }
+        };
+    }
+
+    /**
+     * Compares range scans, point lookups and index lookups with the expected values.
+     */
+    private static void assertLookups(final ATimeSeriesDB<String, FDate> table, final String key,
+            final List<FDate> expected) {
+        Assertions.checkEquals(expected, readAll(table, key));
+        final List<FDate> reverse = new ArrayList<>();
+        try (ICloseableIterator<FDate> it = table.rangeReverseValues(key, FDates.MAX_DATE, FDates.MIN_DATE)
+                .iterator()) {
+            while (it.hasNext()) {
+                reverse.add(it.next());
+            }
+        }
+        final List<FDate> expectedReverse = new ArrayList<>(expected);
+        Collections.reverse(expectedReverse);
+        Assertions.checkEquals(expectedReverse, reverse);
+        Assertions.checkEquals((long) expected.size(), table.size(key));
+        for (int i = 0; i < expected.size(); i += 37) {
+            final FDate value = expected.get(i);
+            Assertions.checkEquals(value, table.getLatestValue(key, (long) i));
+            Assertions.checkEquals((long) i, table.getLatestValueIndex(key, value));
+            Assertions.checkEquals(value, table.getLatestValue(key, value));
+            if (i > 0) {
+                //between two values the previous one is the latest
+                Assertions.checkEquals(expected.get(i - 1), table.getLatestValue(key, value.addMilliseconds(-1)));
+                Assertions.checkEquals(expected.get(i - 1), table.getPreviousValue(key, value, 1));
+            }
+            if (i < expected.size() - 1) {
+                Assertions.checkEquals(expected.get(i + 1), table.getNextValue(key, value, 1));
+            }
+        }
+        Assertions.checkEquals(expected.get(expected.size() - 1), table.getLatestValue(key, expected.size() - 1L));
+        Assertions.checkEquals(expected.get(0), table.getLatestValue(key, FDates.MIN_DATE));
+        Assertions.checkEquals(expected.get(expected.size() - 1), table.getLatestValue(key, FDates.MAX_DATE));
+    }
+
+    private static void appendToTail(final ATimeSeriesDB<String, FDate> table, final String key,
+            final List<FDate> values) throws IncompleteUpdateRetryableException {
+        new TestUpdater(table, key, new ArrayList<>(values)) {
+            @Override
+            protected boolean shouldAppendToTail() {
+                return true;
+            }
+        }.update();
+    }
+
+    /**
+     * The manifest of a new key is only written when its chunk directory is loaded for the first time.
+     */
+    private static ChunkDirectory readChunkManifest(final ATimeSeriesDB<String, FDate> table, final String key) {
+        final TimeSeriesStorageCache<String, FDate> cache = table.getLookupTableCache(key);
+        cache.size();
+        return new ChunkManifest(cache.getDataDirectory(), table.getValueFixedLength()).read();
+    }
+
+    private static List<Integer> getChunkValueCounts(final ATimeSeriesDB<String, FDate> table, final String key) {
+        final ChunkDirectory directory = readChunkManifest(table, key);
+        final List<Integer> counts = new ArrayList<>(directory.size());
+        for (int c = 0; c < directory.size(); c++) {
+            counts.add(directory.getValueCount(c));
+        }
+        return counts;
+    }
+
+    /**
+     * Redone chunks can shrink, thus the memory file needs to be truncated behind the last chunk.
+     */
+    private static void assertMemoryFileEndsWithLastChunk(final ATimeSeriesDB<String, FDate> table,
+            final String key) {
+        final ChunkDirectory directory = readChunkManifest(table, key);
+        final MemoryFileSummary last = directory.getLastSummary();
+        Assertions.checkEquals(last.getMemoryOffset() + last.getMemoryLength(),
+                new File(last.getMemoryResourceUri()).length());
+    }
+
+    private static void leakSnapshot(final ATimeSeriesDB<String, FDate> table, final String key) {
+        //not closed on purpose
+        final ICloseableIterator<FDate> leaked = table.rangeValues(key, FDates.MIN_DATE, FDates.MAX_DATE).iterator();
+        Assertions.assertThat(leaked.next()).isNotNull();
+    }
+
+    private static List<FDate> readAll(final ATimeSeriesDB<String, FDate> table, final String key) {
+        final List<FDate> values = new ArrayList<>();
+        try (ICloseableIterator<FDate> it = table.rangeValues(key, FDates.MIN_DATE, FDates.MAX_DATE).iterator()) {
+            while (it.hasNext()) {
+                values.add(it.next());
+            }
+        }
+        return values;
+    }
+
+    private static final long DAY_MILLIS = 24L * 60L * 60L * 1000L;
+
+    private static List<FDate> newDates(final long fromMillis, final int count, final long stepMillis) {
+        final List<FDate> dates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            dates.add(new FDate(fromMillis + i * stepMillis));
+        }
+        return dates;
+    }
+
+    /**
+     * Steps between minStepMillis and maxStepMillis from a fixed seed so that failures are reproducible.
+     */
+    private static List<FDate> newIrregularDates(final long fromMillis, final int count, final int minStepMillis,
+            final int maxStepMillis, final long seed) {
+        final Random random = new Random(seed);
+        final List<FDate> dates = new ArrayList<>(count);
+        long millis = fromMillis;
+        for (int i = 0; i < count; i++) {
+            dates.add(new FDate(millis));
+            millis += minStepMillis + random.nextInt(maxStepMillis - minStepMillis + 1);
+        }
+        return dates;
+    }
+
+    private static void update(final ATimeSeriesDB<String, FDate> table, final String key, final List<FDate> values)
+            throws IncompleteUpdateRetryableException {
+        new TestUpdater(table, key, values).update();
+    }
+
+    private static ATimeSeriesDB<String, FDate> newTable(final String name, final boolean fixedLength) {
+        return newTable(name, fixedLength, ATimeSeriesUpdater.DEFAULT_BATCH_FLUSH_INTERVAL);
+    }
+
+    private static ATimeSeriesDB<String, FDate> newTable(final String name, final boolean fixedLength,
+            final int batchFlushInterval) {
+        if (fixedLength) {
+            return newTable(name, FDateSerde.GET, FDateSerde.FIXED_LENGTH, batchFlushInterval);
+        } else {
+            //exercise the dynamic length encoding
+            return newTable(name, FDateSerde.GET, null, batchFlushInterval);
+        }
+    }
+
+    private static ATimeSeriesDB<String, FDate> newTable(final String name, final ISerde<FDate> serde,
+            final Integer fixedLength, final int batchFlushInterval) {
+        return newTable(name, serde, fixedLength, batchFlushInterval, null);
+    }
+
+    private static ATimeSeriesDB<String, FDate> newTable(final String name, final ISerde<FDate> serde,
+            final Integer fixedLength, final int batchFlushInterval,
+            final List<AggregateField<FDate>> aggregateFields) {
+        return new ATimeSeriesDB<String, FDate>(name) {
+
+            @Override
+            protected int newBatchFlushInterval() {
+                return batchFlushInterval;
+            }
+
+            @Override
+            protected ISerde<FDate> newValueSerde() {
+                return serde;
+            }
+
+            @Override
+            protected Integer newValueFixedLength() {
+                return fixedLength;
+            }
+
+            @Override
+            protected String innerHashKeyToString(final String key) {
+                return key;
+            }
+
+            @Override
+            protected List<AggregateField<FDate>> newAggregateFields() {
+                return aggregateFields;
+            }
+
+            @Override
+            public FDate extractStartTime(final FDate value) {
+                return value;
+            }
+
+            @Override
+            public FDate extractEndTime(final FDate value) {
+                return value;
+            }
+
+            @Override
+            public File getBaseDirectory() {
+                return ContextProperties.TEMP_DIRECTORY;
+            }
+        };
+    }
+
+    /**
+     * Stores the dates in a single time column.
+     */
+    @Immutable
+    private static final class ColumnarFDateSerde implements IColumnarSerde<FDate> {
+
+        private static final ColumnLayout LAYOUT = ColumnLayout.of(FDateSerde.FIXED_LENGTH);
+
+        @Override
+        public FDate fromBuffer(final IByteBuffer buffer) {
+            return FDateSerde.GET.fromBuffer(buffer);
+        }
+
+        @Override
+        public int toBuffer(final IByteBuffer buffer, final FDate obj) {
+            return FDateSerde.GET.toBuffer(buffer, obj);
+        }
+
+        @Override
+        public ColumnLayout getColumnLayout() {
+            return LAYOUT;
+        }
+
+    }
+
+    private static class TestUpdater extends ATimeSeriesUpdater<String, FDate> {
+
+        private final List<FDate> values;
+
+        TestUpdater(final ATimeSeriesDB<String, FDate> table, final String key, final List<FDate> values) {
+            super(key, table);
+            this.values = values;
+        }
+
+        @Override
+        protected boolean shouldScheduleCompaction() {
+            //tests trigger the background work explicitly
+            return false;
+        }
+
+        @Override
+        protected ICloseableIterable<? extends FDate> getSource(final FDate updateFrom) {
+            return WrapperCloseableIterable.maybeWrap(values);
+        }
+
+        @Override
+        protected void onUpdateFinished(final Instant updateStart) {}
+
+        @Override
+        protected void onUpdateStart() {}
+
+        @Override
+        protected FDate extractStartTime(final FDate element) {
+            return element;
+        }
+
+        @Override
+        protected FDate extractEndTime(final FDate element) {
+            return element;
+        }
+
+        @Override
+        protected void onElement(final IUpdateProgress<String, FDate> updateProgress) {}
+
+        @Override
+        protected void onFlush(final int flushIndex, final IUpdateProgress<String, FDate> updateProgress) {}
+
+        @Override
+        public Percent getProgress(final FDate minTime, final FDate maxTime) {
+            return null;
+        }
+    }
+
 }
@@ -0,0 +1,162 @@
+package de.invesdwin.context.persistence.timeseriesdb;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.jupiter.api.Test;
+
+import de.invesdwin.context.integration.retry.RetryLaterRuntimeException;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
+import de.invesdwin.util.time.date.FTimeUnit;
+import de.invesdwin.util.time.duration.Duration;
+
+@NotThreadSafe
+public class OptimisticReadGateTest extends ATest {
+
+    @Test
+    public void testNestedRead() {
+        final OptimisticReadGate gate = new OptimisticReadGate("testNestedRead");
+        final int outer = gate.tryEnterRead();
+        Assertions.checkTrue(outer >= 0);
+        final int nested = gate.tryEnterRead();
+        Assertions.checkEquals(OptimisticReadGate.NESTED, nested);
+        //a different key is not nested
+        final OptimisticReadGate otherGate = new OptimisticReadGate("testNestedRead_other");
+        final int other = otherGate.tryEnterRead();
+        Assertions.checkTrue(other >= 0);
+        otherGate.exitRead(other);
+        gate.exitRead(nested);
+        gate.exitRead(outer);
+        //afterwards the gate is not entered anymore
+        final int again = gate.tryEnterRead();
+        Assertions.checkTrue(again >= 0);
+        gate.exitRead(again);
+    }
+
+    @Test
+    public void testFallbackWhileWriting() throws Exception {
+        final OptimisticReadGate gate = new OptimisticReadGate("testFallbackWhileWriting");
+        final WrappedExecutorService executor = Executors.newFixedThreadPool("testFallbackWhileWriting", 1);
+        try {
+            gate.enterWrite();
+            final Future<Integer> whileWriting = executor.submit(() -> gate.tryEnterRead());
+            Assertions.checkEquals(OptimisticReadGate.FALLBACK, whileWriting.get());
+            gate.exitWrite();
+            final Future<Integer> afterWriting = executor.submit(() -> {
+                final int index = gate.tryEnterRead();
+                if (index >= 0) {
+                    gate.exitRead(index);
+                }
+                return index;
+            });
+            Assertions.checkTrue(afterWriting.get() >= 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWriterTimesOutOnLeakedRead() throws Exception {
+        final OptimisticReadGate gate = new OptimisticReadGate("testWriterTimesOutOnLeakedRead");
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final WrappedExecutorService executor = Executors.newFixedThreadPool("testWriterTimesOutOnLeakedRead", 1);
+        try {
+            final Future<?> reader = executor.submit(() -> {
+                final int index = gate.tryEnterRead();
+                entered.countDown();
+                release.await();
+                gate.exitRead(index);
+                return null;
+            });
+            entered.await();
+            try {
+                gate.enterWrite(new Duration(100, FTimeUnit.MILLISECONDS));
+                Assertions.failExceptionExpected();
+            } catch (final RetryLaterRuntimeException e) {
+                //expected
+            }
+            //the failed writer is not announced anymore
+            final int index = gate.tryEnterRead();
+            Assertions.checkTrue(index >= 0);
+            gate.exitRead(index);
+            release.countDown();
+            reader.get();
+            gate.enterWrite(new Duration(1, FTimeUnit.SECONDS));
+            gate.exitWrite();
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOwnReadDoesNotBlockWriter() {
+        final OptimisticReadGate gate = new OptimisticReadGate("testOwnReadDoesNotBlockWriter");
+        final int index = gate.tryEnterRead();
+        Assertions.checkTrue(index >= 0);
+        gate.enterWrite(new Duration(1, FTimeUnit.SECONDS));
+        gate.exitWrite();
+        gate.exitRead(index);
+    }
+
+    @Test
+    public void testOwnReadsOfSeveralGatesDoNotBlockWriters() {
+        final OptimisticReadGate first = new OptimisticReadGate("testOwnReadsOfSeveralGatesDoNotBlockWriters_first");
+        final OptimisticReadGate second = new OptimisticReadGate(
+                "testOwnReadsOfSeveralGatesDoNotBlockWriters_second");
+        final int firstIndex = first.tryEnterRead();
+        final int secondIndex = second.tryEnterRead();
+        final int nested = first.tryEnterRead();
+        Assertions.checkEquals(OptimisticReadGate.NESTED, nested);
+        first.enterWrite(new Duration(1, FTimeUnit.SECONDS));
+        first.exitWrite();
+        second.enterWrite(new Duration(1, FTimeUnit.SECONDS));
+        second.exitWrite();
+        first.exitRead(nested);
+        second.exitRead(secondIndex);
+        first.exitRead(firstIndex);
+    }
+
+    @Test
+    public void testReadersOfOtherKeysDoNotBlockWriter() throws Exception {
+        //enough keys that counters which are shared between keys would overlap
+        final OptimisticReadGate[] gates = new OptimisticReadGate[1000];
+        for (int i = 0; i < gates.length; i++) {
+            gates[i] = new OptimisticReadGate("testReadersOfOtherKeysDoNotBlockWriter_" + i);
+        }
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final WrappedExecutorService executor = Executors.newFixedThreadPool("testReadersOfOtherKeysDoNotBlockWriter",
+                1);
+        try {
+            //a reader that does not exit would let every overlapping writer time out
+            final Future<?> reader = executor.submit(() -> {
+                final int index = gates[0].tryEnterRead();
+                entered.countDown();
+                release.await();
+                gates[0].exitRead(index);
+                return null;
+            });
+            entered.await();
+            for (int i = 1; i < gates.length; i++) {
+                //a gate that was read before allocated its counters
+                final int index = gates[i].tryEnterRead();
+                gates[i].exitRead(index);
+                gates[i].enterWrite(new Duration(10, FTimeUnit.MILLISECONDS));
+                gates[i].exitWrite();
+            }
+            release.countDown();
+            reader.get();
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -1,19 +1,37 @@
 package de.invesdwin.context.persistence.timeseriesdb;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.annotation.concurrent.Immutable;
 import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
 
 import org.junit.jupiter.api.Test;
 
 import de.invesdwin.context.ContextProperties;
+import de.invesdwin.context.persistence.timeseriesdb.column.ColumnLayout;
+import de.invesdwin.context.persistence.timeseriesdb.column.ColumnProjection;
+import de.invesdwin.context.persistence.timeseriesdb.column.IColumnarSerde;
 import de.invesdwin.context.test.ATest;
 import de.invesdwin.util.assertions.Assertions;
 import de.invesdwin.util.collections.iterable.ICloseableIterator;
 import de.invesdwin.util.lang.Files;
 import de.invesdwin.util.lang.OperatingSystem;
+import de.invesdwin.util.lang.string.Strings;
 import de.invesdwin.util.lang.string.description.TextDescription;
+import de.invesdwin.util.marshallers.serde.ISerde;
+import de.invesdwin.util.marshallers.serde.basic.FDateSerde;
+import de.invesdwin.util.math.Integers;
+import de.invesdwin.util.streams.buffer.bytes.IByteBuffer;
+import de.invesdwin.util.time.date.FDate;
+import it.unimi.dsi.fastutil.io.FastByteArrayInputStream;
 
 @NotThreadSafe
 public class SerializingCollectionTest extends ATest {
@@ -42,4 +60,359 @@ public class SerializingCollectionTest extends ATest {
         reader.close();
     }
 
+    @Test
+    public void testColumnar() throws IOException {
+        final File file = new File(ContextProperties.TEMP_DIRECTORY, "testColumnar.bin.lz4");
+        Files.deleteQuietly(file);
+        final SerializingCollection<FDate> writer = new ColumnarSerializingCollection(file, false);
+        for (int i = 0; i < 1000; i++) {
+            writer.add(new FDate(i * 1000L));
+        }
+        writer.close();
+        final SerializingCollection<FDate> reader = new ColumnarSerializingCollection(file, true);
+        final ICloseableIterator<FDate> iterator = reader.iterator();
+        for (int i = 0; i < 1000; i++) {
+            Assertions.checkEquals(new FDate(i * 1000L), iterator.next());
+        }
+        Assertions.checkFalse(iterator.hasNext());
+        iterator.close();
+        reader.close();
+    }
+
+    @Test
+    public void testColumnarProjectionAndBisect() throws IOException {
+        final File file = new File(ContextProperties.TEMP_DIRECTORY, "testColumnarProjectionAndBisect.bin.lz4");
+        Files.deleteQuietly(file);
+        final BarSerializingCollection writer = new BarSerializingCollection(file, false);
+        for (int i = 0; i < 1000; i++) {
+            writer.add(new Bar(new FDate(i * 10L), i, i + 0.5D));
+        }
+        writer.close();
+
+        final BarSerializingCollection reader = new BarSerializingCollection(file, true);
+        //between two values, only the time and close columns are decompressed
+        final List<Bar> projected = readAll(reader.columnarIterator(ColumnProjection.of(Bar.CLOSE_COLUMN),
+                new FDate(2_505L), new FDate(5_000L)));
+        Assertions.checkEquals(250, projected.size());
+        for (int i = 0; i < projected.size(); i++) {
+            final int index = 251 + i;
+            final Bar bar = projected.get(i);
+            Assertions.checkEquals(new FDate(index * 10L), bar.time);
+            Assertions.checkEquals(index + 0.5D, bar.close);
+            Assertions.checkEquals(0D, bar.open);
+        }
+        Assertions.checkEquals(2, reader.decompressedColumns.get());
+
+        //unbounded and out of range scans
+        Assertions.checkEquals(1000, readAll(reader.columnarIterator(ColumnProjection.of(), null, null)).size());
+        Assertions.checkEquals(1000, readAll(reader.columnarIterator(ColumnProjection.of(), new FDate(-1L),
+                new FDate(1_000_000L))).size());
+        Assertions.checkTrue(readAll(reader.columnarIterator(ColumnProjection.of(), new FDate(9_991L), null))
+                .isEmpty());
+        Assertions.checkTrue(readAll(reader.columnarIterator(ColumnProjection.of(), null, new FDate(-1L))).isEmpty());
+        //the first and last value are inclusive
+        final List<Bar> single = readAll(reader.columnarIterator(null, new FDate(9_990L), new FDate(9_990L)));
+        Assertions.checkEquals(1, single.size());
+        Assertions.checkEquals(999D, single.get(0).open);
+
+        //skipping to an index does not decode the preceding rows
+        final Bar byIndex = reader.getByIndex(777);
+        Assertions.checkEquals(new FDate(7_770L), byIndex.time);
+        Assertions.checkEquals(777D, byIndex.open);
+        Assertions.checkEquals(777.5D, byIndex.close);
+        Assertions.checkNull(reader.getByIndex(1000));
+        reader.close();
+    }
+
+    @Test
+    public void testGetByIndexInBlocks() throws IOException {
+        final File file = new File(ContextProperties.TEMP_DIRECTORY, "testGetByIndexInBlocks.bin.lz4");
+        Files.deleteQuietly(file);
+        final List<FDate> values = new ArrayList<>();
+        final DateBlockSerializingCollection writer = new DateBlockSerializingCollection(file, false, 0L, -1L);
+        for (int i = 0; i < 300; i++) {
+            final FDate value = new FDate(1_000L + i * 7L + i % 3);
+            values.add(value);
+            writer.add(value);
+        }
+        writer.close();
+        final long[] offsets = writer.getBlockOffsets();
+        Assertions.checkEquals(5, offsets.length);
+
+        //the whole file, preceding blocks are skipped without deserializing their values
+        final DateBlockSerializingCollection reader = new DateBlockSerializingCollection(file, true, 0L, -1L);
+        final CountingDateSerde serde = (CountingDateSerde) reader.getSerde();
+        for (final int index : new int[] { 0, 1, 63, 64, 65, 128, 200, 255, 256, 299 }) {
+            final int deserializedBefore = serde.deserialized.get();
+            Assertions.checkEquals(values.get(index), reader.getByIndex(index));
+            Assertions.checkEquals(deserializedBefore + 1, serde.deserialized.get());
+        }
+        Assertions.checkNull(reader.getByIndex(300));
+        Assertions.checkNull(reader.getByIndex(-1));
+        reader.close();
+
+        //a single block, the same as the index lookup of a chunk reads it
+        for (int block = 0; block < offsets.length; block++) {
+            final long length = getBlockLength(file, offsets, block);
+            final DateBlockSerializingCollection blockReader = new DateBlockSerializingCollection(file, true,
+                    offsets[block], length);
+            final int firstIndex = block * DateBlockSerializingCollection.BLOCK_SIZE;
+            final int blockValues = Math.min(DateBlockSerializingCollection.BLOCK_SIZE, values.size() - firstIndex);
+            for (final int index : new int[] { 0, blockValues / 2, blockValues - 1 }) {
+                Assertions.checkEquals(values.get(firstIndex + index), blockReader.getByIndex(index));
+            }
+            Assertions.checkNull(blockReader.getByIndex(blockValues));
+            blockReader.close();
+        }
+    }
+
+    @Test
+    public void testGetByIndexInBlocksWithDynamicLength() throws IOException {
+        final File file = new File(ContextProperties.TEMP_DIRECTORY, "testGetByIndexInBlocksWithDynamicLength.bin.lz4");
+        Files.deleteQuietly(file);
+        final List<String> values = new ArrayList<>();
+        final StringBlockSerializingCollection writer = new StringBlockSerializingCollection(file, false, 0L, -1L);
+        for (int i = 0; i < 100; i++) {
+            //values of different lengths
+            final String value = Strings.repeat("v" + i, 1 + i % 5);
+            values.add(value);
+            writer.add(value);
+        }
+        writer.close();
+        final long[] offsets = writer.getBlockOffsets();
+        Assertions.checkEquals(7, offsets.length);
+
+        final StringBlockSerializingCollection reader = new StringBlockSerializingCollection(file, true, 0L, -1L);
+        for (final int index : new int[] { 0, 15, 16, 17, 50, 95, 96, 99 }) {
+            Assertions.checkEquals(values.get(index), reader.getByIndex(index));
+        }
+        Assertions.checkNull(reader.getByIndex(100));
+        reader.close();
+
+        final int lastBlock = offsets.length - 1;
+        final StringBlockSerializingCollection blockReader = new StringBlockSerializingCollection(file, true,
+                offsets[lastBlock], getBlockLength(file, offsets, lastBlock));
+        final int firstIndex = lastBlock * StringBlockSerializingCollection.BLOCK_SIZE;
+        for (int index = 0; index < values.size() - firstIndex; index++) {
+            Assertions.checkEquals(values.get(firstIndex + index), blockReader.getByIndex(index));
+        }
+        Assertions.checkNull(blockReader.getByIndex(values.size() - firstIndex));
+        blockReader.close();
+    }
+
+    private static long getBlockLength(final File file, final long[] offsets, final int block) {
+        if (block + 1 < offsets.length) {
+            return offsets[block + 1] - offsets[block];
+        } else {
+            return file.length() - offsets[block];
+        }
+    }
+
+    /**
+     * A length of -1 reads the whole file.
+     */
+    private static InputStream newSliceInputStream(final File file, final long offset, final long length)
+            throws IOException {
+        if (length < 0) {
+            return new FileInputStream(file);
+        }
+        final byte[] bytes = new byte[Integers.checkedCast(length)];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(offset);
+            in.readFully(bytes);
+        }
+        return new FastByteArrayInputStream(bytes);
+    }
+
+    private static List<Bar> readAll(final ICloseableIterator<Bar> iterator) {
+        final List<Bar> values = new ArrayList<>();
+        try (ICloseableIterator<Bar> it = iterator) {
+            while (it.hasNext()) {
+                values.add(it.next());
+            }
+        }
+        return values;
+    }
+
+    private static final class ColumnarSerializingCollection extends SerializingCollection<FDate> {
+
+        private ColumnarSerializingCollection(final File file, final boolean readOnly) {
+            super(new TextDescription("%s", SerializingCollectionTest.class.getSimpleName()), file, readOnly);
+        }
+
+        @Override
+        protected ISerde<FDate> newSerde() {
+            return FDateSerde.GET;
+        }
+
+        @Override
+        protected Integer newFixedLength() {
+            return FDateSerde.FIXED_LENGTH;
+        }
+
+        @Override
+        protected ColumnLayout newColumnLayout() {
+            //split the long into high and low bytes
+            return ColumnLayout.of(4, 4);
+        }
+
+    }
+
+    @ThreadSafe
+    private static final class CountingDateSerde implements ISerde<FDate> {
+
+        private final AtomicInteger deserialized = new AtomicInteger();
+
+        @Override
+        public FDate fromBuffer(final IByteBuffer buffer) {
+            deserialized.incrementAndGet();
+            return FDateSerde.GET.fromBuffer(buffer);
+        }
+
+        @Override
+        public int toBuffer(final IByteBuffer buffer, final FDate obj) {
+            return FDateSerde.GET.toBuffer(buffer, obj);
+        }
+
+    }
+
+    private static final class DateBlockSerializingCollection extends SerializingCollection<FDate> {
+
+        private static final int BLOCK_SIZE = 64;
+
+        private final long offset;
+        private final long length;
+
+        private DateBlockSerializingCollection(final File file, final boolean readOnly, final long offset,
+                final long length) {
+            super(new TextDescription("%s", SerializingCollectionTest.class.getSimpleName()), file, readOnly);
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        protected ISerde<FDate> newSerde() {
+            return new CountingDateSerde();
+        }
+
+        @Override
+        protected Integer newFixedLength() {
+            return FDateSerde.FIXED_LENGTH;
+        }
+
+        @Override
+        protected Integer newBlockSize() {
+            return BLOCK_SIZE;
+        }
+
+        @Override
+        protected InputStream newFileInputStream(final File file) throws IOException {
+            return newSliceInputStream(file, offset, length);
+        }
+
+    }
+
+    private static final class StringBlockSerializingCollection extends SerializingCollection<String> {
+
+        private static final int BLOCK_SIZE = 16;
+
+        private final long offset;
+        private final long length;
+
+        private StringBlockSerializingCollection(final File file, final boolean readOnly, final long offset,
+                final long length) {
+            super(new TextDescription("%s", SerializingCollectionTest.class.getSimpleName()), file, readOnly);
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        protected Integer newBlockSize() {
+            return BLOCK_SIZE;
+        }
+
+        @Override
+        protected InputStream newFileInputStream(final File file) throws IOException {
+            return newSliceInputStream(file, offset, length);
+        }
+
+    }
+
+    @Immutable
+    private static final class Bar {
+        private static final int CLOSE_COLUMN = 2;
+
+        private final FDate time;
+        private final double open;
+        private final double close;
+
+        private Bar(final FDate time, final double open, final double close) {
+            this.time = time;
+            this.open = open;
+            this.close = close;
+        }
+    }
+
+    @Immutable
+    private static final class BarSerde implements IColumnarSerde<Bar> {
+
+        private static final int TIME_INDEX = 0;
+        private static final int OPEN_INDEX = TIME_INDEX + FDate.BYTES;
+        private static final int CLOSE_INDEX = OPEN_INDEX + Double.BYTES;
+        private static final int FIXED_LENGTH = CLOSE_INDEX + Double.BYTES;
+        private static final ColumnLayout LAYOUT = ColumnLayout.of(FDate.BYTES, Double.BYTES, Double.BYTES);
+
+        @Override
+        public Bar fromBuffer(final IByteBuffer buffer) {
+            return new Bar(FDateSerde.getFDateNotNullSafe(buffer, TIME_INDEX), buffer.getDouble(OPEN_INDEX),
+                    buffer.getDouble(CLOSE_INDEX));
+        }
+
+        @Override
+        public int toBuffer(final IByteBuffer buffer, final Bar obj) {
+            FDateSerde.putFDateNotNullSafe(buffer, TIME_INDEX, obj.time);
+            buffer.putDouble(OPEN_INDEX, obj.open);
+            buffer.putDouble(CLOSE_INDEX, obj.close);
+            return FIXED_LENGTH;
+        }
+
+        @Override
+        public ColumnLayout getColumnLayout() {
+            return LAYOUT;
+        }
+
+    }
+
+    private static final class BarSerializingCollection extends SerializingCollection<Bar> {
+
+        private final AtomicInteger decompressedColumns = new AtomicInteger();
+
+        private BarSerializingCollection(final File file, final boolean readOnly) {
+            super(new TextDescription("%s", SerializingCollectionTest.class.getSimpleName()), file, readOnly);
+        }
+
+        @Override
+        protected ISerde<Bar> newSerde() {
+            return new BarSerde();
+        }
+
+        @Override
+        protected Integer newFixedLength() {
+            return BarSerde.FIXED_LENGTH;
+        }
+
+        @Override
+        protected ColumnLayout newColumnLayout() {
+            return BarSerde.LAYOUT;
+        }
+
+        @Override
+        protected InputStream newDecompressor(final InputStream inputStream) {
+            //the decompressor is only created per column for columnar chunks
+            decompressedColumns.incrementAndGet();
+            return super.newDecompressor(inputStream);
+        }
+
+    }
+
 }
@@ -500,6 +500,50 @@ public abstract class ARootDBTest extends ATest {
         }
     }
 
+    @Test
+    public final void testGetPreviousAndNextValuesWithTable() {
+        final List<FDate> dates = new ArrayList<FDate>();
+        dates.add(FDates.MIN_DATE);
+        dates.add(FDates.MAX_DATE);
+        for (final FDate entity : entities) {
+            dates.add(entity);
+            dates.add(entity.addDays(-1));
+            dates.add(entity.addDays(1));
+        }
+        for (final FDate date : dates) {
+            for (int count = 0; count <= entities.size() + 2; count++) {
+                final List<FDate> expectedPrevious = new ArrayList<FDate>();
+                for (int i = count - 1; i >= 0; i--) {
+                    addIfNotRepeated(expectedPrevious, table.getPreviousValue(KEY, date, i));
+                }
+                final List<FDate> previous = table.getPreviousValues(KEY, date, count);
+                Assertions.checkEquals(expectedPrevious, previous,
+                        date + " " + count + ": expected [" + expectedPrevious + "] got [" + previous + "]");
+
+                final List<FDate> expectedNext = new ArrayList<FDate>();
+                for (int i = 0; i < count; i++) {
+                    addIfNotRepeated(expectedNext, table.getNextValue(KEY, date, i));
+                }
+                final List<FDate> next = table.getNextValues(KEY, date, count);
+                Assertions.checkEquals(expectedNext, next,
+                        date + " " + count + ": expected [" + expectedNext + "] got [" + next + "]");
+
+                //the lists are always modifiable, also when they are empty or contain a single value
+                previous.add(date);
+                next.add(date);
+            }
+        }
+    }
+
+    /**
+     * Shifts beyond the first or last value are clamped, the bulk lookups return those values only once.
+     */
+    private static void addIfNotRepeated(final List<FDate> values, final FDate value) {
+        if (value != null && (values.isEmpty() || !values.get(values.size() - 1).equals(value))) {
+            values.add(value);
+        }
+    }
+
     @Test
     public final void testNewEntityIncomingPullingAdjustKeyProvider() throws IncompleteUpdateRetryableException {
         cache.setAdjustKeyProvider(new APullingHistoricalCacheAdjustKeyProvider(cache) {
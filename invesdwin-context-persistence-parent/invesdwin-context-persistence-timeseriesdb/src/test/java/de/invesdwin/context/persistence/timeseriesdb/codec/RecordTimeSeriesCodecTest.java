@@ -0,0 +1,84 @@
+package de.invesdwin.context.persistence.timeseriesdb.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import de.invesdwin.context.integration.compression.DisabledCompressionFactory;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import it.unimi.dsi.fastutil.io.FastByteArrayInputStream;
+import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
+
+@NotThreadSafe
+public class RecordTimeSeriesCodecTest extends ATest {
+
+    private static final int RECORDS = 10_000;
+    private static final int RECORD_LENGTH = Long.BYTES + Long.BYTES + Integer.BYTES;
+
+    @Test
+    public void testRoundtrip() throws IOException {
+        final RecordTimeSeriesCodec codec = new RecordTimeSeriesCodec((byte) 1, DisabledCompressionFactory.INSTANCE,
+                false, FieldEncodings.deltaOfDelta(), FieldEncodings.xor(), FieldEncodings.raw(Integer.BYTES));
+        Assertions.checkEquals(RECORD_LENGTH, codec.getRecordLength());
+
+        final Random random = new Random(1);
+        final byte[] records = new byte[RECORDS * RECORD_LENGTH];
+        long time = 1_600_000_000_000L;
+        double price = 100D;
+        for (int i = 0; i < RECORDS; i++) {
+            final int offset = i * RECORD_LENGTH;
+            //mostly regular intervals with some gaps and a huge jump
+            if (i == RECORDS / 2) {
+                time += Long.MAX_VALUE / 2;
+            } else if (random.nextInt(10) == 0) {
+                time += random.nextInt(100_000);
+            } else {
+                time += 1000;
+            }
+            if (random.nextInt(3) == 0) {
+                price += (random.nextInt(21) - 10) * 0.01D;
+            }
+            FieldEncodings.putLong(records, offset, time);
+            FieldEncodings.putLong(records, offset + Long.BYTES, Double.doubleToRawLongBits(price));
+            records[offset + Long.BYTES + Long.BYTES] = (byte) random.nextInt();
+        }
+
+        final FastByteArrayOutputStream encoded = new FastByteArrayOutputStream();
+        try (OutputStream out = codec.newEncoder(encoded)) {
+            //write in uneven pieces to split records
+            int position = 0;
+            while (position < records.length) {
+                final int length = Math.min(records.length - position, random.nextInt(50) + 1);
+                out.write(records, position, length);
+                position += length;
+            }
+        }
+        Assertions.checkTrue(encoded.length < records.length / 2);
+
+        final byte[] decoded;
+        try (InputStream in = codec.newDecoder(new FastByteArrayInputStream(encoded.array, 0, (int) encoded.length))) {
+            decoded = IOUtils.toByteArray(in);
+        }
+        Assertions.checkTrue(Arrays.equals(records, decoded));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        final RecordTimeSeriesCodec codec = new RecordTimeSeriesCodec((byte) 1, DisabledCompressionFactory.INSTANCE,
+                false, FieldEncodings.deltaOfDelta());
+        final FastByteArrayOutputStream encoded = new FastByteArrayOutputStream();
+        codec.newEncoder(encoded).close();
+        try (InputStream in = codec.newDecoder(new FastByteArrayInputStream(encoded.array, 0, (int) encoded.length))) {
+            Assertions.checkEquals(-1, in.read());
+        }
+    }
+
+}
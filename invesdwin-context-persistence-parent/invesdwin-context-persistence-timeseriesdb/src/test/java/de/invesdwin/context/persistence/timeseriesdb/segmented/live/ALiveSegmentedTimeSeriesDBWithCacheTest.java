@@ -8,6 +8,7 @@ import javax.annotation.concurrent.NotThreadSafe;
 import de.invesdwin.context.ContextProperties;
 import de.invesdwin.context.persistence.timeseriesdb.IncompleteUpdateRetryableException;
 import de.invesdwin.context.persistence.timeseriesdb.base.ABaseDBWithCacheTest;
+import de.invesdwin.context.persistence.timeseriesdb.segmented.ISegmentedTimeSeriesDBInternals;
 import de.invesdwin.context.persistence.timeseriesdb.segmented.PeriodicalSegmentFinder;
 import de.invesdwin.context.persistence.timeseriesdb.segmented.SegmentedKey;
 import de.invesdwin.context.persistence.timeseriesdb.segmented.finder.HistoricalCacheSegmentFinder;
@@ -44,10 +45,17 @@ public class ALiveSegmentedTimeSeriesDBWithCacheTest extends ABaseDBWithCacheTes
         private final ISegmentFinder segmentFinder;
         private FDate curTime = null;
         private final List<FDate> entities;
+        private final boolean writeAheadLogEnabled;
 
         public TestLiveSegmentedTimeSeriesDB(final String name, final List<FDate> entities) {
+            this(name, entities, false);
+        }
+
+        public TestLiveSegmentedTimeSeriesDB(final String name, final List<FDate> entities,
+                final boolean writeAheadLogEnabled) {
             super(name);
             this.entities = entities;
+            this.writeAheadLogEnabled = writeAheadLogEnabled;
             final AHistoricalCache<TimeRange> segmentFinderCache = PeriodicalSegmentFinder
                     .newCache(new Duration(2, FTimeUnit.YEARS), false);
             this.segmentFinder = new HistoricalCacheSegmentFinder(segmentFinderCache, null);
@@ -140,6 +148,21 @@ public class ALiveSegmentedTimeSeriesDBWithCacheTest extends ABaseDBWithCacheTes
             return super.putNextLiveValue(key, nextLiveValue);
         }
 
+        @Override
+        protected LiveSegmentWriteAheadLog<FDate> newWriteAheadLog(
+                final ISegmentedTimeSeriesDBInternals<String, FDate> historicalSegmentTable, final String key) {
+            if (writeAheadLogEnabled) {
+                return newTestWriteAheadLog(key);
+            } else {
+                return null;
+            }
+        }
+
+        public LiveSegmentWriteAheadLog<FDate> newTestWriteAheadLog(final String key) {
+            return new LiveSegmentWriteAheadLog<FDate>(new File(getDirectory(), key + "_live.wal"), FDateSerde.GET,
+                    WriteAheadLogSyncPolicy.ALWAYS);
+        }
+
         @Override
         protected String getElementsName() {
             return "values";
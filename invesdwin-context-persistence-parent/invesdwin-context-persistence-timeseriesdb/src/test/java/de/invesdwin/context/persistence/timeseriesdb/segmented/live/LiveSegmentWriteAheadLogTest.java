@@ -0,0 +1,233 @@
+package de.invesdwin.context.persistence.timeseriesdb.segmented.live;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.jupiter.api.Test;
+
+import de.invesdwin.context.ContextProperties;
+import de.invesdwin.context.persistence.timeseriesdb.segmented.live.ALiveSegmentedTimeSeriesDBWithCacheTest.TestLiveSegmentedTimeSeriesDB;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.collections.iterable.ICloseableIterator;
+import de.invesdwin.util.lang.Files;
+import de.invesdwin.util.marshallers.serde.basic.FDateSerde;
+import de.invesdwin.util.time.date.FDate;
+import de.invesdwin.util.time.date.FDateBuilder;
+import de.invesdwin.util.time.date.FDates;
+import de.invesdwin.util.time.range.TimeRange;
+
+@NotThreadSafe
+public class LiveSegmentWriteAheadLogTest extends ATest {
+
+    private static final String KEY = "asdf";
+    private static final TimeRange SEGMENT = new TimeRange(FDateBuilder.newDate(2000), FDateBuilder.newDate(2001));
+
+    @Test
+    public void testReplay() {
+        final LiveSegmentWriteAheadLog<FDate> log = newLog("testReplay");
+        final List<FDate> values = newValues(FDateBuilder.newDate(2000), 100);
+        log.create(SEGMENT);
+        for (final FDate value : values) {
+            log.append(value);
+        }
+        log.close();
+
+        final LiveSegmentWriteAheadLog<FDate> reopened = newLog("testReplay");
+        final List<FDate> replayed = new ArrayList<>();
+        Assertions.checkEquals(SEGMENT, reopened.replay(replayed::add, (segment) -> true));
+        Assertions.checkEquals(values, replayed);
+        //appending continues behind the replayed values
+        final FDate nextValue = values.get(values.size() - 1).addDays(1);
+        reopened.append(nextValue);
+        reopened.close();
+        values.add(nextValue);
+        Assertions.checkEquals(values, replay("testReplay"));
+    }
+
+    @Test
+    public void testTornTail() throws Exception {
+        final LiveSegmentWriteAheadLog<FDate> log = newLog("testTornTail");
+        final List<FDate> values = newValues(FDateBuilder.newDate(2000, 3, 1), 10);
+        log.create(SEGMENT);
+        for (final FDate value : values) {
+            log.append(value);
+        }
+        log.close();
+        final long validLength = log.getFile().length();
+        try (RandomAccessFile raf = new RandomAccessFile(log.getFile(), "rw")) {
+            //a length that points far behind the end of the file, followed by half a value
+            raf.seek(validLength);
+            raf.writeInt(Integer.MAX_VALUE);
+            raf.writeInt(0);
+            raf.writeInt(123);
+        }
+
+        Assertions.checkEquals(values, replay("testTornTail"));
+        Assertions.checkEquals(validLength, log.getFile().length());
+    }
+
+    @Test
+    public void testCorruptedLength() throws Exception {
+        final LiveSegmentWriteAheadLog<FDate> log = newLog("testCorruptedLength");
+        final List<FDate> values = newValues(FDateBuilder.newDate(2000, 6, 1), 5);
+        log.create(SEGMENT);
+        for (final FDate value : values) {
+            log.append(value);
+        }
+        final long lengthBeforeLastValue = log.getFile().length() - Integer.BYTES - Integer.BYTES
+                - FDateSerde.FIXED_LENGTH;
+        log.close();
+        try (RandomAccessFile raf = new RandomAccessFile(log.getFile(), "rw")) {
+            //shorten the last value, the bytes are still there so only the checksum notices it
+            raf.seek(lengthBeforeLastValue);
+            raf.writeInt(FDateSerde.FIXED_LENGTH - 1);
+        }
+
+        Assertions.checkEquals(values.subList(0, values.size() - 1), replay("testCorruptedLength"));
+        Assertions.checkEquals(lengthBeforeLastValue, log.getFile().length());
+    }
+
+    @Test
+    public void testSkippedReplay() {
+        final LiveSegmentWriteAheadLog<FDate> log = newLog("testSkippedReplay");
+        log.create(SEGMENT);
+        log.append(FDateBuilder.newDate(2000, 2, 1));
+        log.close();
+
+        final LiveSegmentWriteAheadLog<FDate> reopened = newLog("testSkippedReplay");
+        final List<FDate> replayed = new ArrayList<>();
+        Assertions.checkNull(reopened.replay(replayed::add, (segment) -> false));
+        Assertions.checkTrue(replayed.isEmpty());
+        reopened.delete();
+        Assertions.checkFalse(reopened.exists());
+    }
+
+    @Test
+    public void testDeleteAfterConvert() {
+        final String name = "testDeleteAfterConvert";
+        final List<FDate> entities = newValues(FDateBuilder.newDate(2000), 5 * 365 / 7, 7);
+        final TestLiveSegmentedTimeSeriesDB table = new TestLiveSegmentedTimeSeriesDB(name, entities, true);
+        final TimeRange lastSegment = table.getSegmentFinder(KEY)
+                .getCacheQuery()
+                .getValue(entities.get(entities.size() - 1));
+        table.close();
+
+        //the log only contains the values of the segment that was still live
+        final LiveSegmentWriteAheadLog<FDate> log = table.newTestWriteAheadLog(KEY);
+        final List<FDate> replayed = new ArrayList<>();
+        Assertions.checkEquals(lastSegment, log.replay(replayed::add, (segment) -> true));
+        log.close();
+        Assertions.checkEquals(filter(entities, lastSegment), replayed);
+
+        //the replay restores the live values after a restart
+        final TestLiveSegmentedTimeSeriesDB reopened = reopen(name, entities);
+        try {
+            reopened.putNextLiveValue(KEY, entities.get(entities.size() - 1));
+            Assertions.checkEquals(entities, readAll(reopened));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testSkipConvertedSegment() {
+        final String name = "testSkipConvertedSegment";
+        final List<FDate> entities = newValues(FDateBuilder.newDate(2000), 5 * 365 / 3, 3);
+        final TestLiveSegmentedTimeSeriesDB table = new TestLiveSegmentedTimeSeriesDB(name, entities, true);
+        final TimeRange firstSegment = table.getSegmentFinder(KEY).getCacheQuery().getValue(entities.get(0));
+        final TimeRange lastSegment = table.getSegmentFinder(KEY)
+                .getCacheQuery()
+                .getValue(entities.get(entities.size() - 1));
+        table.close();
+
+        //simulate a process that died after converting the first segment but before deleting its log
+        final LiveSegmentWriteAheadLog<FDate> log = table.newTestWriteAheadLog(KEY);
+        log.create(firstSegment);
+        final FDate staleValue = firstSegment.getFrom().addHours(1);
+        log.append(staleValue);
+        log.close();
+
+        final TestLiveSegmentedTimeSeriesDB reopened = reopen(name, entities);
+        try {
+            reopened.getLiveSegmentedLookupTableCache(KEY);
+            Assertions.checkFalse(log.exists());
+            //the live values need to be provided again like without a log
+            for (final FDate entity : filter(entities, lastSegment)) {
+                reopened.putNextLiveValue(KEY, entity);
+            }
+            final List<FDate> values = readAll(reopened);
+            Assertions.checkFalse(values.contains(staleValue));
+            Assertions.checkEquals(entities, values);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    /**
+     * The constructor puts the given values as live values, thus they are only provided for the historical lookups
+     * afterwards.
+     */
+    private static TestLiveSegmentedTimeSeriesDB reopen(final String name, final List<FDate> entities) {
+        final List<FDate> reopenedEntities = new ArrayList<>();
+        final TestLiveSegmentedTimeSeriesDB reopened = new TestLiveSegmentedTimeSeriesDB(name, reopenedEntities,
+                true);
+        reopenedEntities.addAll(entities);
+        return reopened;
+    }
+
+    private static List<FDate> readAll(final TestLiveSegmentedTimeSeriesDB table) {
+        final List<FDate> values = new ArrayList<>();
+        try (ICloseableIterator<FDate> it = table.rangeValues(KEY, FDates.MIN_DATE, FDates.MAX_DATE).iterator()) {
+            while (it.hasNext()) {
+                values.add(it.next());
+            }
+        }
+        return values;
+    }
+
+    private static List<FDate> filter(final List<FDate> values, final TimeRange segment) {
+        final List<FDate> filtered = new ArrayList<>();
+        for (final FDate value : values) {
+            if (!value.isBeforeNotNullSafe(segment.getFrom()) && !value.isAfterNotNullSafe(segment.getTo())) {
+                filtered.add(value);
+            }
+        }
+        return filtered;
+    }
+
+    private static List<FDate> newValues(final FDate from, final int count) {
+        final List<FDate> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(from.addHours(i));
+        }
+        return values;
+    }
+
+    private static List<FDate> newValues(final FDate from, final int count, final int stepDays) {
+        final List<FDate> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(from.addDays(i * stepDays));
+        }
+        return values;
+    }
+
+    private static List<FDate> replay(final String name) {
+        final LiveSegmentWriteAheadLog<FDate> log = newLog(name);
+        final List<FDate> replayed = new ArrayList<>();
+        log.replay(replayed::add, (segment) -> true);
+        log.close();
+        return replayed;
+    }
+
+    private static LiveSegmentWriteAheadLog<FDate> newLog(final String name) {
+        final File file = new File(new File(ContextProperties.TEMP_DIRECTORY,
+                LiveSegmentWriteAheadLogTest.class.getSimpleName()), Files.normalizePath(name + ".wal"));
+        return new LiveSegmentWriteAheadLog<FDate>(file, FDateSerde.GET, WriteAheadLogSyncPolicy.ALWAYS);
+    }
+
+}
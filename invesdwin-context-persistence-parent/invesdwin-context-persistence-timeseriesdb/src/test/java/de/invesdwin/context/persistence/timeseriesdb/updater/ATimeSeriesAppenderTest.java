@@ -0,0 +1,342 @@
+package de.invesdwin.context.persistence.timeseriesdb.updater;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.junit.jupiter.api.Test;
+
+import de.invesdwin.context.ContextProperties;
+import de.invesdwin.context.persistence.timeseriesdb.ATimeSeriesDB;
+import de.invesdwin.context.persistence.timeseriesdb.TimeSeriesStorageCache;
+import de.invesdwin.context.persistence.timeseriesdb.storage.ChunkDirectory;
+import de.invesdwin.context.persistence.timeseriesdb.storage.ChunkManifest;
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.collections.iterable.ICloseableIterator;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
+import de.invesdwin.util.marshallers.serde.ISerde;
+import de.invesdwin.util.marshallers.serde.basic.FDateSerde;
+import de.invesdwin.util.time.date.FDate;
+import de.invesdwin.util.time.date.FDates;
+import de.invesdwin.util.time.date.FTimeUnit;
+import de.invesdwin.util.time.duration.Duration;
+
+@NotThreadSafe
+public class ATimeSeriesAppenderTest extends ATest {
+
+    //long enough that only full batches and flush() trigger a write
+    private static final Duration NO_DELAY_FLUSH = new Duration(1, FTimeUnit.HOURS);
+
+    @Test
+    public void testFlushFutureCompletes() throws Exception {
+        final RecordingAppender appender = new RecordingAppender("testFlushFutureCompletes", 1_000, 0);
+        try {
+            for (int i = 0; i < 10; i++) {
+                appender.append("asdf", i);
+            }
+            Assertions.checkEquals(10, appender.getPendingCount());
+            final Future<?> future = appender.flush();
+            future.get(10, TimeUnit.SECONDS);
+            Assertions.checkTrue(future.isDone());
+            Assertions.checkEquals(0, appender.getPendingCount());
+            Assertions.checkEquals(newInts(0, 10), appender.getWritten("asdf"));
+            //a flush without pending values also completes
+            appender.flush().get(10, TimeUnit.SECONDS);
+            Assertions.checkEquals(1, appender.getWrites());
+        } finally {
+            appender.close();
+        }
+    }
+
+    @Test
+    public void testOrderingOfConcurrentProducers() throws Exception {
+        final int producers = 4;
+        final int count = 5_000;
+        final RecordingAppender appender = new RecordingAppender("testOrderingOfConcurrentProducers", 64, 0);
+        final WrappedExecutorService executor = Executors.newFixedThreadPool("testOrderingOfConcurrentProducers",
+                producers);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                final String key = "key" + p;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < count; i++) {
+                        appender.append(key, i);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (final Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            appender.flush().get(10, TimeUnit.SECONDS);
+            for (int p = 0; p < producers; p++) {
+                Assertions.checkEquals(newInts(0, count), appender.getWritten("key" + p));
+            }
+        } finally {
+            executor.shutdownNow();
+            appender.close();
+        }
+    }
+
+    @Test
+    public void testFailedWriteIsRetried() throws Exception {
+        final RecordingAppender appender = new RecordingAppender("testFailedWriteIsRetried", 1_000, 1);
+        try {
+            for (int i = 0; i < 5; i++) {
+                appender.append("asdf", i);
+            }
+            try {
+                appender.flush().get(10, TimeUnit.SECONDS);
+                Assertions.failExceptionExpected();
+            } catch (final ExecutionException e) {
+                Assertions.checkTrue(e.getCause() instanceof IllegalStateException);
+            }
+            //the values are kept in front of the ones that are appended afterwards
+            Assertions.checkEquals(5, appender.getPendingCount());
+            Assertions.checkNull(appender.getWritten("asdf"));
+            appender.append("asdf", 5);
+            appender.flush().get(10, TimeUnit.SECONDS);
+            Assertions.checkEquals(newInts(0, 6), appender.getWritten("asdf"));
+            Assertions.checkEquals(0, appender.getPendingCount());
+        } finally {
+            appender.close();
+        }
+    }
+
+    @Test
+    public void testFullBatchAfterFailedWrite() throws Exception {
+        final int batchSize = 10;
+        final RecordingAppender appender = new RecordingAppender("testFullBatchAfterFailedWrite", batchSize, 1);
+        try {
+            for (int i = 0; i < batchSize; i++) {
+                appender.append("asdf", i);
+            }
+            //the full batch wakes the flusher without a flush() call
+            Assertions.checkTrue(appender.failed.await(10, TimeUnit.SECONDS));
+            //wait until the values were put back
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (appender.getPendingCount() < batchSize && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            Assertions.checkEquals(batchSize, appender.getPendingCount());
+            //the put back values already exceed the batchSize, the next value has to wake the flusher again
+            appender.append("asdf", batchSize);
+            Assertions.checkTrue(appender.written.await(10, TimeUnit.SECONDS));
+            Assertions.checkEquals(newInts(0, batchSize + 1), appender.getWritten("asdf"));
+        } finally {
+            appender.close();
+        }
+    }
+
+    @Test
+    public void testCloseWritesPendingValues() {
+        final RecordingAppender appender = new RecordingAppender("testCloseWritesPendingValues", 1_000, 0);
+        appender.append("asdf", 1);
+        appender.append("jkl", 2);
+        appender.close();
+        Assertions.checkTrue(appender.isClosed());
+        Assertions.checkEquals(newInts(1, 1), appender.getWritten("asdf"));
+        Assertions.checkEquals(newInts(2, 1), appender.getWritten("jkl"));
+        try {
+            appender.append("asdf", 3);
+            Assertions.failExceptionExpected();
+        } catch (final IllegalStateException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testCloseWritesConcurrentAppends() throws Exception {
+        final int producers = 4;
+        final RecordingAppender appender = new RecordingAppender("testCloseWritesConcurrentAppends", 64, 0);
+        final WrappedExecutorService executor = Executors.newFixedThreadPool("testCloseWritesConcurrentAppends",
+                producers);
+        try {
+            final CountDownLatch started = new CountDownLatch(producers);
+            final List<Future<Integer>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                final String key = "key" + p;
+                futures.add(executor.submit(() -> {
+                    started.countDown();
+                    int accepted = 0;
+                    while (true) {
+                        try {
+                            appender.append(key, accepted);
+                        } catch (final IllegalStateException e) {
+                            return accepted;
+                        }
+                        accepted++;
+                    }
+                }));
+            }
+            Assertions.checkTrue(started.await(10, TimeUnit.SECONDS));
+            appender.close();
+            for (int p = 0; p < producers; p++) {
+                //every value that was accepted is written when close() returns
+                final int accepted = futures.get(p).get(10, TimeUnit.SECONDS);
+                final List<Integer> written = appender.getWritten("key" + p);
+                Assertions.checkEquals(newInts(0, accepted), written == null ? new ArrayList<>() : written);
+            }
+            Assertions.checkEquals(0, appender.getPendingCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDBAppenderWritesIntoOpenTail() throws Exception {
+        final String key = "asdf";
+        final int batchFlushInterval = 20;
+        final int batchSize = 5;
+        final int batches = 12;
+        final ATimeSeriesDB<String, FDate> table = newTable("testDBAppenderWritesIntoOpenTail", batchFlushInterval);
+        final TimeSeriesDBAppender<String, FDate> appender = new TimeSeriesDBAppender<>(table, 1_000, NO_DELAY_FLUSH);
+        try {
+            final List<FDate> expected = new ArrayList<>();
+            for (int b = 0; b < batches; b++) {
+                for (int i = 0; i < batchSize; i++) {
+                    final FDate value = new FDate(1_000L + expected.size() * 3L);
+                    expected.add(value);
+                    appender.append(key, value);
+                }
+                appender.flush().get(10, TimeUnit.SECONDS);
+                Assertions.checkEquals(expected, readAll(table, key));
+            }
+            //full chunks followed by the open tail instead of one small chunk per batch
+            final ChunkDirectory directory = readChunkManifest(table, key);
+            Assertions.checkTrue(directory.size() < batches, "%s", directory.size());
+            int tailStart = directory.size();
+            while (tailStart > 0 && directory.getValueCount(tailStart - 1) < batchFlushInterval) {
+                tailStart--;
+            }
+            Assertions.checkTrue(tailStart > 0);
+            int tailValues = 0;
+            for (int c = tailStart; c < directory.size(); c++) {
+                tailValues += directory.getValueCount(c);
+            }
+            Assertions.checkTrue(tailValues < batchFlushInterval + batchSize, "%s", tailValues);
+        } finally {
+            appender.close();
+            table.close();
+        }
+    }
+
+    private static List<FDate> readAll(final ATimeSeriesDB<String, FDate> table, final String key) {
+        final List<FDate> values = new ArrayList<>();
+        try (ICloseableIterator<FDate> it = table.rangeValues(key, FDates.MIN_DATE, FDates.MAX_DATE).iterator()) {
+            while (it.hasNext()) {
+                values.add(it.next());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The manifest of a new key is only written when its chunk directory is loaded for the first time.
+     */
+    private static ChunkDirectory readChunkManifest(final ATimeSeriesDB<String, FDate> table, final String key) {
+        final TimeSeriesStorageCache<String, FDate> cache = table.getLookupTableCache(key);
+        cache.size();
+        return new ChunkManifest(cache.getDataDirectory(), table.getValueFixedLength()).read();
+    }
+
+    private static ATimeSeriesDB<String, FDate> newTable(final String name, final int batchFlushInterval) {
+        return new ATimeSeriesDB<String, FDate>(name) {
+
+            @Override
+            protected int newBatchFlushInterval() {
+                return batchFlushInterval;
+            }
+
+            @Override
+            protected ISerde<FDate> newValueSerde() {
+                return FDateSerde.GET;
+            }
+
+            @Override
+            protected Integer newValueFixedLength() {
+                return FDateSerde.FIXED_LENGTH;
+            }
+
+            @Override
+            protected String innerHashKeyToString(final String key) {
+                return key;
+            }
+
+            @Override
+            public FDate extractStartTime(final FDate value) {
+                return value;
+            }
+
+            @Override
+            public FDate extractEndTime(final FDate value) {
+                return value;
+            }
+
+            @Override
+            public File getBaseDirectory() {
+                return ContextProperties.TEMP_DIRECTORY;
+            }
+        };
+    }
+
+    private static List<Integer> newInts(final int from, final int count) {
+        final List<Integer> ints = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ints.add(from + i);
+        }
+        return ints;
+    }
+
+    @ThreadSafe
+    private static final class RecordingAppender extends ATimeSeriesAppender<String, Integer> {
+
+        private final Map<String, List<Integer>> key_written = new ConcurrentHashMap<>();
+        private final AtomicInteger remainingFailures;
+        private final AtomicInteger writes = new AtomicInteger();
+        private final CountDownLatch failed = new CountDownLatch(1);
+        private final CountDownLatch written = new CountDownLatch(1);
+
+        private RecordingAppender(final String name, final int batchSize, final int failures) {
+            super(name, batchSize, NO_DELAY_FLUSH);
+            this.remainingFailures = new AtomicInteger(failures);
+        }
+
+        @Override
+        protected void write(final String key, final List<Integer> values) throws Exception {
+            if (remainingFailures.getAndDecrement() > 0) {
+                failed.countDown();
+                throw new IllegalStateException("simulated failure");
+            }
+            writes.incrementAndGet();
+            key_written.computeIfAbsent(key, k -> new ArrayList<>()).addAll(values);
+            written.countDown();
+        }
+
+        public List<Integer> getWritten(final String key) {
+            return key_written.get(key);
+        }
+
+        public int getWrites() {
+            return writes.get();
+        }
+
+    }
+
+}
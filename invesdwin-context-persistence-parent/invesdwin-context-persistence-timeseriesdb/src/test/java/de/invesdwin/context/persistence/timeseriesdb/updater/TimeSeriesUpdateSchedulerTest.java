@@ -0,0 +1,159 @@
+package de.invesdwin.context.persistence.timeseriesdb.updater;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.junit.jupiter.api.Test;
+
+import de.invesdwin.context.test.ATest;
+import de.invesdwin.util.assertions.Assertions;
+import de.invesdwin.util.concurrent.Executors;
+import de.invesdwin.util.concurrent.WrappedExecutorService;
+import de.invesdwin.util.concurrent.future.Futures;
+import de.invesdwin.util.time.date.FTimeUnit;
+import de.invesdwin.util.time.duration.Duration;
+
+@NotThreadSafe
+public class TimeSeriesUpdateSchedulerTest extends ATest {
+
+    //long enough that only nested updates run inline
+    private static final Duration NO_INLINE_TIMEOUT = new Duration(1, FTimeUnit.HOURS);
+
+    @Test
+    public void testWaitingReaderRaisesPriorityOfPendingUpdate() throws Exception {
+        final TimeSeriesUpdateScheduler scheduler = new TimeSeriesUpdateScheduler(
+                "testWaitingReaderRaisesPriorityOfPendingUpdate", 1, 1, NO_INLINE_TIMEOUT);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final List<String> order = Collections.synchronizedList(new ArrayList<>());
+            scheduler.schedule("blocker", "a", TimeSeriesUpdatePriority.BACKGROUND, newBlocker(started, release));
+            Assertions.checkTrue(started.await(10, TimeUnit.SECONDS));
+            final Future<?> first = scheduler.schedule("first", "b", TimeSeriesUpdatePriority.BACKGROUND,
+                    () -> order.add("first"));
+            final Future<?> second = scheduler.schedule("second", "c", TimeSeriesUpdatePriority.BACKGROUND,
+                    () -> order.add("second"));
+            Assertions.checkEquals(2, scheduler.getPendingCount());
+            //a reader waits for the second update, the pending one is reused instead of queueing another one
+            final AtomicBoolean duplicateRan = new AtomicBoolean();
+            final Future<?> reader = scheduler.schedule("second", "c", TimeSeriesUpdatePriority.WAITING_READER,
+                    () -> duplicateRan.set(true));
+            Assertions.assertThat(reader).isSameAs(second);
+            Assertions.checkEquals(2, scheduler.getPendingCount());
+            release.countDown();
+            first.get(10, TimeUnit.SECONDS);
+            second.get(10, TimeUnit.SECONDS);
+            Assertions.checkEquals(Arrays.asList("second", "first"), order);
+            Assertions.checkFalse(duplicateRan.get());
+        } finally {
+            release.countDown();
+            scheduler.close();
+        }
+    }
+
+    @Test
+    public void testTableBudget() throws Exception {
+        final TimeSeriesUpdateScheduler scheduler = new TimeSeriesUpdateScheduler("testTableBudget", 2, 1,
+                NO_INLINE_TIMEOUT);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final Future<?> blocker = scheduler.schedule("blocker", "x", TimeSeriesUpdatePriority.BACKGROUND,
+                    newBlocker(started, release));
+            Assertions.checkTrue(started.await(10, TimeUnit.SECONDS));
+            final AtomicInteger sameTableRuns = new AtomicInteger();
+            final Future<?> sameTable = scheduler.schedule("sameTable", "x", TimeSeriesUpdatePriority.WAITING_READER,
+                    sameTableRuns::incrementAndGet);
+            final Future<?> otherTable = scheduler.schedule("otherTable", "y", TimeSeriesUpdatePriority.BACKGROUND,
+                    () -> {
+                    });
+            //the second worker skips the update of the busy table even though it has the higher priority
+            otherTable.get(10, TimeUnit.SECONDS);
+            Assertions.checkFalse(sameTable.isDone());
+            Assertions.checkEquals(0, sameTableRuns.get());
+            Assertions.checkEquals(1, scheduler.getPendingCount());
+            Assertions.checkEquals(1, scheduler.getRunningCount("x"));
+            release.countDown();
+            blocker.get(10, TimeUnit.SECONDS);
+            sameTable.get(10, TimeUnit.SECONDS);
+            Assertions.checkEquals(1, sameTableRuns.get());
+            Assertions.checkEquals(0, scheduler.getPendingCount());
+        } finally {
+            release.countDown();
+            scheduler.close();
+        }
+    }
+
+    @Test
+    public void testNestedUpdateRunsInline() throws Exception {
+        final TimeSeriesUpdateScheduler scheduler = new TimeSeriesUpdateScheduler("testNestedUpdateRunsInline", 1, 1,
+                NO_INLINE_TIMEOUT);
+        try {
+            final AtomicBoolean nestedDone = new AtomicBoolean();
+            final Future<?> outer = scheduler.schedule("outer", "a", TimeSeriesUpdatePriority.WAITING_READER, () -> {
+                final Future<?> nested = scheduler.schedule("nested", "b", TimeSeriesUpdatePriority.WAITING_READER,
+                        () -> {
+                        });
+                //the only worker is occupied by the outer update
+                nestedDone.set(nested.isDone());
+            });
+            outer.get(10, TimeUnit.SECONDS);
+            Assertions.checkTrue(nestedDone.get());
+        } finally {
+            scheduler.close();
+        }
+    }
+
+    @Test
+    public void testFanOutWaitRunsQueuedUpdateInline() throws Exception {
+        final TimeSeriesUpdateScheduler scheduler = new TimeSeriesUpdateScheduler(
+                "testFanOutWaitRunsQueuedUpdateInline", 1, 1, new Duration(50, FTimeUnit.MILLISECONDS));
+        final WrappedExecutorService fanOut = Executors.newFixedThreadPool("testFanOutWaitRunsQueuedUpdateInline",
+                2);
+        try {
+            final AtomicInteger innerRuns = new AtomicInteger();
+            final Future<?> outer = scheduler.schedule("outer", "a", TimeSeriesUpdatePriority.WAITING_READER, () -> {
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < 2; i++) {
+                    final String id = "inner" + i;
+                    //the fan-out threads are no workers, without the inline timeout they would wait forever
+                    futures.add(fanOut.submit(() -> {
+                        final Future<?> inner = scheduler.schedule(id, "b", TimeSeriesUpdatePriority.WAITING_READER,
+                                innerRuns::incrementAndGet);
+                        scheduler.await(inner);
+                    }));
+                }
+                for (final Future<?> future : futures) {
+                    Futures.waitNoInterrupt(future);
+                }
+            });
+            outer.get(10, TimeUnit.SECONDS);
+            Assertions.checkEquals(2, innerRuns.get());
+            Assertions.checkEquals(0, scheduler.getPendingCount());
+        } finally {
+            fanOut.shutdownNow();
+            scheduler.close();
+        }
+    }
+
+    private static Runnable newBlocker(final CountDownLatch started, final CountDownLatch release) {
+        return () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+}